@@ -0,0 +1,61 @@
+package com.antont.player.activities;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.TextView;
+
+import com.antont.player.AudioItemsContainer;
+import com.antont.player.R;
+import com.antont.player.adapters.DuplicatesAdapter;
+import com.antont.player.duplicates.DuplicateDetector;
+import com.antont.player.models.AudioItem;
+
+import java.util.List;
+
+// Lists the tracks of the library that are the same recording. The search starts when the screen opens
+// and stops when it closes, fingerprints taken so far are kept for the next time.
+public class DuplicatesActivity extends AppCompatActivity implements DuplicateDetector.OnDuplicatesFoundListener {
+
+    private TextView mStatusTextView;
+    private DuplicatesAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_duplicates);
+
+        mStatusTextView = findViewById(R.id.duplicates_status_text_view);
+        mAdapter = new DuplicatesAdapter();
+        RecyclerView recyclerView = findViewById(R.id.duplicates_recycler_view);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(mAdapter);
+
+        List<AudioItem> items = AudioItemsContainer.getInstance().getAudioItems();
+        onProgress(0, items.size());
+        DuplicateDetector.getInstance(this).find(items, this);
+    }
+
+    @Override
+    public void onProgress(int checkedCount, int totalCount) {
+        mStatusTextView.setText(getString(R.string.duplicates_progress, checkedCount, totalCount));
+    }
+
+    @Override
+    public void onDuplicatesFound(List<List<AudioItem>> duplicates) {
+        if (duplicates.isEmpty()) {
+            mStatusTextView.setText(R.string.duplicates_none);
+        } else {
+            mStatusTextView.setVisibility(View.GONE);
+        }
+        mAdapter.setDuplicates(duplicates);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        DuplicateDetector.getInstance(this).cancel();
+    }
+}
@@ -0,0 +1,263 @@
+package com.antont.player.activities;
+
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.app.AppCompatActivity;
+import android.text.InputType;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.Switch;
+import android.widget.TextView;
+
+import com.antont.player.R;
+import com.antont.player.dsp.DspPreset;
+import com.antont.player.dsp.DspPresetStore;
+import com.antont.player.dsp.DspSettings;
+import com.antont.player.dsp.EqualizerBand;
+import com.antont.player.services.AudioPlayerService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Equalizer, preamp, balance and limiter. Every change is saved and heard at once, the players read the
+// settings from DspPresetStore. The preset list ends with a "Custom" entry while the curve matches no preset.
+public class EqualizerActivity extends AppCompatActivity {
+
+    private static final float MAX_GAIN_IN_DB = 12f;
+    private static final float GAIN_STEP_IN_DB = 0.5f;
+    private static final float BALANCE_STEP = 0.05f;
+
+    private DspPresetStore mStore;
+    private Switch mEnabledSwitch;
+    private Switch mLimiterSwitch;
+    private Spinner mPresetSpinner;
+    private Button mDeleteButton;
+    private TextView mPreampTextView;
+    private SeekBar mPreampSeekBar;
+    private TextView mBalanceTextView;
+    private SeekBar mBalanceSeekBar;
+    private final List<TextView> mBandTextViews = new ArrayList<>();
+    private final List<SeekBar> mBandSeekBars = new ArrayList<>();
+    // What the spinner shows, null for the "Custom" entry
+    private final List<DspPreset> mSpinnerPresets = new ArrayList<>();
+    // Set while the views are updated from the settings, switches report those changes too
+    private boolean mBinding;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_equalizer);
+        mStore = DspPresetStore.getInstance(this);
+
+        // The effects are heard with this engine only, the service switches to it while the track plays on
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        View engineNoteView = findViewById(R.id.equalizer_engine_note_text_view);
+        boolean pcmEngine = preferences.getBoolean(AudioPlayerService.PREF_PCM_ENGINE, false);
+        engineNoteView.setVisibility(pcmEngine ? View.GONE : View.VISIBLE);
+        Switch pcmEngineSwitch = findViewById(R.id.equalizer_pcm_engine_switch);
+        pcmEngineSwitch.setChecked(pcmEngine);
+        pcmEngineSwitch.setOnCheckedChangeListener((button, checked) -> {
+            preferences.edit()
+                    .putBoolean(AudioPlayerService.PREF_PCM_ENGINE, checked)
+                    .apply();
+            engineNoteView.setVisibility(checked ? View.GONE : View.VISIBLE);
+        });
+
+        mEnabledSwitch = findViewById(R.id.equalizer_enabled_switch);
+        mEnabledSwitch.setOnCheckedChangeListener((button, checked) -> {
+            if (!mBinding) {
+                update(mStore.getDspSettings().withEnabled(checked));
+            }
+        });
+        mLimiterSwitch = findViewById(R.id.equalizer_limiter_switch);
+        mLimiterSwitch.setOnCheckedChangeListener((button, checked) -> {
+            if (!mBinding) {
+                update(mStore.getDspSettings().withLimiterEnabled(checked));
+            }
+        });
+        mDeleteButton = findViewById(R.id.equalizer_delete_button);
+
+        mPreampTextView = findViewById(R.id.equalizer_preamp_text_view);
+        mPreampSeekBar = findViewById(R.id.equalizer_preamp_seek_bar);
+        mPreampSeekBar.setMax(progressOfGain(MAX_GAIN_IN_DB));
+        mPreampSeekBar.setOnSeekBarChangeListener(new OnUserProgressListener(progress ->
+                update(mStore.getDspSettings().withPreampInDb(gainOfProgress(progress)))));
+
+        mBalanceTextView = findViewById(R.id.equalizer_balance_text_view);
+        mBalanceSeekBar = findViewById(R.id.equalizer_balance_seek_bar);
+        mBalanceSeekBar.setMax(Math.round(2 / BALANCE_STEP));
+        mBalanceSeekBar.setOnSeekBarChangeListener(new OnUserProgressListener(progress ->
+                update(mStore.getDspSettings().withBalance(progress * BALANCE_STEP - 1))));
+
+        setupBands();
+
+        mPresetSpinner = findViewById(R.id.equalizer_preset_spinner);
+        mPresetSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                // Also called for the selection the binding makes, that preset is already playing
+                DspPreset preset = mSpinnerPresets.get(position);
+                DspSettings settings = mStore.getDspSettings();
+                if (preset != null && !preset.matches(settings)) {
+                    update(settings.withPreset(preset));
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+
+            }
+        });
+
+        bind();
+    }
+
+    // A row per band of the settings, the layout of the bands stays the same while the screen is open
+    private void setupBands() {
+        LinearLayout bandsLayout = findViewById(R.id.equalizer_bands_layout);
+        List<EqualizerBand> bands = mStore.getDspSettings().getBands();
+        for (int i = 0; i < bands.size(); i++) {
+            int index = i;
+            TextView textView = new TextView(this);
+            SeekBar seekBar = new SeekBar(this);
+            seekBar.setMax(progressOfGain(MAX_GAIN_IN_DB));
+            seekBar.setOnSeekBarChangeListener(new OnUserProgressListener(progress ->
+                    update(mStore.getDspSettings().withBandGainInDb(index, gainOfProgress(progress)))));
+            bandsLayout.addView(textView);
+            bandsLayout.addView(seekBar);
+            mBandTextViews.add(textView);
+            mBandSeekBars.add(seekBar);
+        }
+    }
+
+    public void onSavePresetButtonPressed(View view) {
+        EditText nameEditText = new EditText(this);
+        nameEditText.setHint(R.string.equalizer_preset_name_hint);
+        nameEditText.setInputType(InputType.TYPE_CLASS_TEXT);
+        DspPreset current = mStore.getCurrentPreset();
+        if (current != null && mStore.isUserPreset(current)) {
+            nameEditText.setText(current.getName());
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.equalizer_save_preset)
+                .setView(nameEditText)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    String name = nameEditText.getText().toString().trim();
+                    if (!name.isEmpty()) {
+                        mStore.savePreset(name);
+                        bind();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    public void onDeletePresetButtonPressed(View view) {
+        DspPreset current = mStore.getCurrentPreset();
+        if (current != null && mStore.isUserPreset(current)) {
+            mStore.deletePreset(current);
+            bind();
+        }
+    }
+
+    private void update(DspSettings settings) {
+        mStore.setDspSettings(settings);
+        bind();
+    }
+
+    private void bind() {
+        DspSettings settings = mStore.getDspSettings();
+        mBinding = true;
+        mEnabledSwitch.setChecked(settings.isEnabled());
+        mLimiterSwitch.setChecked(settings.isLimiterEnabled());
+        mPreampTextView.setText(getString(R.string.equalizer_preamp, settings.getPreampInDb()));
+        mPreampSeekBar.setProgress(progressOfGain(settings.getPreampInDb()));
+        mBalanceTextView.setText(getString(R.string.equalizer_balance, settings.getBalance()));
+        mBalanceSeekBar.setProgress(Math.round((settings.getBalance() + 1) / BALANCE_STEP));
+        List<EqualizerBand> bands = settings.getBands();
+        for (int i = 0; i < mBandSeekBars.size() && i < bands.size(); i++) {
+            EqualizerBand band = bands.get(i);
+            mBandTextViews.get(i).setText(getString(R.string.equalizer_band, frequencyTitleOf(band.getFrequency()),
+                    band.getGainInDb()));
+            mBandSeekBars.get(i).setProgress(progressOfGain(band.getGainInDb()));
+        }
+        bindPresets();
+        mBinding = false;
+    }
+
+    private void bindPresets() {
+        DspPreset current = mStore.getCurrentPreset();
+        mSpinnerPresets.clear();
+        mSpinnerPresets.addAll(mStore.getPresets());
+        List<String> names = new ArrayList<>();
+        for (DspPreset preset : mSpinnerPresets) {
+            names.add(preset.getName());
+        }
+        if (current == null) {
+            mSpinnerPresets.add(null);
+            names.add(getString(R.string.equalizer_custom_preset));
+        }
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, names);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        mPresetSpinner.setAdapter(adapter);
+        mPresetSpinner.setSelection(mSpinnerPresets.indexOf(current));
+        mDeleteButton.setEnabled(current != null && mStore.isUserPreset(current));
+    }
+
+    private static int progressOfGain(float gainInDb) {
+        float gain = Math.max(-MAX_GAIN_IN_DB, Math.min(MAX_GAIN_IN_DB, gainInDb));
+        return Math.round((gain + MAX_GAIN_IN_DB) / GAIN_STEP_IN_DB);
+    }
+
+    private static float gainOfProgress(int progress) {
+        return progress * GAIN_STEP_IN_DB - MAX_GAIN_IN_DB;
+    }
+
+    private static String frequencyTitleOf(float frequency) {
+        if (frequency >= 1000) {
+            String format = frequency % 1000 == 0 ? "%.0f kHz" : "%.1f kHz";
+            return String.format(Locale.getDefault(), format, frequency / 1000);
+        }
+        return String.format(Locale.getDefault(), "%.0f Hz", frequency);
+    }
+
+    // Only the changes the user makes, not those of setProgress()
+    private static class OnUserProgressListener implements SeekBar.OnSeekBarChangeListener {
+
+        private final OnProgressListener mListener;
+
+        OnUserProgressListener(OnProgressListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+            if (fromUser) {
+                mListener.onProgress(progress);
+            }
+        }
+
+        @Override
+        public void onStartTrackingTouch(SeekBar seekBar) {
+
+        }
+
+        @Override
+        public void onStopTrackingTouch(SeekBar seekBar) {
+
+        }
+    }
+
+    private interface OnProgressListener {
+        void onProgress(int progress);
+    }
+}
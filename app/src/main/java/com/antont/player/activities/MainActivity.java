@@ -2,10 +2,9 @@ package com.antont.player.activities;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
-import android.provider.MediaStore;
+import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
@@ -13,47 +12,87 @@ import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.antont.player.AudioItemsContainer;
-import com.antont.player.events.OnServiceDestroyEvent;
-import com.antont.player.events.OnTrackStartedEvent;
+import com.antont.player.PlayQueue;
 import com.antont.player.R;
 import com.antont.player.adapters.RecyclerViewAdapter;
 import com.antont.player.enums.ActionType;
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.enums.SortOrder;
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.library.LibraryRepository;
+import com.antont.player.loudness.LoudnessAnalyzer;
+import com.antont.player.metrics.Metrics;
 import com.antont.player.models.AudioItem;
+import com.antont.player.playback.PlaybackCheckpoint;
+import com.antont.player.playback.PlaybackCheckpointStore;
+import com.antont.player.playlist.SmartPlaylists;
+import com.antont.player.search.LibrarySearch;
 import com.antont.player.services.AudioPlayerService;
-
-import org.greenrobot.eventbus.EventBus;
-import org.greenrobot.eventbus.Subscribe;
-import org.greenrobot.eventbus.ThreadMode;
-
-import java.util.ArrayList;
+import com.antont.player.services.PlayerCommandBus;
+import com.antont.player.sort.LibrarySorter;
+import com.antont.player.sort.SortResult;
+import com.antont.player.views.SeekBarProgressUpdater;
+import com.antont.player.views.WaveformView;
+import com.antont.player.waveform.Waveform;
+import com.antont.player.waveform.WaveformLoader;
+
+import java.io.File;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class MainActivity extends AppCompatActivity implements ActivityCompat.OnRequestPermissionsResultCallback,
-        RecyclerViewAdapter.OnItemSelectedCallback {
+        RecyclerViewAdapter.OnItemSelectedCallback, LibraryRepository.OnLibraryLoadedCallback,
+        PlayerCommandBus.PlayerStateListener, LibrarySearch.OnSearchResultListener, LibrarySorter.OnSortedListener,
+        WaveformLoader.OnWaveformListener, SmartPlaylists.OnPlaylistChangedListener {
 
     private static String ARG_TRACK_DURATION = "ARG_TRACK_DURATION";
     private static String ARG_SEEK_BAR_POSITION = "ARG_SEEK_BAR_POSITION";
     private static String ARG_TRACK_NAME = "ARG_TRACK_NAME";
     private static String ARG_IS_PLAYING = "ARG_IS_PLAYING";
+    private static String ARG_PLAYLIST_NAME = "ARG_PLAYLIST_NAME";
+
+    private static final String PREF_SORT_ORDER = "sort_order";
 
     private static final int PERMISSION_REQUEST_CODE = 1024;
-    private static final int TIMER_PERIOD_IN_MS = 50; // Amount of milliseconds in which the progressBar is updated
+    private static final int PLAYLIST_REQUEST_CODE = 1025;
+    private static final int SEARCH_RESULT_LIMIT = 500;
+    private static final int MODE_ON_ALPHA = 255;
+    private static final int MODE_OFF_ALPHA = 96;
 
     private RecyclerView mRecyclerView;
     private TextView mTrackNameTextView;
     private ImageButton mPlayPauseButton;
+    private ImageButton mShuffleButton;
+    private ImageButton mRepeatButton;
 
     private SeekBar mSeekBar;
-    private Timer mTimer = new Timer();
+    private SeekBarProgressUpdater mProgressUpdater;
+    private WaveformView mWaveformView;
+    private WaveformLoader mWaveformLoader;
+    // The track the waveform view shows or is about to
+    private AudioItem mWaveformItem;
+
+    private LibraryRepository mLibraryRepository;
+    private LibrarySearch mLibrarySearch;
+    private EditText mSearchEditText;
+    private SmartPlaylists mSmartPlaylists;
+    // The smart playlist the list shows while there is no query, null for the whole library
+    private String mPlaylistName;
+    private LibrarySorter mLibrarySorter;
+    private SortOrder mSortOrder;
+    // Version of the play queue the latest sort was started on
+    private int mSortedQueueVersion;
 
     private int mTrackDuration = 0;
     private Boolean isPlaying = false;
@@ -61,19 +100,43 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        Metrics.setEnabled(PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(AudioPlayerService.PREF_METRICS_ENABLED, false));
         setContentView(R.layout.activity_main);
 
         mPlayPauseButton = findViewById(R.id.play_pause_button);
         mTrackNameTextView = findViewById(R.id.track_name_text_view);
+        // Hidden way into the metrics screen
+        mTrackNameTextView.setOnLongClickListener(view -> {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        });
+        mShuffleButton = findViewById(R.id.shuffle_button);
+        mRepeatButton = findViewById(R.id.repeat_button);
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        onPlaybackModeChanged(queue.isShuffleEnabled(), queue.getRepeatMode());
 
         setupSeekBar();
+        mWaveformLoader = new WaveformLoader(getApplicationContext());
 
-        EventBus.getDefault().register(this);
+        mLibraryRepository = new LibraryRepository(getApplicationContext());
+        mLibrarySearch = new LibrarySearch();
+        mSmartPlaylists = SmartPlaylists.getInstance(this);
+        setupSearch();
+        mLibrarySorter = new LibrarySorter();
+        mSortOrder = SortOrder.valueOf(PreferenceManager.getDefaultSharedPreferences(this)
+                .getString(PREF_SORT_ORDER, SortOrder.ADDED.name()));
+
+        PlayerCommandBus.getInstance().setStateListener(this);
 
         if (AudioItemsContainer.getInstance().getAudioItems().isEmpty()) {
             checkAndroidPermission();
         } else {
             setupRecyclerView();
+            mLibrarySearch.setItems(AudioItemsContainer.getInstance().getAudioItems());
+            mSmartPlaylists.setItems(AudioItemsContainer.getInstance().getAudioItems());
+            mLibraryRepository.watch(AudioItemsContainer.getInstance().getAudioItems(), this);
+            sortLibrary();
         }
 
         restoreStateFromSavedInstance(savedInstanceState);
@@ -86,11 +149,15 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
             mTrackDuration = savedInstanceState.getInt(ARG_TRACK_DURATION);
             int restoredProgress = savedInstanceState.getInt(ARG_SEEK_BAR_POSITION);
 
-            mSeekBar.setMax(mTrackDuration);
-            mSeekBar.setProgress(restoredProgress);
             isPlaying = savedInstanceState.getBoolean(ARG_IS_PLAYING);
+            mProgressUpdater.setDuration(mTrackDuration);
             mTrackNameTextView.setText(savedInstanceState.getString(ARG_TRACK_NAME));
-            onChangeMusicState(isPlaying);
+            onPlaybackStateChanged(isPlaying, restoredProgress);
+            loadWaveform();
+            String playlistName = savedInstanceState.getString(ARG_PLAYLIST_NAME);
+            if (playlistName != null) {
+                showPlaylist(playlistName);
+            }
         }
     }
 
@@ -101,6 +168,11 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
 
     private void setupSeekBar() {
         mSeekBar = findViewById(R.id.seekBar);
+        mProgressUpdater = new SeekBarProgressUpdater(mSeekBar);
+        // The waveform lines up with the track of the bar, inside the room the thumb takes at both ends
+        mWaveformView = findViewById(R.id.waveform_view);
+        mWaveformView.setPadding(mSeekBar.getPaddingLeft(), mSeekBar.getPaddingTop(),
+                mSeekBar.getPaddingRight(), mSeekBar.getPaddingBottom());
 
         mSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
@@ -110,23 +182,173 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-
+                mProgressUpdater.setSuspended(true);
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 if (!AudioItemsContainer.getInstance().getAudioItems().isEmpty()) {
-                    EventBus.getDefault().post(seekBar.getProgress());
+                    PlayerCommandBus.getInstance().sendSeek(seekBar.getProgress());
+                    mProgressUpdater.update(seekBar.getProgress(), isPlaying);
                 }
+                mProgressUpdater.setSuspended(false);
             }
         });
     }
 
-    private void setupSeekBarUpdater(int trackDuration) {
-        mSeekBar.setMax(trackDuration);
-        mTimer = new Timer();
-        MyTimerTask updateSeekBar = new MyTimerTask();
-        mTimer.schedule(updateSeekBar, 0, TIMER_PERIOD_IN_MS);
+    private void setupSearch() {
+        mSearchEditText = findViewById(R.id.search_edit_text);
+        mSearchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (mPlaylistName != null && s.toString().trim().length() > 0) {
+                    // Typing searches the whole library
+                    showPlaylist(null);
+                }
+                search();
+            }
+        });
+    }
+
+    private void search() {
+        RecyclerViewAdapter adapter = mRecyclerView == null ? null : (RecyclerViewAdapter) mRecyclerView.getAdapter();
+        if (adapter == null) {
+            return;
+        }
+        String query = mSearchEditText.getText().toString().trim();
+        if (query.isEmpty()) {
+            mLibrarySearch.cancel();
+            if (mPlaylistName == null) {
+                adapter.clearFilter(AudioItemsContainer.getInstance().getCurrentSongIndex());
+            }
+        } else {
+            mLibrarySearch.search(query, SEARCH_RESULT_LIMIT, this);
+        }
+    }
+
+    public void onSortButtonPressed(View view) {
+        mSortOrder = mSortOrder.next();
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(PREF_SORT_ORDER, mSortOrder.name())
+                .apply();
+        Toast.makeText(this, sortOrderTitleOf(mSortOrder), Toast.LENGTH_SHORT).show();
+        sortLibrary();
+    }
+
+    public void onDuplicatesButtonPressed(View view) {
+        startActivity(new Intent(this, DuplicatesActivity.class));
+    }
+
+    public void onEqualizerButtonPressed(View view) {
+        startActivity(new Intent(this, EqualizerActivity.class));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.settings_menu_item) {
+            startActivity(new Intent(this, SettingsActivity.class));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    public void onPlaylistsButtonPressed(View view) {
+        startActivityForResult(new Intent(this, PlaylistsActivity.class), PLAYLIST_REQUEST_CODE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == PLAYLIST_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
+            showPlaylist(data.getStringExtra(PlaylistsActivity.EXTRA_PLAYLIST_NAME));
+            mSearchEditText.setText("");
+        }
+    }
+
+    // Shows the tracks of the smart playlist while it changes, or the whole library for null
+    private void showPlaylist(String name) {
+        mPlaylistName = name;
+        if (name == null) {
+            mSmartPlaylists.unwatch();
+            mSearchEditText.setHint(R.string.search_hint);
+        } else {
+            mSmartPlaylists.watch(name, this);
+            mSearchEditText.setHint(getString(R.string.playlist_search_hint, name));
+        }
+    }
+
+    // Called from SmartPlaylists with the tracks of the watched playlist, unless a query is shown instead
+    @Override
+    public void onPlaylistChanged(String name, List<AudioItem> items) {
+        if (mRecyclerView != null && mRecyclerView.getAdapter() != null
+                && mSearchEditText.getText().toString().trim().isEmpty()) {
+            ((RecyclerViewAdapter) mRecyclerView.getAdapter()).showFiltered(items);
+        }
+    }
+
+    private static int sortOrderTitleOf(SortOrder order) {
+        switch (order) {
+            case NAME:
+                return R.string.sort_order_name;
+            case ALBUM:
+                return R.string.sort_order_album;
+            case FOLDER:
+                return R.string.sort_order_folder;
+            case ADDED:
+            default:
+                return R.string.sort_order_added;
+        }
+    }
+
+    // Sorts the play queue in the background, again after every change of the library. Later changes
+    // supersede a sort that is still running
+    private void sortLibrary() {
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        if (!queue.isEmpty()) {
+            mSortedQueueVersion = queue.getVersion();
+            mLibrarySorter.sort(queue.getItems(), mSortOrder, this);
+        }
+    }
+
+    // Called from LibrarySorter with the result of the latest sort. The queue takes the sorted order, so
+    // the next track is the one below the current row. The shuffled order keeps what has been played
+    @Override
+    public void onSorted(SortResult result) {
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        if (queue.getVersion() != mSortedQueueVersion || !queue.reorder(result.getItems())) {
+            // The queue has changed in between
+            return;
+        }
+        PlayerCommandBus.getInstance().sendQueueChanged();
+        if (mRecyclerView != null && mRecyclerView.getAdapter() != null) {
+            ((RecyclerViewAdapter) mRecyclerView.getAdapter()).showSorted(result, queue.getCurrentPosition());
+        }
+        // Every library change ends up here, the tracks that play next are measured first
+        LoudnessAnalyzer.getInstance(this).analyze(queue.getItems(), queue.getCurrentPosition());
+    }
+
+    // Called from LibrarySearch with the result of the latest query
+    @Override
+    public void onSearchResult(String query, List<AudioItem> results) {
+        if (mRecyclerView != null && mRecyclerView.getAdapter() != null) {
+            ((RecyclerViewAdapter) mRecyclerView.getAdapter()).showFiltered(results);
+        }
     }
 
     public void setupRecyclerView() {
@@ -139,61 +361,83 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
     }
 
     // Called from AudioPlayerService when the song starts playing or stops
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onChangeMusicState(Boolean playing) {
+    @Override
+    public void onPlaybackStateChanged(boolean playing, int positionInMs) {
         isPlaying = playing;
-        int imageId = playing ? R.drawable.ic_play : R.drawable.ic_pause;
+        int imageId = isPlaying ? R.drawable.ic_play : R.drawable.ic_pause;
         mPlayPauseButton.setImageResource(imageId);
-        if (isPlaying) {
-            setupSeekBarUpdater(mTrackDuration);
-        } else {
-            cancelTimer();
-        }
-        ((RecyclerViewAdapter) mRecyclerView.getAdapter()).updatePlayingStatus(playing);
-    }
-
-    private void cancelTimer() {
-        if (mTimer != null) {
-            mTimer.cancel();
+        mProgressUpdater.update(positionInMs, isPlaying);
+        if (mRecyclerView != null && mRecyclerView.getAdapter() != null) {
+            ((RecyclerViewAdapter) mRecyclerView.getAdapter()).updatePlayingStatus(isPlaying);
         }
     }
 
     // Called from AudioPlayerService when the next song starts play
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onStartPlayingSong(OnTrackStartedEvent actionBody) {
-        mTimer.cancel();
-
-        mTrackDuration = actionBody.getTrackDuration();
-        mSeekBar.setProgress(0);
-        setupSeekBarUpdater(mTrackDuration);
+    @Override
+    public void onTrackStarted(int trackIndex, int trackDuration) {
+        mTrackDuration = trackDuration;
+        isPlaying = true;
+        mProgressUpdater.setDuration(mTrackDuration);
+        mProgressUpdater.update(0, true);
 
-        ((RecyclerViewAdapter) mRecyclerView.getAdapter()).changeCurrentSong(actionBody.getTrackIndex());
+        ((RecyclerViewAdapter) mRecyclerView.getAdapter()).changeCurrentSong(trackIndex);
         mTrackNameTextView.setText(AudioItemsContainer.getInstance().getCurrentSong().getName());
         mPlayPauseButton.setImageDrawable(getResources().getDrawable(android.R.drawable.ic_media_pause));
+        loadWaveform();
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onServiceDestroy(OnServiceDestroyEvent eventBody) {
+    // Shows the waveform of the current song behind the seek bar, it fills in while the song is decoded
+    private void loadWaveform() {
+        AudioItem current = AudioItemsContainer.getInstance().getCurrentSong();
+        if (current == mWaveformItem) {
+            return;
+        }
+        mWaveformItem = current;
+        mWaveformView.setWaveform(null);
+        if (current != null) {
+            mWaveformLoader.load(current, this);
+        }
+    }
+
+    // Called from WaveformLoader, partial waveforms first
+    @Override
+    public void onWaveform(Waveform waveform) {
+        mWaveformView.setWaveform(waveform);
+    }
+
+    // Called from AudioPlayerService when shuffle or repeat has been switched
+    @Override
+    public void onPlaybackModeChanged(boolean shuffleEnabled, RepeatMode repeatMode) {
+        mShuffleButton.setImageAlpha(shuffleEnabled ? MODE_ON_ALPHA : MODE_OFF_ALPHA);
+        mRepeatButton.setImageResource(repeatMode == RepeatMode.ONE ? R.drawable.ic_repeat_one : R.drawable.ic_repeat);
+        mRepeatButton.setImageAlpha(repeatMode == RepeatMode.OFF ? MODE_OFF_ALPHA : MODE_ON_ALPHA);
+    }
+
+    // The current song is kept, the next play resumes it where the service has left it
+    @Override
+    public void onServiceDestroyed() {
         setupService();
-        mTimer.cancel();
-        mTrackNameTextView.setText("");
-        ((RecyclerViewAdapter) mRecyclerView.getAdapter()).changeCurrentSong(-1);
-        AudioItemsContainer.getInstance().setCurrentSong(null);
-        mSeekBar.setProgress(0);
+        onPlaybackStateChanged(false, AudioItemsContainer.getInstance().getResumePosition());
     }
 
-    // Send an event that contains the type of click on the AudioPlayerService
+    // Send a command that contains the type of click to the AudioPlayerService
     public void onMediaButtonPressed(View view) {
         if (!AudioItemsContainer.getInstance().getAudioItems().isEmpty()) {
             switch (view.getId()) {
                 case R.id.play_pause_button:
-                    EventBus.getDefault().post(ActionType.ACTION_PLAY);
+                    PlayerCommandBus.getInstance().sendAction(ActionType.ACTION_PLAY);
                     break;
                 case R.id.previous_button:
-                    EventBus.getDefault().post(ActionType.ACTION_PREVIOUS);
+                    PlayerCommandBus.getInstance().sendAction(ActionType.ACTION_PREVIOUS);
                     break;
                 case R.id.next_button:
-                    EventBus.getDefault().post(ActionType.ACTION_NEXT);
+                    PlayerCommandBus.getInstance().sendAction(ActionType.ACTION_NEXT);
+                    break;
+                case R.id.shuffle_button:
+                    PlayerCommandBus.getInstance().sendAction(ActionType.ACTION_SHUFFLE);
+                    break;
+                case R.id.repeat_button:
+                    PlayerCommandBus.getInstance().sendAction(ActionType.ACTION_REPEAT);
                     break;
             }
 //            mTrackNameTextView.setText(AudioItemsContainer.getInstance().getCurrentSong().getName());
@@ -218,8 +462,7 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         if (Build.VERSION.SDK_INT >= 23 && !isPermissionGranted()) {
             ActivityCompat.requestPermissions(this, new String[]{android.Manifest.permission.READ_EXTERNAL_STORAGE}, PERMISSION_REQUEST_CODE);
         } else {
-            AudioItemsContainer.getInstance().setAudioItems(getAudioItemList());
-            setupRecyclerView();
+            mLibraryRepository.load(this);
         }
     }
 
@@ -228,27 +471,62 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         return result == PackageManager.PERMISSION_GRANTED;
     }
 
-    private List<AudioItem> getAudioItemList() {
-        List<AudioItem> items = new ArrayList<>();
+    @Override
+    public void onLibraryLoaded(List<AudioItem> audioItems) {
+        AudioItemsContainer.getInstance().setAudioItems(audioItems);
+        mLibrarySearch.setItems(audioItems);
+        mSmartPlaylists.setItems(audioItems);
+        setupRecyclerView();
+    }
 
-        String[] params = {MediaStore.Audio.Media.DATA, MediaStore.Audio.Media.DISPLAY_NAME, MediaStore.Audio.Media.ALBUM};
-        Cursor audioCursor = getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, params, null, null, null);
+    // Pages are shown in MediaStore order as they come, the library is sorted once they are all in
+    @Override
+    public void onLibraryLoadFinished() {
+        restorePlaybackCheckpoint();
+        sortLibrary();
+        search();
+    }
 
-        if (audioCursor == null) {
-            return items;
+    // Brings back the queue order and the song the service was playing before the process died, once the
+    // whole library is there. A song picked while the pages were loading wins over the checkpoint.
+    // The checkpoint is a few bytes plus the queue ids, read on the main thread like the library snapshot
+    private void restorePlaybackCheckpoint() {
+        if (AudioItemsContainer.getInstance().getCurrentSong() != null) {
+            return;
         }
-        if (audioCursor.moveToFirst()) {
-            do {
-                String path = audioCursor.getString(audioCursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA));
-                String name = audioCursor.getString(audioCursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DISPLAY_NAME));
-                String album = audioCursor.getString(audioCursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM));
-
-                items.add(new AudioItem(path, name, album));
-            } while (audioCursor.moveToNext());
+        PlaybackCheckpointStore store = new PlaybackCheckpointStore(
+                new File(getFilesDir(), PlaybackCheckpointStore.DIRECTORY_NAME));
+        PlaybackCheckpoint checkpoint = store.read();
+        AudioItemsContainer container = AudioItemsContainer.getInstance();
+        if (checkpoint == null || !checkpoint.restoreInto(container.getQueue(), container.getAudioItems())) {
+            return;
         }
-        audioCursor.close();
+        container.setResumePosition(checkpoint.getPositionInMs());
+        mTrackDuration = checkpoint.getDurationInMs();
+        mProgressUpdater.setDuration(mTrackDuration);
+        mProgressUpdater.update(checkpoint.getPositionInMs(), false);
+        mTrackNameTextView.setText(container.getCurrentSong().getName());
+        loadWaveform();
+    }
 
-        return items;
+    @Override
+    public void onLibraryPageLoaded(List<AudioItem> page) {
+        RecyclerViewAdapter adapter = (RecyclerViewAdapter) mRecyclerView.getAdapter();
+        AudioItemsContainer.getInstance().getQueue().addAll(page, adapter);
+        mLibrarySearch.addAll(page);
+        mSmartPlaylists.addAll(page);
+    }
+
+    // Called from LibraryRepository when MediaStore content has changed
+    @Override
+    public void onLibraryChanged(LibraryDelta delta) {
+        RecyclerViewAdapter adapter = (RecyclerViewAdapter) mRecyclerView.getAdapter();
+        AudioItemsContainer.getInstance().getQueue().applyDelta(delta, adapter);
+        mLibraryRepository.save(AudioItemsContainer.getInstance().getAudioItems());
+        mLibrarySearch.applyDelta(delta);
+        mSmartPlaylists.applyDelta(delta);
+        sortLibrary();
+        search();
     }
 
     private void showSnackBar() {
@@ -258,8 +536,7 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
                     if (showRationale) {
                         ActivityCompat.requestPermissions(this, new String[]{android.Manifest.permission.READ_EXTERNAL_STORAGE}, PERMISSION_REQUEST_CODE);
                     } else {
-                        AudioItemsContainer.getInstance().setAudioItems(getAudioItemList());
-                        setupRecyclerView();
+                        mLibraryRepository.load(this);
                     }
                 }).show();
     }
@@ -271,8 +548,7 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
             return;
         }
         if (grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            AudioItemsContainer.getInstance().setAudioItems(getAudioItemList());
-            setupRecyclerView();
+            mLibraryRepository.load(this);
         } else if (grantResults[0] == PackageManager.PERMISSION_DENIED) {
             showSnackBar();
         }
@@ -280,7 +556,7 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
 
     @Override
     public void onItemSelected(AudioItem audioItem) {
-        EventBus.getDefault().post(audioItem);
+        PlayerCommandBus.getInstance().sendSelect(audioItem.getId());
 //        mTrackNameTextView.setText(AudioItemsContainer.getInstance().getCurrentSong().getName());
     }
 
@@ -291,19 +567,18 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         outState.putInt(ARG_SEEK_BAR_POSITION, mSeekBar.getProgress());
         outState.putString(ARG_TRACK_NAME, mTrackNameTextView.getText().toString());
         outState.putBoolean(ARG_IS_PLAYING, isPlaying);
+        outState.putString(ARG_PLAYLIST_NAME, mPlaylistName);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        EventBus.getDefault().unregister(this);
-        cancelTimer();
-    }
-
-    class MyTimerTask extends TimerTask {
-        @Override
-        public void run() {
-            runOnUiThread(() -> mSeekBar.setProgress(mSeekBar.getProgress() + TIMER_PERIOD_IN_MS));
-        }
+        PlayerCommandBus.getInstance().removeStateListener(this);
+        mLibraryRepository.release();
+        mLibrarySearch.release();
+        mSmartPlaylists.unwatch();
+        mLibrarySorter.release();
+        mWaveformLoader.release();
+        mProgressUpdater.stop();
     }
 }
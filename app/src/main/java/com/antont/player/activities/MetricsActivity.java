@@ -0,0 +1,90 @@
+package com.antont.player.activities;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.widget.Switch;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.antont.player.R;
+import com.antont.player.metrics.Metrics;
+import com.antont.player.services.AudioPlayerService;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+// Hidden screen with the latency histograms of the player, opened by a long press on the track name.
+// The same report goes to a file in the app's external files directory, or to
+// "adb shell dumpsys activity service com.antont.player/.services.AudioPlayerService".
+public class MetricsActivity extends AppCompatActivity {
+
+    private final static String LOG_TAG = "Metrics screen";
+    private static final long REFRESH_INTERVAL_IN_MS = 1000;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRefreshRunnable = this::refresh;
+    private TextView mReportTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        mReportTextView = findViewById(R.id.metrics_report_text_view);
+        Switch enabledSwitch = findViewById(R.id.metrics_enabled_switch);
+        enabledSwitch.setChecked(Metrics.isEnabled());
+        enabledSwitch.setOnCheckedChangeListener((button, checked) -> {
+            Metrics.setEnabled(checked);
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putBoolean(AudioPlayerService.PREF_METRICS_ENABLED, checked)
+                    .apply();
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mRefreshRunnable);
+    }
+
+    public void onResetButtonPressed(View view) {
+        Metrics.reset();
+        mHandler.removeCallbacks(mRefreshRunnable);
+        refresh();
+    }
+
+    public void onSaveButtonPressed(View view) {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(this, R.string.metrics_save_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(directory, "metrics-" + System.currentTimeMillis() + ".txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(Metrics.report().getBytes(Charset.forName("UTF-8")));
+            Toast.makeText(this, getString(R.string.metrics_saved, file.getPath()), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error saving the metrics", e);
+            Toast.makeText(this, R.string.metrics_save_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void refresh() {
+        mReportTextView.setText(Metrics.report());
+        mHandler.postDelayed(mRefreshRunnable, REFRESH_INTERVAL_IN_MS);
+    }
+}
@@ -0,0 +1,115 @@
+package com.antont.player.activities;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.app.AppCompatActivity;
+import android.text.InputType;
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+
+import com.antont.player.R;
+import com.antont.player.playlist.QuerySyntaxException;
+import com.antont.player.playlist.SmartPlaylists;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// The smart playlists and their rules. Picking one returns its name to MainActivity, which shows its
+// tracks, the first row goes back to all tracks. A long press deletes a playlist.
+public class PlaylistsActivity extends AppCompatActivity {
+
+    public static final String EXTRA_PLAYLIST_NAME = "EXTRA_PLAYLIST_NAME";
+
+    private SmartPlaylists mPlaylists;
+    private ArrayAdapter<String> mAdapter;
+    // The playlist of each row after the first
+    private final List<String> mNames = new ArrayList<>();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_playlists);
+        mPlaylists = SmartPlaylists.getInstance(this);
+
+        mAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        ListView listView = findViewById(R.id.playlists_list_view);
+        listView.setAdapter(mAdapter);
+        listView.setOnItemClickListener((parent, view, position, id) -> {
+            Intent result = new Intent();
+            if (position > 0) {
+                result.putExtra(EXTRA_PLAYLIST_NAME, mNames.get(position - 1));
+            }
+            setResult(RESULT_OK, result);
+            finish();
+        });
+        listView.setOnItemLongClickListener((parent, view, position, id) -> {
+            if (position == 0) {
+                return false;
+            }
+            String name = mNames.get(position - 1);
+            new AlertDialog.Builder(this)
+                    .setMessage(getString(R.string.playlists_delete, name))
+                    .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                        mPlaylists.removePlaylist(name);
+                        bind();
+                    })
+                    .setNegativeButton(android.R.string.cancel, null)
+                    .show();
+            return true;
+        });
+
+        bind();
+    }
+
+    public void onAddPlaylistButtonPressed(View view) {
+        EditText nameEditText = new EditText(this);
+        nameEditText.setHint(R.string.playlists_name_hint);
+        nameEditText.setInputType(InputType.TYPE_CLASS_TEXT);
+        EditText queryEditText = new EditText(this);
+        queryEditText.setHint(R.string.playlists_query_hint);
+        queryEditText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(nameEditText);
+        layout.addView(queryEditText);
+
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.playlists_add)
+                .setView(layout)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+        // Set here, so a rule with a mistake keeps the dialog open
+        dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(button -> {
+            String name = nameEditText.getText().toString().trim();
+            String query = queryEditText.getText().toString();
+            if (name.isEmpty()) {
+                return;
+            }
+            try {
+                mPlaylists.putPlaylist(name, query);
+            } catch (QuerySyntaxException e) {
+                queryEditText.setError(e.getMessage());
+                queryEditText.setSelection(Math.min(e.getPosition(), queryEditText.length()));
+                return;
+            }
+            bind();
+            dialog.dismiss();
+        });
+    }
+
+    private void bind() {
+        mNames.clear();
+        mAdapter.clear();
+        mAdapter.add(getString(R.string.playlists_all_tracks));
+        for (Map.Entry<String, String> entry : mPlaylists.getQueries().entrySet()) {
+            mNames.add(entry.getKey());
+            mAdapter.add(entry.getKey() + "\n" + entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.antont.player.activities;
+
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.SeekBar;
+import android.widget.Switch;
+import android.widget.TextView;
+
+import com.antont.player.R;
+import com.antont.player.services.AudioPlayerService;
+
+// Playback settings, opened from the menu of the main screen. The service listens to the preferences and
+// applies a change to the track that is playing.
+public class SettingsActivity extends AppCompatActivity {
+
+    private static final int MAX_CROSSFADE_IN_S = 12;
+    // The buffers go up in steps, from one step to the maximum
+    private static final int RING_BUFFER_STEP_IN_MS = 100;
+    private static final int MAX_RING_BUFFER_IN_MS = 2000;
+    private static final int OUTPUT_BUFFER_STEP_IN_MS = 20;
+    private static final int MAX_OUTPUT_BUFFER_IN_MS = 400;
+
+    private SharedPreferences mPreferences;
+    private TextView mCrossfadeTextView;
+    private SeekBar mRingBufferSeekBar;
+    private SeekBar mOutputBufferSeekBar;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_settings);
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+
+        mCrossfadeTextView = findViewById(R.id.settings_crossfade_text_view);
+        SeekBar crossfadeSeekBar = findViewById(R.id.settings_crossfade_seek_bar);
+        crossfadeSeekBar.setMax(MAX_CROSSFADE_IN_S);
+        int crossfadeInS = mPreferences.getInt(AudioPlayerService.PREF_CROSSFADE_DURATION, 0) / 1000;
+        crossfadeSeekBar.setProgress(crossfadeInS);
+        bindCrossfade(crossfadeInS);
+        crossfadeSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    bindCrossfade(progress);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+
+            }
+
+            // Saved once the thumb is let go, the service re-schedules the fade on every change
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                mPreferences.edit()
+                        .putInt(AudioPlayerService.PREF_CROSSFADE_DURATION, seekBar.getProgress() * 1000)
+                        .apply();
+            }
+        });
+
+        mRingBufferSeekBar = findViewById(R.id.settings_ring_buffer_seek_bar);
+        bindBufferSeekBar(mRingBufferSeekBar, findViewById(R.id.settings_ring_buffer_text_view),
+                R.string.settings_ring_buffer, AudioPlayerService.PREF_RING_BUFFER_IN_MS,
+                AudioPlayerService.DEFAULT_RING_BUFFER_IN_MS, RING_BUFFER_STEP_IN_MS, MAX_RING_BUFFER_IN_MS);
+        mOutputBufferSeekBar = findViewById(R.id.settings_output_buffer_seek_bar);
+        bindBufferSeekBar(mOutputBufferSeekBar, findViewById(R.id.settings_output_buffer_text_view),
+                R.string.settings_output_buffer, AudioPlayerService.PREF_OUTPUT_BUFFER_IN_MS,
+                AudioPlayerService.DEFAULT_OUTPUT_BUFFER_IN_MS, OUTPUT_BUFFER_STEP_IN_MS, MAX_OUTPUT_BUFFER_IN_MS);
+
+        // The service makes its players again on a change, the buffers only matter to this engine
+        Switch pcmEngineSwitch = findViewById(R.id.settings_pcm_engine_switch);
+        boolean pcmEngine = mPreferences.getBoolean(AudioPlayerService.PREF_PCM_ENGINE, false);
+        pcmEngineSwitch.setChecked(pcmEngine);
+        bindPcmEngine(pcmEngine);
+        pcmEngineSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            mPreferences.edit()
+                    .putBoolean(AudioPlayerService.PREF_PCM_ENGINE, isChecked)
+                    .apply();
+            bindPcmEngine(isChecked);
+        });
+    }
+
+    // Progress 0 is one step. Saved once the thumb is let go, every change restarts the players
+    private void bindBufferSeekBar(SeekBar seekBar, TextView textView, int textId, String key, int defaultInMs,
+                                   int stepInMs, int maxInMs) {
+        seekBar.setMax(maxInMs / stepInMs - 1);
+        int bufferInMs = mPreferences.getInt(key, defaultInMs);
+        seekBar.setProgress(Math.max(0, Math.min(seekBar.getMax(), bufferInMs / stepInMs - 1)));
+        textView.setText(getString(textId, bufferInMs));
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    textView.setText(getString(textId, (progress + 1) * stepInMs));
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                mPreferences.edit()
+                        .putInt(key, (seekBar.getProgress() + 1) * stepInMs)
+                        .apply();
+            }
+        });
+    }
+
+    private void bindPcmEngine(boolean pcmEngine) {
+        mRingBufferSeekBar.setEnabled(pcmEngine);
+        mOutputBufferSeekBar.setEnabled(pcmEngine);
+    }
+
+    private void bindCrossfade(int crossfadeInS) {
+        mCrossfadeTextView.setText(crossfadeInS == 0
+                ? getString(R.string.settings_crossfade_off)
+                : getString(R.string.settings_crossfade, crossfadeInS));
+    }
+}
@@ -0,0 +1,85 @@
+package com.antont.player.adapters;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.antont.player.R;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Shows clusters of duplicate tracks, a header row with the number of copies above each cluster
+public class DuplicatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int VIEW_TYPE_ITEM = 0;
+    private static final int VIEW_TYPE_HEADER = 1;
+
+    // AudioItem for a track row, Integer with the cluster size for a header row
+    private final List<Object> mRows = new ArrayList<>();
+
+    public void setDuplicates(List<List<AudioItem>> duplicates) {
+        mRows.clear();
+        for (List<AudioItem> cluster : duplicates) {
+            mRows.add(cluster.size());
+            mRows.addAll(cluster);
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mRows.get(position) instanceof AudioItem ? VIEW_TYPE_ITEM : VIEW_TYPE_HEADER;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_TYPE_HEADER) {
+            return new HeaderViewHolder(inflater.inflate(R.layout.section_header_layout, parent, false));
+        }
+        return new ViewHolder(inflater.inflate(R.layout.duplicate_item_layout, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        Object row = mRows.get(position);
+        if (holder instanceof HeaderViewHolder) {
+            int count = (Integer) row;
+            TextView title = ((HeaderViewHolder) holder).mTitleTextView;
+            title.setText(title.getResources().getQuantityString(R.plurals.duplicates_cluster_title, count, count));
+        } else {
+            AudioItem item = (AudioItem) row;
+            ((ViewHolder) holder).mNameTextView.setText(item.getName());
+            ((ViewHolder) holder).mPathTextView.setText(item.getPath());
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView mTitleTextView;
+
+        HeaderViewHolder(View v) {
+            super(v);
+            mTitleTextView = v.findViewById(R.id.section_title);
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView mNameTextView;
+        TextView mPathTextView;
+
+        ViewHolder(View v) {
+            super(v);
+            mNameTextView = v.findViewById(R.id.duplicate_name);
+            mPathTextView = v.findViewById(R.id.duplicate_path);
+        }
+    }
+}
@@ -1,85 +1,454 @@
 package com.antont.player.adapters;
 
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.antont.player.PlayQueue;
 import com.antont.player.R;
+import com.antont.player.artwork.ArtworkLoader;
+import com.antont.player.artwork.PendingRequests;
+import com.antont.player.enums.SortOrder;
 import com.antont.player.models.AudioItem;
+import com.antont.player.sort.Section;
+import com.antont.player.sort.SectionIndex;
+import com.antont.player.sort.SortResult;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerViewAdapter.ViewHolder> {
+// Shows an immutable snapshot of the library. New snapshots are diffed against the shown one on a
+// background thread and only the rows that were inserted, removed, moved or changed are rebound.
+// A sorted library with sections has a header row above every section, its snapshots are diffed row by
+// row; item positions then differ from adapter positions and are mapped through a SectionIndex.
+public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+        implements PlayQueue.OnQueueChangedListener {
 
+    private static final int VIEW_TYPE_ITEM = 0;
+    private static final int VIEW_TYPE_HEADER = 1;
+    // Below the keys of items without a MediaStore id
+    private static final long HEADER_ID_BASE = Long.MIN_VALUE + 1;
+
+    // Rebinds only the play indicator
+    private static final Object PAYLOAD_PLAY_STATE = new Object();
+    // Rebinds only the row number, after rows above have been inserted, removed or moved
+    private static final Object PAYLOAD_POSITION = new Object();
+
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SnapshotDiff");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRefreshRunnable = this::refresh;
+    private final OffsetUpdateCallback mUpdateCallback = new OffsetUpdateCallback();
+
+    // The live list the snapshots are taken from
+    private final List<AudioItem> mSource;
     private List<AudioItem> mAudioItems;
+    // Incremented with every submitted snapshot, older diffs are dropped when they finish
+    private int mSnapshotGeneration;
+    private boolean mRefreshScheduled;
+    private boolean mFiltered;
+    // Position of the current item in mAudioItems, not an adapter position
     private int mCurrentItemPosition;
+    // Header rows of the shown snapshot, null when every row is an item
+    private SectionIndex mSectionIndex;
+    // The latest sorted library, its order and its sections, shown again when the search filter is cleared
+    private SortOrder mSortOrder;
+    private List<AudioItem> mSortedItems;
+    private List<Section> mSections;
 
     private Boolean isPlaying = false;
 
     private OnItemSelectedCallback mListener;
 
     public RecyclerViewAdapter(List<AudioItem> audioItems, int itemPosition, OnItemSelectedCallback listener) {
-        this.mAudioItems = audioItems;
+        this.mSource = audioItems;
+        this.mAudioItems = new ArrayList<>(audioItems);
         this.mCurrentItemPosition = itemPosition;
         this.mListener = listener;
+        setHasStableIds(true);
+    }
+
+    // Shows the given list once it has been diffed against the current snapshot. The list is copied,
+    // the caller may keep changing it.
+    public void submitList(List<AudioItem> audioItems) {
+        submit(new ArrayList<>(audioItems), null, RecyclerView.NO_POSITION);
+    }
+
+    // Every snapshot goes through the diff, with or without sections. trackIndex is the queue position of
+    // the current track when the caller knows it, it saves a search for the current row
+    private void submit(List<AudioItem> newItems, List<Section> sections, int trackIndex) {
+        List<AudioItem> oldItems = mAudioItems;
+        SectionIndex oldSectionIndex = mSectionIndex;
+        SectionIndex newSectionIndex = sections == null ? null : new SectionIndex(sections, newItems.size());
+        int generation = ++mSnapshotGeneration;
+
+        DIFF_EXECUTOR.execute(() -> {
+            SnapshotDiffCallback callback = new SnapshotDiffCallback(oldItems, oldSectionIndex, newItems, newSectionIndex);
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(callback, true);
+            mMainHandler.post(() -> {
+                if (generation == mSnapshotGeneration) {
+                    applySnapshot(newItems, newSectionIndex, result, callback.getOffset(), trackIndex);
+                }
+            });
+        });
+    }
+
+    private void applySnapshot(List<AudioItem> newItems, SectionIndex newSectionIndex, DiffUtil.DiffResult result,
+                               int offset, int trackIndex) {
+        AudioItem current = currentItemOr(trackIndex);
+        boolean sectioned = mSectionIndex != null || newSectionIndex != null;
+        mAudioItems = newItems;
+        mSectionIndex = newSectionIndex;
+        mUpdateCallback.mOffset = offset;
+        mUpdateCallback.mFirstMovedPosition = Integer.MAX_VALUE;
+        result.dispatchUpdatesTo(mUpdateCallback);
+
+        // The diff moves rows, with headers among them the current item is looked up instead
+        int expectedPosition = trackIndex != RecyclerView.NO_POSITION || sectioned ? trackIndex : mCurrentItemPosition;
+        int position = positionIn(newItems, current, expectedPosition);
+        if (position != mCurrentItemPosition) {
+            notifyPlayStateChanged(mCurrentItemPosition);
+            mCurrentItemPosition = position;
+            notifyPlayStateChanged(position);
+        }
+
+        // Rows below an insert, removal or move show a new number
+        int firstMoved = mUpdateCallback.mFirstMovedPosition;
+        if (firstMoved < getItemCount()) {
+            notifyItemRangeChanged(firstMoved, getItemCount() - firstMoved, PAYLOAD_POSITION);
+        }
+    }
+
+    // Shows the sorted library, with a header above each section if there are any. trackIndex is the
+    // position of the current track in the sorted queue. A re-sort in the same order, after a delta,
+    // moves few rows and is diffed. The first sort and a new order move nearly every row and are swapped in
+    public void showSorted(SortResult result, int trackIndex) {
+        boolean orderChanged = mSortOrder != result.getOrder();
+        mSortOrder = result.getOrder();
+        mSortedItems = new ArrayList<>(result.getItems());
+        mSections = result.getSections().isEmpty() ? null : result.getSections();
+        if (mFiltered) {
+            return;
+        }
+        if (orderChanged) {
+            swap(mSortedItems, mSections, trackIndex);
+        } else {
+            submit(mSortedItems, mSections, trackIndex);
+        }
+    }
+
+    // Shows search results instead of the library until clearFilter() is called. Results have no sections
+    public void showFiltered(List<AudioItem> audioItems) {
+        mFiltered = true;
+        submitList(audioItems);
+    }
+
+    public void clearFilter(int trackIndex) {
+        if (!mFiltered) {
+            return;
+        }
+        mFiltered = false;
+        if (mSections != null) {
+            submit(mSortedItems, mSections, trackIndex);
+        } else {
+            submit(new ArrayList<>(mSource), null, trackIndex);
+        }
+    }
+
+    private void swap(List<AudioItem> audioItems, List<Section> sections, int trackIndex) {
+        // Drops the diffs still running against the old snapshot
+        mSnapshotGeneration++;
+        AudioItem current = currentItemOr(trackIndex);
+        mAudioItems = audioItems;
+        mSectionIndex = sections == null ? null : new SectionIndex(sections, audioItems.size());
+        mCurrentItemPosition = positionIn(audioItems, current, trackIndex);
+        notifyDataSetChanged();
+    }
+
+    // The item of the current row, or of the track at the queue position while the current row is not shown
+    private AudioItem currentItemOr(int trackIndex) {
+        if (mCurrentItemPosition >= 0 && mCurrentItemPosition < mAudioItems.size()) {
+            return mAudioItems.get(mCurrentItemPosition);
+        }
+        return trackIndex >= 0 && trackIndex < mSource.size() ? mSource.get(trackIndex) : null;
+    }
+
+    // Searches the list only when the item is not at the expected position
+    private static int positionIn(List<AudioItem> items, AudioItem item, int expectedPosition) {
+        if (item == null) {
+            return -1;
+        }
+        if (expectedPosition >= 0 && expectedPosition < items.size() && items.get(expectedPosition) == item) {
+            return expectedPosition;
+        }
+        return items.indexOf(item);
+    }
+
+    private void refresh() {
+        mRefreshScheduled = false;
+        // While filtered the owner runs the search again, while sections are shown it sorts again
+        if (!mFiltered && mSectionIndex == null) {
+            submitList(mSource);
+        }
+    }
+
+    private int itemPositionOf(int adapterPosition) {
+        return mSectionIndex == null ? adapterPosition : mSectionIndex.getItemPosition(adapterPosition);
+    }
+
+    private int adapterPositionOf(int itemPosition) {
+        return mSectionIndex == null ? itemPosition : mSectionIndex.getRow(itemPosition);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mSectionIndex != null && mSectionIndex.isHeader(position) ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
     }
 
     @Override
-    public RecyclerViewAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_layout, parent, false);
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_TYPE_HEADER) {
+            return new HeaderViewHolder(inflater.inflate(R.layout.section_header_layout, parent, false));
+        }
+        View v = inflater.inflate(R.layout.item_layout, parent, false);
         return new ViewHolder(v);
     }
 
     @Override
-    public void onBindViewHolder(ViewHolder holder, int position) {
+    public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int adapterPosition) {
+        if (viewHolder instanceof HeaderViewHolder) {
+            ((HeaderViewHolder) viewHolder).bind(mSectionIndex.getSection(adapterPosition));
+            return;
+        }
+        ViewHolder holder = (ViewHolder) viewHolder;
+        int position = itemPositionOf(adapterPosition);
         AudioItem item = mAudioItems.get(position);
 
-        holder.mPositionTextView.setText(String.valueOf(position + 1));
-        holder.mNameTextView.setText(item.getName());
+        holder.bindPosition(position);
+        holder.bindName(item);
         holder.mAlbumTextView.setText(item.getAlbumName());
+        holder.bindArtwork(item);
+        holder.bindPlayState(position == mCurrentItemPosition, isPlaying);
+    }
 
-        if (position != mCurrentItemPosition) {
-            holder.mIsPlayView.setBackground(null);
-        } else {
-            if (isPlaying) {
-                holder.mIsPlayView.setBackground(holder.itemView.getResources().getDrawable(android.R.drawable.ic_media_pause));
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int adapterPosition, List<Object> payloads) {
+        if (payloads.isEmpty() || viewHolder instanceof HeaderViewHolder) {
+            onBindViewHolder(viewHolder, adapterPosition);
+            return;
+        }
+        ViewHolder holder = (ViewHolder) viewHolder;
+        int position = itemPositionOf(adapterPosition);
+        for (int i = 0; i < payloads.size(); i++) {
+            Object payload = payloads.get(i);
+            if (payload == PAYLOAD_PLAY_STATE) {
+                holder.bindPlayState(position == mCurrentItemPosition, isPlaying);
+            } else if (payload == PAYLOAD_POSITION) {
+                holder.bindPosition(position);
             } else {
-                holder.mIsPlayView.setBackground(holder.itemView.getResources().getDrawable(android.R.drawable.ic_media_play));
+                onBindViewHolder(holder, adapterPosition);
+                return;
             }
         }
+    }
 
-        holder.itemView.setOnClickListener((View v) -> {
-            changeCurrentSong(position);
-            mListener.onItemSelected(mAudioItems.get(position));
-        });
+    // A row that scrolls off screen does not need its artwork anymore
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        if (holder instanceof ViewHolder) {
+            ((ViewHolder) holder).cancelArtwork();
+        }
     }
 
+    private void onItemClicked(ViewHolder holder) {
+        // Rows can move without being rebound, the bound position may be stale
+        int adapterPosition = holder.getAdapterPosition();
+        if (adapterPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int position = itemPositionOf(adapterPosition);
+        setCurrentPosition(position);
+        mListener.onItemSelected(mAudioItems.get(position));
+    }
+
+    // Takes the index of the track in the library, the row can be elsewhere while a search filter is shown
     public void changeCurrentSong(int newTrackIndex) {
+        setCurrentPosition(positionOf(newTrackIndex));
+    }
+
+    private int positionOf(int trackIndex) {
+        if (trackIndex < 0 || trackIndex >= mSource.size()) {
+            return -1;
+        }
+        return positionIn(mAudioItems, mSource.get(trackIndex), trackIndex);
+    }
+
+    private void setCurrentPosition(int position) {
         isPlaying = true;
-        if (mCurrentItemPosition != newTrackIndex) {
-            notifyItemChanged(mCurrentItemPosition);
+        if (mCurrentItemPosition != position) {
+            notifyPlayStateChanged(mCurrentItemPosition);
         }
-        mCurrentItemPosition = newTrackIndex;
-        notifyItemChanged(newTrackIndex);
+        mCurrentItemPosition = position;
+        notifyPlayStateChanged(position);
     }
 
     @Override
     public int getItemCount() {
-        return mAudioItems.size();
+        return mSectionIndex == null ? mAudioItems.size() : mSectionIndex.getRowCount();
+    }
+
+    @Override
+    public long getItemId(int adapterPosition) {
+        int position = itemPositionOf(adapterPosition);
+        if (position < 0) {
+            // The header of section k is at row start + k, k is its id
+            return HEADER_ID_BASE + adapterPosition - mSectionIndex.getSection(adapterPosition).getStart();
+        }
+        return AudioItemDiff.keyOf(mAudioItems.get(position));
     }
 
     public void updatePlayingStatus(Boolean playing) {
+        if (isPlaying.equals(playing)) {
+            return;
+        }
         isPlaying = playing;
-        notifyItemChanged(mCurrentItemPosition);
+        notifyPlayStateChanged(mCurrentItemPosition);
+    }
+
+    private void notifyPlayStateChanged(int position) {
+        if (position >= 0 && position < mAudioItems.size()) {
+            notifyItemChanged(adapterPositionOf(position), PAYLOAD_PLAY_STATE);
+        }
+    }
+
+    // The queue has changed the live list, the ranges of one delta are folded into a single snapshot
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (!mRefreshScheduled) {
+            mRefreshScheduled = true;
+            mMainHandler.post(mRefreshRunnable);
+        }
+    }
+
+    // Moves the diff positions to adapter positions and keeps the current item position in step
+    private class OffsetUpdateCallback implements ListUpdateCallback {
+
+        int mOffset;
+        int mFirstMovedPosition;
+
+        @Override
+        public void onInserted(int position, int count) {
+            position += mOffset;
+            mFirstMovedPosition = Math.min(mFirstMovedPosition, position);
+            if (mCurrentItemPosition >= position) {
+                mCurrentItemPosition += count;
+            }
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            position += mOffset;
+            mFirstMovedPosition = Math.min(mFirstMovedPosition, position);
+            if (mCurrentItemPosition >= position + count) {
+                mCurrentItemPosition -= count;
+            } else if (mCurrentItemPosition >= position) {
+                mCurrentItemPosition = -1;
+            }
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            fromPosition += mOffset;
+            toPosition += mOffset;
+            mFirstMovedPosition = Math.min(mFirstMovedPosition, Math.min(fromPosition, toPosition));
+            if (mCurrentItemPosition == fromPosition) {
+                mCurrentItemPosition = toPosition;
+            } else if (fromPosition < mCurrentItemPosition && mCurrentItemPosition <= toPosition) {
+                mCurrentItemPosition--;
+            } else if (toPosition <= mCurrentItemPosition && mCurrentItemPosition < fromPosition) {
+                mCurrentItemPosition++;
+            }
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position + mOffset, count, payload);
+        }
+    }
+
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView mTitleTextView;
+        private final int mPaddingStart;
+        // Each level of the folder tree is indented by this much
+        private final int mIndent;
+
+        HeaderViewHolder(View v) {
+            super(v);
+            mTitleTextView = v.findViewById(R.id.section_title);
+            mPaddingStart = mTitleTextView.getPaddingStart();
+            mIndent = Math.round(16 * v.getResources().getDisplayMetrics().density);
+        }
+
+        void bind(Section section) {
+            String title = section.getTitle();
+            if (title != null) {
+                mTitleTextView.setText(title);
+            } else {
+                mTitleTextView.setText(R.string.unknown_album);
+            }
+            mTitleTextView.setPaddingRelative(mPaddingStart + section.getDepth() * mIndent, mTitleTextView.getPaddingTop(),
+                    mTitleTextView.getPaddingEnd(), mTitleTextView.getPaddingBottom());
+        }
     }
 
-    class ViewHolder extends RecyclerView.ViewHolder {
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         TextView mPositionTextView;
         TextView mNameTextView;
         TextView mAlbumTextView;
         View mIsPlayView;
+        ImageView mArtworkView;
+
+        // Reused by every bind of this holder
+        private final char[] mPositionBuffer = new char[PositionLabel.BUFFER_SIZE];
+        private char[] mNameBuffer = new char[64];
+        private Drawable mPlayDrawable;
+        private Drawable mPauseDrawable;
+        private PendingRequests<String, Bitmap>.Request mArtworkRequest;
+        private final PendingRequests.Callback<Bitmap> mArtworkCallback = this::onArtworkLoaded;
 
         ViewHolder(View v) {
             super(v);
@@ -87,6 +456,73 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerViewAdapte
             mNameTextView = v.findViewById(R.id.item_name);
             mAlbumTextView = v.findViewById(R.id.item_album);
             mIsPlayView = v.findViewById(R.id.is_play_image);
+            mArtworkView = v.findViewById(R.id.item_artwork);
+            v.setOnClickListener(this);
+        }
+
+        // The placeholder stays until the artwork of this very item has been loaded
+        void bindArtwork(AudioItem item) {
+            cancelArtwork();
+            mArtworkView.setImageResource(R.drawable.ic_audiotrack);
+            int size = mArtworkView.getLayoutParams().width;
+            mArtworkRequest = ArtworkLoader.getInstance(itemView.getContext()).load(item, size, mArtworkCallback);
+        }
+
+        void cancelArtwork() {
+            if (mArtworkRequest != null) {
+                mArtworkRequest.cancel();
+                mArtworkRequest = null;
+            }
+        }
+
+        private void onArtworkLoaded(Bitmap artwork) {
+            if (artwork != null) {
+                mArtworkView.setImageBitmap(artwork);
+            }
+        }
+
+        void bindPosition(int position) {
+            int start = PositionLabel.write(position + 1, mPositionBuffer);
+            mPositionTextView.setText(mPositionBuffer, start, mPositionBuffer.length - start);
+        }
+
+        // Library rows keep their names in a shared char array, copying avoids building a String
+        void bindName(AudioItem item) {
+            if (mNameBuffer.length < item.getNameLength()) {
+                mNameBuffer = new char[item.getNameLength()];
+            }
+            int length = item.getNameChars(mNameBuffer);
+            mNameTextView.setText(mNameBuffer, 0, length);
+        }
+
+        void bindPlayState(boolean current, boolean playing) {
+            Drawable indicator = null;
+            if (current) {
+                indicator = playing ? getPauseDrawable() : getPlayDrawable();
+            }
+            if (mIsPlayView.getBackground() != indicator) {
+                mIsPlayView.setBackground(indicator);
+            }
+        }
+
+        // Each holder gets its own instances, a drawable must not be the background of two views at once
+        private Drawable getPlayDrawable() {
+            if (mPlayDrawable == null) {
+                mPlayDrawable = itemView.getContext().getDrawable(android.R.drawable.ic_media_play);
+            }
+            return mPlayDrawable;
+        }
+
+        private Drawable getPauseDrawable() {
+            if (mPauseDrawable == null) {
+                mPauseDrawable = itemView.getContext().getDrawable(android.R.drawable.ic_media_pause);
+            }
+            return mPauseDrawable;
+        }
+
+        @Override
+        public void onClick(View v) {
+            onItemClicked(this);
         }
     }
 
@@ -0,0 +1,67 @@
+package com.antont.player.adapters;
+
+import android.support.v7.util.DiffUtil;
+
+import com.antont.player.models.AudioItem;
+import com.antont.player.sort.SectionIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Diffs the window between the common prefix and suffix of two snapshots. The positions DiffUtil reports
+// are relative to that window, getOffset() gives the adapter position of its start. Snapshots with
+// sections are diffed row by row, headers included.
+class SnapshotDiffCallback extends DiffUtil.Callback {
+
+    private final List<?> mOldRows;
+    private final List<?> mNewRows;
+    private final int mOffset;
+    private final int mOldSize;
+    private final int mNewSize;
+
+    // The section indexes may be null
+    SnapshotDiffCallback(List<AudioItem> oldItems, SectionIndex oldSections, List<AudioItem> newItems, SectionIndex newSections) {
+        mOldRows = rowsOf(oldItems, oldSections);
+        mNewRows = rowsOf(newItems, newSections);
+        mOffset = AudioItemDiff.commonPrefix(mOldRows, mNewRows);
+        int suffix = AudioItemDiff.commonSuffix(mOldRows, mNewRows, mOffset);
+        mOldSize = mOldRows.size() - mOffset - suffix;
+        mNewSize = mNewRows.size() - mOffset - suffix;
+    }
+
+    int getOffset() {
+        return mOffset;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldSize;
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewSize;
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return AudioItemDiff.isSameRow(mOldRows.get(mOffset + oldItemPosition), mNewRows.get(mOffset + newItemPosition));
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return AudioItemDiff.isSameRowContent(mOldRows.get(mOffset + oldItemPosition), mNewRows.get(mOffset + newItemPosition));
+    }
+
+    private static List<?> rowsOf(List<AudioItem> items, SectionIndex sections) {
+        if (sections == null) {
+            return items;
+        }
+        List<Object> rows = new ArrayList<>(sections.getRowCount());
+        for (int row = 0; row < sections.getRowCount(); row++) {
+            int position = sections.getItemPosition(row);
+            rows.add(position < 0 ? sections.getSection(row) : items.get(position));
+        }
+        return rows;
+    }
+}
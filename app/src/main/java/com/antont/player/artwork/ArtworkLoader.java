@@ -0,0 +1,185 @@
+package com.antont.player.artwork;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.antont.player.models.AudioItem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Album artwork for list rows and the notification. Lookups go memory cache, then disk cache of thumbnails,
+// then the picture embedded in the audio file, decoded on a background thread and downsampled to the size
+// asked for. Artwork is shared per album and folder, so one decode serves every track of an album.
+public class ArtworkLoader {
+
+    private final static String LOG_TAG = "Artwork loader";
+    private static final String DISK_CACHE_DIRECTORY = "artwork";
+    private static final long DISK_CACHE_SIZE = 16 * 1024 * 1024;
+    // Share of the heap the decoded bitmaps may take
+    private static final int MEMORY_CACHE_DIVISOR = 16;
+    private static final int THREAD_COUNT = 2;
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static ArtworkLoader mInstance;
+
+    private final BoundedLruCache<String, Bitmap> mMemoryCache;
+    private final ArtworkDiskCache mDiskCache;
+    private final PendingRequests<String, Bitmap> mRequests = new PendingRequests<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+    // Stands for "no artwork" in the memory cache
+    private final Bitmap mNoArtwork = Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8);
+
+    private ArtworkLoader(Context context) {
+        long memoryCacheSize = Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR;
+        mMemoryCache = new BoundedLruCache<>(memoryCacheSize, Bitmap::getAllocationByteCount);
+        mDiskCache = new ArtworkDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_SIZE);
+        // Newest requests first, they are for the rows that have just scrolled into view
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingDeque<Runnable>() {
+                    @Override
+                    public boolean offer(Runnable runnable) {
+                        return offerFirst(runnable);
+                    }
+                }, runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "ArtworkWorker"));
+    }
+
+    public static ArtworkLoader getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new ArtworkLoader(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    // Main thread only. The callback gets the artwork, or null when the track has none. On a memory cache hit
+    // it is called before this method returns, otherwise on the main thread later unless the request is cancelled
+    public PendingRequests<String, Bitmap>.Request load(AudioItem item, int sizeInPx, PendingRequests.Callback<Bitmap> callback) {
+        String key = keyOf(item, sizeInPx);
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            callback.onResult(cached == mNoArtwork ? null : cached);
+            return mRequests.completed();
+        }
+
+        PendingRequests<String, Bitmap>.Request request = mRequests.add(key, callback);
+        if (request.isLoadStarter()) {
+            PendingRequests.Load<String> load = request.getLoad();
+            String path = item.getPath();
+            mExecutor.execute(() -> {
+                Bitmap artwork = load.isCancelled() ? null : loadArtwork(load, path, sizeInPx);
+                mMainHandler.post(() -> mRequests.complete(load, artwork));
+            });
+        }
+        return request;
+    }
+
+    // Drops the decoded bitmaps, e.g. when the system runs low on memory
+    public void trimMemory() {
+        mMemoryCache.clear();
+    }
+
+    // Worker thread
+    private Bitmap loadArtwork(PendingRequests.Load<String> load, String path, int sizeInPx) {
+        String key = load.getKey();
+        byte[] thumbnail = mDiskCache.get(key);
+        if (thumbnail == null) {
+            Bitmap artwork = decodeEmbeddedPicture(load, path, sizeInPx);
+            if (load.isCancelled() && artwork == null) {
+                // Not known to have no artwork, only not looked at
+                return null;
+            }
+            thumbnail = artwork == null ? new byte[0] : compress(artwork);
+            try {
+                mDiskCache.put(key, thumbnail);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error saving artwork thumbnail", e);
+            }
+            mMemoryCache.put(key, artwork == null ? mNoArtwork : artwork);
+            return artwork;
+        }
+
+        Bitmap artwork = thumbnail.length == 0 ? null : BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length);
+        mMemoryCache.put(key, artwork == null ? mNoArtwork : artwork);
+        return artwork;
+    }
+
+    private Bitmap decodeEmbeddedPicture(PendingRequests.Load<String> load, String path, int sizeInPx) {
+        byte[] picture;
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(path);
+            picture = retriever.getEmbeddedPicture();
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            retriever.release();
+        }
+        if (picture == null || load.isCancelled()) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeOf(options.outWidth, options.outHeight, sizeInPx);
+        Bitmap sampled = BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        // Sampling only halves, the last step to the exact size keeps the aspect ratio
+        float scale = (float) sizeInPx / Math.min(sampled.getWidth(), sampled.getHeight());
+        if (scale >= 1f) {
+            return sampled;
+        }
+        int width = Math.max(1, Math.round(sampled.getWidth() * scale));
+        int height = Math.max(1, Math.round(sampled.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private static byte[] compress(Bitmap artwork) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        artwork.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        return out.toByteArray();
+    }
+
+    // The largest power of two that keeps the shorter side at the target size or above
+    static int sampleSizeOf(int width, int height, int sizeInPx) {
+        int shorterSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shorterSide / (sampleSize * 2) >= sizeInPx) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // One key per album and folder, albums are only named in MediaStore and the same name
+    // in two folders, e.g. "Unknown", is rarely the same album
+    static String keyOf(AudioItem item, int sizeInPx) {
+        String folder = item.getFolder();
+        return item.getAlbumName() + '\u0000' + (folder == null ? "" : folder) + '\u0000' + sizeInPx;
+    }
+}
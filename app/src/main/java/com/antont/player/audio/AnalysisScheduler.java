@@ -0,0 +1,136 @@
+package com.antont.player.audio;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.antont.player.storage.PathRecordLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// The threads a background analysis of the library runs on: a scheduler thread that works through the
+// tracks, and a small pool of lowest priority workers that decode them in batches. The results are kept
+// per path in a log, loaded on the scheduler thread before the first run and synced after every batch.
+// A run supersedes the one still going, which sees that through isCurrent() and stops.
+public class AnalysisScheduler {
+
+    public static final int BATCH_SIZE = 8;
+
+    private final String mLogTag;
+    private final PathRecordLog<?> mLog;
+    private final ExecutorService mScheduler;
+    private final ExecutorService mWorkers;
+
+    private volatile int mGeneration;
+    // Accessed on the scheduler thread only
+    private boolean mLogLoaded;
+
+    // The threads are named after the analysis, e.g. "LoudnessScheduler" and "LoudnessWorker"
+    public AnalysisScheduler(String name, String logTag, PathRecordLog<?> log) {
+        mLogTag = logTag;
+        mLog = log;
+        mScheduler = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name + "Scheduler"));
+        int workerCount = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+        mWorkers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    runnable.run();
+                }, name + "Worker"));
+    }
+
+    // Runs the analysis on the scheduler thread, unless another one is scheduled before it starts
+    public void schedule(Analysis analysis) {
+        int generation = ++mGeneration;
+        mScheduler.execute(() -> {
+            if (generation == mGeneration && loadLog()) {
+                analysis.run(generation);
+            }
+        });
+    }
+
+    // The analysis that is running stops
+    public void cancel() {
+        mGeneration++;
+    }
+
+    // Any thread. Whether the run of the generation has not been superseded
+    public boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    // Scheduler thread. Runs the tasks on the workers and syncs what they put in the log. The results are
+    // in the order of the tasks, null for a task that failed; fewer if the thread was interrupted
+    public <T> List<T> runBatch(List<? extends Callable<T>> batch) {
+        List<T> results = new ArrayList<>(batch.size());
+        try {
+            for (Future<T> future : mWorkers.invokeAll(batch)) {
+                results.add(resultOf(future));
+            }
+            mLog.sync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.e(mLogTag, "Error syncing the log", e);
+        }
+        return results;
+    }
+
+    // Scheduler thread. The list may be a part of the library or filtered, only files that are gone are
+    // forgotten
+    public void removeDeletedFiles(Collection<String> listedPaths) {
+        Set<String> listed = new HashSet<>(listedPaths);
+        List<String> deleted = new ArrayList<>();
+        for (String path : mLog.paths()) {
+            if (!listed.contains(path) && !new File(path).exists()) {
+                deleted.add(path);
+            }
+        }
+        try {
+            mLog.removeAll(deleted);
+        } catch (IOException e) {
+            Log.e(mLogTag, "Error compacting the log", e);
+        }
+    }
+
+    private boolean loadLog() {
+        if (!mLogLoaded) {
+            try {
+                mLog.load();
+                mLogLoaded = true;
+            } catch (IOException e) {
+                Log.e(mLogTag, "Error loading the log", e);
+            }
+        }
+        return mLogLoaded;
+    }
+
+    private <T> T resultOf(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Log.e(mLogTag, "Error analyzing", e.getCause());
+            return null;
+        }
+    }
+
+    public interface Analysis {
+        // Scheduler thread, the log is loaded
+        void run(int generation);
+    }
+}
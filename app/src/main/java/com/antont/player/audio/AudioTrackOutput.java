@@ -0,0 +1,99 @@
+package com.antont.player.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.PowerManager;
+
+import java.io.IOException;
+
+// PcmOutput backed by a streaming AudioTrack. The buffer size is a floor, AudioTrack never goes below its
+// own minimum. Holds a partial wake lock while playing, the decoder has to keep up with the screen off.
+public class AudioTrackOutput implements PcmOutput {
+
+    private final static String WAKE_LOCK_TAG = "Player:AudioTrackOutput";
+
+    private final AudioTrack mAudioTrack;
+    private final PowerManager.WakeLock mWakeLock;
+
+    public AudioTrackOutput(Context context, int sampleRate, int channelCount, int bufferInMs) throws IOException {
+        int channelMask;
+        if (channelCount == 1) {
+            channelMask = AudioFormat.CHANNEL_OUT_MONO;
+        } else if (channelCount == 2) {
+            channelMask = AudioFormat.CHANNEL_OUT_STEREO;
+        } else {
+            throw new IOException("Unsupported channel count " + channelCount);
+        }
+        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IOException("Unsupported format " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        int bufferSize = Math.max(minBufferSize, (int) ((long) sampleRate * bufferInMs / 1000) * channelCount * 2);
+
+        try {
+            mAudioTrack = new AudioTrack(
+                    new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build(),
+                    new AudioFormat.Builder()
+                            .setSampleRate(sampleRate)
+                            .setChannelMask(channelMask)
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .build(),
+                    bufferSize, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cannot create AudioTrack", e);
+        }
+        if (mAudioTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+            mAudioTrack.release();
+            throw new IOException("AudioTrack not initialized");
+        }
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        mWakeLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public void play() {
+        mWakeLock.acquire();
+        mAudioTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        mAudioTrack.pause();
+        mWakeLock.release();
+    }
+
+    @Override
+    public void flush() {
+        mAudioTrack.flush();
+    }
+
+    @Override
+    public void drain() {
+        mAudioTrack.stop();
+    }
+
+    @Override
+    public int write(short[] samples, int offset, int count) {
+        return mAudioTrack.write(samples, offset, count);
+    }
+
+    // The head position is an unsigned 32 bit frame count, reset by flush()
+    @Override
+    public long getPlayedFrames() {
+        return mAudioTrack.getPlaybackHeadPosition() & 0xffffffffL;
+    }
+
+    @Override
+    public void release() {
+        mAudioTrack.release();
+        mWakeLock.release();
+    }
+}
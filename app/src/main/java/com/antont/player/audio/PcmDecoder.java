@@ -0,0 +1,120 @@
+package com.antont.player.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+// Decodes the first audio track of a file to interleaved 16 bit PCM with MediaCodec and hands it to a sink
+// buffer by buffer, so that a whole track never has to be held in memory. Blocks, for worker threads.
+public class PcmDecoder {
+
+    private static final long CODEC_TIMEOUT_IN_US = 10_000;
+
+    private PcmDecoder() {
+    }
+
+    // Returns true when the whole track has been decoded, false when the sink has stopped the decoding
+    public static boolean decode(String path, PcmSink sink) throws IOException {
+        return decode(path, 0, sink);
+    }
+
+    // Decodes from the given position on. The extractor can only seek to a sync sample, the frames decoded
+    // before the position are dropped
+    public static boolean decode(String path, long startInUs, PcmSink sink) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = null;
+            for (int track = 0; track < extractor.getTrackCount() && format == null; track++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(track);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(track);
+                    format = trackFormat;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track");
+            }
+            if (startInUs > 0) {
+                extractor.seekTo(startInUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            long durationInUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (!sink.onFormat(sampleRate, channelCount, durationInUs)) {
+                return false;
+            }
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            short[] samples = new short[8192];
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_IN_US);
+                    if (inputIndex >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(inputIndex), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int outputIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_IN_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    // The decoder knows the format better than the container, it tells before the first output
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    int outputSampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    int outputChannelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    if (outputSampleRate != sampleRate || outputChannelCount != channelCount) {
+                        sampleRate = outputSampleRate;
+                        channelCount = outputChannelCount;
+                        if (!sink.onFormat(sampleRate, channelCount, durationInUs)) {
+                            return false;
+                        }
+                    }
+                } else if (outputIndex >= 0) {
+                    ByteBuffer output = codec.getOutputBuffer(outputIndex);
+                    output.position(info.offset).limit(info.offset + info.size);
+                    ShortBuffer pcm = output.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    int count = pcm.remaining();
+                    if (samples.length < count) {
+                        samples = new short[count];
+                    }
+                    pcm.get(samples, 0, count);
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    int frameCount = count / channelCount;
+                    int skippedFrames = 0;
+                    if (info.presentationTimeUs < startInUs) {
+                        skippedFrames = (int) Math.min(frameCount, (startInUs - info.presentationTimeUs) * sampleRate / 1_000_000);
+                        System.arraycopy(samples, skippedFrames * channelCount, samples, 0, (frameCount - skippedFrames) * channelCount);
+                    }
+                    if (skippedFrames < frameCount && !sink.onSamples(samples, frameCount - skippedFrames)) {
+                        return false;
+                    }
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        return true;
+                    }
+                }
+            }
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.antont.player.dsp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The effect settings and the user's own presets, kept in the default SharedPreferences. Those belong to the
+// Android user, so every user of the device has their own. Settings are changed on the main thread and
+// read by the audio threads of the players through getDspSettings().
+public class DspPresetStore implements AudioEffects.SettingsSource {
+
+    private final static String LOG_TAG = "DSP preset store";
+    public static final String PREF_DSP_SETTINGS = "PREF_DSP_SETTINGS";
+    public static final String PREF_DSP_USER_PRESETS = "PREF_DSP_USER_PRESETS";
+
+    private static DspPresetStore mInstance;
+
+    private final SharedPreferences mPreferences;
+    private final DspSettingsFormat mFormat = new DspSettingsFormat();
+    private volatile DspSettings mSettings;
+    // Main thread only
+    private final List<DspPreset> mUserPresets;
+
+    private DspPresetStore(Context context) {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mSettings = readSettings();
+        mUserPresets = readUserPresets();
+    }
+
+    public static DspPresetStore getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new DspPresetStore(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    @Override
+    public DspSettings getDspSettings() {
+        return mSettings;
+    }
+
+    public void setDspSettings(DspSettings settings) {
+        mSettings = settings;
+        mPreferences.edit()
+                .putString(PREF_DSP_SETTINGS, mFormat.formatSettings(settings))
+                .apply();
+    }
+
+    // The built-in presets, then the user's in the order they were saved
+    public List<DspPreset> getPresets() {
+        List<DspPreset> presets = new ArrayList<>(DspPreset.BUILT_IN);
+        presets.addAll(mUserPresets);
+        return presets;
+    }
+
+    // The first preset the current settings play, null for settings of the user's own
+    public DspPreset getCurrentPreset() {
+        DspSettings settings = mSettings;
+        for (DspPreset preset : getPresets()) {
+            if (preset.matches(settings)) {
+                return preset;
+            }
+        }
+        return null;
+    }
+
+    public boolean isUserPreset(DspPreset preset) {
+        return mUserPresets.contains(preset);
+    }
+
+    // Saves the current curve under the name, replacing a preset of the user's with the same name
+    public DspPreset savePreset(String name) {
+        DspPreset preset = DspPreset.of(name, mSettings);
+        int index = indexOfUserPreset(name);
+        if (index < 0) {
+            mUserPresets.add(preset);
+        } else {
+            mUserPresets.set(index, preset);
+        }
+        writeUserPresets();
+        return preset;
+    }
+
+    public void deletePreset(DspPreset preset) {
+        if (mUserPresets.remove(preset)) {
+            writeUserPresets();
+        }
+    }
+
+    private int indexOfUserPreset(String name) {
+        for (int i = 0; i < mUserPresets.size(); i++) {
+            if (mUserPresets.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeUserPresets() {
+        mPreferences.edit()
+                .putString(PREF_DSP_USER_PRESETS, mFormat.formatPresets(mUserPresets))
+                .apply();
+    }
+
+    private DspSettings readSettings() {
+        String text = mPreferences.getString(PREF_DSP_SETTINGS, null);
+        if (text == null) {
+            return DspSettings.DEFAULT;
+        }
+        try {
+            return mFormat.parseSettings(text);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Error reading the effect settings", e);
+            return DspSettings.DEFAULT;
+        }
+    }
+
+    private List<DspPreset> readUserPresets() {
+        try {
+            return mFormat.parsePresets(mPreferences.getString(PREF_DSP_USER_PRESETS, ""));
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Error reading the presets", e);
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.antont.player.duplicates;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.antont.player.audio.AnalysisScheduler;
+import com.antont.player.audio.PcmDecoder;
+import com.antont.player.audio.PcmSink;
+import com.antont.player.models.AudioItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+// Finds the tracks of the library that are the same recording under different names and paths. The start
+// of every track is decoded and fingerprinted in batches on the workers of an AnalysisScheduler, the
+// fingerprints are cached per path, file size and modification time, so only new and changed files are
+// decoded the next time. The clusters come from a FingerprintIndex.
+public class DuplicateDetector {
+
+    private final static String LOG_TAG = "Duplicate detector";
+    private static final String CACHE_FILE = "fingerprints/cache";
+
+    private static DuplicateDetector mInstance;
+
+    private final FingerprintCache mCache;
+    private final AnalysisScheduler mScheduler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private DuplicateDetector(Context context) {
+        mCache = new FingerprintCache(new File(context.getFilesDir(), CACHE_FILE));
+        mScheduler = new AnalysisScheduler("Fingerprint", LOG_TAG, mCache);
+    }
+
+    public static DuplicateDetector getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new DuplicateDetector(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    // Main thread. Supersedes the search still running, the listener is called on the main thread
+    public void find(List<AudioItem> items, OnDuplicatesFoundListener listener) {
+        List<AudioItem> snapshot = new ArrayList<>(items);
+        mScheduler.schedule(generation -> run(generation, snapshot, listener));
+    }
+
+    // Main thread. The listener of the running search is not called anymore
+    public void cancel() {
+        mScheduler.cancel();
+    }
+
+    // Scheduler thread
+    private void run(int generation, List<AudioItem> items, OnDuplicatesFoundListener listener) {
+        FingerprintIndex<AudioItem> index = new FingerprintIndex<>();
+        List<Fingerprinting> batch = new ArrayList<>(AnalysisScheduler.BATCH_SIZE);
+        Set<String> paths = new HashSet<>();
+        int total = items.size();
+        for (int i = 0; i < total && mScheduler.isCurrent(generation); i++) {
+            AudioItem item = items.get(i);
+            String path = item.getPath();
+            if (path == null) {
+                continue;
+            }
+            paths.add(path);
+            File file = new File(path);
+            long fileSize = file.length();
+            long lastModified = file.lastModified();
+            Fingerprint cached = mCache.get(path, fileSize, lastModified);
+            if (cached != null) {
+                index.add(item, cached);
+            } else if (fileSize > 0) {
+                batch.add(new Fingerprinting(generation, item, fileSize, lastModified));
+            }
+            if (batch.size() == AnalysisScheduler.BATCH_SIZE) {
+                runBatch(batch, index);
+                postProgress(generation, listener, i + 1, total);
+            }
+        }
+        if (!batch.isEmpty()) {
+            runBatch(batch, index);
+        }
+        if (!mScheduler.isCurrent(generation)) {
+            return;
+        }
+        mScheduler.removeDeletedFiles(paths);
+
+        List<List<AudioItem>> duplicates = index.findDuplicates();
+        mMainHandler.post(() -> {
+            if (mScheduler.isCurrent(generation)) {
+                listener.onDuplicatesFound(duplicates);
+            }
+        });
+    }
+
+    private void runBatch(List<Fingerprinting> batch, FingerprintIndex<AudioItem> index) {
+        List<Fingerprint> fingerprints = mScheduler.runBatch(batch);
+        for (int i = 0; i < fingerprints.size(); i++) {
+            if (fingerprints.get(i) != null) {
+                index.add(batch.get(i).mItem, fingerprints.get(i));
+            }
+        }
+        batch.clear();
+    }
+
+    private void postProgress(int generation, OnDuplicatesFoundListener listener, int checked, int total) {
+        mMainHandler.post(() -> {
+            if (mScheduler.isCurrent(generation)) {
+                listener.onProgress(checked, total);
+            }
+        });
+    }
+
+    // Worker thread. A file that cannot be decoded gets an empty fingerprint and is not tried again until
+    // it changes. Returns null if the search was superseded
+    private Fingerprint fingerprint(int generation, String path, long fileSize, long lastModified) throws IOException {
+        AudioFingerprinter[] fingerprinter = new AudioFingerprinter[1];
+        int[] durationInMs = new int[1];
+        Fingerprint fingerprint;
+        try {
+            PcmDecoder.decode(path, new PcmSink() {
+                @Override
+                public boolean onFormat(int sampleRate, int channelCount, long durationInUs) {
+                    fingerprinter[0] = new AudioFingerprinter(sampleRate, channelCount);
+                    durationInMs[0] = (int) (durationInUs / 1000);
+                    return mScheduler.isCurrent(generation);
+                }
+
+                @Override
+                public boolean onSamples(short[] samples, int frameCount) {
+                    // Decoding stops once the fingerprint is complete, long before the end of most tracks
+                    return fingerprinter[0].process(samples, 0, frameCount) && mScheduler.isCurrent(generation);
+                }
+            });
+            if (!mScheduler.isCurrent(generation)) {
+                return null;
+            }
+            fingerprint = fingerprinter[0].getFingerprint(durationInMs[0]);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot decode " + path, e);
+            fingerprint = new Fingerprint(new int[0], new long[Fingerprint.SIGNATURE_BITS / 64], 0);
+        }
+        mCache.put(path, fileSize, lastModified, fingerprint);
+        return fingerprint;
+    }
+
+    private class Fingerprinting implements Callable<Fingerprint> {
+        final int mGeneration;
+        final AudioItem mItem;
+        final long mFileSize;
+        final long mLastModified;
+
+        Fingerprinting(int generation, AudioItem item, long fileSize, long lastModified) {
+            mGeneration = generation;
+            mItem = item;
+            mFileSize = fileSize;
+            mLastModified = lastModified;
+        }
+
+        @Override
+        public Fingerprint call() throws IOException {
+            if (!mScheduler.isCurrent(mGeneration)) {
+                return null;
+            }
+            return fingerprint(mGeneration, mItem.getPath(), mFileSize, mLastModified);
+        }
+    }
+
+    public interface OnDuplicatesFoundListener {
+        void onProgress(int checkedCount, int totalCount);
+
+        // Clusters of two tracks or more that sound the same, in library order
+        void onDuplicatesFound(List<List<AudioItem>> duplicates);
+    }
+}
@@ -1,4 +0,0 @@
-package com.antont.player.events;
-
-public class OnServiceDestroyEvent {
-}
@@ -0,0 +1,46 @@
+package com.antont.player.library;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import com.antont.player.models.AudioItem;
+
+// Reads AudioItems from a MediaStore cursor, column indices are resolved once up front
+public class CursorAudioItemSource implements AudioItemSource {
+
+    private final Cursor mCursor;
+    private final int mIdColumn;
+    private final int mPathColumn;
+    private final int mNameColumn;
+    private final int mAlbumColumn;
+    private final int mDateModifiedColumn;
+
+    public CursorAudioItemSource(Cursor cursor) {
+        mCursor = cursor;
+        mIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+        mPathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+        mNameColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DISPLAY_NAME);
+        mAlbumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+        mDateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_MODIFIED);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return mCursor.moveToNext();
+    }
+
+    @Override
+    public AudioItem read() {
+        return new AudioItem(
+                mCursor.getLong(mIdColumn),
+                mCursor.getLong(mDateModifiedColumn),
+                mCursor.getString(mPathColumn),
+                mCursor.getString(mNameColumn),
+                mCursor.getString(mAlbumColumn));
+    }
+
+    @Override
+    public void close() {
+        mCursor.close();
+    }
+}
@@ -0,0 +1,218 @@
+package com.antont.player.library;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.antont.player.metrics.Metrics;
+import com.antont.player.metrics.Operation;
+import com.antont.player.models.AudioItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Serves the library from the on-disk snapshot right away and keeps it in sync with MediaStore in the background
+public class LibraryRepository implements LibrarySyncEngine.OnLibraryDeltaListener {
+
+    private final static String LOG_TAG = "Library repository";
+    private static final String CACHE_FILE_NAME = "library.snapshot";
+    // Rows appended between two checks for dead rows, and the least dead rows worth a compaction
+    private static final int MIN_DEAD_ROWS_FOR_COMPACTION = 1024;
+
+    private final LibraryCache mCache;
+    private final MediaStoreScanner mScanner;
+    private final HandlerThread mWorkerThread = new HandlerThread("LibraryWorker", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LibrarySyncEngine mSyncEngine;
+    private final PagedLibraryLoader mLoader;
+    // Columns of the rows read from MediaStore, written on the main thread
+    private LibraryStore mStore = new LibraryStore();
+    // The library as last saved, the rows of the store that are not in it are dead
+    private List<AudioItem> mSavedItems = new ArrayList<>();
+    private int mCheckedRowCount;
+
+    private OnLibraryLoadedCallback mCallback;
+    private PagedLibraryLoader.LoadTask mLoadTask;
+    private long mGeneration;
+
+    public LibraryRepository(Context context) {
+        mCache = new LibraryCache(new File(context.getCacheDir(), CACHE_FILE_NAME));
+        mScanner = new MediaStoreScanner(context.getContentResolver());
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mSyncEngine = new LibrarySyncEngine(context.getContentResolver(), mScanner, mWorkerThread.getLooper());
+        mLoader = new PagedLibraryLoader(mWorkerHandler::post, mMainHandler::post, PagedLibraryLoader.DEFAULT_PAGE_SIZE);
+    }
+
+    // The callback is called on the main thread. If a snapshot is cached it is delivered at once,
+    // otherwise an empty library is delivered first and MediaStore rows follow page by page.
+    // Later changes arrive as deltas. The snapshot is reconciled with MediaStore only when the generation
+    // it was saved at is not the one MediaStore is at now.
+    public void load(OnLibraryLoadedCallback callback) {
+        mCallback = callback;
+        long span = Metrics.start();
+
+        LibrarySnapshot cached = mCache.load();
+        if (cached != null) {
+            mGeneration = cached.getGeneration();
+            mSavedItems = cached.getItems();
+            callback.onLibraryLoaded(cached.getItems());
+            callback.onLibraryLoadFinished();
+            Metrics.record(Operation.LIBRARY_LOAD, span);
+            mSyncEngine.start(cached.getItems(), mGeneration, this);
+            return;
+        }
+
+        callback.onLibraryLoaded(new ArrayList<>());
+        List<AudioItem> loadedItems = new ArrayList<>();
+        mLoadTask = mLoader.load(mScanner::openLibrary, new PagedLibraryLoader.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(List<AudioItem> page) {
+                List<AudioItem> storedPage = mStore.addAll(page);
+                loadedItems.addAll(storedPage);
+                if (mCallback != null) {
+                    mCallback.onLibraryPageLoaded(storedPage);
+                }
+                if (!storedPage.isEmpty() && loadedItems.size() == storedPage.size()) {
+                    Metrics.record(Operation.LIBRARY_FIRST_PAGE, span);
+                }
+            }
+
+            @Override
+            public void onLoadFinished(int totalCount) {
+                mLoadTask = null;
+                mGeneration = MediaStoreScanner.generationOf(loadedItems);
+                save(loadedItems);
+                mSyncEngine.start(loadedItems, mGeneration, LibraryRepository.this);
+                if (mCallback != null) {
+                    mCallback.onLibraryLoadFinished();
+                }
+                Metrics.record(Operation.LIBRARY_LOAD, span);
+            }
+
+            @Override
+            public void onLoadFailed(Exception e) {
+                mLoadTask = null;
+                Log.e(LOG_TAG, "Error loading the library", e);
+            }
+        });
+    }
+
+    // Keeps an already loaded library in sync, e.g. after the activity has been recreated
+    public void watch(List<AudioItem> audioItems, OnLibraryLoadedCallback callback) {
+        mCallback = callback;
+        mSavedItems = new ArrayList<>(audioItems);
+        mGeneration = MediaStoreScanner.generationOf(audioItems);
+        mSyncEngine.start(audioItems, mGeneration, this);
+    }
+
+    // Persists the library after a delta has been applied to it, the list is copied on the calling thread
+    public void save(List<AudioItem> audioItems) {
+        mSavedItems = new ArrayList<>(audioItems);
+        LibrarySnapshot snapshot = new LibrarySnapshot(mGeneration, mSavedItems);
+        mWorkerHandler.post(() -> saveSnapshot(snapshot));
+    }
+
+    // Drops the callback and stops the background thread once the pending work is done
+    public void release() {
+        mCallback = null;
+        if (mLoadTask != null) {
+            mLoadTask.cancel();
+        }
+        mSyncEngine.stop();
+        mWorkerThread.quitSafely();
+    }
+
+    @Override
+    public void onLibraryDelta(LibraryDelta delta, long generation) {
+        mGeneration = generation;
+        if (mCallback != null) {
+            mCallback.onLibraryChanged(toStoredDelta(delta));
+        }
+    }
+
+    // The same delta with its rows moved into the store
+    private LibraryDelta toStoredDelta(LibraryDelta delta) {
+        LibraryDelta storedDelta = new LibraryDelta();
+        for (AudioItem item : delta.getAddedItems()) {
+            storedDelta.addItem(mStore.add(item));
+        }
+        for (AudioItem item : delta.getUpdatedItems()) {
+            storedDelta.updateItem(mStore.add(item));
+        }
+        for (Long id : delta.getRemovedIds()) {
+            storedDelta.removeItem(id);
+        }
+        if (mStore.size() - mCheckedRowCount < MIN_DEAD_ROWS_FOR_COMPACTION) {
+            return storedDelta;
+        }
+        mCheckedRowCount = mStore.size();
+        return compactStore(storedDelta);
+    }
+
+    // Every update appends a row and leaves the old one dead. Once the dead rows outnumber the live ones
+    // the live rows move to a new store, and the delta updates every item of the old store to its new view.
+    // The old store is dropped with the last view a reader holds.
+    private LibraryDelta compactStore(LibraryDelta storedDelta) {
+        Set<Long> replacedIds = new HashSet<>(storedDelta.getRemovedIds());
+        List<AudioItem> liveItems = new ArrayList<>(storedDelta.getAddedItems());
+        for (AudioItem item : storedDelta.getUpdatedItems()) {
+            replacedIds.add(item.getId());
+            liveItems.add(item);
+        }
+        for (AudioItem item : mSavedItems) {
+            if (mStore.rowOf(item) >= 0 && !replacedIds.contains(item.getId())) {
+                liveItems.add(item);
+            }
+        }
+        int deadCount = mStore.size() - liveItems.size();
+        if (deadCount < Math.max(MIN_DEAD_ROWS_FOR_COMPACTION, liveItems.size())) {
+            return storedDelta;
+        }
+
+        mStore = mStore.compact(liveItems);
+        mCheckedRowCount = mStore.size();
+        LibraryDelta compactedDelta = new LibraryDelta();
+        int addedCount = storedDelta.getAddedItems().size();
+        for (int row = 0; row < mStore.size(); row++) {
+            if (row < addedCount) {
+                compactedDelta.addItem(mStore.get(row));
+            } else {
+                compactedDelta.updateItem(mStore.get(row));
+            }
+        }
+        for (Long id : storedDelta.getRemovedIds()) {
+            compactedDelta.removeItem(id);
+        }
+        return compactedDelta;
+    }
+
+    private void saveSnapshot(LibrarySnapshot snapshot) {
+        try {
+            mCache.save(snapshot);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error saving library snapshot", e);
+        }
+    }
+
+    public interface OnLibraryLoadedCallback {
+        void onLibraryLoaded(List<AudioItem> audioItems);
+
+        // Rows of the first load, to be appended to the library delivered by onLibraryLoaded()
+        void onLibraryPageLoaded(List<AudioItem> page);
+
+        // The whole library has been delivered, from the snapshot or after the last page
+        void onLibraryLoadFinished();
+
+        // The delta has not been applied yet, the callback applies it to the library and saves the result
+        void onLibraryChanged(LibraryDelta delta);
+    }
+}
@@ -0,0 +1,106 @@
+package com.antont.player.library;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Watches MediaStore and turns its changes into deltas. Bursts of change notifications are coalesced,
+// and each sync fetches only rows above the last watermarks plus the id column for deletions.
+public class LibrarySyncEngine {
+
+    private static final long SYNC_DELAY_IN_MS = 500;
+
+    private final ContentResolver mContentResolver;
+    private final MediaStoreScanner mScanner;
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSyncRunnable = this::sync;
+    private final ContentObserver mObserver;
+
+    // Accessed on the worker thread only
+    private LibrarySyncState mState;
+
+    private volatile OnLibraryDeltaListener mListener;
+
+    public LibrarySyncEngine(ContentResolver contentResolver, MediaStoreScanner scanner, Looper workerLooper) {
+        mContentResolver = contentResolver;
+        mScanner = scanner;
+        mWorkerHandler = new Handler(workerLooper);
+        mObserver = new ContentObserver(mWorkerHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                scheduleSync();
+            }
+        };
+    }
+
+    // Starts watching from the given library state and catches up with the changes made since it was taken.
+    // The catch-up is skipped while MediaStore is still at the generation the state was taken at
+    public void start(List<AudioItem> knownItems, long knownGeneration, OnLibraryDeltaListener listener) {
+        stop();
+        mListener = listener;
+
+        // Registered before the generation is read, so a change right after the read is still seen
+        mContentResolver.registerContentObserver(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, mObserver);
+        List<AudioItem> items = new ArrayList<>(knownItems);
+        mWorkerHandler.post(() -> {
+            mState = new LibrarySyncState(items);
+            if (mScanner.queryGeneration() != knownGeneration) {
+                sync();
+            }
+        });
+    }
+
+    public void stop() {
+        mListener = null;
+        mContentResolver.unregisterContentObserver(mObserver);
+        mWorkerHandler.removeCallbacks(mSyncRunnable);
+    }
+
+    private void scheduleSync() {
+        mWorkerHandler.removeCallbacks(mSyncRunnable);
+        mWorkerHandler.postDelayed(mSyncRunnable, SYNC_DELAY_IN_MS);
+    }
+
+    private void sync() {
+        if (mState == null || mListener == null) {
+            return;
+        }
+        List<AudioItem> changedRows = mScanner.queryChangedSince(mState.getMaxId(), mState.getMaxDateModified());
+        Set<Long> presentIds = mScanner.queryIds();
+        for (AudioItem row : changedRows) {
+            presentIds.remove(row.getId());
+        }
+        List<Long> unknownIds = mState.findUnknownIds(presentIds);
+        for (AudioItem row : changedRows) {
+            presentIds.add(row.getId());
+        }
+        if (!unknownIds.isEmpty()) {
+            changedRows.addAll(mScanner.queryByIds(unknownIds));
+        }
+
+        LibraryDelta delta = mState.update(changedRows, presentIds);
+        if (delta.isEmpty()) {
+            return;
+        }
+        long generation = mState.getGeneration();
+        mMainHandler.post(() -> {
+            OnLibraryDeltaListener listener = mListener;
+            if (listener != null) {
+                listener.onLibraryDelta(delta, generation);
+            }
+        });
+    }
+
+    public interface OnLibraryDeltaListener {
+        void onLibraryDelta(LibraryDelta delta, long generation);
+    }
+}
@@ -0,0 +1,83 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// What the app knows about MediaStore: the ids with their modification dates and the watermarks of the last sync.
+// Only rows above the watermarks have to be fetched again, deletions are found from the plain id list.
+public class LibrarySyncState {
+
+    private final Map<Long, Long> mKnownItems = new HashMap<>();
+    private long mMaxId;
+    private long mMaxDateModified;
+
+    public LibrarySyncState(List<AudioItem> items) {
+        for (AudioItem item : items) {
+            remember(item);
+        }
+    }
+
+    public long getMaxId() {
+        return mMaxId;
+    }
+
+    public long getMaxDateModified() {
+        return mMaxDateModified;
+    }
+
+    public int size() {
+        return mKnownItems.size();
+    }
+
+    public long getGeneration() {
+        return MediaStoreScanner.generationOf(mKnownItems.size(), mMaxId, mMaxDateModified);
+    }
+
+    // Present ids the state does not know, e.g. rows below the watermarks that an interrupted first load never reached
+    public List<Long> findUnknownIds(Set<Long> presentIds) {
+        List<Long> unknownIds = new ArrayList<>();
+        for (Long id : presentIds) {
+            if (!mKnownItems.containsKey(id)) {
+                unknownIds.add(id);
+            }
+        }
+        return unknownIds;
+    }
+
+    // changedRows are the rows above the watermarks, presentIds are all ids currently in MediaStore
+    public LibraryDelta update(List<AudioItem> changedRows, Set<Long> presentIds) {
+        LibraryDelta delta = new LibraryDelta();
+
+        Iterator<Long> knownIds = mKnownItems.keySet().iterator();
+        while (knownIds.hasNext()) {
+            long id = knownIds.next();
+            if (!presentIds.contains(id)) {
+                knownIds.remove();
+                delta.removeItem(id);
+            }
+        }
+
+        for (AudioItem row : changedRows) {
+            Long knownDateModified = mKnownItems.get(row.getId());
+            if (knownDateModified == null) {
+                delta.addItem(row);
+            } else if (knownDateModified != row.getDateModified()) {
+                delta.updateItem(row);
+            }
+            remember(row);
+        }
+        return delta;
+    }
+
+    private void remember(AudioItem item) {
+        mKnownItems.put(item.getId(), item.getDateModified());
+        mMaxId = Math.max(mMaxId, item.getId());
+        mMaxDateModified = Math.max(mMaxDateModified, item.getDateModified());
+    }
+}
@@ -0,0 +1,175 @@
+package com.antont.player.library;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Reads the audio library from MediaStore. Must not be called on the main thread
+public class MediaStoreScanner {
+
+    // Matches no library, returned when MediaStore cannot tell its generation
+    public static final long UNKNOWN_GENERATION = Long.MIN_VALUE;
+
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.DISPLAY_NAME,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DATE_MODIFIED
+    };
+    private static final String[] ID_PROJECTION = {MediaStore.Audio.Media._ID};
+    // One aggregate row with the inputs of generationOf()
+    private static final String[] GENERATION_PROJECTION = {
+            "COUNT(*)",
+            "MAX(" + MediaStore.Audio.Media._ID + ")",
+            "MAX(" + MediaStore.Audio.Media.DATE_MODIFIED + ")"
+    };
+    private static final int ID_CHUNK_SIZE = 500;
+    private static final String CHANGED_SINCE_SELECTION =
+            MediaStore.Audio.Media._ID + " > ? OR " + MediaStore.Audio.Media.DATE_MODIFIED + " > ?";
+
+    private static final AudioItemSource EMPTY_SOURCE = new AudioItemSource() {
+        @Override
+        public boolean moveToNext() {
+            return false;
+        }
+
+        @Override
+        public AudioItem read() {
+            throw new IllegalStateException("Empty source has no rows");
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final ContentResolver mContentResolver;
+
+    public MediaStoreScanner(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    // Opens the whole library as a row stream, used for the paged first load
+    public AudioItemSource openLibrary() {
+        return open(null, null);
+    }
+
+    // Rows inserted or modified after the given watermarks
+    public List<AudioItem> queryChangedSince(long maxId, long maxDateModified) {
+        String[] selectionArgs = {String.valueOf(maxId), String.valueOf(maxDateModified)};
+        return query(CHANGED_SINCE_SELECTION, selectionArgs);
+    }
+
+    // All ids currently in MediaStore, cheap compared to a full scan because only one column is read
+    public Set<Long> queryIds() {
+        Set<Long> ids = new HashSet<>();
+        Cursor idCursor = mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ID_PROJECTION, null, null, null);
+        if (idCursor == null) {
+            return ids;
+        }
+        try {
+            int idColumn = idCursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            while (idCursor.moveToNext()) {
+                ids.add(idCursor.getLong(idColumn));
+            }
+        } finally {
+            idCursor.close();
+        }
+        return ids;
+    }
+
+    // The generation of the library MediaStore holds now, read from one aggregate row instead of the rows
+    // themselves. UNKNOWN_GENERATION if the provider refuses the aggregate projection
+    public long queryGeneration() {
+        Cursor cursor;
+        try {
+            cursor = mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, GENERATION_PROJECTION, null, null, null);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_GENERATION;
+        }
+        if (cursor == null) {
+            return UNKNOWN_GENERATION;
+        }
+        try {
+            // The maxima of an empty library are NULL, read as 0 like generationOf() of an empty list
+            return cursor.moveToFirst()
+                    ? generationOf(cursor.getInt(0), cursor.getLong(1), cursor.getLong(2)) : UNKNOWN_GENERATION;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Rows with the given ids, queried in chunks to stay below the SQLite variable limit
+    public List<AudioItem> queryByIds(Collection<Long> ids) {
+        List<AudioItem> items = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(ID_CHUNK_SIZE);
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == ID_CHUNK_SIZE) {
+                items.addAll(queryChunk(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            items.addAll(queryChunk(chunk));
+        }
+        return items;
+    }
+
+    private List<AudioItem> queryChunk(List<Long> ids) {
+        StringBuilder selection = new StringBuilder(MediaStore.Audio.Media._ID).append(" IN (");
+        String[] selectionArgs = new String[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(ids.get(i));
+        }
+        selection.append(')');
+        return query(selection.toString(), selectionArgs);
+    }
+
+    private List<AudioItem> query(String selection, String[] selectionArgs) {
+        List<AudioItem> items = new ArrayList<>();
+        try (AudioItemSource source = open(selection, selectionArgs)) {
+            while (source.moveToNext()) {
+                items.add(source.read());
+            }
+        }
+        return items;
+    }
+
+    private AudioItemSource open(String selection, String[] selectionArgs) {
+        Cursor audioCursor = mContentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, selection, selectionArgs, null);
+        if (audioCursor == null) {
+            return EMPTY_SOURCE;
+        }
+        return new CursorAudioItemSource(audioCursor);
+    }
+
+    public static long generationOf(List<AudioItem> items) {
+        long maxId = 0;
+        long maxDateModified = 0;
+        for (AudioItem item : items) {
+            maxId = Math.max(maxId, item.getId());
+            maxDateModified = Math.max(maxDateModified, item.getDateModified());
+        }
+        return generationOf(items.size(), maxId, maxDateModified);
+    }
+
+    // Any insert raises the max id, any edit raises the max modification date and any delete changes the count
+    static long generationOf(int count, long maxId, long maxDateModified) {
+        long generation = 17;
+        generation = 31 * generation + count;
+        generation = 31 * generation + maxId;
+        generation = 31 * generation + maxDateModified;
+        return generation;
+    }
+}
@@ -0,0 +1,173 @@
+package com.antont.player.loudness;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.antont.player.audio.AnalysisScheduler;
+import com.antont.player.audio.PcmDecoder;
+import com.antont.player.audio.PcmSink;
+import com.antont.player.models.AudioItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Measures the loudness of the library in the background and answers the gain of a track for playback.
+// The tracks are measured in batches on the workers of an AnalysisScheduler, which syncs the table after
+// every batch. Files that have been measured at their current size and modification time are skipped, so
+// an analysis cut short by the process dying goes on where it stopped.
+public class LoudnessAnalyzer {
+
+    private final static String LOG_TAG = "Loudness analyzer";
+    private static final String TABLE_FILE = "loudness/table";
+
+    private static LoudnessAnalyzer mInstance;
+
+    private final LoudnessTable mTable;
+    private final AnalysisScheduler mScheduler;
+
+    // Accessed on the scheduler thread only. MediaStore modification times of the paths checked against the
+    // table, they are not checked again
+    private final Map<String, Long> mCheckedPaths = new HashMap<>();
+
+    private LoudnessAnalyzer(Context context) {
+        mTable = new LoudnessTable(new File(context.getFilesDir(), TABLE_FILE));
+        mScheduler = new AnalysisScheduler("Loudness", LOG_TAG, mTable);
+    }
+
+    public static LoudnessAnalyzer getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new LoudnessAnalyzer(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    // Measures the items that have not been measured yet, starting at startPosition since the queue plays
+    // those next. Supersedes the analysis still running, which stops after its current batch
+    public void analyze(List<AudioItem> items, int startPosition) {
+        int size = items.size();
+        int start = startPosition < 0 || startPosition >= size ? 0 : startPosition;
+        List<String> paths = new ArrayList<>(size);
+        List<Long> datesModified = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            AudioItem item = items.get((start + i) % size);
+            if (item.getPath() != null) {
+                paths.add(item.getPath());
+                datesModified.add(item.getDateModified());
+            }
+        }
+        mScheduler.schedule(generation -> run(generation, paths, datesModified));
+    }
+
+    // Linear gain of the file at the path, 1 until it has been measured. Cheap, called on the main thread
+    public float gainOf(String path) {
+        TrackLoudness loudness = mTable.get(path);
+        return loudness == null ? 1f : loudness.getGain();
+    }
+
+    // Scheduler thread
+    private void run(int generation, List<String> paths, List<Long> datesModified) {
+        List<Measurement> batch = new ArrayList<>(AnalysisScheduler.BATCH_SIZE);
+        for (int i = 0; i < paths.size() && mScheduler.isCurrent(generation); i++) {
+            String path = paths.get(i);
+            long dateModified = datesModified.get(i);
+            Long checked = mCheckedPaths.get(path);
+            if (checked != null && checked == dateModified) {
+                continue;
+            }
+            File file = new File(path);
+            long fileSize = file.length();
+            long lastModified = file.lastModified();
+            TrackLoudness known = mTable.get(path);
+            if (fileSize == 0 || known != null && known.matches(fileSize, lastModified)) {
+                mCheckedPaths.put(path, dateModified);
+                continue;
+            }
+            batch.add(new Measurement(generation, path, dateModified, fileSize, lastModified));
+            if (batch.size() == AnalysisScheduler.BATCH_SIZE) {
+                runBatch(batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            runBatch(batch);
+        }
+        if (mScheduler.isCurrent(generation)) {
+            mScheduler.removeDeletedFiles(paths);
+        }
+    }
+
+    private void runBatch(List<Measurement> batch) {
+        mScheduler.runBatch(batch);
+        // Measurements cut short by a newer analysis are left to it
+        for (Measurement measurement : batch) {
+            TrackLoudness loudness = mTable.get(measurement.mPath);
+            if (loudness != null && loudness.matches(measurement.mFileSize, measurement.mLastModified)) {
+                mCheckedPaths.put(measurement.mPath, measurement.mDateModified);
+            }
+        }
+        batch.clear();
+    }
+
+    // Worker thread. A file that cannot be decoded is recorded as such and not tried again until it changes
+    private void measure(int generation, String path, long fileSize, long lastModified) throws IOException {
+        LoudnessMeter meter;
+        try {
+            meter = decode(generation, path);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot decode " + path, e);
+            mTable.put(path, new TrackLoudness(fileSize, lastModified, Float.NaN, 0f));
+            return;
+        }
+        if (meter != null) {
+            mTable.put(path, new TrackLoudness(fileSize, lastModified,
+                    (float) meter.getIntegratedLoudness(), (float) meter.getSamplePeak()));
+        }
+    }
+
+    // Feeds the decoded track to a meter. Returns null if the analysis was superseded
+    private LoudnessMeter decode(int generation, String path) throws IOException {
+        LoudnessMeter[] meter = new LoudnessMeter[1];
+        boolean complete = PcmDecoder.decode(path, new PcmSink() {
+            @Override
+            public boolean onFormat(int sampleRate, int channelCount, long durationInUs) {
+                meter[0] = new LoudnessMeter(sampleRate, channelCount);
+                return mScheduler.isCurrent(generation);
+            }
+
+            @Override
+            public boolean onSamples(short[] samples, int frameCount) {
+                meter[0].process(samples, 0, frameCount);
+                return mScheduler.isCurrent(generation);
+            }
+        });
+        return complete ? meter[0] : null;
+    }
+
+    private class Measurement implements Callable<Void> {
+        final int mGeneration;
+        final String mPath;
+        final long mDateModified;
+        final long mFileSize;
+        final long mLastModified;
+
+        Measurement(int generation, String path, long dateModified, long fileSize, long lastModified) {
+            mGeneration = generation;
+            mPath = path;
+            mDateModified = dateModified;
+            mFileSize = fileSize;
+            mLastModified = lastModified;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            if (mScheduler.isCurrent(mGeneration)) {
+                measure(mGeneration, mPath, mFileSize, mLastModified);
+            }
+            return null;
+        }
+    }
+}
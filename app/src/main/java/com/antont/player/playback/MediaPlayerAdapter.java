@@ -0,0 +1,116 @@
+package com.antont.player.playback;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.PowerManager;
+
+import java.io.IOException;
+
+// Player backed by android.media.MediaPlayer
+public class MediaPlayerAdapter implements Player, MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+
+    private final Context mContext;
+    private final MediaPlayer mMediaPlayer = new MediaPlayer();
+    private Listener mListener;
+
+    public MediaPlayerAdapter(Context context) {
+        mContext = context.getApplicationContext();
+        mMediaPlayer.setWakeMode(mContext, PowerManager.PARTIAL_WAKE_LOCK);
+        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnCompletionListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        mMediaPlayer.setDataSource(mContext, Uri.parse(path));
+    }
+
+    @Override
+    public void prepareAsync() {
+        mMediaPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mMediaPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mMediaPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mMediaPlayer.stop();
+    }
+
+    @Override
+    public void reset() {
+        mMediaPlayer.reset();
+    }
+
+    @Override
+    public void release() {
+        mMediaPlayer.release();
+    }
+
+    @Override
+    public void seekTo(int positionInMs) {
+        mMediaPlayer.seekTo(positionInMs);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mMediaPlayer.isPlaying();
+    }
+
+    @Override
+    public int getDuration() {
+        return mMediaPlayer.getDuration();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mMediaPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mMediaPlayer.setVolume(leftVolume, rightVolume);
+    }
+
+    @Override
+    public void setNextPlayer(Player nextPlayer) {
+        mMediaPlayer.setNextMediaPlayer(nextPlayer == null ? null : ((MediaPlayerAdapter) nextPlayer).mMediaPlayer);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mediaPlayer) {
+        if (mListener != null) {
+            mListener.onPrepared(this);
+        }
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mediaPlayer) {
+        if (mListener != null) {
+            mListener.onCompletion(this);
+        }
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+        return mListener != null && mListener.onError(this, what, extra);
+    }
+}
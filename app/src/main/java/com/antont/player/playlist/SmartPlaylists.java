@@ -0,0 +1,276 @@
+package com.antont.player.playlist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+import com.antont.player.playback.DoubleBufferedFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Owns a SmartPlaylistIndex and the play history on a background thread. The library is fed the way
+// LibrarySearch is, plays are recorded by the service. The queries are kept in the default SharedPreferences
+// as "name<TAB>query" lines. One playlist at a time is watched, its tracks are delivered on the main thread
+// after every change that can touch it.
+public class SmartPlaylists {
+
+    private final static String LOG_TAG = "Smart playlists";
+    public static final String PREF_SMART_PLAYLISTS = "PREF_SMART_PLAYLISTS";
+    private static final String HISTORY_FILE = "play_history";
+    // Plays are written out together at most this often, flushHistory() writes the pending ones at once
+    private static final long HISTORY_WRITE_DELAY_IN_MS = 30 * 1000;
+
+    private static final String[][] DEFAULT_PLAYLISTS = {
+            {"Not played in 30 days", "not played in 30 days"},
+            {"Recently added", "modified in 14 days"},
+            {"Played this week", "played in 7 days"}};
+
+    private static SmartPlaylists mInstance;
+
+    private final HandlerThread mWorkerThread = new HandlerThread("SmartPlaylistWorker",
+            Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final SharedPreferences mPreferences;
+    private final DoubleBufferedFile mHistoryFile;
+    // Accessed on the worker thread only, with mHistoryWriteScheduled
+    private final PlayHistory mHistory = new PlayHistory();
+    private final SmartPlaylistIndex mIndex = new SmartPlaylistIndex(mHistory, System.currentTimeMillis());
+    private final Runnable mWriteHistoryRunnable = this::writeHistory;
+    private final Runnable mClockRunnable = this::onClockTick;
+    private boolean mHistoryWriteScheduled;
+    // Main thread only
+    private final Map<String, String> mQueries;
+    private OnPlaylistChangedListener mListener;
+
+    private volatile String mWatchedName;
+    private volatile int mWatchGeneration;
+
+    private SmartPlaylists(Context context) {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mHistoryFile = new DoubleBufferedFile(new File(context.getFilesDir(), HISTORY_FILE));
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mWorkerHandler.post(this::readHistory);
+        mQueries = readQueries();
+        for (Iterator<Map.Entry<String, String>> iterator = mQueries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, String> entry = iterator.next();
+            String name = entry.getKey();
+            Rule rule;
+            try {
+                rule = RuleParser.parse(entry.getValue());
+            } catch (QuerySyntaxException e) {
+                Log.e(LOG_TAG, "Dropping the playlist " + name, e);
+                iterator.remove();
+                continue;
+            }
+            mWorkerHandler.post(() -> mIndex.putPlaylist(name, rule));
+        }
+    }
+
+    public static SmartPlaylists getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new SmartPlaylists(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    // Rebuilds the index, the list is copied on the calling thread
+    public void setItems(List<AudioItem> audioItems) {
+        List<AudioItem> items = new ArrayList<>(audioItems);
+        mWorkerHandler.post(() -> {
+            mIndex.clear();
+            mIndex.addAll(items);
+            deliver();
+        });
+    }
+
+    public void addAll(List<AudioItem> audioItems) {
+        List<AudioItem> items = new ArrayList<>(audioItems);
+        mWorkerHandler.post(() -> {
+            mIndex.addAll(items);
+            deliver();
+        });
+    }
+
+    public void applyDelta(LibraryDelta delta) {
+        mWorkerHandler.post(() -> {
+            mIndex.applyDelta(delta);
+            deliver();
+        });
+    }
+
+    // Called when the track starts playing. The history is written to disk a little later, with the plays
+    // that follow in the meantime
+    public void onPlayed(AudioItem item) {
+        String path = item.getPath();
+        if (path == null) {
+            return;
+        }
+        long timeInMs = System.currentTimeMillis();
+        mWorkerHandler.post(() -> {
+            mIndex.onPlayed(path, timeInMs);
+            if (!mHistoryWriteScheduled) {
+                mHistoryWriteScheduled = true;
+                mWorkerHandler.postDelayed(mWriteHistoryRunnable, HISTORY_WRITE_DELAY_IN_MS);
+            }
+            deliver();
+        });
+    }
+
+    // Writes the plays that are still pending, e.g. when the service stops
+    public void flushHistory() {
+        mWorkerHandler.post(() -> {
+            if (mHistoryWriteScheduled) {
+                mWorkerHandler.removeCallbacks(mWriteHistoryRunnable);
+                writeHistory();
+            }
+        });
+    }
+
+    // The queries by name, in the order the playlists were added
+    public Map<String, String> getQueries() {
+        return new LinkedHashMap<>(mQueries);
+    }
+
+    // Adds the playlist or replaces the one with the same name. The query is parsed here, a
+    // QuerySyntaxException tells where it is wrong. Line breaks and tabs become spaces, they separate the
+    // stored lines, so the positions still point into the query as typed
+    public void putPlaylist(String name, String query) {
+        String cleanName = name.replaceAll("\\s+", " ").trim();
+        String cleanQuery = query.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+        Rule rule = RuleParser.parse(cleanQuery);
+        mQueries.put(cleanName, cleanQuery);
+        writeQueries();
+        mWorkerHandler.post(() -> {
+            mIndex.putPlaylist(cleanName, rule);
+            deliver();
+        });
+    }
+
+    public void removePlaylist(String name) {
+        if (mQueries.remove(name) == null) {
+            return;
+        }
+        writeQueries();
+        mWorkerHandler.post(() -> mIndex.removePlaylist(name));
+    }
+
+    // Delivers the tracks of the playlist now and after every change, until unwatch() or the next watch().
+    // Rules like "not played in 30 days" change with the clock alone, it is looked at while watching
+    public void watch(String name, OnPlaylistChangedListener listener) {
+        mListener = listener;
+        mWatchedName = name;
+        mWatchGeneration++;
+        mWorkerHandler.post(this::deliver);
+    }
+
+    public void unwatch() {
+        mListener = null;
+        mWatchedName = null;
+        mWatchGeneration++;
+        mWorkerHandler.removeCallbacks(mClockRunnable);
+    }
+
+    // Worker thread. The clock is moved on first, so "not played in" and the like are up to date
+    private void deliver() {
+        String name = mWatchedName;
+        int generation = mWatchGeneration;
+        if (name == null) {
+            return;
+        }
+        mIndex.setNow(System.currentTimeMillis());
+        List<AudioItem> items = mIndex.getItems(name);
+        mMainHandler.post(() -> {
+            if (generation == mWatchGeneration && mListener != null) {
+                mListener.onPlaylistChanged(name, items);
+            }
+        });
+        scheduleClockTick();
+    }
+
+    // Worker thread. Delivers again only when the time rules have been evaluated again
+    private void onClockTick() {
+        if (mWatchedName == null) {
+            return;
+        }
+        if (mIndex.setNow(System.currentTimeMillis())) {
+            deliver();
+        } else {
+            scheduleClockTick();
+        }
+    }
+
+    private void scheduleClockTick() {
+        mWorkerHandler.removeCallbacks(mClockRunnable);
+        mWorkerHandler.postDelayed(mClockRunnable, SmartPlaylistIndex.TIME_RESOLUTION_IN_MS);
+    }
+
+    // Worker thread, before any track is added
+    private void readHistory() {
+        byte[] data = mHistoryFile.read();
+        if (data == null) {
+            return;
+        }
+        try {
+            mHistory.read(data);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading the play history", e);
+        }
+    }
+
+    private void writeHistory() {
+        mHistoryWriteScheduled = false;
+        try {
+            mHistoryFile.write(mHistory.toByteArray());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the play history", e);
+        }
+    }
+
+    private Map<String, String> readQueries() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        String text = mPreferences.getString(PREF_SMART_PLAYLISTS, null);
+        if (text == null) {
+            for (String[] playlist : DEFAULT_PLAYLISTS) {
+                queries.put(playlist[0], playlist[1]);
+            }
+            return queries;
+        }
+        for (String line : text.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                continue;
+            }
+            queries.put(line.substring(0, tab), line.substring(tab + 1));
+        }
+        return queries;
+    }
+
+    private void writeQueries() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : mQueries.entrySet()) {
+            text.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        mPreferences.edit()
+                .putString(PREF_SMART_PLAYLISTS, text.toString())
+                .apply();
+    }
+
+    public interface OnPlaylistChangedListener {
+        void onPlaylistChanged(String name, List<AudioItem> items);
+    }
+}
@@ -0,0 +1,78 @@
+package com.antont.player.search;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Owns a SearchIndex on a background thread. Library changes are applied in the order they are passed in
+// and queries run after them, only the result of the latest query is delivered, on the main thread.
+public class LibrarySearch {
+
+    private final HandlerThread mWorkerThread = new HandlerThread("SearchWorker", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Accessed on the worker thread only
+    private final SearchIndex mIndex = new SearchIndex();
+
+    private volatile int mQueryGeneration;
+
+    public LibrarySearch() {
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+    }
+
+    // Rebuilds the index, the list is copied on the calling thread
+    public void setItems(List<AudioItem> audioItems) {
+        List<AudioItem> items = new ArrayList<>(audioItems);
+        mWorkerHandler.post(() -> {
+            mIndex.clear();
+            mIndex.addAll(items);
+        });
+    }
+
+    public void addAll(List<AudioItem> audioItems) {
+        List<AudioItem> items = new ArrayList<>(audioItems);
+        mWorkerHandler.post(() -> mIndex.addAll(items));
+    }
+
+    public void applyDelta(LibraryDelta delta) {
+        mWorkerHandler.post(() -> mIndex.applyDelta(delta));
+    }
+
+    // Supersedes the queries that have not been answered yet
+    public void search(String query, int limit, OnSearchResultListener listener) {
+        int generation = ++mQueryGeneration;
+        mWorkerHandler.post(() -> {
+            if (generation != mQueryGeneration) {
+                return;
+            }
+            List<AudioItem> results = mIndex.search(query, limit);
+            mMainHandler.post(() -> {
+                if (generation == mQueryGeneration) {
+                    listener.onSearchResult(query, results);
+                }
+            });
+        });
+    }
+
+    // Drops the pending query result
+    public void cancel() {
+        mQueryGeneration++;
+    }
+
+    public void release() {
+        cancel();
+        mWorkerThread.quit();
+    }
+
+    public interface OnSearchResultListener {
+        void onSearchResult(String query, List<AudioItem> results);
+    }
+}
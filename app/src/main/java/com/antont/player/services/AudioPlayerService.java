@@ -1,40 +1,73 @@
 package com.antont.player.services;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.net.Uri;
-import android.os.Build;
+import android.content.SharedPreferences;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.util.Log;
-import android.widget.RemoteViews;
 
 import com.antont.player.AudioItemsContainer;
-import com.antont.player.R;
+import com.antont.player.PlayQueue;
+import com.antont.player.audio.AudioTrackOutput;
+import com.antont.player.audio.PcmDecoder;
+import com.antont.player.audio.PcmPlayer;
+import com.antont.player.dsp.AudioEffects;
+import com.antont.player.dsp.DspPresetStore;
 import com.antont.player.enums.ActionType;
-import com.antont.player.events.OnServiceDestroyEvent;
-import com.antont.player.events.OnTrackStartedEvent;
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.loudness.LoudnessAnalyzer;
+import com.antont.player.metrics.Metrics;
+import com.antont.player.metrics.Operation;
 import com.antont.player.models.AudioItem;
-
-import org.greenrobot.eventbus.EventBus;
-import org.greenrobot.eventbus.Subscribe;
-import org.greenrobot.eventbus.ThreadMode;
-
-public class AudioPlayerService extends Service implements MediaPlayer.OnPreparedListener,
-        MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+import com.antont.player.playback.FadeCurve;
+import com.antont.player.playback.GainPlayer;
+import com.antont.player.playback.GaplessPlaybackEngine;
+import com.antont.player.playback.MediaPlayerAdapter;
+import com.antont.player.playback.PlaybackCheckpointStore;
+import com.antont.player.playback.Player;
+import com.antont.player.playback.PlayerCommandQueue;
+import com.antont.player.playlist.SmartPlaylists;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+public class AudioPlayerService extends Service implements GaplessPlaybackEngine.OnPlaybackEventListener,
+        PlayerCommandQueue.CommandHandler, SharedPreferences.OnSharedPreferenceChangeListener {
 
     public static final String NOTIFICATION_CHANEL_ID = "AUDIO_PLAYER_CHANEL";
+    // Crossfade duration in milliseconds, 0 keeps gapless playback without overlap
+    public static final String PREF_CROSSFADE_DURATION = "PREF_CROSSFADE_DURATION";
+    public static final String PREF_SHUFFLE_ENABLED = "PREF_SHUFFLE_ENABLED";
+    public static final String PREF_REPEAT_MODE = "PREF_REPEAT_MODE";
+    public static final String PREF_VOLUME_NORMALIZATION = "PREF_VOLUME_NORMALIZATION";
+    public static final String PREF_METRICS_ENABLED = "PREF_METRICS_ENABLED";
+    public static final String PREF_PCM_ENGINE = "PREF_PCM_ENGINE";
+    public static final String PREF_RING_BUFFER_IN_MS = "PREF_RING_BUFFER_IN_MS";
+    public static final String PREF_OUTPUT_BUFFER_IN_MS = "PREF_OUTPUT_BUFFER_IN_MS";
     private final static String LOG_TAG = "Audio player";
+    private static final ActionType[] ACTIONS = ActionType.values();
+    private static final long CHECKPOINT_INTERVAL_IN_MS = 15_000;
+    public static final int DEFAULT_RING_BUFFER_IN_MS = 500;
+    public static final int DEFAULT_OUTPUT_BUFFER_IN_MS = 100;
+
+    private GaplessPlaybackEngine mPlaybackEngine;
+    private PlayerNotificationManager mNotificationManager;
 
-    private static final int NOTIFICATION_ID = 101;
-    private MediaPlayer mMediaPlayer = new MediaPlayer();
+    // The one clock for fades and crossfade start points, ticks only while the engine asks for it
+    private final Handler mEngineClockHandler = new Handler();
+    private final Runnable mEngineTick = this::onEngineTick;
+
+    // Saves where playback is, on every state change and periodically while playing
+    private PlaybackCheckpointWriter mCheckpointWriter;
+    private final Runnable mCheckpointRunnable = this::checkpoint;
+    private int mTrackDurationInMs;
+    // Started when the user asks for a track, ended when it plays
+    private long mTrackStartSpan = Metrics.NO_SPAN;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -44,8 +77,41 @@ public class AudioPlayerService extends Service implements MediaPlayer.OnPrepare
     @Override
     public void onCreate() {
         super.onCreate();
+        Metrics.setEnabled(PreferenceManager.getDefaultSharedPreferences(this).getBoolean(PREF_METRICS_ENABLED, false));
+        mNotificationManager = new PlayerNotificationManager(this);
+        mCheckpointWriter = new PlaybackCheckpointWriter(
+                new PlaybackCheckpointStore(new File(getFilesDir(), PlaybackCheckpointStore.DIRECTORY_NAME)));
         initPlayer();
-        EventBus.getDefault().register(this);
+        PlayerCommandBus.getInstance().setCommandHandler(this);
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        PlayerCommandBus.getInstance().publishPlaybackModeChanged(queue.isShuffleEnabled(), queue.getRepeatMode());
+        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
+    }
+
+    // Settings changed on the settings screen while the service runs
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+        if (PREF_CROSSFADE_DURATION.equals(key)) {
+            mPlaybackEngine.setCrossfade(preferences.getInt(PREF_CROSSFADE_DURATION, 0), FadeCurve.EQUAL_POWER);
+            scheduleEngineTick();
+        } else if (PREF_PCM_ENGINE.equals(key) || PREF_RING_BUFFER_IN_MS.equals(key)
+                || PREF_OUTPUT_BUFFER_IN_MS.equals(key)) {
+            restartPlaybackEngine();
+        }
+    }
+
+    // The players are made with the engine settings, so the engine is made again. The song goes on from
+    // where it was, a paused one resumes from there on the next play
+    private void restartPlaybackEngine() {
+        boolean playing = mPlaybackEngine.isPlaying();
+        mEngineClockHandler.removeCallbacks(mEngineTick);
+        saveResumePosition();
+        mPlaybackEngine.release();
+        initPlayer();
+        if (playing) {
+            mPlaybackEngine.playCurrent(AudioItemsContainer.getInstance().takeResumePosition());
+            scheduleEngineTick();
+        }
     }
 
     @Override
@@ -81,32 +147,132 @@ public class AudioPlayerService extends Service implements MediaPlayer.OnPrepare
             case ACTION_STOP:
                 stop();
                 break;
+            case ACTION_SHUFFLE:
+                toggleShuffle();
+                break;
+            case ACTION_REPEAT:
+                switchRepeatMode();
+                break;
         }
     }
 
     public void initPlayer() {
-        mMediaPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        // Set MediaPlayer listeners
-        mMediaPlayer.setOnPreparedListener(this);
-        mMediaPlayer.setOnCompletionListener(this);
-        mMediaPlayer.setOnErrorListener(this);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        boolean normalizeVolume = preferences.getBoolean(PREF_VOLUME_NORMALIZATION, true);
+        LoudnessAnalyzer loudnessAnalyzer = LoudnessAnalyzer.getInstance(this);
+        boolean pcmEngine = preferences.getBoolean(PREF_PCM_ENGINE, false);
+        int ringBufferInMs = preferences.getInt(PREF_RING_BUFFER_IN_MS, DEFAULT_RING_BUFFER_IN_MS);
+        int outputBufferInMs = preferences.getInt(PREF_OUTPUT_BUFFER_IN_MS, DEFAULT_OUTPUT_BUFFER_IN_MS);
+        // Two players, the second one prepares the next track while the current one plays
+        mPlaybackEngine = new GaplessPlaybackEngine(AudioItemsContainer.getInstance().getQueue(), () -> {
+            Player player = pcmEngine
+                    ? createPcmPlayer(ringBufferInMs, outputBufferInMs)
+                    : new MediaPlayerAdapter(getApplicationContext());
+            return normalizeVolume ? new GainPlayer(player, loudnessAnalyzer::gainOf) : player;
+        });
+        mPlaybackEngine.setListener(this);
+
+        int crossfadeDuration = preferences.getInt(PREF_CROSSFADE_DURATION, 0);
+        mPlaybackEngine.setCrossfade(crossfadeDuration, FadeCurve.EQUAL_POWER);
+
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        queue.setShuffleEnabled(preferences.getBoolean(PREF_SHUFFLE_ENABLED, false));
+        queue.setRepeatMode(RepeatMode.valueOf(preferences.getString(PREF_REPEAT_MODE, RepeatMode.ALL.name())));
+        mNotificationManager.setPlaybackModes(queue.isShuffleEnabled(), queue.getRepeatMode());
+    }
+
+    // Decodes and buffers itself and writes to an AudioTrack, instead of leaving it all to MediaPlayer. Only
+    // this engine sees the samples, so the equalizer and the other effects play with it alone
+    private Player createPcmPlayer(int ringBufferInMs, int outputBufferInMs) {
+        Context context = getApplicationContext();
+        PcmPlayer player = new PcmPlayer(PcmDecoder::decode,
+                (sampleRate, channelCount) -> new AudioTrackOutput(context, sampleRate, channelCount, outputBufferInMs),
+                ringBufferInMs, mEngineClockHandler::post);
+        player.setOnUnderrunListener((underrunPlayer, underrunCount) ->
+                Log.w(LOG_TAG, "Audio buffer underrun, " + underrunCount + " in this track"));
+        player.setAudioProcessor(new AudioEffects(DspPresetStore.getInstance(context)));
+        return player;
+    }
+
+    private void toggleShuffle() {
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        queue.setShuffleEnabled(!queue.isShuffleEnabled());
+        onPlaybackModeChanged();
+    }
+
+    // Repeat all, repeat one, off and around again
+    private void switchRepeatMode() {
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        queue.setRepeatMode(queue.getRepeatMode().next());
+        onPlaybackModeChanged();
+    }
+
+    // Saves the modes and lets the engine re-prepare the track that follows the current one
+    private void onPlaybackModeChanged() {
+        PlayQueue queue = AudioItemsContainer.getInstance().getQueue();
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(PREF_SHUFFLE_ENABLED, queue.isShuffleEnabled())
+                .putString(PREF_REPEAT_MODE, queue.getRepeatMode().name())
+                .apply();
+        mPlaybackEngine.onQueueChanged();
+        mNotificationManager.setPlaybackModes(queue.isShuffleEnabled(), queue.getRepeatMode());
+        PlayerCommandBus.getInstance().publishPlaybackModeChanged(queue.isShuffleEnabled(), queue.getRepeatMode());
+    }
+
+    private void scheduleEngineTick() {
+        mEngineClockHandler.removeCallbacks(mEngineTick);
+        mEngineClockHandler.post(mEngineTick);
+    }
+
+    private void onEngineTick() {
+        long delay = mPlaybackEngine.onTick(SystemClock.uptimeMillis());
+        if (delay != GaplessPlaybackEngine.NO_TICK) {
+            mEngineClockHandler.postDelayed(mEngineTick, delay);
+        }
+    }
+
+    private void checkpoint() {
+        mEngineClockHandler.removeCallbacks(mCheckpointRunnable);
+        int position = mPlaybackEngine.hasCurrentTrack()
+                ? mPlaybackEngine.getCurrentPosition() : AudioItemsContainer.getInstance().getResumePosition();
+        mCheckpointWriter.checkpoint(AudioItemsContainer.getInstance().getQueue(), position, mTrackDurationInMs);
+        if (mPlaybackEngine.isPlaying()) {
+            mEngineClockHandler.postDelayed(mCheckpointRunnable, CHECKPOINT_INTERVAL_IN_MS);
+        }
+    }
+
+    // Keeps the position of the current song for a later resume, before the engine lets go of it
+    private void saveResumePosition() {
+        if (mPlaybackEngine.hasCurrentTrack()) {
+            AudioItemsContainer.getInstance().setResumePosition(mPlaybackEngine.getCurrentPosition());
+        }
     }
 
     public void playPauseTrack() {
         if (AudioItemsContainer.getInstance().getCurrentSong() == null) {
             AudioItemsContainer.getInstance().skipToNextSong();
             playTrack();
+            return;
         }
-        if (mMediaPlayer.isPlaying()) {
-            mMediaPlayer.pause();
+        if (!mPlaybackEngine.hasCurrentTrack()) {
+            // Restored from a checkpoint or stopped before, the song continues where it was left
+            mTrackStartSpan = Metrics.start();
+            mPlaybackEngine.playCurrent(AudioItemsContainer.getInstance().takeResumePosition());
+            buildNotification(ActionType.ACTION_PLAY);
+            return;
+        }
+        if (mPlaybackEngine.isPlaying()) {
+            mPlaybackEngine.pause();
             buildNotification(ActionType.ACTION_PAUSE);
         } else {
-            mMediaPlayer.start();
+            mPlaybackEngine.start();
             buildNotification(ActionType.ACTION_PLAY);
         }
+        scheduleEngineTick();
+        checkpoint();
 
-        EventBus.getDefault().post(mMediaPlayer.isPlaying());
+        PlayerCommandBus.getInstance().publishPlaybackState(mPlaybackEngine.isPlaying(),
+                mPlaybackEngine.getCurrentPosition());
     }
 
     public void playNextTrack() {
@@ -123,126 +289,131 @@ public class AudioPlayerService extends Service implements MediaPlayer.OnPrepare
 
     private void stop() {
 //        removeNotification();
-        mMediaPlayer.stop();
+        saveResumePosition();
+        mPlaybackEngine.stop();
+        checkpoint();
+        mNotificationManager.cancel();
         //Stop the service
         stopForeground(true);
         stopSelf();
     }
 
-    // Called when a user clicks one of the multimedia buttons
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void actionFromActivity(ActionType actionBody) {
-        makeAction(actionBody);
-
-    }
-
-    // Called from MainActivity when the user changes the progress of the song playback
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void setTrackProgress(Integer newTrackProgress) {
-        mMediaPlayer.seekTo(newTrackProgress);
+    // Called with the commands sent by MainActivity through the PlayerCommandBus
+    @Override
+    public void onCommand(int command, long argument) {
+        switch (command) {
+            case PlayerCommandQueue.COMMAND_ACTION:
+                // Called when a user clicks one of the multimedia buttons
+                makeAction(ACTIONS[(int) argument]);
+                break;
+            case PlayerCommandQueue.COMMAND_SEEK:
+                // Called when the user changes the progress of the song playback
+                if (mPlaybackEngine.hasCurrentTrack()) {
+                    mPlaybackEngine.seekTo((int) argument);
+                } else {
+                    AudioItemsContainer.getInstance().setResumePosition((int) argument);
+                }
+                scheduleEngineTick();
+                checkpoint();
+                break;
+            case PlayerCommandQueue.COMMAND_SELECT:
+                onTrackSelected(argument);
+                break;
+            case PlayerCommandQueue.COMMAND_QUEUE_CHANGED:
+                mPlaybackEngine.onQueueChanged();
+                checkpoint();
+                break;
+        }
     }
 
-    // Called when a user chooses another track to play
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    public void onTrackSelected(AudioItem eventBody) {
-        if (AudioItemsContainer.getInstance().getCurrentSong() == eventBody) {
+    // Called when a user chooses another track to play. The track is looked up by id here, a sort or a
+    // library change since the click may have moved it
+    private void onTrackSelected(long itemId) {
+        AudioItemsContainer container = AudioItemsContainer.getInstance();
+        int index = container.getQueue().indexOfId(itemId);
+        if (index == PlayQueue.NO_POSITION) {
+            return;
+        }
+        if (container.getCurrentSongIndex() == index) {
             playPauseTrack();
         } else {
-            AudioItemsContainer.getInstance().setCurrentSong(eventBody);
+            container.getQueue().moveTo(index);
             playTrack();
         }
     }
 
     private void playTrack() {
-        mMediaPlayer.reset();
-        AudioItem item = AudioItemsContainer.getInstance().getCurrentSong();
-        Uri trackUri = Uri.parse(item.getPath());
-        try {
-            mMediaPlayer.setDataSource(getApplicationContext(), trackUri);
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Error setting data source", e);
-        }
-        mMediaPlayer.prepareAsync();
+        AudioItemsContainer.getInstance().setResumePosition(0);
+        mTrackStartSpan = Metrics.start();
+        mPlaybackEngine.playCurrent();
 
         buildNotification(ActionType.ACTION_PLAY);
     }
 
     private void buildNotification(ActionType playbackStatus) {
+        long span = Metrics.start();
         AudioItem song = AudioItemsContainer.getInstance().getCurrentSong();
-
-        RemoteViews remoteViews = new RemoteViews(getPackageName(), R.layout.notification_layout);
-
-        remoteViews.setTextViewText(R.id.track_name, song.getName());
-        remoteViews.setTextViewText(R.id.album_name, song.getAlbumName());
-
-        int icon = (playbackStatus == ActionType.ACTION_PLAY) ? R.drawable.ic_pause : R.drawable.ic_play;
-
-        remoteViews.setInt(R.id.play_button, "setBackgroundResource", icon);
-
-        remoteViews.setOnClickPendingIntent(R.id.previous_button, generatePendingIntent(ActionType.ACTION_PREVIOUS.name()));
-        remoteViews.setOnClickPendingIntent(R.id.play_button, generatePendingIntent(playbackStatus.name()));
-        remoteViews.setOnClickPendingIntent(R.id.next_button, generatePendingIntent(ActionType.ACTION_NEXT.name()));
-        remoteViews.setOnClickPendingIntent(R.id.close_button, generatePendingIntent(ActionType.ACTION_STOP.name()));
-
-        Notification.Builder notificationBuilder = new Notification.Builder(this)
-                .setSmallIcon(R.drawable.ic_audiotrack);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            notificationBuilder
-                    .setChannelId(NOTIFICATION_CHANEL_ID)
-                    .setCustomContentView(remoteViews);
-            NotificationManager mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANEL_ID,
-                    getString(R.string.notification_chanel_title), NotificationManager.IMPORTANCE_DEFAULT);
-            if (mNotificationManager != null) {
-                mNotificationManager.createNotificationChannel(channel);
-                mNotificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
-            }
-        } else {
-            notificationBuilder.setContent(remoteViews);
-        }
-        startForeground(NOTIFICATION_ID, notificationBuilder.build());
-    }
-
-    private PendingIntent generatePendingIntent(String intentAction) {
-        Intent intent = new Intent(getApplicationContext(), AudioPlayerService.class);
-        intent.setAction(intentAction);
-        return PendingIntent.getService(this, 1, intent, 0);
+        mNotificationManager.update(song, playbackStatus == ActionType.ACTION_PLAY);
+        Metrics.record(Operation.NOTIFICATION_UPDATE, span);
     }
 
-    private void removeNotification() {
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (notificationManager != null) {
-            notificationManager.cancel(NOTIFICATION_ID);
+    @Override
+    public void onTrackStarted(int position, int duration) {
+        Metrics.record(Operation.TRACK_START, mTrackStartSpan);
+        mTrackStartSpan = Metrics.NO_SPAN;
+        // Send event to MainActivity about what the song started to play
+        PlayerCommandBus.getInstance().publishTrackStarted(position, duration);
+        if (mPlaybackEngine.getCurrentPosition() > 0) {
+            // Resumed in the middle of the track
+            PlayerCommandBus.getInstance().publishPlaybackState(mPlaybackEngine.isPlaying(),
+                    mPlaybackEngine.getCurrentPosition());
+        }
+        mTrackDurationInMs = duration;
+        scheduleEngineTick();
+        checkpoint();
+        AudioItem song = AudioItemsContainer.getInstance().getCurrentSong();
+        if (song != null) {
+            SmartPlaylists.getInstance(this).onPlayed(song);
         }
     }
 
+    // Called when the engine moves on by itself, after a track has completed or failed
     @Override
-    public void onPrepared(MediaPlayer mediaPlayer) {
-        int position = AudioItemsContainer.getInstance().getCurrentSongIndex();
-        int duration = mMediaPlayer.getDuration();
+    public void onTrackChanged(AudioItem item) {
+        buildNotification(ActionType.ACTION_PLAY);
+    }
 
-        // Send event to MainActivity about what the song started to play
-        EventBus.getDefault().post(new OnTrackStartedEvent(position, duration));
-        mediaPlayer.start();
+    @Override
+    public void onPlaybackError(AudioItem item, Exception e) {
+        Log.e(LOG_TAG, "Playback error.", e);
     }
 
     @Override
-    public void onCompletion(MediaPlayer mediaPlayer) {
-        playNextTrack();
+    public void onQueueFinished() {
+        buildNotification(ActionType.ACTION_PAUSE);
+        checkpoint();
+        PlayerCommandBus.getInstance().publishPlaybackState(false, mPlaybackEngine.getCurrentPosition());
     }
 
+    // adb shell dumpsys activity service com.antont.player/.services.AudioPlayerService
     @Override
-    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
-        Log.d(LOG_TAG, "Playback error.");
-        mediaPlayer.reset();
-        return false;
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println(Metrics.isEnabled() ? "Metrics" : "Metrics (off)");
+        writer.print(Metrics.report());
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        EventBus.getDefault().post(new OnServiceDestroyEvent());
-        EventBus.getDefault().unregister(this);
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        mEngineClockHandler.removeCallbacks(mEngineTick);
+        saveResumePosition();
+        checkpoint();
+        mEngineClockHandler.removeCallbacks(mCheckpointRunnable);
+        mCheckpointWriter.release();
+        SmartPlaylists.getInstance(this).flushHistory();
+        mPlaybackEngine.release();
+        PlayerCommandBus.getInstance().setCommandHandler(null);
+        PlayerCommandBus.getInstance().publishServiceDestroyed();
     }
 }
@@ -0,0 +1,84 @@
+package com.antont.player.services;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.playback.PlaybackCheckpoint;
+import com.antont.player.playback.PlaybackCheckpointStore;
+
+import java.io.IOException;
+
+// Writes playback checkpoints on a background thread. The caller only captures the checkpoint, which copies
+// the queue ids when the queue version has changed and nothing else. A checkpoint that has not been
+// written yet is replaced by the next one, so a burst of checkpoints costs one write.
+class PlaybackCheckpointWriter {
+
+    private final static String LOG_TAG = "Checkpoint writer";
+    private static final int NO_VERSION = Integer.MIN_VALUE;
+
+    private final PlaybackCheckpointStore mStore;
+    private final HandlerThread mWorkerThread = new HandlerThread("CheckpointWriter", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Runnable mWriteRunnable = this::writePending;
+    private final Object mLock = new Object();
+
+    // Written on the calling thread, reset by the worker when a queue could not be written
+    private volatile int mCapturedQueueVersion = NO_VERSION;
+
+    // Guarded by mLock
+    private PlaybackCheckpoint mPending;
+
+    PlaybackCheckpointWriter(PlaybackCheckpointStore store) {
+        mStore = store;
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+    }
+
+    public void checkpoint(PlayQueue queue, int positionInMs, int durationInMs) {
+        if (queue.getCurrent() == null) {
+            return;
+        }
+        boolean queueChanged = queue.getVersion() != mCapturedQueueVersion;
+        mCapturedQueueVersion = queue.getVersion();
+        PlaybackCheckpoint checkpoint = PlaybackCheckpoint.capture(queue, queueChanged, positionInMs, durationInMs);
+
+        synchronized (mLock) {
+            if (!checkpoint.hasQueue() && mPending != null && mPending.hasQueue()) {
+                // The queue of the replaced checkpoint has not been written yet
+                checkpoint = checkpoint.withQueue(mPending.getQueueIds());
+            }
+            boolean scheduled = mPending != null;
+            mPending = checkpoint;
+            if (!scheduled) {
+                mWorkerHandler.post(mWriteRunnable);
+            }
+        }
+    }
+
+    // Pending checkpoints are still written before the thread quits
+    public void release() {
+        mWorkerThread.quitSafely();
+    }
+
+    private void writePending() {
+        PlaybackCheckpoint checkpoint;
+        synchronized (mLock) {
+            checkpoint = mPending;
+            mPending = null;
+        }
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            mStore.write(checkpoint);
+        } catch (IOException e) {
+            if (checkpoint.hasQueue()) {
+                mCapturedQueueVersion = NO_VERSION;
+            }
+            Log.e(LOG_TAG, "Error writing playback checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.antont.player.services;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.antont.player.enums.ActionType;
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.metrics.Metrics;
+import com.antont.player.metrics.Operation;
+import com.antont.player.playback.PlayerCommandQueue;
+
+// Typed channel between the UI and AudioPlayerService. Commands go through a PlayerCommandQueue and are
+// delivered to the service in one batch on the next main loop iteration, state goes back to the UI with
+// direct listener calls. All messages carry primitives only. Main thread only.
+public class PlayerCommandBus {
+
+    private final static String LOG_TAG = "Player command bus";
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static PlayerCommandBus mInstance;
+
+    private final PlayerCommandQueue mQueue = new PlayerCommandQueue(QUEUE_CAPACITY);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDrainRunnable = this::drain;
+    private boolean mDrainScheduled;
+    // Started with the first command of a batch, ended when the batch is handed to the service
+    private long mDispatchSpan = Metrics.NO_SPAN;
+
+    private PlayerCommandQueue.CommandHandler mCommandHandler;
+    private PlayerStateListener mStateListener;
+
+    private PlayerCommandBus() {
+    }
+
+    public static PlayerCommandBus getInstance() {
+        if (mInstance == null) {
+            mInstance = new PlayerCommandBus();
+        }
+        return mInstance;
+    }
+
+    // Commands sent while no handler is set wait in the queue for the next one
+    public void setCommandHandler(PlayerCommandQueue.CommandHandler commandHandler) {
+        mCommandHandler = commandHandler;
+        if (commandHandler != null && !mQueue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    public void setStateListener(PlayerStateListener stateListener) {
+        mStateListener = stateListener;
+    }
+
+    // Only clears the listener if it has not been replaced already, e.g. by a recreated activity
+    public void removeStateListener(PlayerStateListener stateListener) {
+        if (mStateListener == stateListener) {
+            mStateListener = null;
+        }
+    }
+
+    public void sendAction(ActionType action) {
+        send(PlayerCommandQueue.COMMAND_ACTION, action.ordinal());
+    }
+
+    public void sendSeek(int positionInMs) {
+        send(PlayerCommandQueue.COMMAND_SEEK, positionInMs);
+    }
+
+    public void sendSelect(long itemId) {
+        send(PlayerCommandQueue.COMMAND_SELECT, itemId);
+    }
+
+    // The UI has reordered the play queue, the track that follows the current one may be another
+    public void sendQueueChanged() {
+        send(PlayerCommandQueue.COMMAND_QUEUE_CHANGED, 0);
+    }
+
+    public void publishPlaybackState(boolean playing, int positionInMs) {
+        if (mStateListener != null) {
+            mStateListener.onPlaybackStateChanged(playing, positionInMs);
+        }
+    }
+
+    public void publishTrackStarted(int trackIndex, int trackDuration) {
+        if (mStateListener != null) {
+            mStateListener.onTrackStarted(trackIndex, trackDuration);
+        }
+    }
+
+    public void publishPlaybackModeChanged(boolean shuffleEnabled, RepeatMode repeatMode) {
+        if (mStateListener != null) {
+            mStateListener.onPlaybackModeChanged(shuffleEnabled, repeatMode);
+        }
+    }
+
+    public void publishServiceDestroyed() {
+        if (mStateListener != null) {
+            mStateListener.onServiceDestroyed();
+        }
+    }
+
+    private void send(int command, long argument) {
+        if (mDispatchSpan == Metrics.NO_SPAN) {
+            mDispatchSpan = Metrics.start();
+        }
+        if (!mQueue.offer(command, argument)) {
+            // Full, deliver what is queued right away to make room
+            drain();
+            if (!mQueue.offer(command, argument)) {
+                // Still full, there is no service to deliver to. The newest command is what the user wants now
+                Log.w(LOG_TAG, "Command queue full without a service, dropping the oldest command");
+                mQueue.removeOldest();
+                mQueue.offer(command, argument);
+            }
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!mDrainScheduled) {
+            mDrainScheduled = true;
+            mHandler.post(mDrainRunnable);
+        }
+    }
+
+    private void drain() {
+        mDrainScheduled = false;
+        if (mCommandHandler != null) {
+            Metrics.record(Operation.COMMAND_DISPATCH, mDispatchSpan);
+            mDispatchSpan = Metrics.NO_SPAN;
+            mQueue.drain(mCommandHandler);
+        }
+    }
+
+    public interface PlayerStateListener {
+        void onPlaybackStateChanged(boolean playing, int positionInMs);
+
+        void onTrackStarted(int trackIndex, int trackDuration);
+
+        void onPlaybackModeChanged(boolean shuffleEnabled, RepeatMode repeatMode);
+
+        void onServiceDestroyed();
+    }
+}
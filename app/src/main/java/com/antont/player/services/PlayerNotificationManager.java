@@ -0,0 +1,220 @@
+package com.antont.player.services;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.widget.RemoteViews;
+
+import com.antont.player.R;
+import com.antont.player.artwork.ArtworkLoader;
+import com.antont.player.artwork.PendingRequests;
+import com.antont.player.enums.ActionType;
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.models.AudioItem;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Owns the playback notification of the service. The channel, the builder and the pending intents are
+// created once; updates are compared with what is on screen, bursts within a frame are coalesced into one
+// post, and only the fields that changed are pushed into the cached RemoteViews.
+class PlayerNotificationManager {
+
+    private static final int NOTIFICATION_ID = 101;
+    private static final long COALESCE_DELAY_IN_MS = 16;
+    // RemoteViews keeps every applied action, it is rebuilt from scratch after this many partial updates
+    private static final int MAX_PARTIAL_UPDATES = 8;
+    private static final int MODE_ON_ALPHA = 255;
+    private static final int MODE_OFF_ALPHA = 96;
+    private static final int ARTWORK_SIZE_IN_DP = 48;
+
+    private final Service mService;
+    private final NotificationManager mNotificationManager;
+    private final Notification.Builder mBuilder;
+    private final Map<ActionType, PendingIntent> mPendingIntents = new EnumMap<>(ActionType.class);
+    private final Handler mHandler = new Handler();
+    private final Runnable mPostRunnable = this::post;
+    private final int mArtworkSize;
+
+    private RemoteViews mRemoteViews;
+    private int mPartialUpdates;
+    private boolean mInForeground;
+
+    // What is on screen
+    private AudioItem mPostedSong;
+    private boolean mPostedPlaying;
+    private boolean mPostedShuffle;
+    private RepeatMode mPostedRepeatMode;
+    private Bitmap mPostedArtwork;
+    // What will be posted with the next frame
+    private AudioItem mPendingSong;
+    private boolean mPendingPlaying;
+    private boolean mPendingShuffle;
+    private RepeatMode mPendingRepeatMode = RepeatMode.ALL;
+    private Bitmap mPendingArtwork;
+    // Artwork of mPendingSong while it loads
+    private AudioItem mArtworkSong;
+    private PendingRequests<String, Bitmap>.Request mArtworkRequest;
+
+    PlayerNotificationManager(Service service) {
+        mService = service;
+        mNotificationManager = (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
+        mBuilder = new Notification.Builder(service).setSmallIcon(R.drawable.ic_audiotrack);
+        mArtworkSize = Math.round(ARTWORK_SIZE_IN_DP * service.getResources().getDisplayMetrics().density);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(AudioPlayerService.NOTIFICATION_CHANEL_ID,
+                    service.getString(R.string.notification_chanel_title), NotificationManager.IMPORTANCE_DEFAULT);
+            if (mNotificationManager != null) {
+                mNotificationManager.createNotificationChannel(channel);
+            }
+            mBuilder.setChannelId(AudioPlayerService.NOTIFICATION_CHANEL_ID);
+        }
+    }
+
+    public void update(AudioItem song, boolean playing) {
+        if (song == null) {
+            return;
+        }
+        if (song != mArtworkSong) {
+            loadArtwork(song);
+        }
+        mPendingSong = song;
+        mPendingPlaying = playing;
+        schedulePost();
+    }
+
+    // The notification goes up with the previous artwork cleared, the new one follows when it has loaded
+    private void loadArtwork(AudioItem song) {
+        if (mArtworkRequest != null) {
+            mArtworkRequest.cancel();
+        }
+        mArtworkSong = song;
+        mPendingArtwork = null;
+        mArtworkRequest = ArtworkLoader.getInstance(mService).load(song, mArtworkSize, artwork -> {
+            mArtworkRequest = null;
+            mPendingArtwork = artwork;
+            if (artwork != null && mInForeground) {
+                schedulePost();
+            }
+        });
+    }
+
+    // Shown with the next update, or right away if the notification is already there
+    public void setPlaybackModes(boolean shuffleEnabled, RepeatMode repeatMode) {
+        mPendingShuffle = shuffleEnabled;
+        mPendingRepeatMode = repeatMode;
+        if (mPendingSong != null && mInForeground) {
+            schedulePost();
+        }
+    }
+
+    private void schedulePost() {
+        mHandler.removeCallbacks(mPostRunnable);
+        mHandler.postDelayed(mPostRunnable, COALESCE_DELAY_IN_MS);
+    }
+
+    // Drops a pending update, the service removes the notification itself with stopForeground()
+    public void cancel() {
+        mHandler.removeCallbacks(mPostRunnable);
+        if (mArtworkRequest != null) {
+            mArtworkRequest.cancel();
+            mArtworkRequest = null;
+        }
+        mArtworkSong = null;
+        mPendingArtwork = null;
+        mPostedArtwork = null;
+        mInForeground = false;
+        mPostedSong = null;
+        mRemoteViews = null;
+    }
+
+    private void post() {
+        boolean songChanged = mPendingSong != mPostedSong;
+        boolean stateChanged = mPendingPlaying != mPostedPlaying;
+        boolean modesChanged = mPendingShuffle != mPostedShuffle || mPendingRepeatMode != mPostedRepeatMode;
+        boolean artworkChanged = mPendingArtwork != mPostedArtwork;
+        if (mRemoteViews != null && !songChanged && !stateChanged && !modesChanged && !artworkChanged) {
+            return;
+        }
+
+        if (mRemoteViews == null || mPartialUpdates >= MAX_PARTIAL_UPDATES) {
+            mRemoteViews = new RemoteViews(mService.getPackageName(), R.layout.notification_layout);
+            mRemoteViews.setOnClickPendingIntent(R.id.previous_button, getPendingIntent(ActionType.ACTION_PREVIOUS));
+            mRemoteViews.setOnClickPendingIntent(R.id.next_button, getPendingIntent(ActionType.ACTION_NEXT));
+            mRemoteViews.setOnClickPendingIntent(R.id.close_button, getPendingIntent(ActionType.ACTION_STOP));
+            mRemoteViews.setOnClickPendingIntent(R.id.shuffle_button, getPendingIntent(ActionType.ACTION_SHUFFLE));
+            mRemoteViews.setOnClickPendingIntent(R.id.repeat_button, getPendingIntent(ActionType.ACTION_REPEAT));
+            mPartialUpdates = 0;
+            songChanged = true;
+            stateChanged = true;
+            modesChanged = true;
+            artworkChanged = true;
+        } else {
+            mPartialUpdates++;
+        }
+
+        if (songChanged) {
+            mRemoteViews.setTextViewText(R.id.track_name, mPendingSong.getName());
+            mRemoteViews.setTextViewText(R.id.album_name, mPendingSong.getAlbumName());
+        }
+        if (stateChanged) {
+            int icon = mPendingPlaying ? R.drawable.ic_pause : R.drawable.ic_play;
+            ActionType playAction = mPendingPlaying ? ActionType.ACTION_PLAY : ActionType.ACTION_PAUSE;
+            mRemoteViews.setInt(R.id.play_button, "setBackgroundResource", icon);
+            mRemoteViews.setOnClickPendingIntent(R.id.play_button, getPendingIntent(playAction));
+        }
+        if (artworkChanged) {
+            if (mPendingArtwork != null) {
+                mRemoteViews.setImageViewBitmap(R.id.artwork, mPendingArtwork);
+            } else {
+                mRemoteViews.setImageViewResource(R.id.artwork, R.drawable.ic_audiotrack);
+            }
+        }
+        if (modesChanged) {
+            int repeatIcon = mPendingRepeatMode == RepeatMode.ONE ? R.drawable.ic_repeat_one : R.drawable.ic_repeat;
+            mRemoteViews.setInt(R.id.shuffle_button, "setImageAlpha", mPendingShuffle ? MODE_ON_ALPHA : MODE_OFF_ALPHA);
+            mRemoteViews.setImageViewResource(R.id.repeat_button, repeatIcon);
+            mRemoteViews.setInt(R.id.repeat_button, "setImageAlpha",
+                    mPendingRepeatMode == RepeatMode.OFF ? MODE_OFF_ALPHA : MODE_ON_ALPHA);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mBuilder.setCustomContentView(mRemoteViews);
+        } else {
+            mBuilder.setContent(mRemoteViews);
+        }
+        Notification notification = mBuilder.build();
+
+        // The first post promotes the service, later ones only replace the notification
+        if (!mInForeground) {
+            mService.startForeground(NOTIFICATION_ID, notification);
+            mInForeground = true;
+        } else if (mNotificationManager != null) {
+            mNotificationManager.notify(NOTIFICATION_ID, notification);
+        }
+        mPostedSong = mPendingSong;
+        mPostedPlaying = mPendingPlaying;
+        mPostedShuffle = mPendingShuffle;
+        mPostedRepeatMode = mPendingRepeatMode;
+        mPostedArtwork = mPendingArtwork;
+    }
+
+    private PendingIntent getPendingIntent(ActionType action) {
+        PendingIntent pendingIntent = mPendingIntents.get(action);
+        if (pendingIntent == null) {
+            Intent intent = new Intent(mService.getApplicationContext(), AudioPlayerService.class);
+            intent.setAction(action.name());
+            pendingIntent = PendingIntent.getService(mService, action.ordinal(), intent, 0);
+            mPendingIntents.put(action, pendingIntent);
+        }
+        return pendingIntent;
+    }
+}
@@ -0,0 +1,60 @@
+package com.antont.player.sort;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.antont.player.enums.SortOrder;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Owns a SortEngine on a background thread, the sort itself fans out to a fork-join pool with a worker
+// per core. Only the result of the latest sort is delivered, on the main thread.
+public class LibrarySorter {
+
+    private final HandlerThread mWorkerThread = new HandlerThread("SortWorker", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ForkJoinPool mPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // Accessed on the worker thread only
+    private final SortEngine mEngine = new SortEngine(mPool);
+
+    private volatile int mGeneration;
+
+    public LibrarySorter() {
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+    }
+
+    // Supersedes the sorts that have not been delivered yet, the list is copied on the calling thread
+    public void sort(List<AudioItem> audioItems, SortOrder order, OnSortedListener listener) {
+        List<AudioItem> items = new ArrayList<>(audioItems);
+        int generation = ++mGeneration;
+        mWorkerHandler.post(() -> {
+            if (generation != mGeneration) {
+                return;
+            }
+            SortResult result = mEngine.sort(items, order);
+            mMainHandler.post(() -> {
+                if (generation == mGeneration) {
+                    listener.onSorted(result);
+                }
+            });
+        });
+    }
+
+    // The pool is shut down on the worker thread, after a sort that may still be running
+    public void release() {
+        mGeneration++;
+        mWorkerHandler.post(mPool::shutdown);
+        mWorkerThread.quitSafely();
+    }
+
+    public interface OnSortedListener {
+        void onSorted(SortResult result);
+    }
+}
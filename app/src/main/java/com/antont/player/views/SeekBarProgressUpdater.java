@@ -0,0 +1,85 @@
+package com.antont.player.views;
+
+import android.view.Choreographer;
+import android.widget.SeekBar;
+
+import com.antont.player.playback.ProgressClock;
+
+// Moves a SeekBar along with playback on the Choreographer, aligned with vsync. The position comes from
+// a ProgressClock, and the bar is only touched when the position has moved by at least one pixel of its
+// track, so slow tracks on narrow bars wake up a few times a second rather than on every frame.
+// Nothing is allocated per frame.
+public class SeekBarProgressUpdater implements Choreographer.FrameCallback {
+
+    private static final long NANOS_IN_MS = 1_000_000;
+
+    private final SeekBar mSeekBar;
+    private final ProgressClock mClock = new ProgressClock();
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+
+    private boolean mScheduled;
+    private boolean mSuspended;
+
+    public SeekBarProgressUpdater(SeekBar seekBar) {
+        mSeekBar = seekBar;
+    }
+
+    public void setDuration(int durationInMs) {
+        mClock.setDuration(durationInMs);
+        mSeekBar.setMax(durationInMs);
+        render();
+    }
+
+    // Called with every position the player reports
+    public void update(int positionInMs, boolean playing) {
+        mClock.update(positionInMs, playing, now());
+        render();
+    }
+
+    // While the user drags the thumb the bar belongs to them
+    public void setSuspended(boolean suspended) {
+        mSuspended = suspended;
+        render();
+    }
+
+    public void stop() {
+        mClock.update(0, false, now());
+        cancel();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        render();
+    }
+
+    private void render() {
+        cancel();
+        if (mSuspended) {
+            return;
+        }
+        long now = now();
+        mSeekBar.setProgress(mClock.positionAt(now));
+        if (mClock.isPlaying()) {
+            long delay = mClock.millisUntilNextPixel(now, trackWidth());
+            mChoreographer.postFrameCallbackDelayed(this, delay);
+            mScheduled = true;
+        }
+    }
+
+    private void cancel() {
+        if (mScheduled) {
+            mChoreographer.removeFrameCallback(this);
+            mScheduled = false;
+        }
+    }
+
+    private int trackWidth() {
+        return mSeekBar.getWidth() - mSeekBar.getPaddingLeft() - mSeekBar.getPaddingRight();
+    }
+
+    // Same time base as Choreographer frame times
+    private static long now() {
+        return System.nanoTime() / NANOS_IN_MS;
+    }
+}
@@ -0,0 +1,85 @@
+package com.antont.player.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.antont.player.R;
+import com.antont.player.waveform.Waveform;
+
+// Draws a waveform overview as one vertical line per pixel column, from the lowest to the highest sample of
+// the buckets under the column. The lines are computed when the waveform or the size changes, drawing only
+// hands them to the canvas. Meant to sit behind a SeekBar with the same horizontal padding.
+public class WaveformView extends View {
+
+    private static final int ALPHA = 80;
+
+    private final Paint mPaint = new Paint();
+    private Waveform mWaveform;
+    // x0, y0, x1, y1 of every line
+    private float[] mLines = new float[0];
+    private int mLineCount;
+
+    public WaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPaint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+        mPaint.setAlpha(ALPHA);
+        mPaint.setStrokeWidth(1f);
+    }
+
+    // Null clears the view
+    public void setWaveform(Waveform waveform) {
+        mWaveform = waveform;
+        computeLines();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        computeLines();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLineCount > 0) {
+            canvas.drawLines(mLines, 0, mLineCount * 4, mPaint);
+        }
+    }
+
+    private void computeLines() {
+        mLineCount = 0;
+        int trackWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (mWaveform == null || mWaveform.size() == 0 || trackWidth <= 0) {
+            return;
+        }
+        int columns = Math.round(trackWidth * mWaveform.getSpan());
+        if (mLines.length < columns * 4) {
+            mLines = new float[trackWidth * 4];
+        }
+        int size = mWaveform.size();
+        float centerY = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        float scale = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f / 128f;
+        for (int column = 0; column < columns; column++) {
+            int first = (int) ((long) column * size / columns);
+            int last = Math.max(first + 1, (int) ((long) (column + 1) * size / columns));
+            int min = Byte.MAX_VALUE;
+            int max = Byte.MIN_VALUE;
+            for (int bucket = first; bucket < last; bucket++) {
+                min = Math.min(min, mWaveform.getMin(bucket));
+                max = Math.max(max, mWaveform.getMax(bucket));
+            }
+            float x = getPaddingLeft() + column + 0.5f;
+            int offset = mLineCount * 4;
+            mLines[offset] = x;
+            mLines[offset + 1] = centerY - max * scale;
+            mLines[offset + 2] = x;
+            // At least a pixel high, silence shows as a flat line
+            mLines[offset + 3] = Math.max(centerY - min * scale, centerY - max * scale + 1f);
+            mLineCount++;
+        }
+    }
+}
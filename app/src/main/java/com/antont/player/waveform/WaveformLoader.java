@@ -0,0 +1,130 @@
+package com.antont.player.waveform;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.antont.player.artwork.ArtworkDiskCache;
+import com.antont.player.audio.PcmDecoder;
+import com.antont.player.audio.PcmSink;
+import com.antont.player.models.AudioItem;
+
+import java.io.File;
+import java.io.IOException;
+
+// Makes the waveform of a track on a background thread: from the disk cache when the file has not changed,
+// otherwise by decoding the whole track through a PeakReducer. While decoding, the buckets so far are
+// delivered every PARTIAL_INTERVAL_IN_MS so the overview fills in from the left. Only the latest load is
+// delivered, on the main thread.
+public class WaveformLoader {
+
+    private final static String LOG_TAG = "Waveform loader";
+    private static final String CACHE_DIRECTORY = "waveforms";
+    private static final long CACHE_SIZE = 2 * 1024 * 1024;
+    private static final long PARTIAL_INTERVAL_IN_MS = 250;
+
+    private final HandlerThread mWorkerThread = new HandlerThread("WaveformWorker", Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // The byte store of the artwork thumbnails serves the waveforms as well, in a directory of its own
+    private final ArtworkDiskCache mCache;
+
+    private volatile int mGeneration;
+
+    public WaveformLoader(Context context) {
+        mCache = new ArtworkDiskCache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+    }
+
+    // Supersedes the load still running, which stops decoding at its next buffer
+    public void load(AudioItem item, OnWaveformListener listener) {
+        String path = item.getPath();
+        int generation = ++mGeneration;
+        if (path == null) {
+            return;
+        }
+        mWorkerHandler.post(() -> {
+            if (generation == mGeneration) {
+                Waveform waveform = loadWaveform(generation, path, listener);
+                if (waveform != null) {
+                    deliver(generation, waveform, listener);
+                }
+            }
+        });
+    }
+
+    public void release() {
+        mGeneration++;
+        mWorkerThread.quitSafely();
+    }
+
+    // Worker thread. Null if the load has been superseded or the track cannot be decoded
+    private Waveform loadWaveform(int generation, String path, OnWaveformListener listener) {
+        File file = new File(path);
+        long fileSize = file.length();
+        long lastModified = file.lastModified();
+        byte[] cached = mCache.get(path);
+        Waveform waveform = cached == null ? null : WaveformCodec.decode(cached, fileSize, lastModified);
+        if (waveform != null) {
+            return waveform;
+        }
+
+        PeakReducer[] reducer = new PeakReducer[1];
+        long[] nextDelivery = {SystemClock.uptimeMillis() + PARTIAL_INTERVAL_IN_MS};
+        try {
+            boolean complete = PcmDecoder.decode(path, new PcmSink() {
+                @Override
+                public boolean onFormat(int sampleRate, int channelCount, long durationInUs) {
+                    if (reducer[0] == null || reducer[0].getFrameCount() == 0) {
+                        reducer[0] = new PeakReducer(channelCount, durationInUs * sampleRate / 1_000_000);
+                    }
+                    return generation == mGeneration;
+                }
+
+                @Override
+                public boolean onSamples(short[] samples, int frameCount) {
+                    reducer[0].process(samples, 0, frameCount);
+                    long now = SystemClock.uptimeMillis();
+                    if (now >= nextDelivery[0]) {
+                        nextDelivery[0] = now + PARTIAL_INTERVAL_IN_MS;
+                        deliver(generation, reducer[0].getWaveform(), listener);
+                    }
+                    return generation == mGeneration;
+                }
+            });
+            if (!complete) {
+                return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot decode " + path, e);
+            return null;
+        }
+
+        reducer[0].finish();
+        waveform = reducer[0].getWaveform();
+        try {
+            mCache.put(path, WaveformCodec.encode(waveform, fileSize, lastModified));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error saving waveform", e);
+        }
+        return waveform;
+    }
+
+    private void deliver(int generation, Waveform waveform, OnWaveformListener listener) {
+        mMainHandler.post(() -> {
+            if (generation == mGeneration) {
+                listener.onWaveform(waveform);
+            }
+        });
+    }
+
+    public interface OnWaveformListener {
+        // Called with partial waveforms while the track is decoded, then with the complete one
+        void onWaveform(Waveform waveform);
+    }
+}
@@ -0,0 +1,62 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class LibrarySyncStateTest {
+
+    @Test
+    public void update_classifiesChangedRows() {
+        LibrarySyncState state = new LibrarySyncState(Arrays.asList(
+                new AudioItem(1, 100, "/a.mp3", "a.mp3", "album"),
+                new AudioItem(2, 100, "/b.mp3", "b.mp3", "album"),
+                new AudioItem(3, 100, "/c.mp3", "c.mp3", "album")));
+        assertEquals(3, state.getMaxId());
+        assertEquals(100, state.getMaxDateModified());
+
+        AudioItem edited = new AudioItem(2, 150, "/b.mp3", "b.mp3", "other album");
+        AudioItem inserted = new AudioItem(4, 120, "/d.mp3", "d.mp3", "album");
+        LibraryDelta delta = state.update(Arrays.asList(edited, inserted), new HashSet<>(Arrays.asList(2L, 3L, 4L)));
+
+        assertEquals(Collections.singletonList(inserted), delta.getAddedItems());
+        assertEquals(Collections.singletonList(edited), delta.getUpdatedItems());
+        assertEquals(Collections.singleton(1L), delta.getRemovedIds());
+        assertEquals(4, state.getMaxId());
+        assertEquals(150, state.getMaxDateModified());
+        assertEquals(3, state.size());
+    }
+
+    @Test
+    public void update_withoutChangesIsEmptyAndKeepsGeneration() {
+        LibrarySyncState state = new LibrarySyncState(Collections.singletonList(new AudioItem(1, 100, "/a.mp3", "a.mp3", "album")));
+        long generation = state.getGeneration();
+
+        LibraryDelta delta = state.update(Collections.emptyList(), Collections.singleton(1L));
+
+        assertTrue(delta.isEmpty());
+        assertEquals(generation, state.getGeneration());
+    }
+
+    // The snapshot stamp, the stamp after a delta and the MediaStore probe must agree on the same library
+    @Test
+    public void getGeneration_matchesTheStampOfTheItemsAndOfTheAggregateRow() {
+        LibrarySyncState state = new LibrarySyncState(Arrays.asList(
+                new AudioItem(7, 100, "/a.mp3", "a.mp3", "album"),
+                new AudioItem(3, 250, "/b.mp3", "b.mp3", "album")));
+
+        assertEquals(MediaStoreScanner.generationOf(2, 7, 250), state.getGeneration());
+        assertEquals(MediaStoreScanner.generationOf(Arrays.asList(
+                new AudioItem(3, 250, "/b.mp3", "b.mp3", "album"),
+                new AudioItem(7, 100, "/a.mp3", "a.mp3", "album"))), state.getGeneration());
+        assertEquals(MediaStoreScanner.generationOf(0, 0, 0),
+                MediaStoreScanner.generationOf(Collections.<AudioItem>emptyList()));
+        assertNotEquals(MediaStoreScanner.UNKNOWN_GENERATION, state.getGeneration());
+    }
+}
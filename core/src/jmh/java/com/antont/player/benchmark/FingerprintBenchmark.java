@@ -0,0 +1,117 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.duplicates.AudioFingerprinter;
+import com.antont.player.duplicates.Fingerprint;
+import com.antont.player.duplicates.FingerprintIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Fingerprinting the first 30 s of a track, the most the fingerprinter reads, and finding the copies in a
+// library. The library is made of random fingerprints with one copy in ten, a copy being a fingerprint
+// with bits flipped at the rate measured between real copies; the index only looks at the bits, so
+// random ones cost what fingerprints of real audio cost. FingerprintIndexTest checks what is found.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FingerprintBenchmark {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int CHANNEL_COUNT = 2;
+    // Frames per process() call, the size of a decoder buffer
+    private static final int BUFFER_FRAMES = 2048;
+    private static final int SONG_COUNT = 24;
+    private static final double FRAME_BIT_ERROR_RATE = 0.15;
+    private static final double SIGNATURE_BIT_ERROR_RATE = 0.05;
+
+    @Param({"2000", "20000"})
+    public int size;
+
+    private short[] mPcm;
+    private FingerprintIndex<Integer> mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        mPcm = render(random, AudioFingerprinter.MAX_SECONDS);
+
+        Fingerprint[] songs = new Fingerprint[SONG_COUNT];
+        for (int i = 0; i < songs.length; i++) {
+            songs[i] = randomFingerprint(random);
+        }
+        mIndex = new FingerprintIndex<>();
+        for (int i = 0; i < size; i++) {
+            mIndex.add(i, i % 10 == 0 ? flipBits(random, songs[i / 10 % SONG_COUNT]) : randomFingerprint(random));
+        }
+    }
+
+    @Benchmark
+    public Fingerprint fingerprint() {
+        AudioFingerprinter fingerprinter = new AudioFingerprinter(SAMPLE_RATE, CHANNEL_COUNT);
+        int bufferSamples = BUFFER_FRAMES * CHANNEL_COUNT;
+        for (int offset = 0; offset < mPcm.length; offset += bufferSamples) {
+            int frameCount = Math.min(bufferSamples, mPcm.length - offset) / CHANNEL_COUNT;
+            if (!fingerprinter.process(mPcm, offset, frameCount)) {
+                break;
+            }
+        }
+        return fingerprinter.getFingerprint(200_000);
+    }
+
+    @Benchmark
+    public int findDuplicates() {
+        return mIndex.findDuplicates().size();
+    }
+
+    // Notes of random pitch every quarter of a second over a little noise
+    private static short[] render(Random random, int seconds) {
+        short[] pcm = new short[seconds * SAMPLE_RATE * CHANNEL_COUNT];
+        int noteFrames = SAMPLE_RATE / 4;
+        double frequency = 0;
+        for (int frame = 0; frame < pcm.length / CHANNEL_COUNT; frame++) {
+            if (frame % noteFrames == 0) {
+                frequency = 110 * Math.pow(2, random.nextInt(48) / 12.0);
+            }
+            double value = 0.5 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE) + 0.01 * random.nextGaussian();
+            short sample = (short) (Math.max(-1, Math.min(1, value)) * 32767);
+            pcm[CHANNEL_COUNT * frame] = sample;
+            pcm[CHANNEL_COUNT * frame + 1] = sample;
+        }
+        return pcm;
+    }
+
+    private static Fingerprint randomFingerprint(Random random) {
+        int[] frames = new int[AudioFingerprinter.MAX_FRAMES];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = random.nextInt();
+        }
+        return new Fingerprint(frames, new long[]{random.nextLong(), random.nextLong()}, 200_000);
+    }
+
+    private static Fingerprint flipBits(Random random, Fingerprint fingerprint) {
+        int[] frames = fingerprint.getFrames().clone();
+        for (int i = 0; i < frames.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < FRAME_BIT_ERROR_RATE) {
+                    frames[i] ^= 1 << bit;
+                }
+            }
+        }
+        long[] signature = fingerprint.getSignature().clone();
+        for (int bit = 0; bit < Fingerprint.SIGNATURE_BITS; bit++) {
+            if (random.nextDouble() < SIGNATURE_BIT_ERROR_RATE) {
+                signature[bit / 64] ^= 1L << (bit % 64);
+            }
+        }
+        return new Fingerprint(frames, signature, fingerprint.getDurationInMs());
+    }
+}
@@ -0,0 +1,61 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.library.LibrarySnapshot;
+import com.antont.player.library.LibrarySnapshotSerializer;
+import com.antont.player.library.LibraryStore;
+import com.antont.player.models.AudioItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The two ways the library is loaded: decoding the snapshot written by the last run, and storing the pages
+// of a MediaStore scan as they come in.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryLoadBenchmark {
+
+    // The page size of PagedLibraryLoader
+    private static final int PAGE_SIZE = 200;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private final LibrarySnapshotSerializer mSerializer = new LibrarySnapshotSerializer();
+    private byte[] mSnapshot;
+    private final List<List<AudioItem>> mPages = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        List<AudioItem> items = new SyntheticLibrary(size).getItems();
+        mSnapshot = mSerializer.toByteArray(new LibrarySnapshot(1, items));
+        for (int start = 0; start < items.size(); start += PAGE_SIZE) {
+            mPages.add(items.subList(start, Math.min(items.size(), start + PAGE_SIZE)));
+        }
+    }
+
+    @Benchmark
+    public LibrarySnapshot readSnapshot() throws IOException {
+        return mSerializer.read(mSnapshot);
+    }
+
+    @Benchmark
+    public LibraryStore storeScanPages() {
+        LibraryStore store = new LibraryStore();
+        for (List<AudioItem> page : mPages) {
+            store.addAll(page);
+        }
+        return store;
+    }
+}
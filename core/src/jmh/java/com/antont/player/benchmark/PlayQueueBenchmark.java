@@ -0,0 +1,73 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.models.AudioItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Skipping through the queue in library and shuffled order, looking up the position of a track and
+// replacing the whole queue, which is what loading the library or a new sort order does.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayQueueBenchmark {
+
+    private static final int LOOKUP_COUNT = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<AudioItem> mItems;
+    private PlayQueue mQueue;
+    private PlayQueue mShuffledQueue;
+    private PlayQueue mLoadedQueue;
+    private final AudioItem[] mLookups = new AudioItem[LOOKUP_COUNT];
+    private int mNextLookup;
+
+    @Setup
+    public void setUp() {
+        mItems = new SyntheticLibrary(size).getItems();
+        mQueue = new PlayQueue(mItems);
+        mShuffledQueue = new PlayQueue(mItems);
+        mShuffledQueue.setShuffleEnabled(true);
+        mLoadedQueue = new PlayQueue();
+        Random random = new Random(1);
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            mLookups[i] = mItems.get(random.nextInt(mItems.size()));
+        }
+    }
+
+    @Benchmark
+    public AudioItem skipToNext() {
+        return mQueue.skipToNext();
+    }
+
+    @Benchmark
+    public AudioItem skipToNextShuffled() {
+        return mShuffledQueue.skipToNext();
+    }
+
+    @Benchmark
+    public int indexOf() {
+        mNextLookup = (mNextLookup + 1) & (LOOKUP_COUNT - 1);
+        return mQueue.indexOf(mLookups[mNextLookup]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int setItems() {
+        mLoadedQueue.setItems(mItems);
+        return mLoadedQueue.size();
+    }
+}
@@ -0,0 +1,108 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.enums.ActionType;
+import com.antont.player.playback.PlayerCommandQueue;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// The player command path without the main loop hop: a burst of commands within one frame is offered,
+// then drained to the handler the way PlayerCommandBus does on the next loop iteration. eventBusPost() is
+// the path the queue replaced, the same burst posted to EventBus as boxed values.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerCommandQueueBenchmark implements PlayerCommandQueue.CommandHandler {
+
+    // Commands posted before each drain, like a burst of clicks within one frame
+    private static final int BATCH_SIZE = 4;
+
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private final PlayerCommandQueue mQueue = new PlayerCommandQueue(BATCH_SIZE);
+    private final EventBus mEventBus = EventBus.builder().logNoSubscriberMessages(false).build();
+    private final EventSubscriber mSubscriber = new EventSubscriber();
+    private long mNextArgument;
+    private long mSink;
+
+    @Setup
+    public void setUp() {
+        mEventBus.register(mSubscriber);
+    }
+
+    // Actions and selections, seeks would be coalesced and make the queue look even better
+    @Benchmark
+    public long offerAndDrain() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mQueue.offer(i % 2 == 0 ? PlayerCommandQueue.COMMAND_ACTION : PlayerCommandQueue.COMMAND_SELECT,
+                    mNextArgument++);
+        }
+        mQueue.drain(this);
+        return mSink;
+    }
+
+    @Benchmark
+    public long coalescedSeeks() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mQueue.offer(PlayerCommandQueue.COMMAND_SEEK, mNextArgument++);
+        }
+        mQueue.drain(this);
+        return mSink;
+    }
+
+    // Integers were seeks and selections, Booleans the playing state and ActionTypes the buttons
+    @Benchmark
+    public long eventBusPost() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long argument = mNextArgument++;
+            switch (i % 3) {
+                case 0:
+                    mEventBus.post((int) argument);
+                    break;
+                case 1:
+                    mEventBus.post(argument % 2 == 0);
+                    break;
+                default:
+                    mEventBus.post(ACTIONS[(int) (argument % ACTIONS.length)]);
+                    break;
+            }
+        }
+        return mSubscriber.mSink;
+    }
+
+    @Override
+    public void onCommand(int command, long argument) {
+        mSink += command + argument;
+    }
+
+    // Delivered on the posting thread, the app used ThreadMode.MAIN and paid for the main loop hop on top
+    public static class EventSubscriber {
+
+        private long mSink;
+
+        @Subscribe(threadMode = ThreadMode.POSTING)
+        public void onEvent(Integer value) {
+            mSink += value;
+        }
+
+        @Subscribe(threadMode = ThreadMode.POSTING)
+        public void onEvent(Boolean value) {
+            mSink += value ? 1 : 0;
+        }
+
+        @Subscribe(threadMode = ThreadMode.POSTING)
+        public void onEvent(ActionType action) {
+            mSink += action.ordinal();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.models.AudioItem;
+import com.antont.player.search.SearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Building the search index and as-you-type queries: every prefix of a common word, two words, a rare
+// word, a word with a typo and a word that matches nothing, in turn.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private static final int RESULT_LIMIT = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<AudioItem> mItems;
+    private SearchIndex mIndex;
+    private String[] mKeystrokes;
+    private int mNextKeystroke;
+
+    @Setup
+    public void setUp() {
+        SyntheticLibrary library = new SyntheticLibrary(size);
+        mItems = library.getItems();
+        mIndex = new SearchIndex(mItems);
+
+        String[] queries = {library.word(0), library.word(2000) + " " + library.word(1), library.word(4999),
+                withTypo(library.word(300) + library.word(301)), "qxqxqx"};
+        List<String> keystrokes = new ArrayList<>();
+        for (String query : queries) {
+            for (int end = 1; end <= query.length(); end++) {
+                keystrokes.add(query.substring(0, end));
+            }
+        }
+        mKeystrokes = keystrokes.toArray(new String[keystrokes.size()]);
+    }
+
+    @Benchmark
+    public List<AudioItem> search() {
+        mNextKeystroke = (mNextKeystroke + 1) % mKeystrokes.length;
+        return mIndex.search(mKeystrokes[mNextKeystroke], RESULT_LIMIT);
+    }
+
+    @Benchmark
+    public SearchIndex buildIndex() {
+        return new SearchIndex(mItems);
+    }
+
+    // Swaps two letters in the middle of the word
+    private static String withTypo(String word) {
+        int middle = word.length() / 2;
+        char[] chars = word.toCharArray();
+        char swapped = chars[middle];
+        chars[middle] = chars[middle - 1];
+        chars[middle - 1] = swapped;
+        return new String(chars);
+    }
+}
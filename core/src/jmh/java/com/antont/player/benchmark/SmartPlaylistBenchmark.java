@@ -0,0 +1,79 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+import com.antont.player.playlist.PlayHistory;
+import com.antont.player.playlist.RuleParser;
+import com.antont.player.playlist.SmartPlaylistIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A handful of smart playlists kept up to date through a delta of a few changed tracks, against
+// evaluating one of them over the whole library, which is what every change would cost without the
+// incremental updates.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SmartPlaylistBenchmark {
+
+    private static final int DELTA_SIZE = 8;
+    private static final long NOW_IN_MS = 1_550_000_000_000L;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SyntheticLibrary mLibrary;
+    private List<AudioItem> mItems;
+    private SmartPlaylistIndex mIndex;
+    private String[] mQueries;
+    private int mNextUpdate;
+
+    @Setup
+    public void setUp() {
+        mLibrary = new SyntheticLibrary(size);
+        mItems = mLibrary.getItems();
+        PlayHistory history = new PlayHistory();
+        for (int i = 0; i < mItems.size(); i += 3) {
+            history.setLastPlayed(mItems.get(i).getPath(), NOW_IN_MS - i * 60_000L);
+        }
+        mIndex = new SmartPlaylistIndex(history, NOW_IN_MS);
+        mIndex.addAll(mItems);
+        mQueries = new String[]{
+                "album contains " + mLibrary.word(0) + " and not played in 30 days",
+                "path under \"Music/" + mLibrary.word(1) + "\" or name starts with \"01 " + mLibrary.word(2) + "\"",
+                "modified in 300 days or (played in 7 days and not album is " + mLibrary.word(3) + ")",
+                "not played"};
+        for (int i = 0; i < mQueries.length; i++) {
+            mIndex.putPlaylist("playlist" + i, RuleParser.parse(mQueries[i]));
+        }
+    }
+
+    // Updates in place, the removed documents pile up and are compacted away now and then as in the app
+    @Benchmark
+    public int applyDelta() {
+        LibraryDelta delta = new LibraryDelta();
+        for (int i = 0; i < DELTA_SIZE; i++) {
+            AudioItem item = mItems.get(mNextUpdate++ % mItems.size());
+            delta.updateItem(new AudioItem(item.getId(), item.getDateModified() + 1, item.getPath(), item.getName(),
+                    item.getAlbumName()));
+        }
+        mIndex.applyDelta(delta);
+        return mIndex.getSize("playlist0");
+    }
+
+    @Benchmark
+    public int evaluatePlaylist() {
+        mIndex.putPlaylist("playlist0", RuleParser.parse(mQueries[0]));
+        return mIndex.getSize("playlist0");
+    }
+}
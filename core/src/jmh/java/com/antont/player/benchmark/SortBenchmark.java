@@ -0,0 +1,56 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.enums.SortOrder;
+import com.antont.player.models.AudioItem;
+import com.antont.player.sort.SortEngine;
+import com.antont.player.sort.SortResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Sorting the library in library order by every sort order. The collation keys are computed by the
+// first sort and reused by the measured ones, like in the app where the keys outlive a sort.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"ADDED", "NAME", "ALBUM", "FOLDER"})
+    public SortOrder order;
+
+    private List<AudioItem> mItems;
+    private ForkJoinPool mPool;
+    private SortEngine mEngine;
+
+    @Setup
+    public void setUp() {
+        mItems = new SyntheticLibrary(size).getItems();
+        mPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        mEngine = new SortEngine(mPool);
+        mEngine.sort(mItems, order);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Benchmark
+    public SortResult sort() {
+        return mEngine.sort(mItems, order);
+    }
+}
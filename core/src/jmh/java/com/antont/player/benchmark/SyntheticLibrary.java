@@ -0,0 +1,77 @@
+package com.antont.player.benchmark;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// A library of the given size with about a dozen tracks per album and an album per folder. Names and albums
+// are drawn from a vocabulary of random words with a skewed distribution, so a few words are very common
+// like in real tags. The same size always gives the same library.
+final class SyntheticLibrary {
+
+    private static final int VOCABULARY_SIZE = 5_000;
+    private static final int TRACKS_PER_ALBUM = 12;
+    private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+    private static final String VOWELS = "aeiouy";
+
+    private final String[] mVocabulary = new String[VOCABULARY_SIZE];
+    private final List<AudioItem> mItems;
+
+    SyntheticLibrary(int size) {
+        Random random = new Random(size);
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            mVocabulary[i] = randomWord(random);
+        }
+        String[] albums = new String[Math.max(1, size / TRACKS_PER_ALBUM)];
+        for (int i = 0; i < albums.length; i++) {
+            albums[i] = words(random, 1 + random.nextInt(3));
+        }
+
+        List<AudioItem> items = new ArrayList<>(size);
+        long id = 0;
+        for (int i = 0; i < size; i++) {
+            // MediaStore ids ascend in scan order with gaps left by deleted files
+            id += 1 + random.nextInt(3);
+            int album = random.nextInt(albums.length);
+            String name = String.format("%02d %s", 1 + random.nextInt(15), words(random, 1 + random.nextInt(4)));
+            String path = "/storage/emulated/0/Music/" + albums[album] + "/" + name + ".mp3";
+            items.add(new AudioItem(id, 1_500_000_000L + random.nextInt(50_000_000), path, name, albums[album]));
+        }
+        mItems = Collections.unmodifiableList(items);
+    }
+
+    List<AudioItem> getItems() {
+        return mItems;
+    }
+
+    // The word of the given popularity rank, 0 is the most common one
+    String word(int rank) {
+        return mVocabulary[rank];
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int syllables = 1 + random.nextInt(4);
+        for (int s = 0; s < syllables; s++) {
+            builder.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            builder.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+        }
+        return builder.toString();
+    }
+
+    // Low ranks are picked far more often than high ones
+    private String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                builder.append(' ');
+            }
+            double skewed = Math.pow(random.nextDouble(), 3);
+            builder.append(mVocabulary[(int) (skewed * mVocabulary.length)]);
+        }
+        return builder.toString();
+    }
+}
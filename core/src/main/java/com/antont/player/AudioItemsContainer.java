@@ -0,0 +1,74 @@
+package com.antont.player;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.List;
+
+public class AudioItemsContainer {
+
+    private static AudioItemsContainer mInstance;
+    private final PlayQueue mQueue = new PlayQueue();
+    // Where the current song was left, applied when the service loads it the next time
+    private int mResumePositionInMs;
+
+    private AudioItemsContainer() {
+    }
+
+    public static AudioItemsContainer getInstance() {
+        if (mInstance == null) {
+            mInstance = new AudioItemsContainer();
+        }
+        return mInstance;
+    }
+
+    public List<AudioItem> getAudioItems() {
+        return mQueue.getItems();
+    }
+
+    public void setAudioItems(List<AudioItem> audioItems) {
+        mQueue.setItems(audioItems);
+    }
+
+    public PlayQueue getQueue() {
+        return mQueue;
+    }
+
+    public void skipToNextSong() {
+        mQueue.skipToNext();
+    }
+
+    public void skipToPreviousSong() {
+        mQueue.skipToPrevious();
+    }
+
+    public int getCurrentSongIndex() {
+        return mQueue.getCurrentPosition();
+    }
+
+    public int indexOf(AudioItem item) {
+        return mQueue.indexOf(item);
+    }
+
+    public AudioItem getCurrentSong() {
+        return mQueue.getCurrent();
+    }
+
+    public void setCurrentSong(AudioItem currentSong) {
+        mQueue.moveTo(currentSong);
+    }
+
+    public void setResumePosition(int positionInMs) {
+        mResumePositionInMs = positionInMs;
+    }
+
+    public int getResumePosition() {
+        return mResumePositionInMs;
+    }
+
+    // Returns the resume position once, later calls start the current song from the beginning
+    public int takeResumePosition() {
+        int position = mResumePositionInMs;
+        mResumePositionInMs = 0;
+        return position;
+    }
+}
@@ -0,0 +1,399 @@
+package com.antont.player;
+
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Ordered play queue that keeps the current position as an int cursor and an identity index
+// from item to position, so that navigation and index lookups never scan the list.
+//
+// The list order never changes with the play modes. Shuffle plays the positions in the order of a
+// ShuffleOrder, and the repeat mode decides what follows the last track and the current one.
+// skipToNext() and skipToPrevious() are the user's buttons, peekNext() and advance() are what happens
+// when a track ends by itself.
+public class PlayQueue {
+
+    public static final int NO_POSITION = -1;
+
+    private final ArrayList<AudioItem> mItems = new ArrayList<>();
+    private final List<AudioItem> mItemsView = Collections.unmodifiableList(mItems);
+    private final Map<AudioItem, Integer> mPositions = new IdentityHashMap<>();
+    // MediaStore ids of the items, commands name the item by its id since positions move with every sort
+    private final Map<Long, AudioItem> mItemsById = new HashMap<>();
+    private int mCurrentPosition = NO_POSITION;
+    private int mVersion;
+    private ShuffleOrder mShuffleOrder;
+    private RepeatMode mRepeatMode = RepeatMode.ALL;
+
+    public PlayQueue() {
+    }
+
+    public PlayQueue(List<AudioItem> items) {
+        setItems(items);
+    }
+
+    // Replaces the whole queue. The current position is kept only if the current item is still present
+    public void setItems(List<AudioItem> items) {
+        AudioItem current = getCurrent();
+        // Copy first, the argument may be a view of this very queue
+        AudioItem[] source = items == null ? new AudioItem[0] : items.toArray(new AudioItem[items.size()]);
+
+        mItems.clear();
+        mPositions.clear();
+        mItemsById.clear();
+        mItems.ensureCapacity(source.length);
+        for (AudioItem item : source) {
+            mPositions.put(item, mItems.size());
+            putId(item);
+            mItems.add(item);
+        }
+        mCurrentPosition = indexOf(current);
+        mVersion++;
+        if (mShuffleOrder != null) {
+            mShuffleOrder.reset(mItems.size(), mCurrentPosition);
+        }
+    }
+
+    // Puts the same items in a new order, e.g. the result of a sort. The current item and the shuffled
+    // history follow their items. Returns false, leaving the queue untouched, if the items are not
+    // exactly the ones in the queue
+    public boolean reorder(List<AudioItem> items) {
+        int size = mItems.size();
+        if (items.size() != size) {
+            return false;
+        }
+        int[] newPositionOf = new int[size];
+        Arrays.fill(newPositionOf, NO_POSITION);
+        for (int position = 0; position < size; position++) {
+            Integer oldPosition = mPositions.get(items.get(position));
+            if (oldPosition == null || newPositionOf[oldPosition] != NO_POSITION) {
+                return false;
+            }
+            newPositionOf[oldPosition] = position;
+        }
+
+        for (int position = 0; position < size; position++) {
+            AudioItem item = items.get(position);
+            mItems.set(position, item);
+            mPositions.put(item, position);
+        }
+        if (mCurrentPosition != NO_POSITION) {
+            mCurrentPosition = newPositionOf[mCurrentPosition];
+        }
+        mVersion++;
+        if (mShuffleOrder != null) {
+            mShuffleOrder.remap(newPositionOf, size);
+        }
+        return true;
+    }
+
+    // A new shuffled order starts from the current item
+    public void setShuffleEnabled(boolean enabled) {
+        if (enabled == isShuffleEnabled()) {
+            return;
+        }
+        if (enabled) {
+            mShuffleOrder = new ShuffleOrder(new Random());
+            mShuffleOrder.reset(mItems.size(), mCurrentPosition);
+        } else {
+            mShuffleOrder = null;
+        }
+    }
+
+    public boolean isShuffleEnabled() {
+        return mShuffleOrder != null;
+    }
+
+    public void setRepeatMode(RepeatMode repeatMode) {
+        mRepeatMode = repeatMode;
+    }
+
+    public RepeatMode getRepeatMode() {
+        return mRepeatMode;
+    }
+
+    // Changes whenever the content or the order of the queue changes, but not when the cursor moves
+    public int getVersion() {
+        return mVersion;
+    }
+
+    // Read-only view of the queue content in play order
+    public List<AudioItem> getItems() {
+        return mItemsView;
+    }
+
+    public int size() {
+        return mItems.size();
+    }
+
+    public boolean isEmpty() {
+        return mItems.isEmpty();
+    }
+
+    public AudioItem get(int position) {
+        return mItems.get(position);
+    }
+
+    public int indexOf(AudioItem item) {
+        if (item == null) {
+            return NO_POSITION;
+        }
+        Integer position = mPositions.get(item);
+        return position == null ? NO_POSITION : position;
+    }
+
+    // NO_POSITION for an id that is not in the queue or NO_ID
+    public int indexOfId(long id) {
+        return id == AudioItem.NO_ID ? NO_POSITION : indexOf(mItemsById.get(id));
+    }
+
+    public boolean contains(AudioItem item) {
+        return item != null && mPositions.containsKey(item);
+    }
+
+    public int getCurrentPosition() {
+        return mCurrentPosition;
+    }
+
+    public AudioItem getCurrent() {
+        return mCurrentPosition == NO_POSITION ? null : mItems.get(mCurrentPosition);
+    }
+
+    // Moves on to the next item whatever the repeat mode, wrapping around at the end of the queue
+    public AudioItem skipToNext() {
+        if (mItems.isEmpty()) {
+            return null;
+        }
+        if (mShuffleOrder != null) {
+            int position = mShuffleOrder.next();
+            if (position == ShuffleOrder.NONE) {
+                // Every item has been played, a new cycle starts with the current one as its history
+                mShuffleOrder.reset(mItems.size(), mCurrentPosition);
+                position = mShuffleOrder.next();
+            }
+            if (position != ShuffleOrder.NONE) {
+                mCurrentPosition = position;
+            }
+            return getCurrent();
+        }
+        if (mCurrentPosition == NO_POSITION || mCurrentPosition == mItems.size() - 1) {
+            mCurrentPosition = 0;
+        } else {
+            mCurrentPosition++;
+        }
+        return mItems.get(mCurrentPosition);
+    }
+
+    // In shuffle mode walks back through the items played in this cycle and stays at the first one
+    public AudioItem skipToPrevious() {
+        if (mItems.isEmpty()) {
+            return null;
+        }
+        if (mShuffleOrder != null) {
+            int position = mShuffleOrder.previous();
+            if (position != ShuffleOrder.NONE) {
+                mCurrentPosition = position;
+            } else if (mCurrentPosition == NO_POSITION) {
+                return skipToNext();
+            }
+            return getCurrent();
+        }
+        if (mCurrentPosition == NO_POSITION) {
+            mCurrentPosition = 0;
+        } else if (mCurrentPosition == 0) {
+            mCurrentPosition = mItems.size() - 1;
+        } else {
+            mCurrentPosition--;
+        }
+        return mItems.get(mCurrentPosition);
+    }
+
+    // The item that plays when the current one ends, without moving the cursor.
+    // Null when playback should stop there, after the last item with repeat off
+    public AudioItem peekNext() {
+        if (mItems.isEmpty()) {
+            return null;
+        }
+        if (mRepeatMode == RepeatMode.ONE && mCurrentPosition != NO_POSITION) {
+            return getCurrent();
+        }
+        if (mShuffleOrder != null) {
+            int position = mShuffleOrder.peekNext();
+            if (position == ShuffleOrder.NONE && mRepeatMode == RepeatMode.ALL) {
+                mShuffleOrder.reset(mItems.size(), mCurrentPosition);
+                position = mShuffleOrder.peekNext();
+                if (position == ShuffleOrder.NONE) {
+                    // The current item is the only one
+                    position = mCurrentPosition;
+                }
+            }
+            return position == ShuffleOrder.NONE ? null : mItems.get(position);
+        }
+        if (mCurrentPosition == NO_POSITION) {
+            return mItems.get(0);
+        }
+        if (mCurrentPosition == mItems.size() - 1) {
+            return mRepeatMode == RepeatMode.ALL ? mItems.get(0) : null;
+        }
+        return mItems.get(mCurrentPosition + 1);
+    }
+
+    // Moves to peekNext(), returns null and stays at the current item when playback should stop
+    public AudioItem advance() {
+        AudioItem next = peekNext();
+        if (next == null || next == getCurrent()) {
+            return next;
+        }
+        mCurrentPosition = mShuffleOrder != null ? mShuffleOrder.next() : indexOf(next);
+        return next;
+    }
+
+    // Moves the cursor to the given position, NO_POSITION clears the current item.
+    // In shuffle mode the item is played out of turn and becomes part of the history
+    public AudioItem moveTo(int position) {
+        if (position != NO_POSITION && (position < 0 || position >= mItems.size())) {
+            throw new IndexOutOfBoundsException("Position " + position + " is out of queue bounds " + mItems.size());
+        }
+        if (mShuffleOrder != null && position != NO_POSITION) {
+            mShuffleOrder.jumpTo(position);
+        }
+        mCurrentPosition = position;
+        return getCurrent();
+    }
+
+    // Moves the cursor to the given item. Items that are not in the queue clear the current item
+    public int moveTo(AudioItem item) {
+        int position = indexOf(item);
+        moveTo(position);
+        return position;
+    }
+
+    // Applies library changes in place: removed items are dropped, updated items replace the old
+    // ones at the same position and added items are appended. The listener gets coalesced ranges
+    // in the order they happen, so they can be forwarded as they are to a RecyclerView adapter.
+    public void applyDelta(LibraryDelta delta, OnQueueChangedListener listener) {
+        Set<Long> removedIds = delta.getRemovedIds();
+        Map<Long, AudioItem> updatedItems = new HashMap<>();
+        for (AudioItem item : delta.getUpdatedItems()) {
+            updatedItems.put(item.getId(), item);
+        }
+
+        if (!removedIds.isEmpty() || !updatedItems.isEmpty()) {
+            replaceAndRemove(removedIds, updatedItems, listener);
+        }
+
+        addAll(delta.getAddedItems(), listener);
+    }
+
+    // Appends the items to the end of the queue
+    public void addAll(List<AudioItem> items, OnQueueChangedListener listener) {
+        if (items.isEmpty()) {
+            return;
+        }
+        int start = mItems.size();
+        mItems.ensureCapacity(start + items.size());
+        for (AudioItem item : items) {
+            mPositions.put(item, mItems.size());
+            putId(item);
+            mItems.add(item);
+        }
+        mVersion++;
+        if (mShuffleOrder != null) {
+            mShuffleOrder.grow(mItems.size());
+        }
+        listener.onItemRangeInserted(start, items.size());
+    }
+
+    // A single compacting pass over the queue, positions are rebuilt only behind the first removed item
+    private void replaceAndRemove(Set<Long> removedIds, Map<Long, AudioItem> updatedItems, OnQueueChangedListener listener) {
+        mVersion++;
+        int size = mItems.size();
+        int writePosition = 0;
+        int removedCount = 0;
+        int changedCount = 0;
+        int newCurrentPosition = mCurrentPosition;
+        // Old to new positions for the shuffled order, which keeps positions and not items
+        int[] newPositionOf = mShuffleOrder != null ? new int[size] : null;
+
+        for (int readPosition = 0; readPosition < size; readPosition++) {
+            AudioItem item = mItems.get(readPosition);
+            boolean removed = removedIds.contains(item.getId());
+            if (newPositionOf != null) {
+                newPositionOf[readPosition] = removed ? ShuffleOrder.NONE : writePosition;
+            }
+            if (removed) {
+                if (changedCount > 0) {
+                    listener.onItemRangeChanged(writePosition - changedCount, changedCount);
+                    changedCount = 0;
+                }
+                mPositions.remove(item);
+                mItemsById.remove(item.getId());
+                if (readPosition == mCurrentPosition) {
+                    newCurrentPosition = NO_POSITION;
+                }
+                removedCount++;
+                continue;
+            }
+            if (removedCount > 0) {
+                listener.onItemRangeRemoved(writePosition, removedCount);
+                removedCount = 0;
+            }
+
+            AudioItem updated = updatedItems.get(item.getId());
+            if (updated != null) {
+                mPositions.remove(item);
+                putId(updated);
+                item = updated;
+                changedCount++;
+            } else if (changedCount > 0) {
+                listener.onItemRangeChanged(writePosition - changedCount, changedCount);
+                changedCount = 0;
+            }
+
+            if (readPosition == mCurrentPosition) {
+                newCurrentPosition = writePosition;
+            }
+            if (updated != null || writePosition != readPosition) {
+                mItems.set(writePosition, item);
+                mPositions.put(item, writePosition);
+            }
+            writePosition++;
+        }
+        if (removedCount > 0) {
+            listener.onItemRangeRemoved(writePosition, removedCount);
+        }
+        if (changedCount > 0) {
+            listener.onItemRangeChanged(writePosition - changedCount, changedCount);
+        }
+
+        mItems.subList(writePosition, size).clear();
+        mCurrentPosition = newCurrentPosition;
+        if (newPositionOf != null) {
+            mShuffleOrder.remap(newPositionOf, writePosition);
+        }
+    }
+
+    private void putId(AudioItem item) {
+        if (item.getId() != AudioItem.NO_ID) {
+            mItemsById.put(item.getId(), item);
+        }
+    }
+
+    public interface OnQueueChangedListener {
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+    }
+}
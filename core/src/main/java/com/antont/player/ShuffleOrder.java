@@ -0,0 +1,174 @@
+package com.antont.player;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Shuffled play order of the queue positions, drawn one position at a time with Fisher-Yates steps.
+// Slots [0, drawn) hold the positions in the order they have been played, which is the history
+// "previous" walks back through, and slots [drawn, size) the positions that are still to come.
+//
+// Both arrays store a value + 1 with 0 meaning "same as the index", so a fresh order of any size costs
+// two zeroed allocations and no initialization pass, and the work is proportional to the tracks played.
+class ShuffleOrder {
+
+    static final int NONE = -1;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Random mRandom;
+    // Slot to position + 1
+    private int[] mPositions = EMPTY;
+    // Position to slot + 1
+    private int[] mSlots = EMPTY;
+    private int mSize;
+    private int mDrawn;
+    // Slot of the current position, NONE before the first one
+    private int mCursor = NONE;
+
+    ShuffleOrder(Random random) {
+        mRandom = random;
+    }
+
+    // Starts a new cycle over size positions. The first position, if any, becomes the current one
+    void reset(int size, int first) {
+        if (mPositions.length == size) {
+            Arrays.fill(mPositions, 0);
+            Arrays.fill(mSlots, 0);
+        } else {
+            mPositions = new int[size];
+            mSlots = new int[size];
+        }
+        mSize = size;
+        mDrawn = 0;
+        mCursor = NONE;
+        if (first != NONE && first < size) {
+            swap(0, first);
+            mDrawn = 1;
+            mCursor = 0;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    // Number of positions played or drawn in this cycle
+    int drawnCount() {
+        return mDrawn;
+    }
+
+    int current() {
+        return mCursor == NONE ? NONE : positionAt(mCursor);
+    }
+
+    // The position after the current one, NONE when the cycle is exhausted. A new position is drawn
+    // if needed and kept, so next() moves to the same one
+    int peekNext() {
+        if (mCursor + 1 < mDrawn) {
+            return positionAt(mCursor + 1);
+        }
+        if (mDrawn == mSize) {
+            return NONE;
+        }
+        swap(mDrawn, mDrawn + mRandom.nextInt(mSize - mDrawn));
+        mDrawn++;
+        return positionAt(mDrawn - 1);
+    }
+
+    int next() {
+        int position = peekNext();
+        if (position != NONE) {
+            mCursor++;
+        }
+        return position;
+    }
+
+    // Walks back through the played positions, NONE at the first one of the cycle
+    int previous() {
+        if (mCursor <= 0) {
+            return NONE;
+        }
+        mCursor--;
+        return positionAt(mCursor);
+    }
+
+    // Plays the position next, out of turn, e.g. when the user picks it. An already played position is
+    // moved from its place in the history to the end of it, so nothing is played twice within a cycle
+    void jumpTo(int position) {
+        int slot = slotOf(position);
+        if (slot == mCursor) {
+            return;
+        }
+        if (slot >= mDrawn) {
+            swap(slot, mDrawn);
+            slot = mDrawn++;
+        }
+        int target = slot < mCursor ? mCursor : mCursor + 1;
+        if (slot < target) {
+            for (int i = slot; i < target; i++) {
+                setPosition(i, positionAt(i + 1));
+            }
+        } else {
+            for (int i = slot; i > target; i--) {
+                setPosition(i, positionAt(i - 1));
+            }
+        }
+        setPosition(target, position);
+        mCursor = target;
+    }
+
+    // Positions appended to the queue join the positions still to come
+    void grow(int newSize) {
+        if (newSize <= mSize) {
+            return;
+        }
+        mPositions = Arrays.copyOf(mPositions, newSize);
+        mSlots = Arrays.copyOf(mSlots, newSize);
+        mSize = newSize;
+    }
+
+    // Follows a compaction of the queue, newPositionOf maps every old position to its new one or NONE.
+    // The history keeps its order without the removed positions, everything else is still to come
+    void remap(int[] newPositionOf, int newSize) {
+        int[] history = new int[mDrawn];
+        int kept = 0;
+        int cursor = NONE;
+        for (int slot = 0; slot < mDrawn; slot++) {
+            int position = newPositionOf[positionAt(slot)];
+            if (position != NONE) {
+                history[kept++] = position;
+            }
+            if (slot == mCursor) {
+                cursor = kept - 1;
+            }
+        }
+        reset(newSize, NONE);
+        for (int slot = 0; slot < kept; slot++) {
+            swap(slot, slotOf(history[slot]));
+        }
+        mDrawn = kept;
+        mCursor = cursor;
+    }
+
+    int positionAt(int slot) {
+        int value = mPositions[slot];
+        return value == 0 ? slot : value - 1;
+    }
+
+    int slotOf(int position) {
+        int value = mSlots[position];
+        return value == 0 ? position : value - 1;
+    }
+
+    private void setPosition(int slot, int position) {
+        mPositions[slot] = position + 1;
+        mSlots[position] = slot + 1;
+    }
+
+    private void swap(int slotA, int slotB) {
+        int positionA = positionAt(slotA);
+        int positionB = positionAt(slotB);
+        setPosition(slotA, positionB);
+        setPosition(slotB, positionA);
+    }
+}
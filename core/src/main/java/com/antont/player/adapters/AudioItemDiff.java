@@ -0,0 +1,92 @@
+package com.antont.player.adapters;
+
+import com.antont.player.models.AudioItem;
+import com.antont.player.sort.Section;
+
+import java.util.List;
+
+// Identity and content rules for diffing two library snapshots. A row of a snapshot is an AudioItem or
+// the Section of a header, headers are the same when their titles and depths are.
+public final class AudioItemDiff {
+
+    private AudioItemDiff() {
+    }
+
+    // Stable key of a row, the MediaStore id or the path for items that have none
+    public static long keyOf(AudioItem item) {
+        if (item.getId() != AudioItem.NO_ID) {
+            return item.getId();
+        }
+        // Negative so it cannot collide with a MediaStore id
+        return item.getPath() == null ? Long.MIN_VALUE : -1L - (item.getPath().hashCode() & 0xffffffffL);
+    }
+
+    public static boolean isSameItem(AudioItem oldItem, AudioItem newItem) {
+        if (oldItem == newItem) {
+            return true;
+        }
+        if (oldItem.getId() != AudioItem.NO_ID || newItem.getId() != AudioItem.NO_ID) {
+            return oldItem.getId() == newItem.getId();
+        }
+        return equal(oldItem.getPath(), newItem.getPath());
+    }
+
+    public static boolean isSameContent(AudioItem oldItem, AudioItem newItem) {
+        return oldItem == newItem
+                || (oldItem.getDateModified() == newItem.getDateModified()
+                && equal(oldItem.getPath(), newItem.getPath())
+                && equal(oldItem.getName(), newItem.getName())
+                && equal(oldItem.getAlbumName(), newItem.getAlbumName()));
+    }
+
+    public static boolean isSameRow(Object oldRow, Object newRow) {
+        if (oldRow instanceof AudioItem && newRow instanceof AudioItem) {
+            return isSameItem((AudioItem) oldRow, (AudioItem) newRow);
+        }
+        if (oldRow instanceof Section && newRow instanceof Section) {
+            Section oldSection = (Section) oldRow;
+            Section newSection = (Section) newRow;
+            return oldSection.getDepth() == newSection.getDepth() && equal(oldSection.getTitle(), newSection.getTitle());
+        }
+        return false;
+    }
+
+    // A header only shows its title, the same header has the same content
+    public static boolean isSameRowContent(Object oldRow, Object newRow) {
+        if (oldRow instanceof AudioItem && newRow instanceof AudioItem) {
+            return isSameContent((AudioItem) oldRow, (AudioItem) newRow);
+        }
+        return true;
+    }
+
+    // Number of leading rows that are unchanged. Appended pages and most MediaStore deltas touch a small
+    // window of the list, trimming the rest keeps the diff linear in the size of that window.
+    public static int commonPrefix(List<?> oldItems, List<?> newItems) {
+        int limit = Math.min(oldItems.size(), newItems.size());
+        int prefix = 0;
+        while (prefix < limit && isUnchanged(oldItems.get(prefix), newItems.get(prefix))) {
+            prefix++;
+        }
+        return prefix;
+    }
+
+    // Number of trailing unchanged rows that are not part of the prefix
+    public static int commonSuffix(List<?> oldItems, List<?> newItems, int prefix) {
+        int oldLast = oldItems.size() - 1;
+        int newLast = newItems.size() - 1;
+        int suffix = 0;
+        while (oldLast - suffix >= prefix && newLast - suffix >= prefix
+                && isUnchanged(oldItems.get(oldLast - suffix), newItems.get(newLast - suffix))) {
+            suffix++;
+        }
+        return suffix;
+    }
+
+    private static boolean isUnchanged(Object oldRow, Object newRow) {
+        return isSameRow(oldRow, newRow) && isSameRowContent(oldRow, newRow);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
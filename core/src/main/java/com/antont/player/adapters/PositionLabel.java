@@ -0,0 +1,24 @@
+package com.antont.player.adapters;
+
+// Formats row numbers into a reused char buffer, so binding a row does not create a String
+final class PositionLabel {
+
+    // Enough for any positive int
+    static final int BUFFER_SIZE = 10;
+
+    private PositionLabel() {
+    }
+
+    // Writes the digits right-aligned into the buffer and returns the index of the first one
+    static int write(int value, char[] buffer) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int start = buffer.length;
+        do {
+            buffer[--start] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return start;
+    }
+}
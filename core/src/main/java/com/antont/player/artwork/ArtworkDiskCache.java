@@ -0,0 +1,146 @@
+package com.antont.player.artwork;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Pre-scaled thumbnails on disk, one file per key named after a 64 bit hash of it. The directory is bounded
+// in bytes: reads refresh the modification time of a file and the least recently used files are deleted
+// once the budget is exceeded. An empty file records that there is no artwork, so it is not looked for again.
+// Thread safe, blocking, never to be called on the main thread.
+public class ArtworkDiskCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Trimming goes a bit below the budget so the next few writes do not trim again
+    private static final float TRIM_FACTOR = 0.9f;
+    // Charged for every file on top of its length, an empty marker still takes a directory entry
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private long mBytes = -1;
+
+    public ArtworkDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    // Returns null when the key is not cached, an empty array when it is cached as having no artwork
+    public synchronized byte[] get(String key) {
+        File file = fileOf(key);
+        byte[] data;
+        try (InputStream in = new FileInputStream(file)) {
+            data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset < data.length) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return data;
+    }
+
+    public synchronized void put(String key, byte[] data) throws IOException {
+        ensureSizeKnown();
+        File file = fileOf(key);
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(data);
+        }
+        long replacedBytes = file.exists() ? weightOf(file) : 0;
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to write " + file);
+        }
+        mBytes += weightOf(file) - replacedBytes;
+        if (mBytes > mMaxBytes) {
+            trimTo((long) (mMaxBytes * TRIM_FACTOR));
+        }
+    }
+
+    public synchronized long getSize() {
+        ensureSizeKnown();
+        return mBytes;
+    }
+
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mBytes = 0;
+    }
+
+    private void trimTo(long maxBytes) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Sorting on a snapshot of the times, lastModified() is a system call
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        for (int i = 0; i < order.length && mBytes > maxBytes; i++) {
+            File file = files[order[i]];
+            long bytes = weightOf(file);
+            if (file.delete()) {
+                mBytes -= bytes;
+            }
+        }
+    }
+
+    private void ensureSizeKnown() {
+        if (mBytes >= 0) {
+            return;
+        }
+        mDirectory.mkdirs();
+        mBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left behind by a write that did not finish
+                file.delete();
+            } else {
+                mBytes += weightOf(file);
+            }
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(mDirectory, Long.toHexString(hash(key)));
+    }
+
+    private static long weightOf(File file) {
+        return file.length() + ENTRY_OVERHEAD;
+    }
+
+    // 64 bit FNV-1a of the UTF-8 bytes
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
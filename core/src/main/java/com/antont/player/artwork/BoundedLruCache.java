@@ -0,0 +1,74 @@
+package com.antont.player.artwork;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Least recently used cache bounded by the total weight of its values, e.g. the bytes of bitmaps,
+// rather than by their count. A value heavier than the whole budget is not cached at all. Thread safe.
+public class BoundedLruCache<K, V> {
+
+    private final LinkedHashMap<K, V> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Weigher<V> mWeigher;
+    private final long mMaxWeight;
+    private long mWeight;
+
+    public BoundedLruCache(long maxWeight, Weigher<V> weigher) {
+        mMaxWeight = maxWeight;
+        mWeigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        return mEntries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        long weight = mWeigher.weightOf(value);
+        remove(key);
+        if (weight > mMaxWeight) {
+            return;
+        }
+        mEntries.put(key, value);
+        mWeight += weight;
+        trimTo(mMaxWeight);
+    }
+
+    public synchronized V remove(K key) {
+        V value = mEntries.remove(key);
+        if (value != null) {
+            mWeight -= mWeigher.weightOf(value);
+        }
+        return value;
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mWeight = 0;
+    }
+
+    // Evicts the least recently used values until the cache weighs no more than maxWeight
+    public synchronized void trimTo(long maxWeight) {
+        Iterator<Map.Entry<K, V>> iterator = mEntries.entrySet().iterator();
+        while (mWeight > maxWeight && iterator.hasNext()) {
+            mWeight -= mWeigher.weightOf(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    public synchronized long getWeight() {
+        return mWeight;
+    }
+
+    public long getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public interface Weigher<V> {
+        // Must not change while the value is cached
+        long weightOf(V value);
+    }
+}
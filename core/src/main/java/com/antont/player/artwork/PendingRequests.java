@@ -0,0 +1,122 @@
+package com.antont.player.artwork;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-flight loads by key. A request for a key that is already loading joins that load instead of starting
+// another one, e.g. rows of the same album. Cancelled requests are never called back, and a load whose
+// requests have all been cancelled, e.g. because their rows were recycled, is marked cancelled so the
+// worker can skip it. Main thread only, except for Load.isCancelled().
+public class PendingRequests<K, V> {
+
+    private final Map<K, Load<K>> mLoads = new HashMap<>();
+    private final Map<Load<K>, List<Request>> mRequests = new HashMap<>();
+
+    // The caller starts the load of the returned request if isLoadStarter() is true
+    public Request add(K key, Callback<V> callback) {
+        Load<K> load = mLoads.get(key);
+        boolean starter = load == null;
+        if (starter) {
+            load = new Load<>(key);
+            mLoads.put(key, load);
+            mRequests.put(load, new ArrayList<>(1));
+        }
+        Request request = new Request(load, callback, starter);
+        mRequests.get(load).add(request);
+        return request;
+    }
+
+    // Calls back the requests that are still waiting for the load, a cancelled load is ignored
+    public void complete(Load<K> load, V value) {
+        List<Request> requests = mRequests.remove(load);
+        if (requests == null) {
+            return;
+        }
+        mLoads.remove(load.mKey);
+        for (Request request : requests) {
+            request.mDone = true;
+        }
+        for (Request request : requests) {
+            request.mCallback.onResult(value);
+        }
+    }
+
+    public boolean isLoading(K key) {
+        return mLoads.containsKey(key);
+    }
+
+    public int size() {
+        return mLoads.size();
+    }
+
+    // A request that has already been answered, e.g. from a memory cache
+    public Request completed() {
+        Request request = new Request(null, null, false);
+        request.mDone = true;
+        return request;
+    }
+
+    public class Request {
+        private final Load<K> mLoad;
+        private final Callback<V> mCallback;
+        private final boolean mLoadStarter;
+        private boolean mDone;
+
+        private Request(Load<K> load, Callback<V> callback, boolean loadStarter) {
+            mLoad = load;
+            mCallback = callback;
+            mLoadStarter = loadStarter;
+        }
+
+        public Load<K> getLoad() {
+            return mLoad;
+        }
+
+        // True for the request that created the load
+        public boolean isLoadStarter() {
+            return mLoadStarter;
+        }
+
+        // Safe to call more than once and after the result has been delivered
+        public void cancel() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            List<Request> requests = mRequests.get(mLoad);
+            if (requests == null) {
+                return;
+            }
+            requests.remove(this);
+            if (requests.isEmpty()) {
+                mRequests.remove(mLoad);
+                mLoads.remove(mLoad.mKey);
+                mLoad.mCancelled = true;
+            }
+        }
+    }
+
+    public static class Load<K> {
+        private final K mKey;
+        private volatile boolean mCancelled;
+
+        private Load(K key) {
+            mKey = key;
+        }
+
+        public K getKey() {
+            return mKey;
+        }
+
+        // Read by the worker before the expensive steps
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    public interface Callback<V> {
+        void onResult(V value);
+    }
+}
@@ -0,0 +1,30 @@
+package com.antont.player.audio;
+
+import java.io.IOException;
+
+// Where a PcmPlayer writes its samples to, an AudioTrack on the device. Used by the output thread of the
+// player only, except getPlayedFrames() which the player also calls on its own thread.
+public interface PcmOutput {
+
+    void play();
+
+    void pause();
+
+    // Drops the samples that have been written but not played yet, the output must be paused
+    void flush();
+
+    // Plays what has been written and stops, play() starts again
+    void drain();
+
+    // Blocks until there is room and returns the number of samples written, negative on an error
+    int write(short[] samples, int offset, int count);
+
+    // Frames played since the output was created or last flushed, any thread
+    long getPlayedFrames();
+
+    void release();
+
+    interface Factory {
+        PcmOutput create(int sampleRate, int channelCount) throws IOException;
+    }
+}
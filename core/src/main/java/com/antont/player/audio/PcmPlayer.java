@@ -0,0 +1,633 @@
+package com.antont.player.audio;
+
+import com.antont.player.dsp.AudioProcessor;
+import com.antont.player.playback.Player;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+// Player that does its own buffering. A decoder thread fills a PcmRingBuffer from a PcmSource and an output
+// thread drains it into a PcmOutput, an AudioTrack on the device. The ring buffer size sets how long a
+// decoding stall can be hidden, the output buffer how long a pause or a volume change takes to be heard.
+// An AudioProcessor and then the volume are applied to the samples by the output thread.
+//
+// The player itself is used on one thread, its callbacks are delivered through the callback executor, the
+// main thread in the app. Every prepareAsync() starts a session with its own threads, ring buffer and
+// output. Closing a session never waits for its threads: they notice and leave, releasing the output.
+public class PcmPlayer implements Player {
+
+    // The MediaPlayer error codes, the engines treat all players the same
+    public static final int ERROR_UNKNOWN = 1;
+    public static final int ERROR_IO = -1004;
+
+    private static final int MIN_RING_BUFFER_SAMPLES = 4096;
+    private static final int OUTPUT_CHUNK_FRAMES = 512;
+    // Safety net for a missed wake up, the threads normally wake each other
+    private static final long PARK_TIMEOUT_IN_NS = 5_000_000;
+    private static final long DRAIN_POLL_IN_NS = 5_000_000;
+    // Some outputs stop a few frames short of what has been written
+    private static final long DRAIN_STALL_TIMEOUT_IN_NS = 500_000_000;
+
+    enum State {
+        IDLE, INITIALIZED, PREPARING, PREPARED, STARTED, PAUSED, COMPLETED, STOPPED, ERROR, END
+    }
+
+    private final PcmSource mSource;
+    private final PcmOutput.Factory mOutputFactory;
+    private final int mRingBufferInMs;
+    private final Executor mCallbackExecutor;
+
+    private volatile float mLeftVolume = 1f;
+    private volatile float mRightVolume = 1f;
+
+    private State mState = State.IDLE;
+    private String mPath;
+    private Session mSession;
+    private Player mNextPlayer;
+    private Listener mListener;
+    private OnUnderrunListener mUnderrunListener;
+    private AudioProcessor mAudioProcessor;
+
+    public PcmPlayer(PcmSource source, PcmOutput.Factory outputFactory, int ringBufferInMs, Executor callbackExecutor) {
+        mSource = source;
+        mOutputFactory = outputFactory;
+        mRingBufferInMs = ringBufferInMs;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        checkState("setDataSource", State.IDLE);
+        mPath = path;
+        mState = State.INITIALIZED;
+    }
+
+    @Override
+    public void prepareAsync() {
+        checkState("prepareAsync", State.INITIALIZED, State.STOPPED);
+        mSession = new Session(mPath, mAudioProcessor);
+        mState = State.PREPARING;
+        mSession.start();
+    }
+
+    @Override
+    public void start() {
+        checkState("start", State.PREPARED, State.STARTED, State.PAUSED, State.COMPLETED);
+        if (mState == State.COMPLETED) {
+            mSession.seekTo(0);
+        }
+        mState = State.STARTED;
+        mSession.setPlaying(true);
+    }
+
+    @Override
+    public void pause() {
+        checkState("pause", State.PREPARED, State.STARTED, State.PAUSED, State.COMPLETED);
+        if (mState == State.STARTED) {
+            mState = State.PAUSED;
+            mSession.setPlaying(false);
+        }
+    }
+
+    @Override
+    public void stop() {
+        checkState("stop", State.PREPARED, State.STARTED, State.PAUSED, State.COMPLETED, State.STOPPED);
+        closeSession();
+        mState = State.STOPPED;
+    }
+
+    @Override
+    public void reset() {
+        if (mState == State.END) {
+            return;
+        }
+        closeSession();
+        mPath = null;
+        mState = State.IDLE;
+    }
+
+    @Override
+    public void release() {
+        closeSession();
+        mListener = null;
+        mUnderrunListener = null;
+        mNextPlayer = null;
+        mState = State.END;
+    }
+
+    // After the end of the track the player waits paused at the new position
+    @Override
+    public void seekTo(int positionInMs) {
+        checkState("seekTo", State.PREPARED, State.STARTED, State.PAUSED, State.COMPLETED);
+        if (mState == State.COMPLETED) {
+            mState = State.PAUSED;
+        }
+        mSession.seekTo(Math.max(0, positionInMs) * 1000L);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mState == State.STARTED;
+    }
+
+    @Override
+    public int getDuration() {
+        return hasPosition() ? (int) (mSession.mDurationInUs / 1000) : 0;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (!hasPosition()) {
+            return 0;
+        }
+        if (mState == State.COMPLETED) {
+            return getDuration();
+        }
+        return (int) (mSession.getPositionInUs() / 1000);
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mLeftVolume = Math.max(0f, Math.min(1f, leftVolume));
+        mRightVolume = Math.max(0f, Math.min(1f, rightVolume));
+    }
+
+    // The next player is started when this one has played its last sample
+    @Override
+    public void setNextPlayer(Player nextPlayer) {
+        mNextPlayer = nextPlayer;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setOnUnderrunListener(OnUnderrunListener listener) {
+        mUnderrunListener = listener;
+    }
+
+    // Used from the next prepareAsync() on, by the output thread only. A processor per player, it keeps the
+    // history of the samples it has processed
+    public void setAudioProcessor(AudioProcessor processor) {
+        mAudioProcessor = processor;
+    }
+
+    // Underruns of the current session, the times the output has caught up with the decoder
+    public int getUnderrunCount() {
+        return mSession == null ? 0 : mSession.mUnderrunCount;
+    }
+
+    State getState() {
+        return mState;
+    }
+
+    private boolean hasPosition() {
+        return mState == State.PREPARED || mState == State.STARTED || mState == State.PAUSED
+                || mState == State.COMPLETED;
+    }
+
+    private void checkState(String method, State... validStates) {
+        for (State state : validStates) {
+            if (mState == state) {
+                return;
+            }
+        }
+        throw new IllegalStateException(method + " called in state " + mState);
+    }
+
+    private void closeSession() {
+        if (mSession != null) {
+            mSession.close();
+            mSession = null;
+        }
+    }
+
+    // Runs the callback on the player's thread unless its session has been closed meanwhile
+    private void post(Session session, Runnable callback) {
+        mCallbackExecutor.execute(() -> {
+            if (session == mSession) {
+                callback.run();
+            }
+        });
+    }
+
+    private void onPrepared() {
+        if (mState == State.PREPARING) {
+            mState = State.PREPARED;
+            if (mListener != null) {
+                mListener.onPrepared(this);
+            }
+        }
+    }
+
+    private void onCompletion() {
+        if (mState != State.STARTED && mState != State.PAUSED) {
+            return;
+        }
+        mState = State.COMPLETED;
+        if (mNextPlayer != null) {
+            mNextPlayer.start();
+        }
+        if (mListener != null) {
+            mListener.onCompletion(this);
+        }
+    }
+
+    private void onError(int what, int extra) {
+        closeSession();
+        mState = State.ERROR;
+        Listener listener = mListener;
+        if (listener != null && !listener.onError(this, what, extra)) {
+            listener.onCompletion(this);
+        }
+    }
+
+    private void onUnderrun(int underrunCount) {
+        if (mUnderrunListener != null) {
+            mUnderrunListener.onUnderrun(this, underrunCount);
+        }
+    }
+
+    /*
+     * The threads of one data source. A generation is a run of samples from one start position, every seek
+     * requests a new one. The decoder moves on to the requested generation once it has stopped writing the
+     * samples of the previous one. The output then drops what is left of them, flushes and moves on to the
+     * same generation, and only then does the decoder write again, so the ring buffer is only ever emptied
+     * by its consumer.
+     */
+    private final class Session implements PcmSink {
+
+        private static final int NO_GENERATION = -1;
+
+        private final String mPath;
+        private final AudioProcessor mProcessor;
+        private final Thread mDecoderThread = new Thread(this::runDecoder, "PcmDecoder");
+        private final Thread mOutputThread = new Thread(this::runOutput, "PcmOutput");
+
+        // Written by the player's thread
+        private volatile boolean mClosed;
+        private volatile boolean mPlaying;
+        private volatile int mRequestedGeneration;
+        private volatile long mRequestedPositionInUs;
+
+        // Written by the decoder thread
+        private volatile int mDecoderGeneration;
+        private volatile long mDecoderStartInUs;
+        private volatile int mFinishedGeneration = NO_GENERATION;
+        private volatile PcmRingBuffer mRingBuffer;
+        private volatile int mSampleRate;
+        private volatile int mChannelCount;
+        private volatile long mDurationInUs;
+        private volatile boolean mDecoderWaiting;
+        // Decoder thread only
+        private int mGeneration;
+        private boolean mSamplesWritten;
+        private boolean mPreparedPosted;
+
+        // Written by the output thread
+        private volatile int mOutputGeneration;
+        private volatile long mOutputStartInUs;
+        private volatile PcmOutput mOutput;
+        private volatile int mUnderrunCount;
+        private volatile boolean mOutputWaiting;
+
+        Session(String path, AudioProcessor processor) {
+            mPath = path;
+            mProcessor = processor;
+            // A raised priority on Android too, a late write is an audible glitch
+            mOutputThread.setPriority(Thread.MAX_PRIORITY);
+        }
+
+        void start() {
+            mDecoderThread.start();
+            mOutputThread.start();
+        }
+
+        void close() {
+            mClosed = true;
+            LockSupport.unpark(mDecoderThread);
+            LockSupport.unpark(mOutputThread);
+        }
+
+        void setPlaying(boolean playing) {
+            mPlaying = playing;
+            LockSupport.unpark(mOutputThread);
+        }
+
+        void seekTo(long positionInUs) {
+            mRequestedPositionInUs = positionInUs;
+            mRequestedGeneration++;
+            LockSupport.unpark(mDecoderThread);
+            LockSupport.unpark(mOutputThread);
+        }
+
+        long getPositionInUs() {
+            if (mOutputGeneration != mRequestedGeneration) {
+                return mRequestedPositionInUs;
+            }
+            PcmOutput output = mOutput;
+            int sampleRate = mSampleRate;
+            long playedFrames = output == null || sampleRate == 0 ? 0 : output.getPlayedFrames();
+            return mOutputStartInUs + playedFrames * 1_000_000 / Math.max(1, sampleRate);
+        }
+
+        private boolean isStale(int generation) {
+            return mClosed || mRequestedGeneration != generation;
+        }
+
+        private void wakeDecoder() {
+            if (mDecoderWaiting) {
+                LockSupport.unpark(mDecoderThread);
+            }
+        }
+
+        private void wakeOutput() {
+            if (mOutputWaiting) {
+                LockSupport.unpark(mOutputThread);
+            }
+        }
+
+        // Decoder thread
+
+        private void runDecoder() {
+            try {
+                while (!mClosed) {
+                    int generation = mRequestedGeneration;
+                    long startInUs = mRequestedPositionInUs;
+                    mGeneration = generation;
+                    mDecoderStartInUs = startInUs;
+                    mDecoderGeneration = generation;
+                    LockSupport.unpark(mOutputThread);
+                    while (mOutputGeneration != generation && !isStale(generation)) {
+                        mDecoderWaiting = true;
+                        if (mOutputGeneration != generation && !isStale(generation)) {
+                            LockSupport.parkNanos(this, PARK_TIMEOUT_IN_NS);
+                        }
+                        mDecoderWaiting = false;
+                    }
+                    if (isStale(generation)) {
+                        continue;
+                    }
+
+                    boolean complete = mSource.decode(mPath, startInUs, this);
+                    if (!complete || isStale(generation)) {
+                        continue;
+                    }
+                    if (mRingBuffer == null) {
+                        throw new IOException("No audio in " + mPath);
+                    }
+                    mFinishedGeneration = generation;
+                    LockSupport.unpark(mOutputThread);
+                    postPrepared();
+                    // Nothing left to decode until a seek
+                    while (!isStale(generation)) {
+                        mDecoderWaiting = true;
+                        if (!isStale(generation)) {
+                            LockSupport.parkNanos(this, PARK_TIMEOUT_IN_NS);
+                        }
+                        mDecoderWaiting = false;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!mClosed) {
+                    post(this, () -> onError(ERROR_UNKNOWN, ERROR_IO));
+                }
+            }
+        }
+
+        @Override
+        public boolean onFormat(int sampleRate, int channelCount, long durationInUs) {
+            if (durationInUs > 0) {
+                mDurationInUs = durationInUs;
+            }
+            if (mRingBuffer != null && sampleRate == mSampleRate && channelCount == mChannelCount) {
+                return !isStale(mGeneration);
+            }
+            if (mSamplesWritten) {
+                // The output has been opened with the old format
+                throw new IllegalStateException("Format changed to " + sampleRate + " Hz, " + channelCount + " channels");
+            }
+            if (sampleRate <= 0 || channelCount <= 0) {
+                throw new IllegalStateException("Bad format " + sampleRate + " Hz, " + channelCount + " channels");
+            }
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            int capacity = (int) Math.min(1 << 30, (long) sampleRate * channelCount * mRingBufferInMs / 1000);
+            mRingBuffer = new PcmRingBuffer(Math.max(MIN_RING_BUFFER_SAMPLES, capacity));
+            return !isStale(mGeneration);
+        }
+
+        @Override
+        public boolean onSamples(short[] samples, int frameCount) {
+            PcmRingBuffer ring = mRingBuffer;
+            int count = frameCount * mChannelCount;
+            int offset = 0;
+            mSamplesWritten = true;
+            while (offset < count) {
+                int written = ring.write(samples, offset, count - offset);
+                offset += written;
+                if (written > 0) {
+                    wakeOutput();
+                }
+                if (offset == count) {
+                    break;
+                }
+                // Full, the buffer is as full as it gets before playback starts
+                postPrepared();
+                if (isStale(mGeneration)) {
+                    return false;
+                }
+                mDecoderWaiting = true;
+                if (ring.free() == 0 && !isStale(mGeneration)) {
+                    LockSupport.parkNanos(this, PARK_TIMEOUT_IN_NS);
+                }
+                mDecoderWaiting = false;
+            }
+            if (ring.free() <= ring.getCapacity() / 2) {
+                postPrepared();
+            }
+            return !isStale(mGeneration);
+        }
+
+        private void postPrepared() {
+            if (!mPreparedPosted) {
+                mPreparedPosted = true;
+                post(this, PcmPlayer.this::onPrepared);
+            }
+        }
+
+        // Output thread
+
+        private void runOutput() {
+            PcmOutput output = null;
+            short[] buffer = null;
+            float[] processorBuffer = null;
+            int generation = 0;
+            int completedGeneration = NO_GENERATION;
+            long framesWritten = 0;
+            boolean playing = false;
+            boolean underrun = false;
+            try {
+                while (!mClosed) {
+                    PcmRingBuffer ring = mRingBuffer;
+                    int decoderGeneration = mDecoderGeneration;
+                    if (decoderGeneration != generation) {
+                        // The decoder has stopped writing the samples of the old generation
+                        if (ring != null) {
+                            ring.discard();
+                        }
+                        if (output != null) {
+                            output.pause();
+                            output.flush();
+                        }
+                        if (mProcessor != null) {
+                            mProcessor.reset();
+                        }
+                        playing = false;
+                        underrun = false;
+                        framesWritten = 0;
+                        generation = decoderGeneration;
+                        mOutputStartInUs = mDecoderStartInUs;
+                        mOutputGeneration = generation;
+                        LockSupport.unpark(mDecoderThread);
+                        continue;
+                    }
+
+                    if (!mPlaying || mRequestedGeneration != generation || completedGeneration == generation || ring == null) {
+                        if (playing) {
+                            output.pause();
+                            playing = false;
+                        }
+                        mOutputWaiting = true;
+                        if (!mClosed && mDecoderGeneration == generation) {
+                            LockSupport.parkNanos(this, PARK_TIMEOUT_IN_NS);
+                        }
+                        mOutputWaiting = false;
+                        continue;
+                    }
+
+                    int channelCount = mChannelCount;
+                    int count = Math.min(ring.available(), OUTPUT_CHUNK_FRAMES * channelCount);
+                    count -= count % channelCount;
+                    if (count == 0) {
+                        // The decoder writes its last samples before it marks the generation finished
+                        if (mFinishedGeneration == generation && ring.available() < channelCount) {
+                            if (output == null || drain(output, framesWritten, generation)) {
+                                playing = false;
+                                completedGeneration = generation;
+                                post(this, PcmPlayer.this::onCompletion);
+                            }
+                            continue;
+                        }
+                        // Only once playback has started, a seek always starts with an empty buffer
+                        if (!underrun && framesWritten > 0) {
+                            underrun = true;
+                            int underrunCount = ++mUnderrunCount;
+                            post(this, () -> onUnderrun(underrunCount));
+                        }
+                        mOutputWaiting = true;
+                        if (ring.available() < channelCount && mFinishedGeneration != generation && !isStale(generation)) {
+                            LockSupport.parkNanos(this, PARK_TIMEOUT_IN_NS);
+                        }
+                        mOutputWaiting = false;
+                        continue;
+                    }
+                    underrun = false;
+
+                    if (output == null) {
+                        output = mOutputFactory.create(mSampleRate, channelCount);
+                        mOutput = output;
+                        buffer = new short[OUTPUT_CHUNK_FRAMES * channelCount];
+                        if (mProcessor != null) {
+                            mProcessor.configure(mSampleRate, channelCount);
+                            processorBuffer = new float[buffer.length];
+                        }
+                    }
+                    ring.read(buffer, 0, count);
+                    wakeDecoder();
+                    if (mProcessor != null) {
+                        process(buffer, processorBuffer, count, channelCount);
+                    }
+                    applyVolume(buffer, count, channelCount);
+                    if (!playing) {
+                        output.play();
+                        playing = true;
+                    }
+                    for (int offset = 0; offset < count && !mClosed; ) {
+                        int written = output.write(buffer, offset, count - offset);
+                        if (written < 0) {
+                            throw new IOException("Output error " + written);
+                        }
+                        offset += written;
+                    }
+                    framesWritten += count / channelCount;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!mClosed) {
+                    post(this, () -> onError(ERROR_UNKNOWN, ERROR_IO));
+                }
+            } finally {
+                if (output != null) {
+                    output.release();
+                }
+            }
+        }
+
+        // Plays out what has been written, false if a seek or a close has come first. A pause meanwhile is
+        // not honored, the track ends anyway
+        private boolean drain(PcmOutput output, long framesWritten, int generation) {
+            output.drain();
+            long lastPlayedFrames = -1;
+            long stalledSince = System.nanoTime();
+            while (!isStale(generation)) {
+                long playedFrames = output.getPlayedFrames();
+                if (playedFrames >= framesWritten) {
+                    return true;
+                }
+                long now = System.nanoTime();
+                if (playedFrames != lastPlayedFrames) {
+                    lastPlayedFrames = playedFrames;
+                    stalledSince = now;
+                } else if (now - stalledSince > DRAIN_STALL_TIMEOUT_IN_NS) {
+                    return true;
+                }
+                LockSupport.parkNanos(this, DRAIN_POLL_IN_NS);
+            }
+            return false;
+        }
+
+        // Through floats, full scale is 1 for the processor. Rounded and clipped on the way back
+        private void process(short[] samples, float[] processorBuffer, int count, int channelCount) {
+            for (int i = 0; i < count; i++) {
+                processorBuffer[i] = samples[i] * (1f / 32768);
+            }
+            mProcessor.process(processorBuffer, count / channelCount);
+            for (int i = 0; i < count; i++) {
+                int sample = Math.round(processorBuffer[i] * 32768);
+                samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            }
+        }
+
+        // Channels alternate between the left and the right volume, a mono track gets their mean
+        private void applyVolume(short[] samples, int count, int channelCount) {
+            float left = mLeftVolume;
+            float right = mRightVolume;
+            if (channelCount == 1) {
+                left = right = (left + right) / 2;
+            }
+            if (left == 1f && right == 1f) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                float volume = (i % channelCount) % 2 == 0 ? left : right;
+                samples[i] = (short) (samples[i] * volume);
+            }
+        }
+    }
+
+    public interface OnUnderrunListener {
+        void onUnderrun(PcmPlayer player, int underrunCount);
+    }
+}
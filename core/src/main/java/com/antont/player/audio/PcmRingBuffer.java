@@ -0,0 +1,106 @@
+package com.antont.player.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Lock-free ring buffer of 16 bit samples between exactly one producer thread and one consumer thread.
+ *
+ * The indices count the samples written and read since the buffer was created and are only masked when
+ * the array is accessed, so a full buffer and an empty one are told apart without a spare slot. Each side
+ * owns one index, copies the samples first and then publishes its index with an ordered store, which the
+ * other side reads before it touches the samples. Each side also keeps the last index of the other side it
+ * has seen and only reads the shared one again when that cached value says there is no room or no data.
+ */
+public class PcmRingBuffer {
+
+    private final short[] mSamples;
+    private final int mMask;
+    private final AtomicLong mWriteIndex = new AtomicLong();
+    private final AtomicLong mReadIndex = new AtomicLong();
+
+    // Producer side
+    private long mWritePosition;
+    private long mCachedReadIndex;
+
+    // Consumer side
+    private long mReadPosition;
+    private long mCachedWriteIndex;
+
+    // The capacity is rounded up to a power of two
+    public PcmRingBuffer(int minCapacityInSamples) {
+        if (minCapacityInSamples <= 0 || minCapacityInSamples > 1 << 30) {
+            throw new IllegalArgumentException("Bad ring buffer capacity " + minCapacityInSamples);
+        }
+        int capacity = Integer.highestOneBit(minCapacityInSamples);
+        if (capacity < minCapacityInSamples) {
+            capacity <<= 1;
+        }
+        mSamples = new short[capacity];
+        mMask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return mSamples.length;
+    }
+
+    // Producer only. Copies as many of the samples as there is room for and returns their count
+    public int write(short[] src, int offset, int count) {
+        int free = mSamples.length - (int) (mWritePosition - mCachedReadIndex);
+        if (free < count) {
+            mCachedReadIndex = mReadIndex.get();
+            free = mSamples.length - (int) (mWritePosition - mCachedReadIndex);
+        }
+        int written = Math.min(count, free);
+        if (written <= 0) {
+            return 0;
+        }
+        int start = (int) mWritePosition & mMask;
+        int first = Math.min(written, mSamples.length - start);
+        System.arraycopy(src, offset, mSamples, start, first);
+        System.arraycopy(src, offset + first, mSamples, 0, written - first);
+        mWritePosition += written;
+        mWriteIndex.lazySet(mWritePosition);
+        return written;
+    }
+
+    // Consumer only. Copies up to count samples and returns how many there were
+    public int read(short[] dst, int offset, int count) {
+        int available = (int) (mCachedWriteIndex - mReadPosition);
+        if (available < count) {
+            mCachedWriteIndex = mWriteIndex.get();
+            available = (int) (mCachedWriteIndex - mReadPosition);
+        }
+        int read = Math.min(count, available);
+        if (read <= 0) {
+            return 0;
+        }
+        int start = (int) mReadPosition & mMask;
+        int first = Math.min(read, mSamples.length - start);
+        System.arraycopy(mSamples, start, dst, offset, first);
+        System.arraycopy(mSamples, 0, dst, offset + first, read - first);
+        mReadPosition += read;
+        mReadIndex.lazySet(mReadPosition);
+        return read;
+    }
+
+    // Consumer only. Drops every sample written so far and returns their count
+    public int discard() {
+        mCachedWriteIndex = mWriteIndex.get();
+        int discarded = (int) (mCachedWriteIndex - mReadPosition);
+        mReadPosition = mCachedWriteIndex;
+        mReadIndex.lazySet(mReadPosition);
+        return discarded;
+    }
+
+    // Consumer only, the samples that can be read at least
+    public int available() {
+        mCachedWriteIndex = mWriteIndex.get();
+        return (int) (mCachedWriteIndex - mReadPosition);
+    }
+
+    // Producer only, the samples that can be written at least
+    public int free() {
+        mCachedReadIndex = mReadIndex.get();
+        return mSamples.length - (int) (mWritePosition - mCachedReadIndex);
+    }
+}
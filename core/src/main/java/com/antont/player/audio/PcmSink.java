@@ -0,0 +1,13 @@
+package com.antont.player.audio;
+
+// Receives interleaved 16 bit PCM from a decoder, buffer by buffer
+public interface PcmSink {
+
+    // Called before the first samples, and again if the decoder reports another format than the container.
+    // durationInUs is 0 if the container does not tell. Returns false to stop decoding
+    boolean onFormat(int sampleRate, int channelCount, long durationInUs);
+
+    // frameCount frames of interleaved samples, the array is reused for the next buffer.
+    // Returns false to stop decoding
+    boolean onSamples(short[] samples, int frameCount);
+}
@@ -0,0 +1,11 @@
+package com.antont.player.audio;
+
+import java.io.IOException;
+
+// Where a PcmPlayer gets its samples from, PcmDecoder::decode on the device
+public interface PcmSource {
+
+    // Decodes the file from the given position on into the sink, blocking. Returns true when the end of the
+    // track has been reached, false when the sink has stopped the decoding
+    boolean decode(String path, long startInUs, PcmSink sink) throws IOException;
+}
@@ -0,0 +1,57 @@
+package com.antont.player.dsp;
+
+// The effects of the player: equalizer, balance, then preamp and limiter. The stages between are linear,
+// so the preamp can come last and the limiter sees the level that would have clipped. Settings are read
+// from the source at the start of every block, a change costs a redesign of the filters but no allocation.
+public class AudioEffects implements AudioProcessor {
+
+    private final SettingsSource mSource;
+    private final Equalizer mEqualizer = new Equalizer();
+    private final Balance mBalance = new Balance();
+    private final Limiter mLimiter = new Limiter();
+    private final DspChain mChain = new DspChain(mEqualizer, mBalance, mLimiter);
+    // Audio thread only
+    private DspSettings mAppliedSettings;
+
+    public AudioEffects(SettingsSource source) {
+        mSource = source;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channelCount) {
+        mChain.configure(sampleRate, channelCount);
+    }
+
+    @Override
+    public void process(float[] samples, int frameCount) {
+        DspSettings settings = mSource.getDspSettings();
+        if (settings != mAppliedSettings) {
+            apply(settings);
+        }
+        if (settings.isEnabled()) {
+            mChain.process(samples, frameCount);
+        }
+    }
+
+    @Override
+    public void reset() {
+        mChain.reset();
+    }
+
+    private void apply(DspSettings settings) {
+        if (!settings.isEnabled() && mAppliedSettings != null && mAppliedSettings.isEnabled()) {
+            // Turned back on later, the filters start from silence rather than a stale history
+            mChain.reset();
+        }
+        mEqualizer.setBands(settings.getBands());
+        mBalance.setBalance(settings.getBalance());
+        mLimiter.setPreampInDb(settings.getPreampInDb());
+        mLimiter.setEnabled(settings.isLimiterEnabled());
+        mAppliedSettings = settings;
+    }
+
+    // Any thread may change the settings, they are read on the audio thread
+    public interface SettingsSource {
+        DspSettings getDspSettings();
+    }
+}
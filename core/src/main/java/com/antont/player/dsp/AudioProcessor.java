@@ -0,0 +1,14 @@
+package com.antont.player.dsp;
+
+// A stage of the DSP chain. Works in place on interleaved float samples, full scale is 1. All three methods
+// are called on the audio thread, configure() before the first block and again when the format changes.
+// process() must not allocate, it runs once per output buffer.
+public interface AudioProcessor {
+
+    void configure(int sampleRate, int channelCount);
+
+    void process(float[] samples, int frameCount);
+
+    // Forgets the past samples, e.g. after a seek
+    void reset();
+}
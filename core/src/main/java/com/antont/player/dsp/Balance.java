@@ -0,0 +1,39 @@
+package com.antont.player.dsp;
+
+// Turns one side down, the other stays at full level. Channels alternate between left and right like in
+// the output, mono is left alone.
+public class Balance implements AudioProcessor {
+
+    private float mBalance;
+    private int mChannelCount;
+
+    // -1 is the left side only, 1 the right side only
+    public void setBalance(float balance) {
+        mBalance = Math.max(-1f, Math.min(1f, balance));
+    }
+
+    @Override
+    public void configure(int sampleRate, int channelCount) {
+        mChannelCount = channelCount;
+    }
+
+    @Override
+    public void process(float[] samples, int frameCount) {
+        int channelCount = mChannelCount;
+        if (mBalance == 0 || channelCount < 2) {
+            return;
+        }
+        float left = Math.min(1f, 1f - mBalance);
+        float right = Math.min(1f, 1f + mBalance);
+        int end = frameCount * channelCount;
+        for (int frame = 0; frame < end; frame += channelCount) {
+            for (int channel = 0; channel < channelCount; channel++) {
+                samples[frame + channel] *= channel % 2 == 0 ? left : right;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+    }
+}
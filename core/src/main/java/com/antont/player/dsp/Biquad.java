@@ -0,0 +1,104 @@
+package com.antont.player.dsp;
+
+/*
+ * Second order IIR filter with the peaking and shelving designs of Robert Bristow-Johnson's audio EQ
+ * cookbook, run in transposed direct form II:
+ *
+ *   y  = b0 * x + z1
+ *   z1 = b1 * x - a1 * y + z2
+ *   z2 = b2 * x - a2 * y
+ *
+ * The coefficients are normalized by a0. Coefficients and state are doubles, in floats a low shelf at a
+ * few tens of Hz at 48 kHz has poles too close to the unit circle to stay accurate. Every channel has its
+ * own state, the coefficients are shared.
+ */
+class Biquad {
+
+    // State below this is flushed, decaying denormals are slow on some CPUs
+    private static final double DENORMAL_LIMIT = 1e-25;
+
+    private double mB0 = 1;
+    private double mB1;
+    private double mB2;
+    private double mA1;
+    private double mA2;
+    private double[] mZ1 = new double[0];
+    private double[] mZ2 = new double[0];
+
+    void setChannelCount(int channelCount) {
+        if (mZ1.length != channelCount) {
+            mZ1 = new double[channelCount];
+            mZ2 = new double[channelCount];
+        }
+    }
+
+    // The frequency is kept below Nyquist, where the designs break down
+    void design(EqualizerBand.Type type, double sampleRate, double frequency, double gainInDb, double q) {
+        double a = Math.pow(10, gainInDb / 40);
+        double w0 = 2 * Math.PI * Math.min(frequency, sampleRate * 0.49) / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double b0, b1, b2, a0, a1, a2;
+        switch (type) {
+            case LOW_SHELF: {
+                double shelf = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) - (a - 1) * cos + shelf);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - shelf);
+                a0 = (a + 1) + (a - 1) * cos + shelf;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - shelf;
+                break;
+            }
+            case HIGH_SHELF: {
+                double shelf = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) + (a - 1) * cos + shelf);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - shelf);
+                a0 = (a + 1) - (a - 1) * cos + shelf;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - shelf;
+                break;
+            }
+            case PEAKING:
+            default:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+        }
+        mB0 = b0 / a0;
+        mB1 = b1 / a0;
+        mB2 = b2 / a0;
+        mA1 = a1 / a0;
+        mA2 = a2 / a0;
+    }
+
+    void process(float[] samples, int frameCount, int channelCount) {
+        double b0 = mB0, b1 = mB1, b2 = mB2, a1 = mA1, a2 = mA2;
+        int end = frameCount * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+            double z1 = mZ1[channel];
+            double z2 = mZ2[channel];
+            for (int i = channel; i < end; i += channelCount) {
+                double x = samples[i];
+                double y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                samples[i] = (float) y;
+            }
+            mZ1[channel] = Math.abs(z1) < DENORMAL_LIMIT ? 0 : z1;
+            mZ2[channel] = Math.abs(z2) < DENORMAL_LIMIT ? 0 : z2;
+        }
+    }
+
+    void reset() {
+        for (int channel = 0; channel < mZ1.length; channel++) {
+            mZ1[channel] = 0;
+            mZ2[channel] = 0;
+        }
+    }
+}
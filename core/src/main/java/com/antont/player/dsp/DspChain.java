@@ -0,0 +1,32 @@
+package com.antont.player.dsp;
+
+// Stages run one after the other on the same buffer
+public class DspChain implements AudioProcessor {
+
+    private final AudioProcessor[] mStages;
+
+    public DspChain(AudioProcessor... stages) {
+        mStages = stages.clone();
+    }
+
+    @Override
+    public void configure(int sampleRate, int channelCount) {
+        for (AudioProcessor stage : mStages) {
+            stage.configure(sampleRate, channelCount);
+        }
+    }
+
+    @Override
+    public void process(float[] samples, int frameCount) {
+        for (AudioProcessor stage : mStages) {
+            stage.process(samples, frameCount);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (AudioProcessor stage : mStages) {
+            stage.reset();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.antont.player.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A named equalizer curve with its preamp. The boosting presets come with a negative preamp, so the
+// limiter only catches the loudest peaks.
+public class DspPreset {
+
+    public static final List<DspPreset> BUILT_IN = Collections.unmodifiableList(Arrays.asList(
+            new DspPreset("Flat", DspSettings.graphicBands(0, 0, 0, 0, 0, 0, 0, 0, 0, 0), 0f),
+            new DspPreset("Bass boost", DspSettings.graphicBands(6, 5, 4, 2, 0, 0, 0, 0, 0, 0), -4f),
+            new DspPreset("Treble boost", DspSettings.graphicBands(0, 0, 0, 0, 0, 0, 2, 4, 5, 6), -4f),
+            new DspPreset("Vocal", DspSettings.graphicBands(-3, -2, -1, 0, 2, 4, 4, 2, 0, -1), -3f),
+            new DspPreset("Loudness", DspSettings.graphicBands(5, 4, 2, 0, -1, -1, 0, 2, 3, 4), -4f),
+            new DspPreset("Rock", DspSettings.graphicBands(4, 3, 2, 0, -1, -1, 1, 3, 4, 4), -3f),
+            new DspPreset("Classical", DspSettings.graphicBands(3, 2, 1, 0, 0, 0, -1, -1, 1, 2), -2f)));
+
+    private final String mName;
+    private final List<EqualizerBand> mBands;
+    private final float mPreampInDb;
+
+    public DspPreset(String name, List<EqualizerBand> bands, float preampInDb) {
+        mName = name;
+        mBands = Collections.unmodifiableList(new ArrayList<>(bands));
+        mPreampInDb = preampInDb;
+    }
+
+    public static DspPreset of(String name, DspSettings settings) {
+        return new DspPreset(name, settings.getBands(), settings.getPreampInDb());
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public List<EqualizerBand> getBands() {
+        return mBands;
+    }
+
+    public float getPreampInDb() {
+        return mPreampInDb;
+    }
+
+    // Whether the settings play this preset, whatever their balance and limiter
+    public boolean matches(DspSettings settings) {
+        return mPreampInDb == settings.getPreampInDb() && mBands.equals(settings.getBands());
+    }
+}
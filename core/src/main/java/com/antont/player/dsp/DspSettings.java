@@ -0,0 +1,118 @@
+package com.antont.player.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Everything the user sets for the effects. Immutable, the audio thread picks up a new instance between
+// two blocks.
+public class DspSettings {
+
+    // Centers of the bands of the default graphic equalizer, an octave apart
+    private static final float[] GRAPHIC_FREQUENCIES = {31, 62, 125, 250, 500, 1000, 2000, 4000, 8000, 16000};
+    // About an octave wide
+    private static final float GRAPHIC_Q = 1.41f;
+
+    public static final DspSettings DEFAULT = new DspSettings(false, graphicBands(new float[GRAPHIC_FREQUENCIES.length]),
+            0f, 0f, true);
+
+    private final boolean mEnabled;
+    private final List<EqualizerBand> mBands;
+    private final float mPreampInDb;
+    private final float mBalance;
+    private final boolean mLimiterEnabled;
+
+    public DspSettings(boolean enabled, List<EqualizerBand> bands, float preampInDb, float balance, boolean limiterEnabled) {
+        if (bands.size() > Equalizer.MAX_BANDS) {
+            throw new IllegalArgumentException(bands.size() + " bands, at most " + Equalizer.MAX_BANDS);
+        }
+        mEnabled = enabled;
+        mBands = Collections.unmodifiableList(new ArrayList<>(bands));
+        mPreampInDb = preampInDb;
+        mBalance = Math.max(-1f, Math.min(1f, balance));
+        mLimiterEnabled = limiterEnabled;
+    }
+
+    // Peaking bands at the default frequencies, one gain per band
+    public static List<EqualizerBand> graphicBands(float... gainsInDb) {
+        if (gainsInDb.length != GRAPHIC_FREQUENCIES.length) {
+            throw new IllegalArgumentException(gainsInDb.length + " gains for " + GRAPHIC_FREQUENCIES.length + " bands");
+        }
+        EqualizerBand[] bands = new EqualizerBand[GRAPHIC_FREQUENCIES.length];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = new EqualizerBand(EqualizerBand.Type.PEAKING, GRAPHIC_FREQUENCIES[i], gainsInDb[i], GRAPHIC_Q);
+        }
+        return Arrays.asList(bands);
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public List<EqualizerBand> getBands() {
+        return mBands;
+    }
+
+    public float getPreampInDb() {
+        return mPreampInDb;
+    }
+
+    public float getBalance() {
+        return mBalance;
+    }
+
+    public boolean isLimiterEnabled() {
+        return mLimiterEnabled;
+    }
+
+    public DspSettings withEnabled(boolean enabled) {
+        return new DspSettings(enabled, mBands, mPreampInDb, mBalance, mLimiterEnabled);
+    }
+
+    public DspSettings withBandGainInDb(int index, float gainInDb) {
+        List<EqualizerBand> bands = new ArrayList<>(mBands);
+        bands.set(index, bands.get(index).withGainInDb(gainInDb));
+        return new DspSettings(mEnabled, bands, mPreampInDb, mBalance, mLimiterEnabled);
+    }
+
+    public DspSettings withPreampInDb(float preampInDb) {
+        return new DspSettings(mEnabled, mBands, preampInDb, mBalance, mLimiterEnabled);
+    }
+
+    public DspSettings withBalance(float balance) {
+        return new DspSettings(mEnabled, mBands, mPreampInDb, balance, mLimiterEnabled);
+    }
+
+    public DspSettings withLimiterEnabled(boolean limiterEnabled) {
+        return new DspSettings(mEnabled, mBands, mPreampInDb, mBalance, limiterEnabled);
+    }
+
+    // The balance and the limiter are about the speakers, not the music, a preset leaves them alone
+    public DspSettings withPreset(DspPreset preset) {
+        return new DspSettings(mEnabled, preset.getBands(), preset.getPreampInDb(), mBalance, mLimiterEnabled);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DspSettings)) {
+            return false;
+        }
+        DspSettings settings = (DspSettings) o;
+        return mEnabled == settings.mEnabled && mPreampInDb == settings.mPreampInDb && mBalance == settings.mBalance
+                && mLimiterEnabled == settings.mLimiterEnabled && mBands.equals(settings.mBands);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mBands.hashCode();
+        result = 31 * result + (mEnabled ? 1 : 0);
+        result = 31 * result + Float.floatToIntBits(mPreampInDb);
+        result = 31 * result + Float.floatToIntBits(mBalance);
+        result = 31 * result + (mLimiterEnabled ? 1 : 0);
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package com.antont.player.dsp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Text format of the settings and the user's presets, small enough for SharedPreferences. Numbers are
+ * written with Float.toString, whatever the locale.
+ *
+ *   settings:  1;<enabled>;<preamp dB>;<balance>;<limiter enabled>;<bands>
+ *   bands:     <type>:<frequency>:<gain dB>:<q>, separated by commas, empty for none
+ *   presets:   one per line, <name>\t<preamp dB>\t<bands>
+ *
+ * Names lose their tabs and line breaks. Parsing throws IllegalArgumentException on anything else.
+ */
+public class DspSettingsFormat {
+
+    private static final String VERSION = "1";
+
+    public String formatSettings(DspSettings settings) {
+        return VERSION + ';' + settings.isEnabled() + ';' + settings.getPreampInDb() + ';' + settings.getBalance()
+                + ';' + settings.isLimiterEnabled() + ';' + formatBands(settings.getBands());
+    }
+
+    public DspSettings parseSettings(String text) {
+        String[] fields = text.split(";", -1);
+        if (fields.length != 6 || !VERSION.equals(fields[0])) {
+            throw new IllegalArgumentException("Bad settings " + text);
+        }
+        return new DspSettings(parseBoolean(fields[1]), parseBands(fields[5]), Float.parseFloat(fields[2]),
+                Float.parseFloat(fields[3]), parseBoolean(fields[4]));
+    }
+
+    public String formatPresets(List<DspPreset> presets) {
+        StringBuilder text = new StringBuilder();
+        for (DspPreset preset : presets) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(preset.getName().replaceAll("[\t\r\n]", " ")).append('\t')
+                    .append(preset.getPreampInDb()).append('\t')
+                    .append(formatBands(preset.getBands()));
+        }
+        return text.toString();
+    }
+
+    public List<DspPreset> parsePresets(String text) {
+        List<DspPreset> presets = new ArrayList<>();
+        if (text.isEmpty()) {
+            return presets;
+        }
+        for (String line : text.split("\n", -1)) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Bad preset " + line);
+            }
+            presets.add(new DspPreset(fields[0], parseBands(fields[2]), Float.parseFloat(fields[1])));
+        }
+        return presets;
+    }
+
+    private static String formatBands(List<EqualizerBand> bands) {
+        StringBuilder text = new StringBuilder();
+        for (EqualizerBand band : bands) {
+            if (text.length() > 0) {
+                text.append(',');
+            }
+            text.append(band.getType().name()).append(':').append(band.getFrequency()).append(':')
+                    .append(band.getGainInDb()).append(':').append(band.getQ());
+        }
+        return text.toString();
+    }
+
+    private static List<EqualizerBand> parseBands(String text) {
+        List<EqualizerBand> bands = new ArrayList<>();
+        if (text.isEmpty()) {
+            return bands;
+        }
+        for (String field : text.split(",", -1)) {
+            String[] values = field.split(":", -1);
+            if (values.length != 4) {
+                throw new IllegalArgumentException("Bad band " + field);
+            }
+            bands.add(new EqualizerBand(EqualizerBand.Type.valueOf(values[0]), Float.parseFloat(values[1]),
+                    Float.parseFloat(values[2]), Float.parseFloat(values[3])));
+        }
+        return bands;
+    }
+
+    private static boolean parseBoolean(String text) {
+        if ("true".equals(text)) {
+            return true;
+        }
+        if ("false".equals(text)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Bad boolean " + text);
+    }
+}
@@ -0,0 +1,72 @@
+package com.antont.player.dsp;
+
+import java.util.Collections;
+import java.util.List;
+
+// Parametric equalizer, a biquad per band. Bands at 0 dB are skipped, they would pass the signal unchanged.
+public class Equalizer implements AudioProcessor {
+
+    public static final int MAX_BANDS = 16;
+
+    private final Biquad[] mFilters = new Biquad[MAX_BANDS];
+    // Indices of the filters that change the signal
+    private final int[] mActiveFilters = new int[MAX_BANDS];
+    private int mActiveFilterCount;
+    private List<EqualizerBand> mBands = Collections.emptyList();
+    private int mSampleRate;
+    private int mChannelCount;
+
+    public Equalizer() {
+        for (int i = 0; i < MAX_BANDS; i++) {
+            mFilters[i] = new Biquad();
+        }
+    }
+
+    // Keeps the state of the filters, a change while playing does not start from silence
+    public void setBands(List<EqualizerBand> bands) {
+        if (bands.size() > MAX_BANDS) {
+            throw new IllegalArgumentException(bands.size() + " bands, at most " + MAX_BANDS);
+        }
+        mBands = bands;
+        design();
+    }
+
+    @Override
+    public void configure(int sampleRate, int channelCount) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        for (Biquad filter : mFilters) {
+            filter.setChannelCount(channelCount);
+        }
+        design();
+    }
+
+    @Override
+    public void process(float[] samples, int frameCount) {
+        for (int i = 0; i < mActiveFilterCount; i++) {
+            mFilters[mActiveFilters[i]].process(samples, frameCount, mChannelCount);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (Biquad filter : mFilters) {
+            filter.reset();
+        }
+    }
+
+    private void design() {
+        mActiveFilterCount = 0;
+        if (mSampleRate == 0) {
+            return;
+        }
+        for (int i = 0; i < mBands.size(); i++) {
+            EqualizerBand band = mBands.get(i);
+            if (band.getGainInDb() == 0) {
+                continue;
+            }
+            mFilters[i].design(band.getType(), mSampleRate, band.getFrequency(), band.getGainInDb(), band.getQ());
+            mActiveFilters[mActiveFilterCount++] = i;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.antont.player.dsp;
+
+// One filter of the equalizer. The Q of a peaking band sets its width, the Q of a shelf its slope,
+// 0.707 is a shelf without overshoot.
+public class EqualizerBand {
+
+    public enum Type {
+        PEAKING, LOW_SHELF, HIGH_SHELF
+    }
+
+    private final Type mType;
+    private final float mFrequency;
+    private final float mGainInDb;
+    private final float mQ;
+
+    public EqualizerBand(Type type, float frequency, float gainInDb, float q) {
+        if (type == null || !(frequency > 0) || !(q > 0) || Float.isNaN(gainInDb) || Float.isInfinite(gainInDb)) {
+            throw new IllegalArgumentException("Bad band " + type + " " + frequency + " Hz " + gainInDb + " dB Q " + q);
+        }
+        mType = type;
+        mFrequency = frequency;
+        mGainInDb = gainInDb;
+        mQ = q;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public float getFrequency() {
+        return mFrequency;
+    }
+
+    public float getGainInDb() {
+        return mGainInDb;
+    }
+
+    public float getQ() {
+        return mQ;
+    }
+
+    public EqualizerBand withGainInDb(float gainInDb) {
+        return new EqualizerBand(mType, mFrequency, gainInDb, mQ);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EqualizerBand)) {
+            return false;
+        }
+        EqualizerBand band = (EqualizerBand) o;
+        return mType == band.mType && mFrequency == band.mFrequency && mGainInDb == band.mGainInDb && mQ == band.mQ;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mType.hashCode();
+        result = 31 * result + Float.floatToIntBits(mFrequency);
+        result = 31 * result + Float.floatToIntBits(mGainInDb);
+        result = 31 * result + Float.floatToIntBits(mQ);
+        return result;
+    }
+}
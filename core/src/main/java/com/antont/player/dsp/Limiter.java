@@ -0,0 +1,74 @@
+package com.antont.player.dsp;
+
+/*
+ * Preamp followed by a peak limiter. The envelope follows the loudest channel of a frame, it jumps up to a
+ * new peak at once and falls back exponentially:
+ *
+ *   envelope = peak                                            if peak >= envelope
+ *   envelope = peak + (envelope - peak) * exp(-1 / (release * sample rate))   otherwise
+ *
+ * and the frame is scaled by threshold / envelope while the envelope is above the threshold. The attack
+ * is instant, so no sample leaves above the threshold and nothing has to be delayed for a look ahead.
+ * Linked channels keep the stereo image when one side peaks.
+ */
+public class Limiter implements AudioProcessor {
+
+    // Just below full scale, some room for the rounding to 16 bits
+    public static final float THRESHOLD = 0.98f;
+    private static final float RELEASE_IN_S = 0.1f;
+
+    private float mPreamp = 1f;
+    private boolean mEnabled = true;
+    private int mChannelCount;
+    private float mReleaseCoefficient;
+    private float mEnvelope;
+
+    public void setPreampInDb(float preampInDb) {
+        mPreamp = (float) Math.pow(10, preampInDb / 20);
+    }
+
+    // Off, only the preamp is applied and the output clips
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channelCount) {
+        mChannelCount = channelCount;
+        mReleaseCoefficient = (float) Math.exp(-1 / (RELEASE_IN_S * sampleRate));
+    }
+
+    @Override
+    public void process(float[] samples, int frameCount) {
+        int channelCount = mChannelCount;
+        int end = frameCount * channelCount;
+        float preamp = mPreamp;
+        if (!mEnabled) {
+            if (preamp != 1f) {
+                for (int i = 0; i < end; i++) {
+                    samples[i] *= preamp;
+                }
+            }
+            return;
+        }
+        float release = mReleaseCoefficient;
+        float envelope = mEnvelope;
+        for (int frame = 0; frame < end; frame += channelCount) {
+            float peak = 0;
+            for (int i = frame; i < frame + channelCount; i++) {
+                peak = Math.max(peak, Math.abs(samples[i] * preamp));
+            }
+            envelope = peak >= envelope ? peak : peak + (envelope - peak) * release;
+            float gain = envelope > THRESHOLD ? preamp * THRESHOLD / envelope : preamp;
+            for (int i = frame; i < frame + channelCount; i++) {
+                samples[i] *= gain;
+            }
+        }
+        mEnvelope = envelope;
+    }
+
+    @Override
+    public void reset() {
+        mEnvelope = 0;
+    }
+}
@@ -0,0 +1,163 @@
+package com.antont.player.duplicates;
+
+import java.util.Arrays;
+
+/*
+ * Streaming audio fingerprint after Haitsma and Kalker. The decoded audio is mixed down to mono and
+ * brought down to about 5.5 kHz by averaging, leading silence is skipped so that copies with different
+ * encoder padding line up. Frames of 2048 samples (0.37 s), 512 samples apart, are windowed and split
+ * into 33 logarithmic bands between 300 and 2000 Hz. Each frame gives a 32 bit sub-fingerprint, bit m
+ * telling whether the energy difference of bands m and m + 1 grew since the previous frame:
+ *
+ *   bit(n, m) = (E(n, m) - E(n, m + 1)) - (E(n - 1, m) - E(n - 1, m + 1)) > 0
+ *
+ * The bits survive lossy encoding, resampling and volume changes. The log energy ratios of neighbouring
+ * bands are also summed per segment of the time, for the signature of the Fingerprint.
+ *
+ * Only the first MAX_SECONDS after the silence are taken; the memory is one frame of samples and the
+ * sub-fingerprints, whatever the length of the track.
+ */
+public class AudioFingerprinter {
+
+    public static final int SAMPLE_RATE = 5512;
+    public static final int FRAME_SIZE = 2048;
+    public static final int HOP_SIZE = 512;
+    public static final int MAX_SECONDS = 30;
+    public static final int MAX_FRAMES = (MAX_SECONDS * SAMPLE_RATE - FRAME_SIZE) / HOP_SIZE + 1;
+
+    private static final int BAND_COUNT = 33;
+    private static final double MIN_FREQUENCY = 300;
+    private static final double MAX_FREQUENCY = 2000;
+    // About -60 dBFS, quieter samples at the start count as silence
+    private static final float SILENCE_THRESHOLD = 0.001f;
+
+    private static final Fft FFT = new Fft(FRAME_SIZE);
+    private static final float[] WINDOW = new float[FRAME_SIZE];
+    // FFT bin where each band starts, the last entry ends the last band
+    private static final int[] BAND_EDGES = new int[BAND_COUNT + 1];
+
+    static {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            WINDOW[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1)));
+        }
+        for (int i = 0; i <= BAND_COUNT; i++) {
+            double frequency = MIN_FREQUENCY * Math.pow(MAX_FREQUENCY / MIN_FREQUENCY, (double) i / BAND_COUNT);
+            BAND_EDGES[i] = (int) Math.round(frequency * FRAME_SIZE / SAMPLE_RATE);
+        }
+    }
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+
+    // Downsampling by averaging the input samples of every output sample
+    private float mSum;
+    private int mSumCount;
+    private int mPhase;
+    private boolean mSoundStarted;
+
+    // The last FRAME_SIZE samples, mRingPosition is the oldest one
+    private final float[] mRing = new float[FRAME_SIZE];
+    private int mRingPosition;
+    private int mSamplesToNextFrame = FRAME_SIZE;
+
+    private final float[] mRe = new float[FRAME_SIZE];
+    private final float[] mIm = new float[FRAME_SIZE];
+    private final double[] mEnergies = new double[BAND_COUNT];
+    private final double[] mPreviousEnergies = new double[BAND_COUNT];
+    private boolean mHasPreviousFrame;
+
+    private final int[] mFrames = new int[MAX_FRAMES];
+    private int mFrameCount;
+    // Sums of the log energy ratios of neighbouring bands per segment, for the signature
+    private final float[] mSpectrum = new float[Fingerprint.SEGMENT_COUNT * (BAND_COUNT - 1)];
+
+    public AudioFingerprinter(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("Unsupported format: " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    // Feeds frameCount frames of interleaved 16 bit samples. Returns false once the fingerprint is complete
+    // and further samples are not needed
+    public boolean process(short[] samples, int offset, int frameCount) {
+        int end = offset + frameCount * mChannelCount;
+        for (int i = offset; i < end && !isComplete(); i += mChannelCount) {
+            int mono = 0;
+            for (int channel = 0; channel < mChannelCount; channel++) {
+                mono += samples[i + channel];
+            }
+            mSum += mono / (32768f * mChannelCount);
+            mSumCount++;
+            mPhase += SAMPLE_RATE;
+            if (mPhase >= mSampleRate) {
+                float average = mSum / mSumCount;
+                mSum = 0;
+                mSumCount = 0;
+                // Input below the fingerprint rate repeats samples
+                while (mPhase >= mSampleRate) {
+                    mPhase -= mSampleRate;
+                    addSample(average);
+                }
+            }
+        }
+        return !isComplete();
+    }
+
+    public boolean isComplete() {
+        return mFrameCount == MAX_FRAMES;
+    }
+
+    // The sub-fingerprints so far, empty for silence or audio shorter than two frames
+    public Fingerprint getFingerprint(int durationInMs) {
+        return new Fingerprint(Arrays.copyOf(mFrames, mFrameCount), Fingerprint.signatureOf(mSpectrum), durationInMs);
+    }
+
+    private void addSample(float sample) {
+        if (!mSoundStarted) {
+            if (Math.abs(sample) < SILENCE_THRESHOLD) {
+                return;
+            }
+            mSoundStarted = true;
+        }
+        mRing[mRingPosition] = sample;
+        mRingPosition = (mRingPosition + 1) % FRAME_SIZE;
+        if (--mSamplesToNextFrame == 0) {
+            mSamplesToNextFrame = HOP_SIZE;
+            addFrame();
+        }
+    }
+
+    private void addFrame() {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            mRe[i] = mRing[(mRingPosition + i) % FRAME_SIZE] * WINDOW[i];
+        }
+        Arrays.fill(mIm, 0f);
+        FFT.transform(mRe, mIm);
+        for (int band = 0; band < BAND_COUNT; band++) {
+            double energy = 0;
+            for (int bin = BAND_EDGES[band]; bin < BAND_EDGES[band + 1]; bin++) {
+                energy += mRe[bin] * mRe[bin] + mIm[bin] * mIm[bin];
+            }
+            mEnergies[band] = energy;
+        }
+
+        if (mHasPreviousFrame) {
+            int bits = 0;
+            for (int m = 0; m < BAND_COUNT - 1; m++) {
+                double difference = mEnergies[m] - mEnergies[m + 1] - (mPreviousEnergies[m] - mPreviousEnergies[m + 1]);
+                if (difference > 0) {
+                    bits |= 1 << m;
+                }
+            }
+            int segment = mFrameCount * Fingerprint.SEGMENT_COUNT / MAX_FRAMES;
+            for (int m = 0; m < BAND_COUNT - 1; m++) {
+                mSpectrum[segment * (BAND_COUNT - 1) + m] += (float) Math.log((mEnergies[m] + 1e-9) / (mEnergies[m + 1] + 1e-9));
+            }
+            mFrames[mFrameCount++] = bits;
+        }
+        System.arraycopy(mEnergies, 0, mPreviousEnergies, 0, BAND_COUNT);
+        mHasPreviousFrame = true;
+    }
+}
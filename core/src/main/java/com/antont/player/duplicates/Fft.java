@@ -0,0 +1,64 @@
+package com.antont.player.duplicates;
+
+// In-place radix-2 FFT of one fixed size, with the twiddle factors and the bit reversal computed once
+class Fft {
+
+    private final int mSize;
+    private final float[] mCos;
+    private final float[] mSin;
+    private final int[] mReversed;
+
+    Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size " + size + " is not a power of two");
+        }
+        mSize = size;
+        mCos = new float[size / 2];
+        mSin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            mCos[i] = (float) Math.cos(angle);
+            mSin[i] = (float) Math.sin(angle);
+        }
+        mReversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            mReversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    int getSize() {
+        return mSize;
+    }
+
+    void transform(float[] re, float[] im) {
+        for (int i = 0; i < mSize; i++) {
+            int j = mReversed[i];
+            if (i < j) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int half = 1; half < mSize; half <<= 1) {
+            int step = mSize / (half * 2);
+            for (int start = 0; start < mSize; start += half * 2) {
+                for (int k = 0; k < half; k++) {
+                    float cos = mCos[k * step];
+                    float sin = mSin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tre = re[b] * cos - im[b] * sin;
+                    float tim = re[b] * sin + im[b] * cos;
+                    re[b] = re[a] - tre;
+                    im[b] = im[a] - tim;
+                    re[a] += tre;
+                    im[a] += tim;
+                }
+            }
+        }
+    }
+}
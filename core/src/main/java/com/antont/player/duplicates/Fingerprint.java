@@ -0,0 +1,115 @@
+package com.antont.player.duplicates;
+
+// The sub-fingerprints of the start of a track, a short signature of its spectrum for the LSH index and
+// the length of the whole track. Two fingerprints are compared by the share of bits that differ at the
+// best alignment.
+public class Fingerprint {
+
+    public static final int SIGNATURE_BITS = 128;
+
+    // Fingerprints are compared at offsets up to this many frames, about 1 s
+    static final int MAX_OFFSET = 12;
+    // Fewer overlapping frames are not enough to tell
+    static final int MIN_OVERLAP = 24;
+
+    // The spectrum is summed per segment of the fingerprinted time, segments are long enough that a
+    // small offset does not matter
+    static final int SEGMENT_COUNT = 8;
+    static final int VECTOR_SIZE = SEGMENT_COUNT * 32;
+    // Random +1/-1 weights of the signature hyperplanes, one bit per weight
+    private static final long[] HYPERPLANES = new long[SIGNATURE_BITS * VECTOR_SIZE / 64];
+
+    static {
+        // SplitMix64 with a fixed seed, signatures have to stay the same from run to run
+        long state = 0x5eed_f00dL;
+        for (int i = 0; i < HYPERPLANES.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            HYPERPLANES[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int[] mFrames;
+    private final int mDurationInMs;
+    private final long[] mSignature;
+
+    public Fingerprint(int[] frames, long[] signature, int durationInMs) {
+        mFrames = frames;
+        mSignature = signature;
+        mDurationInMs = durationInMs;
+    }
+
+    public int[] getFrames() {
+        return mFrames;
+    }
+
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    // Length of the whole track, 0 if it is not known
+    public int getDurationInMs() {
+        return mDurationInMs;
+    }
+
+    // Share of differing bits at the offset where they differ least, between 0 and 1. About 0.5 for
+    // unrelated audio, 1 if the fingerprints do not overlap enough to be compared
+    public float bitErrorRate(Fingerprint other) {
+        int[] a = mFrames;
+        int[] b = other.mFrames;
+        float best = 1f;
+        for (int offset = -MAX_OFFSET; offset <= MAX_OFFSET; offset++) {
+            int start = Math.max(0, -offset);
+            int end = Math.min(a.length, b.length - offset);
+            if (end - start < MIN_OVERLAP) {
+                continue;
+            }
+            int errors = 0;
+            for (int i = start; i < end; i++) {
+                errors += Integer.bitCount(a[i] ^ b[i + offset]);
+            }
+            best = Math.min(best, (float) errors / ((end - start) * 32));
+        }
+        return best;
+    }
+
+    public long[] getSignature() {
+        return mSignature;
+    }
+
+    /*
+     * Random hyperplane LSH (SimHash). The vector holds, per segment, the 32 log energy ratios of
+     * neighbouring bands, centered per segment so that the spectral tilt all music shares drops out.
+     * Each signature bit is the side of a random hyperplane the vector lies on, so the share of equal
+     * signature bits grows with the cosine similarity of the vectors: copies of a track differ in a few
+     * bits, unrelated tracks in about half of them.
+     */
+    static long[] signatureOf(float[] spectrum) {
+        float[] vector = spectrum.clone();
+        for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+            float mean = 0;
+            for (int i = 0; i < 32; i++) {
+                mean += vector[segment * 32 + i];
+            }
+            mean /= 32;
+            for (int i = 0; i < 32; i++) {
+                vector[segment * 32 + i] -= mean;
+            }
+        }
+        long[] signature = new long[SIGNATURE_BITS / 64];
+        int wordsPerPlane = VECTOR_SIZE / 64;
+        for (int plane = 0; plane < SIGNATURE_BITS; plane++) {
+            float dot = 0;
+            for (int i = 0; i < VECTOR_SIZE; i++) {
+                long weights = HYPERPLANES[plane * wordsPerPlane + i / 64];
+                dot += ((weights >>> (i % 64)) & 1) != 0 ? vector[i] : -vector[i];
+            }
+            if (dot > 0) {
+                signature[plane / 64] |= 1L << (plane % 64);
+            }
+        }
+        return signature;
+    }
+}
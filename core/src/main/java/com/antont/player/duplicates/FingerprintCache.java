@@ -0,0 +1,84 @@
+package com.antont.player.duplicates;
+
+import com.antont.player.storage.PathRecordLog;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Fingerprints per file path, with the file size and modification time they were taken at, in a
+ * PathRecordLog like the loudness table. The value of each record, all numbers big endian:
+ *
+ *   long file size, long last modified, int duration in ms, 2 longs signature, short frame count,
+ *   int per frame
+ *
+ * A fingerprint of 30 s takes about 1.3 KB.
+ */
+public class FingerprintCache extends PathRecordLog<FingerprintCache.Entry> {
+
+    private static final int SIGNATURE_WORDS = Fingerprint.SIGNATURE_BITS / 64;
+
+    public FingerprintCache(File file) {
+        super(file);
+    }
+
+    // Null if the file has not been fingerprinted at this size and modification time
+    public Fingerprint get(String path, long fileSize, long lastModified) {
+        Entry entry = get(path);
+        return entry != null && entry.mFileSize == fileSize && entry.mLastModified == lastModified
+                ? entry.mFingerprint : null;
+    }
+
+    public void put(String path, long fileSize, long lastModified, Fingerprint fingerprint) throws IOException {
+        put(path, new Entry(fileSize, lastModified, fingerprint));
+    }
+
+    @Override
+    protected void writeValue(DataOutputStream out, Entry entry) throws IOException {
+        Fingerprint fingerprint = entry.mFingerprint;
+        out.writeLong(entry.mFileSize);
+        out.writeLong(entry.mLastModified);
+        out.writeInt(fingerprint.getDurationInMs());
+        for (long word : fingerprint.getSignature()) {
+            out.writeLong(word);
+        }
+        int[] frames = fingerprint.getFrames();
+        out.writeShort(frames.length);
+        for (int frame : frames) {
+            out.writeInt(frame);
+        }
+    }
+
+    @Override
+    protected Entry readValue(ByteBuffer buffer) {
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        int durationInMs = buffer.getInt();
+        long[] signature = new long[SIGNATURE_WORDS];
+        for (int i = 0; i < SIGNATURE_WORDS; i++) {
+            signature[i] = buffer.getLong();
+        }
+        int frameCount = buffer.getShort() & 0xffff;
+        if (buffer.remaining() != frameCount * 4) {
+            return null;
+        }
+        int[] frames = new int[frameCount];
+        buffer.asIntBuffer().get(frames);
+        buffer.position(buffer.position() + frameCount * 4);
+        return new Entry(fileSize, lastModified, new Fingerprint(frames, signature, durationInMs));
+    }
+
+    static class Entry {
+        final long mFileSize;
+        final long mLastModified;
+        final Fingerprint mFingerprint;
+
+        Entry(long fileSize, long lastModified, Fingerprint fingerprint) {
+            mFileSize = fileSize;
+            mLastModified = lastModified;
+            mFingerprint = fingerprint;
+        }
+    }
+}
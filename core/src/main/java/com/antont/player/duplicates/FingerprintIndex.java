@@ -0,0 +1,126 @@
+package com.antont.player.duplicates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds the items with the same audio among many. Comparing every pair of fingerprints is quadratic, so
+// the 128 bit signatures are cut into BAND_COUNT bands of 16 bits and only items that agree on a whole
+// band are compared. Copies differ in a few signature bits and share a band almost always, unrelated
+// tracks share one with a chance of about BAND_COUNT / 65536. The matches are joined into clusters,
+// a copy of a copy is in the same cluster even if it did not match the first one directly.
+public class FingerprintIndex<T> {
+
+    // Copies measure about 0.15, unrelated audio about 0.5
+    static final float MAX_BIT_ERROR_RATE = 0.3f;
+    // Tracks of different length are different edits, even if their starts are the same
+    static final int MAX_DURATION_DIFFERENCE_IN_MS = 3000;
+
+    private static final int BAND_BITS = 16;
+    private static final int BAND_COUNT = Fingerprint.SIGNATURE_BITS / BAND_BITS;
+
+    private final List<T> mItems = new ArrayList<>();
+    private final List<Fingerprint> mFingerprints = new ArrayList<>();
+    private int mComparisonCount;
+
+    // Fingerprints too short to compare, of silence or very short tracks, are left out
+    public void add(T item, Fingerprint fingerprint) {
+        if (fingerprint.getFrameCount() < Fingerprint.MIN_OVERLAP) {
+            return;
+        }
+        mItems.add(item);
+        mFingerprints.add(fingerprint);
+    }
+
+    public int size() {
+        return mItems.size();
+    }
+
+    // Clusters of two items or more, in the order the items were added
+    public List<List<T>> findDuplicates() {
+        int count = mItems.size();
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = i;
+        }
+        Set<Long> compared = new HashSet<>();
+        mComparisonCount = 0;
+
+        long[] bucketed = new long[count];
+        for (int band = 0; band < BAND_COUNT; band++) {
+            // Band value in the high bits and item index in the low ones, sorting groups the buckets
+            for (int i = 0; i < count; i++) {
+                bucketed[i] = (long) bandOf(mFingerprints.get(i).getSignature(), band) << 32 | i;
+            }
+            Arrays.sort(bucketed);
+            int start = 0;
+            while (start < count) {
+                int end = start + 1;
+                while (end < count && bucketed[end] >>> 32 == bucketed[start] >>> 32) {
+                    end++;
+                }
+                for (int a = start; a < end; a++) {
+                    for (int b = a + 1; b < end; b++) {
+                        int first = (int) bucketed[a];
+                        int second = (int) bucketed[b];
+                        if (find(parents, first) != find(parents, second)
+                                && compared.add((long) first << 32 | second)
+                                && matches(mFingerprints.get(first), mFingerprints.get(second))) {
+                            parents[find(parents, second)] = find(parents, first);
+                        }
+                    }
+                }
+                start = end;
+            }
+        }
+
+        Map<Integer, List<T>> clusters = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            int root = find(parents, i);
+            List<T> cluster = clusters.get(root);
+            if (cluster == null) {
+                cluster = new ArrayList<>(2);
+                clusters.put(root, cluster);
+            }
+            cluster.add(mItems.get(i));
+        }
+        List<List<T>> duplicates = new ArrayList<>();
+        for (List<T> cluster : clusters.values()) {
+            if (cluster.size() > 1) {
+                duplicates.add(cluster);
+            }
+        }
+        return duplicates;
+    }
+
+    // Fingerprint pairs compared by the last findDuplicates(), for the tests
+    int getComparisonCount() {
+        return mComparisonCount;
+    }
+
+    private boolean matches(Fingerprint a, Fingerprint b) {
+        if (a.getDurationInMs() > 0 && b.getDurationInMs() > 0
+                && Math.abs(a.getDurationInMs() - b.getDurationInMs()) > MAX_DURATION_DIFFERENCE_IN_MS) {
+            return false;
+        }
+        mComparisonCount++;
+        return a.bitErrorRate(b) <= MAX_BIT_ERROR_RATE;
+    }
+
+    private static int bandOf(long[] signature, int band) {
+        int bit = band * BAND_BITS;
+        return (int) (signature[bit / 64] >>> (bit % 64)) & ((1 << BAND_BITS) - 1);
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+}
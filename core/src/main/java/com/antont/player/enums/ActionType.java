@@ -5,5 +5,7 @@ public enum ActionType {
     ACTION_PLAY,
     ACTION_NEXT,
     ACTION_PREVIOUS,
-    ACTION_STOP
+    ACTION_STOP,
+    ACTION_SHUFFLE,
+    ACTION_REPEAT
 }
@@ -0,0 +1,15 @@
+package com.antont.player.enums;
+
+public enum RepeatMode {
+    // Playback stops after the last track of the queue
+    OFF,
+    // The queue starts over after the last track
+    ALL,
+    // The current track is played again and again
+    ONE;
+
+    // The mode the repeat button switches to
+    public RepeatMode next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+}
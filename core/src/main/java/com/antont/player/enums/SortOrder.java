@@ -0,0 +1,17 @@
+package com.antont.player.enums;
+
+public enum SortOrder {
+    // MediaStore ids, the order the tracks were added to the device in
+    ADDED,
+    // File name
+    NAME,
+    // Album, one section per album
+    ALBUM,
+    // Folder, sections make up the folder tree
+    FOLDER;
+
+    // The order the sort button switches to
+    public SortOrder next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+}
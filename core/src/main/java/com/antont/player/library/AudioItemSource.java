@@ -0,0 +1,17 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.io.Closeable;
+
+// Forward-only stream of library rows, e.g. a MediaStore cursor
+public interface AudioItemSource extends Closeable {
+
+    boolean moveToNext();
+
+    // Reads the row the source is positioned on
+    AudioItem read();
+
+    @Override
+    void close();
+}
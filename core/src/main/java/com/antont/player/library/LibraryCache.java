@@ -0,0 +1,54 @@
+package com.antont.player.library;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Keeps the last library snapshot in a single file. Writes go to a temporary file first
+// and are renamed over the old one, so a crash never leaves a half written snapshot behind.
+public class LibraryCache {
+
+    private final File mFile;
+    private final LibrarySnapshotSerializer mSerializer = new LibrarySnapshotSerializer();
+
+    public LibraryCache(File file) {
+        mFile = file;
+    }
+
+    // Returns null when there is no usable snapshot, a broken or outdated file is deleted
+    public LibrarySnapshot load() {
+        try (InputStream in = new FileInputStream(mFile)) {
+            byte[] data = new byte[(int) mFile.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            return mSerializer.read(data);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            invalidate();
+            return null;
+        }
+    }
+
+    public void save(LibrarySnapshot snapshot) throws IOException {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(mSerializer.toByteArray(snapshot));
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(mFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace " + mFile);
+        }
+    }
+
+    public void invalidate() {
+        mFile.delete();
+    }
+}
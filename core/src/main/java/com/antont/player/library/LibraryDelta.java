@@ -0,0 +1,45 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Changes of the MediaStore library since the previous sync
+public class LibraryDelta {
+
+    private final List<AudioItem> mAddedItems = new ArrayList<>();
+    private final List<AudioItem> mUpdatedItems = new ArrayList<>();
+    private final Set<Long> mRemovedIds = new HashSet<>();
+
+    public void addItem(AudioItem item) {
+        mAddedItems.add(item);
+    }
+
+    public void updateItem(AudioItem item) {
+        mUpdatedItems.add(item);
+    }
+
+    public void removeItem(long id) {
+        mRemovedIds.add(id);
+    }
+
+    public List<AudioItem> getAddedItems() {
+        return mAddedItems;
+    }
+
+    // New versions of already known items, matched with the old ones by MediaStore id
+    public List<AudioItem> getUpdatedItems() {
+        return mUpdatedItems;
+    }
+
+    public Set<Long> getRemovedIds() {
+        return mRemovedIds;
+    }
+
+    public boolean isEmpty() {
+        return mAddedItems.isEmpty() && mUpdatedItems.isEmpty() && mRemovedIds.isEmpty();
+    }
+}
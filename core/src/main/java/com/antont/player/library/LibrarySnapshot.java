@@ -0,0 +1,25 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.List;
+
+// The audio library as it was seen by one MediaStore scan, together with the generation stamp of that scan
+public class LibrarySnapshot {
+
+    private final long mGeneration;
+    private final List<AudioItem> mItems;
+
+    public LibrarySnapshot(long generation, List<AudioItem> items) {
+        mGeneration = generation;
+        mItems = items;
+    }
+
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    public List<AudioItem> getItems() {
+        return mItems;
+    }
+}
@@ -0,0 +1,125 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/*
+ * Binary format of the library snapshot, all numbers are big endian:
+ *
+ *   int   magic
+ *   int   format version
+ *   long  generation stamp of the MediaStore scan
+ *   int   item count
+ *   item count times:
+ *     long  MediaStore id
+ *     long  MediaStore modification date
+ *     path, name, album, each one is an int byte length (-1 for null) and UTF-8 bytes
+ */
+public class LibrarySnapshotSerializer {
+
+    public static final int MAGIC = 0x41504c53; // "APLS"
+    public static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NULL_LENGTH = -1;
+
+    public void write(LibrarySnapshot snapshot, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        List<AudioItem> items = snapshot.getItems();
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(snapshot.getGeneration());
+        out.writeInt(items.size());
+        for (AudioItem item : items) {
+            out.writeLong(item.getId());
+            out.writeLong(item.getDateModified());
+            writeString(out, item.getPath());
+            writeString(out, item.getName());
+            writeString(out, item.getAlbumName());
+        }
+        out.flush();
+    }
+
+    public byte[] toByteArray(LibrarySnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(snapshot, out);
+        return out.toByteArray();
+    }
+
+    public LibrarySnapshot read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return read(out.toByteArray());
+    }
+
+    // Throws an IOException when the data is truncated, corrupted or written by another format version
+    public LibrarySnapshot read(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a library snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long generation = buffer.getLong();
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IOException("Corrupted snapshot, negative item count");
+            }
+
+            // Rows go straight into columns, the items of the snapshot are views of them
+            LibraryStore store = new LibraryStore();
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long dateModified = buffer.getLong();
+                String path = readString(buffer);
+                String name = readString(buffer);
+                String album = readString(buffer);
+                store.append(id, dateModified, path, name, album);
+            }
+            store.trimToSize();
+            return new LibrarySnapshot(generation, store.asList());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated library snapshot", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupted snapshot, bad string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
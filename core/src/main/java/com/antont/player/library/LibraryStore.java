@@ -0,0 +1,422 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// Column-oriented storage of library rows. Album names and folders are interned into dictionaries, ids and
+// dates live in primitive columns and names and file names are packed into one byte array, one byte per
+// char when the text is Latin-1. Rows are exposed as light AudioItem views that are created on first
+// access and whose strings are only built when a getter asks for them.
+// Rows are only appended, one thread writes and any thread may read. Every write ends with a volatile
+// write of the row count and every read starts with a volatile read of it. Rows of updated and removed
+// tracks stay behind, compact() copies the live rows into a new store and leaves this one to its readers.
+public class LibraryStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+    // Lengths of null strings and of file names that equal the display name, the usual case in MediaStore
+    private static final int NULL_LENGTH = -1;
+    private static final int SAME_AS_NAME = -2;
+    // Set in the length of strings stored with two bytes per char
+    private static final int WIDE = 1 << 30;
+    // Slots of the decoded string caches, a power of two
+    private static final int DECODED_CACHE_SIZE = 512;
+
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private long[] mDatesModified = new long[INITIAL_CAPACITY];
+    private int[] mAlbumIds = new int[INITIAL_CAPACITY];
+    private int[] mFolderIds = new int[INITIAL_CAPACITY];
+    // The file name, when it differs from the name, is stored right after the name
+    private int[] mNameStarts = new int[INITIAL_CAPACITY];
+    private int[] mNameLengths = new int[INITIAL_CAPACITY];
+    private int[] mFileNameLengths = new int[INITIAL_CAPACITY];
+    private byte[] mBytes = new byte[INITIAL_CAPACITY * 32];
+    private int mByteCount;
+
+    private final StringDictionary mAlbums = new StringDictionary();
+    private final StringDictionary mFolders = new StringDictionary();
+
+    // Views are created lazily by any thread, the lock keeps one view per row
+    private final Object mViewLock = new Object();
+    private AudioItem[] mViews = new AudioItem[INITIAL_CAPACITY];
+
+    // Names and paths decoded last, a row maps to the slot row % DECODED_CACHE_SIZE. Rows never change, so
+    // the entries never go stale, and they are immutable, so a racing reader sees a whole entry or an old one
+    private final Decoded[] mDecodedNames = new Decoded[DECODED_CACHE_SIZE];
+    private final Decoded[] mDecodedPaths = new Decoded[DECODED_CACHE_SIZE];
+
+    private volatile int mSize;
+
+    private final List<AudioItem> mList = new RowList();
+
+    public int size() {
+        return mSize;
+    }
+
+    // Appends a row and returns its index
+    public int append(long id, long dateModified, String path, String name, String albumName) {
+        int row = mSize;
+        if (row == mIds.length) {
+            resize(row * 2);
+        }
+        mIds[row] = id;
+        mDatesModified[row] = dateModified;
+        mAlbumIds[row] = mAlbums.intern(albumName);
+
+        int separator = path == null ? -1 : path.lastIndexOf('/');
+        mFolderIds[row] = separator < 0 ? StringDictionary.NO_ID : mFolders.intern(path.substring(0, separator));
+        String fileName = path == null ? null : path.substring(separator + 1);
+
+        mNameStarts[row] = mByteCount;
+        mNameLengths[row] = appendString(name);
+        mFileNameLengths[row] = fileName != null && fileName.equals(name) ? SAME_AS_NAME : appendString(fileName);
+
+        mSize = row + 1;
+        return row;
+    }
+
+    // Appends a row and returns its view
+    public AudioItem add(long id, long dateModified, String path, String name, String albumName) {
+        return get(append(id, dateModified, path, name, albumName));
+    }
+
+    public AudioItem add(AudioItem item) {
+        return add(item.getId(), item.getDateModified(), item.getPath(), item.getName(), item.getAlbumName());
+    }
+
+    // Views of the given items in this store, in the same order
+    public List<AudioItem> addAll(List<AudioItem> items) {
+        List<AudioItem> views = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            views.add(add(items.get(i)));
+        }
+        return views;
+    }
+
+    // A new store with the rows of the given views of this store, in the list order. The bytes are copied as
+    // they are and the dictionaries keep the strings still in use. Writer thread only
+    public LibraryStore compact(List<AudioItem> liveItems) {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < liveItems.size(); i++) {
+            int row = rowOf(liveItems.get(i));
+            if (row < 0) {
+                throw new IllegalArgumentException("Not a row of this store: " + liveItems.get(i).getId());
+            }
+            store.appendRow(this, row);
+        }
+        return store;
+    }
+
+    // The row of the item if it is a view of this store, -1 otherwise
+    public int rowOf(AudioItem item) {
+        if (item instanceof RowView && ((RowView) item).mStore == this) {
+            return ((RowView) item).mRow;
+        }
+        return -1;
+    }
+
+    // Releases the spare capacity, e.g. once a snapshot has been read. Writer thread only
+    public void trimToSize() {
+        int size = mSize;
+        resize(Math.max(size, 1));
+        mBytes = Arrays.copyOf(mBytes, mByteCount);
+        mSize = size;
+    }
+
+    // The view of a row, always the same instance for the same row
+    public AudioItem get(int row) {
+        checkRow(row);
+        synchronized (mViewLock) {
+            if (row >= mViews.length) {
+                mViews = Arrays.copyOf(mViews, Math.max(row + 1, mViews.length * 2));
+            }
+            AudioItem view = mViews[row];
+            if (view == null) {
+                view = new RowView(this, row, mIds[row], mDatesModified[row]);
+                mViews[row] = view;
+            }
+            return view;
+        }
+    }
+
+    // Every row of the store, the list grows with the store
+    public List<AudioItem> asList() {
+        return mList;
+    }
+
+    public long getId(int row) {
+        checkRow(row);
+        return mIds[row];
+    }
+
+    public long getDateModified(int row) {
+        checkRow(row);
+        return mDatesModified[row];
+    }
+
+    // Equal album names have equal ids, the order of the ids is the order of first appearance
+    public int getAlbumId(int row) {
+        checkRow(row);
+        return mAlbumIds[row];
+    }
+
+    public String getAlbumName(int row) {
+        checkRow(row);
+        return mAlbums.get(mAlbumIds[row]);
+    }
+
+    public int getFolderId(int row) {
+        checkRow(row);
+        return mFolderIds[row];
+    }
+
+    public int getAlbumCount() {
+        awaitColumns();
+        return mAlbums.size();
+    }
+
+    public int getFolderCount() {
+        awaitColumns();
+        return mFolders.size();
+    }
+
+    public String getName(int row) {
+        checkRow(row);
+        Decoded decoded = mDecodedNames[row & (DECODED_CACHE_SIZE - 1)];
+        if (decoded != null && decoded.mRow == row) {
+            return decoded.mValue;
+        }
+        String name = decode(mNameStarts[row], mNameLengths[row]);
+        mDecodedNames[row & (DECODED_CACHE_SIZE - 1)] = new Decoded(row, name);
+        return name;
+    }
+
+    public int getNameLength(int row) {
+        checkRow(row);
+        return charCount(mNameLengths[row]);
+    }
+
+    // Copies the name into dst without creating a String, returns its length
+    public int getNameChars(int row, char[] dst) {
+        checkRow(row);
+        int encodedLength = mNameLengths[row];
+        int length = charCount(encodedLength);
+        int start = mNameStarts[row];
+        if ((encodedLength & WIDE) == 0) {
+            for (int i = 0; i < length; i++) {
+                dst[i] = (char) (mBytes[start + i] & 0xff);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[i] = (char) (((mBytes[start + 2 * i] & 0xff) << 8) | (mBytes[start + 2 * i + 1] & 0xff));
+            }
+        }
+        return length;
+    }
+
+    // The folder of the path, interned, null if the path has no folder
+    public String getFolder(int row) {
+        checkRow(row);
+        return mFolders.get(mFolderIds[row]);
+    }
+
+    public String getPath(int row) {
+        checkRow(row);
+        Decoded decoded = mDecodedPaths[row & (DECODED_CACHE_SIZE - 1)];
+        if (decoded != null && decoded.mRow == row) {
+            return decoded.mValue;
+        }
+        String path = decodePath(row);
+        mDecodedPaths[row & (DECODED_CACHE_SIZE - 1)] = new Decoded(row, path);
+        return path;
+    }
+
+    private String decodePath(int row) {
+        String fileName;
+        int fileNameLength = mFileNameLengths[row];
+        if (fileNameLength == SAME_AS_NAME) {
+            fileName = decode(mNameStarts[row], mNameLengths[row]);
+        } else {
+            fileName = decode(mNameStarts[row] + byteCount(mNameLengths[row]), fileNameLength);
+        }
+        String folder = mFolders.get(mFolderIds[row]);
+        if (fileName == null || folder == null) {
+            return fileName;
+        }
+        return new StringBuilder(folder.length() + 1 + fileName.length()).append(folder).append('/').append(fileName).toString();
+    }
+
+    // Heap size of the columns in bytes, views and dictionary strings excluded
+    public long getColumnBytes() {
+        awaitColumns();
+        return (long) mIds.length * (8 + 8 + 4 * 5) + mBytes.length;
+    }
+
+    // The volatile read makes the columns written before the last row count visible to this thread
+    private void awaitColumns() {
+        if (mSize < 0) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private void checkRow(int row) {
+        int size = mSize;
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+    }
+
+    // Copies a row of the source store, the writer of both is the calling thread
+    private void appendRow(LibraryStore source, int sourceRow) {
+        int row = mSize;
+        if (row == mIds.length) {
+            resize(row * 2);
+        }
+        mIds[row] = source.mIds[sourceRow];
+        mDatesModified[row] = source.mDatesModified[sourceRow];
+        mAlbumIds[row] = mAlbums.intern(source.mAlbums.get(source.mAlbumIds[sourceRow]));
+        mFolderIds[row] = mFolders.intern(source.mFolders.get(source.mFolderIds[sourceRow]));
+
+        int nameLength = source.mNameLengths[sourceRow];
+        int fileNameLength = source.mFileNameLengths[sourceRow];
+        int byteLength = byteCount(nameLength) + (fileNameLength == SAME_AS_NAME ? 0 : byteCount(fileNameLength));
+        if (mByteCount + byteLength > mBytes.length) {
+            mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mByteCount + byteLength));
+        }
+        System.arraycopy(source.mBytes, source.mNameStarts[sourceRow], mBytes, mByteCount, byteLength);
+        mNameStarts[row] = mByteCount;
+        mNameLengths[row] = nameLength;
+        mFileNameLengths[row] = fileNameLength;
+        mByteCount += byteLength;
+
+        mSize = row + 1;
+    }
+
+    // Returns the encoded length
+    private int appendString(String value) {
+        if (value == null) {
+            return NULL_LENGTH;
+        }
+        int length = value.length();
+        boolean wide = false;
+        for (int i = 0; i < length && !wide; i++) {
+            wide = value.charAt(i) > 0xff;
+        }
+        int byteLength = wide ? 2 * length : length;
+        if (mByteCount + byteLength > mBytes.length) {
+            mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mByteCount + byteLength));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (wide) {
+                mBytes[mByteCount++] = (byte) (c >> 8);
+            }
+            mBytes[mByteCount++] = (byte) c;
+        }
+        return wide ? length | WIDE : length;
+    }
+
+    private String decode(int start, int encodedLength) {
+        if (encodedLength == NULL_LENGTH) {
+            return null;
+        }
+        if ((encodedLength & WIDE) == 0) {
+            return new String(mBytes, start, encodedLength, StandardCharsets.ISO_8859_1);
+        }
+        return new String(mBytes, start, byteCount(encodedLength), StandardCharsets.UTF_16BE);
+    }
+
+    private static int charCount(int encodedLength) {
+        return encodedLength < 0 ? 0 : encodedLength & ~WIDE;
+    }
+
+    private static int byteCount(int encodedLength) {
+        if (encodedLength < 0) {
+            return 0;
+        }
+        return (encodedLength & WIDE) == 0 ? encodedLength : 2 * (encodedLength & ~WIDE);
+    }
+
+    private void resize(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mDatesModified = Arrays.copyOf(mDatesModified, capacity);
+        mAlbumIds = Arrays.copyOf(mAlbumIds, capacity);
+        mFolderIds = Arrays.copyOf(mFolderIds, capacity);
+        mNameStarts = Arrays.copyOf(mNameStarts, capacity);
+        mNameLengths = Arrays.copyOf(mNameLengths, capacity);
+        mFileNameLengths = Arrays.copyOf(mFileNameLengths, capacity);
+    }
+
+    private class RowList extends AbstractList<AudioItem> implements RandomAccess {
+
+        @Override
+        public AudioItem get(int index) {
+            return LibraryStore.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+    private static final class Decoded {
+
+        private final int mRow;
+        private final String mValue;
+
+        Decoded(int row, String value) {
+            mRow = row;
+            mValue = value;
+        }
+    }
+
+    // A row of the store seen as an AudioItem. The id and date are copied, the strings are read from
+    // the columns, or from the decoded string caches.
+    private static final class RowView extends AudioItem {
+
+        private final LibraryStore mStore;
+        private final int mRow;
+
+        RowView(LibraryStore store, int row, long id, long dateModified) {
+            super(id, dateModified);
+            mStore = store;
+            mRow = row;
+        }
+
+        @Override
+        public String getName() {
+            return mStore.getName(mRow);
+        }
+
+        @Override
+        public String getAlbumName() {
+            return mStore.getAlbumName(mRow);
+        }
+
+        @Override
+        public String getPath() {
+            return mStore.getPath(mRow);
+        }
+
+        @Override
+        public String getFolder() {
+            return mStore.getFolder(mRow);
+        }
+
+        @Override
+        public int getNameLength() {
+            return mStore.getNameLength(mRow);
+        }
+
+        @Override
+        public int getNameChars(char[] dst) {
+            return mStore.getNameChars(mRow, dst);
+        }
+    }
+}
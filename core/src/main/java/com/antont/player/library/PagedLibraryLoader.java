@@ -0,0 +1,113 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Streams library rows in fixed-size pages: the source is read on the background executor and every page
+// is handed to the listener on the callback executor as soon as it is full, so the first rows show up
+// no matter how big the library is.
+public class PagedLibraryLoader {
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final Executor mBackgroundExecutor;
+    private final Executor mCallbackExecutor;
+    private final int mPageSize;
+
+    public PagedLibraryLoader(Executor backgroundExecutor, Executor callbackExecutor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive, was " + pageSize);
+        }
+        mBackgroundExecutor = backgroundExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mPageSize = pageSize;
+    }
+
+    public LoadTask load(SourceFactory sourceFactory, OnPageLoadedListener listener) {
+        LoadTask task = new LoadTask(sourceFactory, listener);
+        mBackgroundExecutor.execute(task);
+        return task;
+    }
+
+    public class LoadTask implements Runnable {
+
+        private final SourceFactory mSourceFactory;
+        private final OnPageLoadedListener mListener;
+        private volatile boolean mCancelled;
+
+        LoadTask(SourceFactory sourceFactory, OnPageLoadedListener listener) {
+            mSourceFactory = sourceFactory;
+            mListener = listener;
+        }
+
+        // No callbacks are delivered after cancel() returns, the source is closed at the next row
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            int totalCount = 0;
+            try (AudioItemSource source = mSourceFactory.open()) {
+                List<AudioItem> page = new ArrayList<>(mPageSize);
+                while (!mCancelled && source.moveToNext()) {
+                    page.add(source.read());
+                    if (page.size() == mPageSize) {
+                        publishPage(page);
+                        totalCount += page.size();
+                        page = new ArrayList<>(mPageSize);
+                    }
+                }
+                if (!page.isEmpty()) {
+                    publishPage(page);
+                    totalCount += page.size();
+                }
+            } catch (RuntimeException e) {
+                mCallbackExecutor.execute(() -> {
+                    if (!mCancelled) {
+                        mListener.onLoadFailed(e);
+                    }
+                });
+                return;
+            }
+
+            int loadedCount = totalCount;
+            mCallbackExecutor.execute(() -> {
+                if (!mCancelled) {
+                    mListener.onLoadFinished(loadedCount);
+                }
+            });
+        }
+
+        private void publishPage(List<AudioItem> page) {
+            mCallbackExecutor.execute(() -> {
+                if (!mCancelled) {
+                    mListener.onPageLoaded(page);
+                }
+            });
+        }
+    }
+
+    public interface SourceFactory {
+        // Called on the background executor, so the expensive query happens there too
+        AudioItemSource open();
+    }
+
+    public interface OnPageLoadedListener {
+        void onPageLoaded(List<AudioItem> page);
+
+        void onLoadFinished(int totalCount);
+
+        void onLoadFailed(Exception e);
+    }
+}
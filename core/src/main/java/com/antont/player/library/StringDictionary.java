@@ -0,0 +1,41 @@
+package com.antont.player.library;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Interns repeated strings, e.g. album names, and gives each distinct one a small int id.
+// One writer thread, see LibraryStore for how the values are published to readers.
+final class StringDictionary {
+
+    static final int NO_ID = -1;
+
+    // Writer thread only
+    private final Map<String, Integer> mIds = new HashMap<>();
+    private String[] mValues = new String[64];
+    private int mSize;
+
+    int intern(String value) {
+        if (value == null) {
+            return NO_ID;
+        }
+        Integer id = mIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mValues[mSize] = value;
+        mIds.put(value, mSize);
+        return mSize++;
+    }
+
+    String get(int id) {
+        return id == NO_ID ? null : mValues[id];
+    }
+
+    int size() {
+        return mSize;
+    }
+}
@@ -0,0 +1,203 @@
+package com.antont.player.loudness;
+
+import java.util.Arrays;
+
+/*
+ * Integrated loudness and sample peak of interleaved 16 bit PCM, after ITU-R BS.1770-4 and EBU R128:
+ *
+ *   1. every channel goes through the K-weighting filter, a high shelf at 1.7 kHz followed by a
+ *      high pass at 38 Hz, with coefficients derived for the sample rate at hand
+ *   2. mean squares are taken over 400 ms blocks that overlap by 75%, i.e. one block every 100 ms,
+ *      and summed over the channels with the surround channels weighted by 1.41 and the LFE left out
+ *   3. blocks below -70 LUFS are dropped, then blocks more than 10 LU below the loudness of the rest
+ *   4. the integrated loudness is -0.691 + 10 log10 of the mean of the remaining block energies
+ *
+ * A stereo 1 kHz sine with a peak of -23 dBFS in both channels measures -23 LUFS.
+ */
+public class LoudnessMeter {
+
+    private static final double ABSOLUTE_GATE = -70;
+    private static final double RELATIVE_GATE = -10;
+    private static final int STEPS_PER_BLOCK = 4;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final double[] mChannelWeights;
+    private final int mFramesPerStep;
+    // Two biquads per channel, each with the state of its last two inputs and outputs
+    private final Biquad mShelf;
+    private final Biquad mHighPass;
+    private final double[][] mShelfState;
+    private final double[][] mHighPassState;
+
+    // Weighted sum of squares of the step being filled and of the last steps of the running block
+    private final double[] mStepEnergies = new double[STEPS_PER_BLOCK];
+    private double mStepEnergy;
+    private int mStepFrames;
+    private long mStepCount;
+
+    private double[] mBlockEnergies = new double[1024];
+    private int mBlockCount;
+    private int mPeak;
+
+    public LoudnessMeter(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("Bad format " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mChannelWeights = channelWeightsOf(channelCount);
+        mFramesPerStep = Math.max(1, sampleRate / 10);
+        mShelf = Biquad.highShelf(sampleRate);
+        mHighPass = Biquad.highPass(sampleRate);
+        mShelfState = new double[channelCount][4];
+        mHighPassState = new double[channelCount][4];
+    }
+
+    // Android orders 5.1 as front left, front right, center, LFE, back left, back right
+    private static double[] channelWeightsOf(int channelCount) {
+        double[] weights = new double[channelCount];
+        Arrays.fill(weights, 1.0);
+        if (channelCount == 6) {
+            weights[3] = 0.0;
+            weights[4] = 1.41;
+            weights[5] = 1.41;
+        }
+        return weights;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    // Takes frameCount frames of interleaved samples starting at offset
+    public void process(short[] samples, int offset, int frameCount) {
+        int index = offset;
+        for (int frame = 0; frame < frameCount; frame++) {
+            double frameEnergy = 0;
+            for (int channel = 0; channel < mChannelCount; channel++) {
+                short sample = samples[index++];
+                int magnitude = sample < 0 ? -sample : sample;
+                if (magnitude > mPeak) {
+                    mPeak = magnitude;
+                }
+                if (mChannelWeights[channel] == 0) {
+                    continue;
+                }
+                double filtered = mHighPass.filter(mHighPassState[channel],
+                        mShelf.filter(mShelfState[channel], sample / 32768.0));
+                frameEnergy += mChannelWeights[channel] * filtered * filtered;
+            }
+            mStepEnergy += frameEnergy;
+            if (++mStepFrames == mFramesPerStep) {
+                finishStep();
+            }
+        }
+    }
+
+    private void finishStep() {
+        mStepEnergies[(int) (mStepCount % STEPS_PER_BLOCK)] = mStepEnergy;
+        mStepCount++;
+        mStepEnergy = 0;
+        mStepFrames = 0;
+        if (mStepCount < STEPS_PER_BLOCK) {
+            return;
+        }
+        double blockEnergy = 0;
+        for (double stepEnergy : mStepEnergies) {
+            blockEnergy += stepEnergy;
+        }
+        if (mBlockCount == mBlockEnergies.length) {
+            mBlockEnergies = Arrays.copyOf(mBlockEnergies, mBlockCount * 2);
+        }
+        mBlockEnergies[mBlockCount++] = blockEnergy / (STEPS_PER_BLOCK * mFramesPerStep);
+    }
+
+    // Integrated loudness in LUFS of everything processed so far, NaN if nothing was loud enough to measure,
+    // e.g. silence or less than 400 ms of audio
+    public double getIntegratedLoudness() {
+        double absoluteThreshold = energyOf(ABSOLUTE_GATE);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlockEnergies[i] > absoluteThreshold) {
+                sum += mBlockEnergies[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double relativeThreshold = energyOf(loudnessOf(sum / count) + RELATIVE_GATE);
+        double threshold = Math.max(absoluteThreshold, relativeThreshold);
+        sum = 0;
+        count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlockEnergies[i] > threshold) {
+                sum += mBlockEnergies[i];
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : loudnessOf(sum / count);
+    }
+
+    // Largest absolute sample value, 1.0 being full scale
+    public double getSamplePeak() {
+        return mPeak / 32768.0;
+    }
+
+    private static double loudnessOf(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    private static double energyOf(double loudness) {
+        return Math.pow(10, (loudness + 0.691) / 10);
+    }
+
+    // Direct form I, the state holds x[n-1], x[n-2], y[n-1], y[n-2]
+    private static class Biquad {
+        final double mB0, mB1, mB2, mA1, mA2;
+
+        Biquad(double b0, double b1, double b2, double a1, double a2) {
+            mB0 = b0;
+            mB1 = b1;
+            mB2 = b2;
+            mA1 = a1;
+            mA2 = a2;
+        }
+
+        // The coefficients of BS.1770 are given for 48 kHz, these are the analog prototypes they come from
+        static Biquad highShelf(int sampleRate) {
+            double f0 = 1681.974450955533;
+            double gain = 3.999843853973347;
+            double q = 0.7071752369554196;
+            double k = Math.tan(Math.PI * f0 / sampleRate);
+            double vh = Math.pow(10, gain / 20);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1 + k / q + k * k;
+            return new Biquad((vh + vb * k / q + k * k) / a0, 2 * (k * k - vh) / a0, (vh - vb * k / q + k * k) / a0,
+                    2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+        }
+
+        static Biquad highPass(int sampleRate) {
+            double f0 = 38.13547087602444;
+            double q = 0.5003270373238773;
+            double k = Math.tan(Math.PI * f0 / sampleRate);
+            double a0 = 1 + k / q + k * k;
+            return new Biquad(1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+        }
+
+        double filter(double[] state, double x) {
+            double y = mB0 * x + mB1 * state[0] + mB2 * state[1] - mA1 * state[2] - mA2 * state[3];
+            state[1] = state[0];
+            state[0] = x;
+            state[3] = state[2];
+            state[2] = y;
+            return y;
+        }
+    }
+}
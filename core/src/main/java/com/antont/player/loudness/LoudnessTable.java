@@ -0,0 +1,45 @@
+package com.antont.player.loudness;
+
+import com.antont.player.storage.PathRecordLog;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Measured loudness per file path, in a PathRecordLog so an analysis cut short goes on where it stopped.
+ * The value of each record, all numbers big endian:
+ *
+ *   long file size, long last modified, float loudness in LUFS, float peak
+ */
+public class LoudnessTable extends PathRecordLog<TrackLoudness> {
+
+    public LoudnessTable(File file) {
+        super(file);
+    }
+
+    // Null if the path has not been measured
+    @Override
+    public TrackLoudness get(String path) {
+        return super.get(path);
+    }
+
+    @Override
+    public void put(String path, TrackLoudness loudness) throws IOException {
+        super.put(path, loudness);
+    }
+
+    @Override
+    protected void writeValue(DataOutputStream out, TrackLoudness loudness) throws IOException {
+        out.writeLong(loudness.getFileSize());
+        out.writeLong(loudness.getLastModified());
+        out.writeFloat(loudness.getLoudness());
+        out.writeFloat(loudness.getPeak());
+    }
+
+    @Override
+    protected TrackLoudness readValue(ByteBuffer buffer) {
+        return new TrackLoudness(buffer.getLong(), buffer.getLong(), buffer.getFloat(), buffer.getFloat());
+    }
+}
@@ -0,0 +1,55 @@
+package com.antont.player.loudness;
+
+// Measured loudness of one audio file, with the file size and modification time it was measured at
+public class TrackLoudness {
+
+    // ReplayGain 2.0 reference level, tracks are turned down or up to this loudness
+    public static final float TARGET_LOUDNESS = -18f;
+
+    private final long mFileSize;
+    private final long mLastModified;
+    private final float mLoudness;
+    private final float mPeak;
+
+    // loudness in LUFS, NaN for a file that could not be measured; peak is linear, 1 being full scale
+    public TrackLoudness(long fileSize, long lastModified, float loudness, float peak) {
+        mFileSize = fileSize;
+        mLastModified = lastModified;
+        mLoudness = loudness;
+        mPeak = peak;
+    }
+
+    // Whether the file is still the one that was measured
+    public boolean matches(long fileSize, long lastModified) {
+        return mFileSize == fileSize && mLastModified == lastModified;
+    }
+
+    // Linear gain that brings the track to the target loudness, but never so far up that the peak clips.
+    // 1 for files that could not be measured
+    public float getGain() {
+        if (Float.isNaN(mLoudness)) {
+            return 1f;
+        }
+        double gainInDb = TARGET_LOUDNESS - mLoudness;
+        if (mPeak > 0) {
+            gainInDb = Math.min(gainInDb, -20 * Math.log10(mPeak));
+        }
+        return (float) Math.pow(10, gainInDb / 20);
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public float getLoudness() {
+        return mLoudness;
+    }
+
+    public float getPeak() {
+        return mPeak;
+    }
+}
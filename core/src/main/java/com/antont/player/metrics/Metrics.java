@@ -0,0 +1,72 @@
+package com.antont.player.metrics;
+
+import java.util.Locale;
+
+// Times the hot paths of the player into a histogram per Operation. A span is the System.nanoTime() of
+// its start, kept by the caller in a local or a field, so timing never allocates. While metrics are off,
+// start() returns NO_SPAN and record() returns right away, a volatile read each.
+public class Metrics {
+
+    public static final long NO_SPAN = 0;
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Operation.values().length];
+    private static volatile boolean mEnabled;
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    // Monotonic start of a span, NO_SPAN while metrics are off
+    public static long start() {
+        if (!mEnabled) {
+            return NO_SPAN;
+        }
+        long now = System.nanoTime();
+        // nanoTime() may be 0 by chance, the span must not be taken for none
+        return now == NO_SPAN ? 1 : now;
+    }
+
+    // Ends a span, any thread. Spans started while metrics were off are dropped
+    public static void record(Operation operation, long start) {
+        if (start == NO_SPAN || !mEnabled) {
+            return;
+        }
+        HISTOGRAMS[operation.ordinal()].record((System.nanoTime() - start) / 1000);
+    }
+
+    public static LatencyHistogram histogramOf(Operation operation) {
+        return HISTOGRAMS[operation.ordinal()];
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    // One line per operation: count, p50, p99 and max in milliseconds
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-20s %8s %9s %9s %9s%n", "operation", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = histogramOf(operation);
+            report.append(String.format(Locale.US, "%-20s %8d %9.2f %9.2f %9.2f%n", operation.name().toLowerCase(Locale.US),
+                    histogram.getCount(), histogram.percentile(0.5) / 1000.0, histogram.percentile(0.99) / 1000.0,
+                    histogram.getMax() / 1000.0));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.antont.player.metrics;
+
+// The operations that are timed, each with its own histogram
+public enum Operation {
+    // From a track being selected or skipped to until it plays, preparing the player included
+    TRACK_START,
+    // Building and posting the playback notification
+    NOTIFICATION_UPDATE,
+    // From opening the library to the whole library being shown, from the snapshot or a MediaStore scan
+    LIBRARY_LOAD,
+    // From opening the library without a snapshot to the first page of the scan being shown
+    LIBRARY_FIRST_PAGE,
+    // From a command being sent on the PlayerCommandBus to the service handling it
+    COMMAND_DISPATCH
+}
@@ -0,0 +1,73 @@
+package com.antont.player.models;
+
+public class AudioItem {
+
+    public static final long NO_ID = -1;
+
+    private long mId;
+    private long mDateModified;
+    private String mPath;
+    private String mName;
+    private String mAlbumName;
+
+    public AudioItem(String path, String name, String albumName) {
+        this(NO_ID, 0, path, name, albumName);
+    }
+
+    public AudioItem(long id, long dateModified, String path, String name, String albumName) {
+        this.mId = id;
+        this.mDateModified = dateModified;
+        this.mPath = path;
+        this.mName = name;
+        this.mAlbumName = albumName;
+    }
+
+    // For subclasses that keep the strings elsewhere and override their getters
+    protected AudioItem(long id, long dateModified) {
+        this(id, dateModified, null, null, null);
+    }
+
+    // MediaStore _ID of the track, NO_ID if the item does not come from MediaStore
+    public long getId() {
+        return mId;
+    }
+
+    // MediaStore DATE_MODIFIED of the track in seconds
+    public long getDateModified() {
+        return mDateModified;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    // Length of the name, 0 if there is none
+    public int getNameLength() {
+        return mName == null ? 0 : mName.length();
+    }
+
+    // Copies the name to the start of dst without creating a String and returns its length.
+    // dst must hold at least getNameLength() chars.
+    public int getNameChars(char[] dst) {
+        if (mName == null) {
+            return 0;
+        }
+        mName.getChars(0, mName.length(), dst, 0);
+        return mName.length();
+    }
+
+    public String getAlbumName() {
+        return mAlbumName;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    // The path up to its last '/', null if there is none
+    public String getFolder() {
+        String path = getPath();
+        int separator = path == null ? -1 : path.lastIndexOf('/');
+        return separator < 0 ? null : path.substring(0, separator);
+    }
+}
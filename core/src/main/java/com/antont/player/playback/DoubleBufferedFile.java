@@ -0,0 +1,137 @@
+package com.antont.player.playback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/*
+ * A small record kept in two slot files that are written in turn, so the slot holding the last complete
+ * record is never the one being overwritten. A crash in the middle of a write leaves a torn slot behind,
+ * which fails its checksum and is skipped in favour of the other one. Each slot, all numbers big endian:
+ *
+ *   int   magic
+ *   long  sequence number, the newer of the two valid slots wins
+ *   int   payload length
+ *   bytes payload
+ *   long  CRC32 of the sequence number and the payload
+ *
+ * Not thread safe, meant to be used from a single background thread.
+ */
+public class DoubleBufferedFile {
+
+    public static final int MAGIC = 0x41504442; // "APDB"
+
+    private static final int HEADER_SIZE = 4 + 8 + 4;
+    private static final int TRAILER_SIZE = 8;
+
+    private final File[] mSlots;
+    private long mSequence = -1;
+
+    public DoubleBufferedFile(File file) {
+        mSlots = new File[]{new File(file.getPath() + ".a"), new File(file.getPath() + ".b")};
+    }
+
+    // Returns the payload of the newest valid slot, or null if neither slot holds one
+    public byte[] read() {
+        Record newest = null;
+        for (File slot : mSlots) {
+            Record record = readSlot(slot);
+            if (record != null && (newest == null || record.mSequence > newest.mSequence)) {
+                newest = record;
+            }
+        }
+        mSequence = newest == null ? 0 : newest.mSequence;
+        return newest == null ? null : newest.mPayload;
+    }
+
+    // Overwrites the older slot and syncs it to disk before returning. The directory is made on the first write
+    public void write(byte[] payload) throws IOException {
+        if (mSequence < 0) {
+            read();
+        }
+        File parent = mSlots[0].getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        long sequence = mSequence + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length + TRAILER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putLong(sequence);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        buffer.putLong(checksum(sequence, payload, 0, payload.length));
+
+        try (FileOutputStream out = new FileOutputStream(mSlots[(int) (sequence & 1)])) {
+            out.write(buffer.array());
+            out.getFD().sync();
+        }
+        mSequence = sequence;
+    }
+
+    public void delete() {
+        for (File slot : mSlots) {
+            slot.delete();
+        }
+        mSequence = 0;
+    }
+
+    private static Record readSlot(File slot) {
+        byte[] data;
+        try (InputStream in = new FileInputStream(slot)) {
+            data = new byte[(int) slot.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                return null;
+            }
+            long sequence = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - TRAILER_SIZE) {
+                return null;
+            }
+            int payloadOffset = buffer.position();
+            buffer.position(payloadOffset + length);
+            if (buffer.getLong() != checksum(sequence, data, payloadOffset, length)) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            System.arraycopy(data, payloadOffset, payload, 0, length);
+            return new Record(sequence, payload);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static long checksum(long sequence, byte[] payload, int offset, int length) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (sequence >>> shift));
+        }
+        crc.update(payload, offset, length);
+        return crc.getValue();
+    }
+
+    private static class Record {
+        final long mSequence;
+        final byte[] mPayload;
+
+        Record(long sequence, byte[] payload) {
+            mSequence = sequence;
+            mPayload = payload;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.antont.player.playback;
+
+// Shape of a volume ramp, progress and result are both in [0, 1]
+public enum FadeCurve {
+
+    LINEAR {
+        @Override
+        public float shape(float progress, boolean rising) {
+            return progress;
+        }
+    },
+
+    // Keeps the summed power of two overlapping tracks constant, so a crossfade has no dip in the middle
+    EQUAL_POWER {
+        @Override
+        public float shape(float progress, boolean rising) {
+            double angle = progress * Math.PI / 2;
+            return (float) (rising ? Math.sin(angle) : 1 - Math.cos(angle));
+        }
+    };
+
+    public abstract float shape(float progress, boolean rising);
+
+    public float volumeAt(float from, float to, float progress) {
+        float clamped = Math.max(0f, Math.min(1f, progress));
+        return from + (to - from) * shape(clamped, to > from);
+    }
+}
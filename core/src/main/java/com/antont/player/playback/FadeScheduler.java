@@ -0,0 +1,105 @@
+package com.antont.player.playback;
+
+// Drives any number of volume ramps (up to a small fixed capacity) from one clock. There are no threads
+// or timers here: the owner calls tick() from its own handler while isActive() is true. The ramp state is
+// kept in preallocated arrays, so ticking does not allocate.
+public class FadeScheduler {
+
+    static final int MAX_FADES = 4;
+
+    private final Player[] mPlayers = new Player[MAX_FADES];
+    private final long[] mStartTimes = new long[MAX_FADES];
+    private final long[] mDurations = new long[MAX_FADES];
+    private final float[] mFromVolumes = new float[MAX_FADES];
+    private final float[] mToVolumes = new float[MAX_FADES];
+    private final FadeCurve[] mCurves = new FadeCurve[MAX_FADES];
+    private final OnFadeFinishedListener[] mListeners = new OnFadeFinishedListener[MAX_FADES];
+    private int mCount;
+
+    // Starts a ramp for the player, replacing the one it may already have. The listener may be null
+    public void start(Player player, float fromVolume, float toVolume, long durationInMs, FadeCurve curve,
+                      long nowInMs, OnFadeFinishedListener listener) {
+        int index = indexOf(player);
+        if (index == -1) {
+            if (mCount == MAX_FADES) {
+                throw new IllegalStateException("Too many simultaneous fades");
+            }
+            index = mCount++;
+        }
+        mPlayers[index] = player;
+        mStartTimes[index] = nowInMs;
+        mDurations[index] = Math.max(1, durationInMs);
+        mFromVolumes[index] = fromVolume;
+        mToVolumes[index] = toVolume;
+        mCurves[index] = curve;
+        mListeners[index] = listener;
+        player.setVolume(fromVolume, fromVolume);
+    }
+
+    // Stops the ramp of the player where it is, without calling its listener
+    public void cancel(Player player) {
+        int index = indexOf(player);
+        if (index != -1) {
+            remove(index);
+        }
+    }
+
+    public void cancelAll() {
+        while (mCount > 0) {
+            remove(mCount - 1);
+        }
+    }
+
+    public boolean isActive() {
+        return mCount > 0;
+    }
+
+    public boolean isFading(Player player) {
+        return indexOf(player) != -1;
+    }
+
+    public void tick(long nowInMs) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            float progress = (float) (nowInMs - mStartTimes[i]) / mDurations[i];
+            float volume = mCurves[i].volumeAt(mFromVolumes[i], mToVolumes[i], progress);
+            Player player = mPlayers[i];
+            player.setVolume(volume, volume);
+
+            if (progress >= 1f) {
+                OnFadeFinishedListener listener = mListeners[i];
+                remove(i);
+                if (listener != null) {
+                    listener.onFadeFinished(player);
+                }
+            }
+        }
+    }
+
+    private int indexOf(Player player) {
+        for (int i = 0; i < mCount; i++) {
+            if (mPlayers[i] == player) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Moves the last ramp into the freed slot
+    private void remove(int index) {
+        int last = --mCount;
+        mPlayers[index] = mPlayers[last];
+        mStartTimes[index] = mStartTimes[last];
+        mDurations[index] = mDurations[last];
+        mFromVolumes[index] = mFromVolumes[last];
+        mToVolumes[index] = mToVolumes[last];
+        mCurves[index] = mCurves[last];
+        mListeners[index] = mListeners[last];
+        mPlayers[last] = null;
+        mCurves[last] = null;
+        mListeners[last] = null;
+    }
+
+    public interface OnFadeFinishedListener {
+        void onFadeFinished(Player player);
+    }
+}
@@ -0,0 +1,131 @@
+package com.antont.player.playback;
+
+import java.io.IOException;
+
+// Scales every volume set on a player by a gain looked up for each track when its data source is set,
+// so the volume normalization holds through the fades of a crossfade. The gain never goes above 1,
+// MediaPlayer cannot amplify.
+public class GainPlayer implements Player, Player.Listener {
+
+    private final Player mPlayer;
+    private final GainSource mGainSource;
+    private float mGain = 1f;
+    private float mLeftVolume = 1f;
+    private float mRightVolume = 1f;
+    private Listener mListener;
+
+    public GainPlayer(Player player, GainSource gainSource) {
+        mPlayer = player;
+        mGainSource = gainSource;
+        mPlayer.setListener(this);
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        mPlayer.setDataSource(path);
+        mGain = Math.max(0f, Math.min(1f, mGainSource.gainOf(path)));
+        applyVolume();
+    }
+
+    @Override
+    public void prepareAsync() {
+        mPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mPlayer.stop();
+    }
+
+    @Override
+    public void reset() {
+        mPlayer.reset();
+    }
+
+    @Override
+    public void release() {
+        mPlayer.release();
+    }
+
+    @Override
+    public void seekTo(int positionInMs) {
+        mPlayer.seekTo(positionInMs);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mPlayer.isPlaying();
+    }
+
+    @Override
+    public int getDuration() {
+        return mPlayer.getDuration();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mLeftVolume = leftVolume;
+        mRightVolume = rightVolume;
+        applyVolume();
+    }
+
+    private void applyVolume() {
+        mPlayer.setVolume(mLeftVolume * mGain, mRightVolume * mGain);
+    }
+
+    // The wrapped players are chained, they hand over to each other without this one being involved
+    @Override
+    public void setNextPlayer(Player nextPlayer) {
+        mPlayer.setNextPlayer(nextPlayer instanceof GainPlayer ? ((GainPlayer) nextPlayer).mPlayer : nextPlayer);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public float getGain() {
+        return mGain;
+    }
+
+    // The engine knows this player only, callbacks of the wrapped one are passed on as this one's
+
+    @Override
+    public void onPrepared(Player player) {
+        if (mListener != null) {
+            mListener.onPrepared(this);
+        }
+    }
+
+    @Override
+    public void onCompletion(Player player) {
+        if (mListener != null) {
+            mListener.onCompletion(this);
+        }
+    }
+
+    @Override
+    public boolean onError(Player player, int what, int extra) {
+        return mListener != null && mListener.onError(this, what, extra);
+    }
+
+    public interface GainSource {
+        // Linear gain of the file at the path, 1 if it is not known
+        float gainOf(String path);
+    }
+}
@@ -0,0 +1,396 @@
+package com.antont.player.playback;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.models.AudioItem;
+
+import java.io.IOException;
+
+// Plays the current item of the queue on one player while the next item is prepared on a second one
+// and chained with setNextPlayer(), so the track boundary has neither a gap nor a prepare delay.
+// Any change of the current or next item drops the pre-prepared player.
+//
+// With a crossfade duration set, the players are not chained. Instead the prepared next player is started
+// that long before the end of the current track and both are ramped by a FadeScheduler. The owner drives
+// the engine clock by calling onTick() again after the delay it returns.
+public class GaplessPlaybackEngine implements Player.Listener {
+
+    public static final long NO_TICK = -1;
+    static final long FADE_TICK_INTERVAL_IN_MS = 25;
+    static final long MAX_POLL_INTERVAL_IN_MS = 1000;
+
+    private final PlayQueue mQueue;
+    private Player mCurrentPlayer;
+    private Player mNextPlayer;
+
+    private boolean mCurrentPrepared;
+    private boolean mCurrentPreparing;
+    private boolean mStartWhenPrepared = true;
+    // Where the current track starts once it is prepared, set by a resume or by a seek while preparing
+    private int mStartPositionInMs;
+    private AudioItem mNextItem;
+    private boolean mNextPrepared;
+    private int mConsecutiveErrors;
+
+    private final FadeScheduler mFadeScheduler = new FadeScheduler();
+    private final FadeScheduler.OnFadeFinishedListener mFadeOutListener = this::onFadeOutFinished;
+    private long mCrossfadeDurationInMs;
+    private FadeCurve mFadeCurve = FadeCurve.EQUAL_POWER;
+    // The previous track while it fades out, it is the player the next track will be prepared on afterwards
+    private Player mFadingOutPlayer;
+
+    private OnPlaybackEventListener mListener;
+
+    public GaplessPlaybackEngine(PlayQueue queue, Player.Factory playerFactory) {
+        mQueue = queue;
+        mCurrentPlayer = playerFactory.create();
+        mNextPlayer = playerFactory.create();
+        mCurrentPlayer.setListener(this);
+        mNextPlayer.setListener(this);
+    }
+
+    public void setListener(OnPlaybackEventListener listener) {
+        mListener = listener;
+    }
+
+    // 0 switches back to gapless chaining
+    public void setCrossfade(long durationInMs, FadeCurve curve) {
+        boolean wasCrossfading = isCrossfadeEnabled();
+        mCrossfadeDurationInMs = Math.max(0, durationInMs);
+        mFadeCurve = curve;
+        if (wasCrossfading != isCrossfadeEnabled() && mNextPrepared && mCurrentPrepared) {
+            mCurrentPlayer.setNextPlayer(isCrossfadeEnabled() ? null : mNextPlayer);
+        }
+    }
+
+    public boolean isCrossfadeEnabled() {
+        return mCrossfadeDurationInMs > 0;
+    }
+
+    // Advances fades and starts a crossfade when the current track gets close to its end.
+    // Returns the delay until the next call is needed, or NO_TICK when nothing is going on.
+    public long onTick(long nowInMs) {
+        mFadeScheduler.tick(nowInMs);
+        if (mFadeScheduler.isActive()) {
+            return FADE_TICK_INTERVAL_IN_MS;
+        }
+        if (!isCrossfadeEnabled() || !isPlaying()) {
+            return NO_TICK;
+        }
+
+        long remaining = mCurrentPlayer.getDuration() - mCurrentPlayer.getCurrentPosition();
+        if (!mNextPrepared) {
+            return MAX_POLL_INTERVAL_IN_MS;
+        }
+        if (remaining > mCrossfadeDurationInMs) {
+            return Math.min(remaining - mCrossfadeDurationInMs, MAX_POLL_INTERVAL_IN_MS);
+        }
+        startCrossfade(nowInMs, Math.max(remaining, FADE_TICK_INTERVAL_IN_MS));
+        return FADE_TICK_INTERVAL_IN_MS;
+    }
+
+    // Starts the current item of the queue from the beginning
+    public void playCurrent() {
+        playCurrent(0);
+    }
+
+    // Starts the current item of the queue at the given position, e.g. to resume where playback was left
+    public void playCurrent(int startPositionInMs) {
+        finishCrossfade();
+        invalidateNext();
+        mCurrentPrepared = false;
+        mCurrentPreparing = false;
+        mStartWhenPrepared = true;
+        mStartPositionInMs = Math.max(0, startPositionInMs);
+        mCurrentPlayer.reset();
+
+        AudioItem item = mQueue.getCurrent();
+        if (item == null) {
+            return;
+        }
+        try {
+            mCurrentPlayer.setDataSource(item.getPath());
+        } catch (IOException e) {
+            onCurrentFailed(e);
+            return;
+        }
+        mCurrentPreparing = true;
+        mCurrentPlayer.prepareAsync();
+    }
+
+    public void start() {
+        if (mCurrentPrepared) {
+            mCurrentPlayer.start();
+        } else {
+            mStartWhenPrepared = true;
+        }
+    }
+
+    public void pause() {
+        if (finishCrossfade() && mCurrentPrepared) {
+            prepareNext();
+        }
+        if (mCurrentPrepared) {
+            mCurrentPlayer.pause();
+        } else {
+            mStartWhenPrepared = false;
+        }
+    }
+
+    public void stop() {
+        finishCrossfade();
+        invalidateNext();
+        if (mCurrentPrepared) {
+            mCurrentPlayer.stop();
+        }
+        mCurrentPrepared = false;
+        mCurrentPreparing = false;
+    }
+
+    public void release() {
+        mCurrentPlayer.release();
+        mNextPlayer.release();
+    }
+
+    public void seekTo(int positionInMs) {
+        if (mCurrentPrepared) {
+            mCurrentPlayer.seekTo(positionInMs);
+        } else if (mCurrentPreparing) {
+            mStartPositionInMs = Math.max(0, positionInMs);
+        }
+    }
+
+    public boolean isPlaying() {
+        return mCurrentPrepared && mCurrentPlayer.isPlaying();
+    }
+
+    public boolean isPrepared() {
+        return mCurrentPrepared;
+    }
+
+    // True once a track has been handed to the current player, prepared or not.
+    // False after stop(), after the current track has failed, and before the first playCurrent()
+    public boolean hasCurrentTrack() {
+        return mCurrentPrepared || mCurrentPreparing;
+    }
+
+    public int getDuration() {
+        return mCurrentPrepared ? mCurrentPlayer.getDuration() : 0;
+    }
+
+    public int getCurrentPosition() {
+        if (mCurrentPrepared) {
+            return mCurrentPlayer.getCurrentPosition();
+        }
+        return mCurrentPreparing ? mStartPositionInMs : 0;
+    }
+
+    // Must be called after the queue content, order or play modes have changed, re-prepares the next item if it is not the same anymore
+    public void onQueueChanged() {
+        if (mCurrentPrepared && mQueue.peekNext() != mNextItem) {
+            invalidateNext();
+            prepareNext();
+        }
+    }
+
+    // Drops the pre-prepared next player
+    public void invalidateNext() {
+        if (mNextItem != null) {
+            if (mNextPrepared && mCurrentPrepared) {
+                mCurrentPlayer.setNextPlayer(null);
+            }
+            mNextPlayer.reset();
+        }
+        mNextItem = null;
+        mNextPrepared = false;
+    }
+
+    private void prepareNext() {
+        AudioItem nextItem = mQueue.peekNext();
+        if (nextItem == null || mFadingOutPlayer != null) {
+            // While a crossfade runs the spare player is still busy, it prepares the next item when the fade ends
+            return;
+        }
+        mNextItem = nextItem;
+        mNextPrepared = false;
+        mNextPlayer.reset();
+        try {
+            mNextPlayer.setDataSource(nextItem.getPath());
+        } catch (IOException e) {
+            // The next track is played the usual way once the current one completes
+            invalidateNext();
+            return;
+        }
+        mNextPlayer.prepareAsync();
+    }
+
+    @Override
+    public void onPrepared(Player player) {
+        if (player == mCurrentPlayer) {
+            mCurrentPrepared = true;
+            mCurrentPreparing = false;
+            mConsecutiveErrors = 0;
+            if (mStartPositionInMs > 0) {
+                player.seekTo(mStartPositionInMs);
+                mStartPositionInMs = 0;
+            }
+            if (mStartWhenPrepared) {
+                player.start();
+            }
+            if (mListener != null) {
+                mListener.onTrackStarted(mQueue.getCurrentPosition(), player.getDuration());
+            }
+            prepareNext();
+        } else if (player == mNextPlayer && mNextItem != null) {
+            mNextPrepared = true;
+            if (!isCrossfadeEnabled()) {
+                mCurrentPlayer.setNextPlayer(mNextPlayer);
+            }
+        }
+    }
+
+    @Override
+    public void onCompletion(Player player) {
+        if (player == mFadingOutPlayer) {
+            // The previous track has ended before its fade did
+            mFadeScheduler.cancel(player);
+            onFadeOutFinished(player);
+            return;
+        }
+        if (player != mCurrentPlayer) {
+            return;
+        }
+        if (mNextPrepared) {
+            // The next player has already taken over, swap the roles
+            Player finished = mCurrentPlayer;
+            mCurrentPlayer = mNextPlayer;
+            mNextPlayer = finished;
+            moveToNextItem();
+            mNextItem = null;
+            mNextPrepared = false;
+            finished.reset();
+            if (isCrossfadeEnabled()) {
+                // Not chained in crossfade mode, the track ended before a tick could start the fade
+                mCurrentPlayer.start();
+            }
+
+            if (mListener != null) {
+                mListener.onTrackChanged(mQueue.getCurrent());
+                mListener.onTrackStarted(mQueue.getCurrentPosition(), mCurrentPlayer.getDuration());
+            }
+            prepareNext();
+        } else {
+            if (mQueue.advance() == null) {
+                // Repeat is off and the last track has ended
+                if (mListener != null) {
+                    mListener.onQueueFinished();
+                }
+                return;
+            }
+            if (mListener != null) {
+                mListener.onTrackChanged(mQueue.getCurrent());
+            }
+            playCurrent();
+        }
+    }
+
+    // The prepared next item becomes the current one. It is what the queue advances to,
+    // unless the queue has changed since it was prepared
+    private void moveToNextItem() {
+        if (mQueue.peekNext() == mNextItem) {
+            mQueue.advance();
+        } else {
+            mQueue.moveTo(mNextItem);
+        }
+    }
+
+    private void startCrossfade(long nowInMs, long durationInMs) {
+        Player outgoing = mCurrentPlayer;
+        Player incoming = mNextPlayer;
+        long fadeDuration = Math.min(mCrossfadeDurationInMs, durationInMs);
+
+        incoming.setVolume(0f, 0f);
+        incoming.start();
+        mFadeScheduler.start(incoming, 0f, 1f, fadeDuration, mFadeCurve, nowInMs, null);
+        mFadeScheduler.start(outgoing, 1f, 0f, fadeDuration, mFadeCurve, nowInMs, mFadeOutListener);
+
+        mCurrentPlayer = incoming;
+        mNextPlayer = outgoing;
+        mFadingOutPlayer = outgoing;
+        moveToNextItem();
+        mNextItem = null;
+        mNextPrepared = false;
+
+        if (mListener != null) {
+            mListener.onTrackChanged(mQueue.getCurrent());
+            mListener.onTrackStarted(mQueue.getCurrentPosition(), incoming.getDuration());
+        }
+    }
+
+    private void onFadeOutFinished(Player player) {
+        mFadingOutPlayer = null;
+        player.reset();
+        player.setVolume(1f, 1f);
+        if (mCurrentPrepared) {
+            prepareNext();
+        }
+    }
+
+    // Cuts a running crossfade short: the previous track stops and the current one gets its full volume.
+    // Returns true if there was a crossfade to finish
+    private boolean finishCrossfade() {
+        mFadeScheduler.cancelAll();
+        mCurrentPlayer.setVolume(1f, 1f);
+        if (mFadingOutPlayer == null) {
+            return false;
+        }
+        Player outgoing = mFadingOutPlayer;
+        mFadingOutPlayer = null;
+        outgoing.reset();
+        outgoing.setVolume(1f, 1f);
+        return true;
+    }
+
+    @Override
+    public boolean onError(Player player, int what, int extra) {
+        if (player == mFadingOutPlayer) {
+            mFadeScheduler.cancel(player);
+            onFadeOutFinished(player);
+        } else if (player == mNextPlayer) {
+            invalidateNext();
+        } else if (player == mCurrentPlayer) {
+            onCurrentFailed(new IOException("Playback error " + what + ", " + extra));
+        }
+        return true;
+    }
+
+    // Skips broken tracks, but gives up when every track of the queue has failed in a row
+    private void onCurrentFailed(Exception e) {
+        mCurrentPrepared = false;
+        mCurrentPreparing = false;
+        mCurrentPlayer.reset();
+        if (mListener != null) {
+            mListener.onPlaybackError(mQueue.getCurrent(), e);
+        }
+        if (++mConsecutiveErrors >= mQueue.size()) {
+            return;
+        }
+        mQueue.skipToNext();
+        if (mListener != null) {
+            mListener.onTrackChanged(mQueue.getCurrent());
+        }
+        playCurrent();
+    }
+
+    public interface OnPlaybackEventListener {
+        // The current track has been prepared and started, position is its index in the queue
+        void onTrackStarted(int position, int duration);
+
+        // The engine moved to another track by itself, after a completion or an error
+        void onTrackChanged(AudioItem item);
+
+        void onPlaybackError(AudioItem item, Exception e);
+
+        // The last track has ended and the repeat mode does not start another one
+        void onQueueFinished();
+    }
+}
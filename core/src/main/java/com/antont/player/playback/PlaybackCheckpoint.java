@@ -0,0 +1,104 @@
+package com.antont.player.playback;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Where playback was: the queue order as MediaStore ids, the current item and the position in it.
+// The queue ids are left out when the queue has not changed since the previous checkpoint.
+public class PlaybackCheckpoint {
+
+    private final long[] mQueueIds;
+    private final long mCurrentId;
+    private final int mPositionInMs;
+    private final int mDurationInMs;
+
+    public PlaybackCheckpoint(long[] queueIds, long currentId, int positionInMs, int durationInMs) {
+        mQueueIds = queueIds;
+        mCurrentId = currentId;
+        mPositionInMs = positionInMs;
+        mDurationInMs = durationInMs;
+    }
+
+    // Called on the thread that owns the queue, the ids are copied only if withQueue is set
+    public static PlaybackCheckpoint capture(PlayQueue queue, boolean withQueue, int positionInMs, int durationInMs) {
+        long[] queueIds = null;
+        if (withQueue) {
+            queueIds = new long[queue.size()];
+            for (int i = 0; i < queueIds.length; i++) {
+                queueIds[i] = queue.get(i).getId();
+            }
+        }
+        AudioItem current = queue.getCurrent();
+        long currentId = current == null ? AudioItem.NO_ID : current.getId();
+        return new PlaybackCheckpoint(queueIds, currentId, positionInMs, durationInMs);
+    }
+
+    // The same position with the queue of an older checkpoint, for a write that skipped it
+    public PlaybackCheckpoint withQueue(long[] queueIds) {
+        return new PlaybackCheckpoint(queueIds, mCurrentId, mPositionInMs, mDurationInMs);
+    }
+
+    // Puts the library items back into the saved order and moves to the saved current item.
+    // Items the checkpoint does not know follow in library order, ids missing from the library are dropped.
+    // Returns false, leaving the queue untouched, when the current item is not in the library anymore.
+    public boolean restoreInto(PlayQueue queue, List<AudioItem> libraryItems) {
+        Map<Long, AudioItem> itemsById = new HashMap<>(libraryItems.size() * 2);
+        for (AudioItem item : libraryItems) {
+            itemsById.put(item.getId(), item);
+        }
+        AudioItem current = itemsById.get(mCurrentId);
+        if (current == null || mCurrentId == AudioItem.NO_ID) {
+            return false;
+        }
+
+        List<AudioItem> items = new ArrayList<>(libraryItems.size());
+        Set<AudioItem> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (mQueueIds != null) {
+            for (long id : mQueueIds) {
+                AudioItem item = itemsById.remove(id);
+                if (item != null) {
+                    items.add(item);
+                    placed.add(item);
+                }
+            }
+        }
+        if (items.size() < libraryItems.size()) {
+            for (AudioItem item : libraryItems) {
+                if (!placed.contains(item)) {
+                    items.add(item);
+                }
+            }
+        }
+        queue.setItems(items);
+        queue.moveTo(current);
+        return true;
+    }
+
+    public boolean hasQueue() {
+        return mQueueIds != null;
+    }
+
+    public long[] getQueueIds() {
+        return mQueueIds;
+    }
+
+    public long getCurrentId() {
+        return mCurrentId;
+    }
+
+    public int getPositionInMs() {
+        return mPositionInMs;
+    }
+
+    public int getDurationInMs() {
+        return mDurationInMs;
+    }
+}
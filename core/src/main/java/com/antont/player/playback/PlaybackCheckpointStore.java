@@ -0,0 +1,156 @@
+package com.antont.player.playback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/*
+ * Keeps the last playback checkpoint in two double buffered files of a directory. The queue is large and
+ * changes rarely, so it is rewritten only when a checkpoint carries it; the position is a few bytes and is
+ * rewritten every time. Both payloads start with a format version byte:
+ *
+ *   queue:    varint id count, then each MediaStore id as a zigzag varint of the difference to the previous one
+ *   position: long current id, int position in ms, int duration in ms, long CRC32 of the queue payload
+ *
+ * The queue checksum ties a position to the queue it was taken in. After a crash between the two writes
+ * the position is still restored, with the queue falling back to library order.
+ */
+public class PlaybackCheckpointStore {
+
+    public static final String DIRECTORY_NAME = "playback";
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final long NO_CHECKSUM = -1;
+
+    private final DoubleBufferedFile mQueueFile;
+    private final DoubleBufferedFile mPositionFile;
+    private long mQueueChecksum = NO_CHECKSUM;
+
+    public PlaybackCheckpointStore(File directory) {
+        mQueueFile = new DoubleBufferedFile(new File(directory, "queue"));
+        mPositionFile = new DoubleBufferedFile(new File(directory, "position"));
+    }
+
+    // Returns null when there is no usable checkpoint
+    public PlaybackCheckpoint read() {
+        byte[] position = mPositionFile.read();
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(position);
+        try {
+            if (buffer.get() != FORMAT_VERSION) {
+                return null;
+            }
+            long currentId = buffer.getLong();
+            int positionInMs = buffer.getInt();
+            int durationInMs = buffer.getInt();
+            long queueChecksum = buffer.getLong();
+
+            byte[] queue = mQueueFile.read();
+            long[] queueIds = null;
+            if (queue != null && checksum(queue) == queueChecksum) {
+                queueIds = decodeQueue(queue);
+                mQueueChecksum = queueChecksum;
+            }
+            return new PlaybackCheckpoint(queueIds, currentId, positionInMs, durationInMs);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    // Blocks on two fsyncs at most, must not be called on the main thread
+    public void write(PlaybackCheckpoint checkpoint) throws IOException {
+        if (checkpoint.hasQueue()) {
+            byte[] queue = encodeQueue(checkpoint.getQueueIds());
+            mQueueFile.write(queue);
+            mQueueChecksum = checksum(queue);
+        } else if (mQueueChecksum == NO_CHECKSUM) {
+            byte[] queue = mQueueFile.read();
+            mQueueChecksum = queue == null ? NO_CHECKSUM : checksum(queue);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(checkpoint.getCurrentId());
+        out.writeInt(checkpoint.getPositionInMs());
+        out.writeInt(checkpoint.getDurationInMs());
+        out.writeLong(mQueueChecksum);
+        mPositionFile.write(bytes.toByteArray());
+    }
+
+    public void clear() {
+        mQueueFile.delete();
+        mPositionFile.delete();
+        mQueueChecksum = NO_CHECKSUM;
+    }
+
+    static byte[] encodeQueue(long[] ids) {
+        // MediaStore ids of a library in scan order are mostly ascending, most deltas fit in one or two bytes
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ids.length * 2 + 8);
+        out.write(FORMAT_VERSION);
+        writeVarint(out, ids.length);
+        long previous = 0;
+        for (long id : ids) {
+            long delta = id - previous;
+            writeVarint(out, (delta << 1) ^ (delta >> 63));
+            previous = id;
+        }
+        return out.toByteArray();
+    }
+
+    static long[] decodeQueue(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != FORMAT_VERSION) {
+                return null;
+            }
+            long count = readVarint(buffer);
+            // Every id takes one byte at least
+            if (count < 0 || count > buffer.remaining()) {
+                return null;
+            }
+            long[] ids = new long[(int) count];
+            long previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                long zigzag = readVarint(buffer);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                ids[i] = previous;
+            }
+            return ids;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+}
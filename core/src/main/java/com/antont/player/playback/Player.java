@@ -0,0 +1,49 @@
+package com.antont.player.playback;
+
+import java.io.IOException;
+
+// The subset of android.media.MediaPlayer the playback engines need, so they can run against a fake on the JVM
+public interface Player {
+
+    void setDataSource(String path) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    void reset();
+
+    void release();
+
+    void seekTo(int positionInMs);
+
+    boolean isPlaying();
+
+    int getDuration();
+
+    int getCurrentPosition();
+
+    void setVolume(float leftVolume, float rightVolume);
+
+    // The next player starts by itself the moment this one completes, null removes the chain
+    void setNextPlayer(Player nextPlayer);
+
+    void setListener(Listener listener);
+
+    interface Listener {
+        void onPrepared(Player player);
+
+        void onCompletion(Player player);
+
+        // Returns true if the error has been handled
+        boolean onError(Player player, int what, int extra);
+    }
+
+    interface Factory {
+        Player create();
+    }
+}
@@ -0,0 +1,104 @@
+package com.antont.player.playback;
+
+// Bounded ring buffer of player commands. Every command is an int code and a long argument kept in
+// preallocated primitive arrays, so posting and draining never box or allocate. A seek that follows
+// a seek still waiting in the queue replaces its position instead of taking a new slot. A queue change
+// takes no slot at all: it is a flag, delivered first in the next drain. The play queue has been changed
+// by the time any waiting command is drained, so the handler may as well learn of it before them, and
+// the changes sent on every sort and library delta cannot crowd out the commands of the user.
+// Not thread safe, producer and consumer both live on the main thread.
+public class PlayerCommandQueue {
+
+    // The argument is the ordinal of an ActionType
+    public static final int COMMAND_ACTION = 0;
+    // The argument is the position in milliseconds
+    public static final int COMMAND_SEEK = 1;
+    // The argument is the MediaStore id of the item, its position may change before the command is drained
+    public static final int COMMAND_SELECT = 2;
+    // The play queue has been reordered, the argument is unused
+    public static final int COMMAND_QUEUE_CHANGED = 3;
+
+    private final int[] mCommands;
+    private final long[] mArguments;
+    private final int mMask;
+    // Running counters, the slot is the counter masked with the capacity
+    private int mHead;
+    private int mTail;
+    private boolean mQueueChanged;
+
+    // The capacity is rounded up to a power of two
+    public PlayerCommandQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mCommands = new int[size];
+        mArguments = new long[size];
+        mMask = size - 1;
+    }
+
+    public int capacity() {
+        return mCommands.length;
+    }
+
+    public int size() {
+        return mTail - mHead + (mQueueChanged ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return mTail == mHead && !mQueueChanged;
+    }
+
+    // Returns false if the queue is full, a queue change always fits
+    public boolean offer(int command, long argument) {
+        if (command == COMMAND_QUEUE_CHANGED) {
+            mQueueChanged = true;
+            return true;
+        }
+        if (command == COMMAND_SEEK && !isEmpty()) {
+            int last = (mTail - 1) & mMask;
+            if (mCommands[last] == COMMAND_SEEK) {
+                mArguments[last] = argument;
+                return true;
+            }
+        }
+        if (mTail - mHead == mCommands.length) {
+            return false;
+        }
+        int slot = mTail & mMask;
+        mCommands[slot] = command;
+        mArguments[slot] = argument;
+        mTail++;
+        return true;
+    }
+
+    // Forgets the command that has been waiting longest. Returns false if there is none
+    public boolean removeOldest() {
+        if (mHead == mTail) {
+            return false;
+        }
+        mHead++;
+        return true;
+    }
+
+    // Hands every queued command to the handler in order, a queue change first. Commands offered meanwhile
+    // are drained too
+    public int drain(CommandHandler handler) {
+        int drained = 0;
+        while (mQueueChanged || mHead != mTail) {
+            drained++;
+            if (mQueueChanged) {
+                mQueueChanged = false;
+                handler.onCommand(COMMAND_QUEUE_CHANGED, 0);
+                continue;
+            }
+            int slot = mHead & mMask;
+            int command = mCommands[slot];
+            long argument = mArguments[slot];
+            mHead++;
+            handler.onCommand(command, argument);
+        }
+        return drained;
+    }
+
+    public interface CommandHandler {
+        void onCommand(int command, long argument);
+    }
+}
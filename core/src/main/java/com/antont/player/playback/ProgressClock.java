@@ -0,0 +1,59 @@
+package com.antont.player.playback;
+
+// Extrapolates the playback position from the last position reported by the player and the monotonic
+// time it was reported at, so the UI never accumulates drift and never has to ask the player each frame.
+public class ProgressClock {
+
+    private int mDuration;
+    private int mAnchorPosition;
+    private long mAnchorTimeInMs;
+    private boolean mPlaying;
+
+    public void setDuration(int durationInMs) {
+        mDuration = Math.max(0, durationInMs);
+    }
+
+    public int getDuration() {
+        return mDuration;
+    }
+
+    // An authoritative position, nowInMs must come from the same monotonic clock as later positionAt() calls
+    public void update(int positionInMs, boolean playing, long nowInMs) {
+        mAnchorPosition = positionInMs;
+        mAnchorTimeInMs = nowInMs;
+        mPlaying = playing;
+    }
+
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    public int positionAt(long nowInMs) {
+        long position = mAnchorPosition;
+        if (mPlaying) {
+            position += nowInMs - mAnchorTimeInMs;
+        }
+        if (mDuration > 0) {
+            position = Math.min(position, mDuration);
+        }
+        return (int) Math.max(0, position);
+    }
+
+    // How long the position needs to move one pixel on a bar of the given width, 0 if unknown
+    public long millisPerPixel(int widthInPx) {
+        if (widthInPx <= 0 || mDuration <= 0) {
+            return 0;
+        }
+        return mDuration / widthInPx;
+    }
+
+    // Delay until the position reaches the next pixel of a bar of the given width
+    public long millisUntilNextPixel(long nowInMs, int widthInPx) {
+        long millisPerPixel = millisPerPixel(widthInPx);
+        if (millisPerPixel == 0) {
+            return 0;
+        }
+        int position = positionAt(nowInMs);
+        return millisPerPixel - position % millisPerPixel;
+    }
+}
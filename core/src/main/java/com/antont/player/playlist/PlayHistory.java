@@ -0,0 +1,82 @@
+package com.antont.player.playlist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * When each track was last played, by path, which outlives the MediaStore id of a rescanned file. Binary
+ * format, numbers big endian:
+ *
+ *   int   magic
+ *   int   format version
+ *   int   track count
+ *   track count times:
+ *     UTF   path, modified UTF-8 as written by DataOutputStream
+ *     long  last played time in ms
+ */
+public class PlayHistory {
+
+    public static final int MAGIC = 0x41505048; // "APPH"
+    public static final int FORMAT_VERSION = 1;
+
+    private final Map<String, Long> mLastPlayed = new HashMap<>();
+
+    // 0 for a track that has never been played
+    public long getLastPlayed(String path) {
+        Long lastPlayed = path == null ? null : mLastPlayed.get(path);
+        return lastPlayed == null ? 0 : lastPlayed;
+    }
+
+    public void setLastPlayed(String path, long timeInMs) {
+        if (path != null) {
+            mLastPlayed.put(path, timeInMs);
+        }
+    }
+
+    public int size() {
+        return mLastPlayed.size();
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + mLastPlayed.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(mLastPlayed.size());
+            for (Map.Entry<String, Long> entry : mLastPlayed.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Replaces the history with the one read
+    public void read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a play history");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported play history version " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Bad track count " + count);
+        }
+        Map<String, Long> lastPlayed = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            lastPlayed.put(in.readUTF(), in.readLong());
+        }
+        mLastPlayed.clear();
+        mLastPlayed.putAll(lastPlayed);
+    }
+}
@@ -0,0 +1,18 @@
+package com.antont.player.playlist;
+
+// A smart playlist query that does not parse. The position is the index of the offending character
+public class QuerySyntaxException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mPosition;
+
+    public QuerySyntaxException(String message, int position) {
+        super(message + " at " + position);
+        mPosition = position;
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+}
@@ -0,0 +1,289 @@
+package com.antont.player.playlist;
+
+import java.util.BitSet;
+import java.util.List;
+
+// A compiled smart playlist query, a tree of conditions joined by and, or and not. A whole library is
+// evaluated a set at a time: every node only looks at the candidates the nodes before it have left, and
+// the sets are BitSets over the document numbers of TrackColumns. A single track that has been added or
+// changed is evaluated on its own by matches().
+public abstract class Rule {
+
+    Rule() {
+    }
+
+    abstract boolean matches(TrackColumns tracks, int doc, long nowInMs);
+
+    // Sets the bits of the candidates that match, result is empty on entry
+    void evaluate(TrackColumns tracks, long nowInMs, BitSet candidates, BitSet result) {
+        for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+            if (matches(tracks, doc, nowInMs)) {
+                result.set(doc);
+            }
+        }
+    }
+
+    // Whether the matches change as time goes by
+    boolean dependsOnTime() {
+        return false;
+    }
+
+    // Whether the matches change when a track is played
+    boolean dependsOnHistory() {
+        return false;
+    }
+
+    static final class And extends Rule {
+
+        private final Rule[] mRules;
+
+        And(List<Rule> rules) {
+            mRules = rules.toArray(new Rule[0]);
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            for (Rule rule : mRules) {
+                if (!rule.matches(tracks, doc, nowInMs)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Each rule narrows the candidates of the next one
+        @Override
+        void evaluate(TrackColumns tracks, long nowInMs, BitSet candidates, BitSet result) {
+            BitSet remaining = candidates;
+            for (Rule rule : mRules) {
+                BitSet matches = new BitSet();
+                rule.evaluate(tracks, nowInMs, remaining, matches);
+                remaining = matches;
+                if (remaining.isEmpty()) {
+                    return;
+                }
+            }
+            result.or(remaining);
+        }
+
+        @Override
+        boolean dependsOnTime() {
+            return anyDependsOnTime(mRules);
+        }
+
+        @Override
+        boolean dependsOnHistory() {
+            return anyDependsOnHistory(mRules);
+        }
+    }
+
+    static final class Or extends Rule {
+
+        private final Rule[] mRules;
+
+        Or(List<Rule> rules) {
+            mRules = rules.toArray(new Rule[0]);
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            for (Rule rule : mRules) {
+                if (rule.matches(tracks, doc, nowInMs)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // A rule only looks at the candidates no rule before it has matched
+        @Override
+        void evaluate(TrackColumns tracks, long nowInMs, BitSet candidates, BitSet result) {
+            BitSet remaining = (BitSet) candidates.clone();
+            for (Rule rule : mRules) {
+                BitSet matches = new BitSet();
+                rule.evaluate(tracks, nowInMs, remaining, matches);
+                result.or(matches);
+                remaining.andNot(matches);
+                if (remaining.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        boolean dependsOnTime() {
+            return anyDependsOnTime(mRules);
+        }
+
+        @Override
+        boolean dependsOnHistory() {
+            return anyDependsOnHistory(mRules);
+        }
+    }
+
+    static final class Not extends Rule {
+
+        private final Rule mRule;
+
+        Not(Rule rule) {
+            mRule = rule;
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            return !mRule.matches(tracks, doc, nowInMs);
+        }
+
+        @Override
+        void evaluate(TrackColumns tracks, long nowInMs, BitSet candidates, BitSet result) {
+            BitSet matches = new BitSet();
+            mRule.evaluate(tracks, nowInMs, candidates, matches);
+            result.or(candidates);
+            result.andNot(matches);
+        }
+
+        @Override
+        boolean dependsOnTime() {
+            return mRule.dependsOnTime();
+        }
+
+        @Override
+        boolean dependsOnHistory() {
+            return mRule.dependsOnHistory();
+        }
+    }
+
+    enum Field {
+        NAME, ALBUM, FOLDER, PATH
+    }
+
+    enum Operator {
+        CONTAINS, IS, STARTS_WITH
+    }
+
+    // Compares folded text, case and accents do not matter
+    static final class Text extends Rule {
+
+        private final Field mField;
+        private final Operator mOperator;
+        private final String mValue;
+
+        Text(Field field, Operator operator, String value) {
+            mField = field;
+            mOperator = operator;
+            mValue = TrackColumns.fold(value);
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            String text;
+            switch (mField) {
+                case NAME:
+                    text = tracks.mNames[doc];
+                    break;
+                case ALBUM:
+                    text = tracks.mAlbums[doc];
+                    break;
+                case FOLDER:
+                    text = tracks.mFolders[doc];
+                    break;
+                case PATH:
+                default:
+                    text = tracks.mPaths[doc];
+                    break;
+            }
+            switch (mOperator) {
+                case IS:
+                    return text.equals(mValue);
+                case STARTS_WITH:
+                    return text.startsWith(mValue);
+                case CONTAINS:
+                default:
+                    return text.contains(mValue);
+            }
+        }
+    }
+
+    // The track is in the folder or below it. The folder matches whole names anywhere in the path, so
+    // "Music/Live" is found on every storage volume
+    static final class Under extends Rule {
+
+        private final String mFolder;
+
+        Under(String folder) {
+            String trimmed = TrackColumns.trimSlashes(TrackColumns.fold(folder));
+            mFolder = trimmed.isEmpty() ? "/" : "/" + trimmed + "/";
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            return tracks.mPaths[doc].contains(mFolder);
+        }
+    }
+
+    // Played at all, or within the last window when there is one
+    static final class Played extends Rule {
+
+        static final long EVER = -1;
+
+        private final long mWindowInMs;
+
+        Played(long windowInMs) {
+            mWindowInMs = windowInMs;
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            long lastPlayedInMs = tracks.mLastPlayedInMs[doc];
+            return lastPlayedInMs > 0 && (mWindowInMs == EVER || lastPlayedInMs >= nowInMs - mWindowInMs);
+        }
+
+        @Override
+        boolean dependsOnTime() {
+            return mWindowInMs != EVER;
+        }
+
+        @Override
+        boolean dependsOnHistory() {
+            return true;
+        }
+    }
+
+    // Changed within the last window, by MediaStore's modification date. New files count as changed
+    static final class Modified extends Rule {
+
+        private final long mWindowInMs;
+
+        Modified(long windowInMs) {
+            mWindowInMs = windowInMs;
+        }
+
+        @Override
+        boolean matches(TrackColumns tracks, int doc, long nowInMs) {
+            return tracks.mDatesModifiedInMs[doc] >= nowInMs - mWindowInMs;
+        }
+
+        @Override
+        boolean dependsOnTime() {
+            return true;
+        }
+    }
+
+    private static boolean anyDependsOnTime(Rule[] rules) {
+        for (Rule rule : rules) {
+            if (rule.dependsOnTime()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean anyDependsOnHistory(Rule[] rules) {
+        for (Rule rule : rules) {
+            if (rule.dependsOnHistory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,241 @@
+package com.antont.player.playlist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * The smart playlist query language. Keywords are case insensitive, a value is one word or a double quoted
+ * string with \" and \\ escapes. "not" binds tighter than "and", "and" tighter than "or":
+ *
+ *   query      = or
+ *   or         = and { "or" and }
+ *   and        = unary { "and" unary }
+ *   unary      = "not" unary | "(" or ")" | condition
+ *   condition  = ( "name" | "album" | "folder" ) ( "contains" | "is" | "starts" "with" ) value
+ *              | "path" "contains" value
+ *              | "path" "under" value
+ *              | "played" [ "in" number unit ]
+ *              | "modified" "in" number unit
+ *   unit       = "hour" | "hours" | "day" | "days" | "week" | "weeks"
+ *
+ * For example: album contains live and not played in 30 days, or path under "/Music/Live".
+ */
+public class RuleParser {
+
+    private static final long HOUR_IN_MS = 60 * 60 * 1000L;
+
+    private final String mText;
+    private int mPosition;
+    // Start of the token read last, for the error messages
+    private int mTokenStart;
+
+    private RuleParser(String text) {
+        mText = text;
+    }
+
+    public static Rule parse(String text) {
+        RuleParser parser = new RuleParser(text);
+        Rule rule = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.mPosition < text.length()) {
+            throw new QuerySyntaxException("Unexpected " + parser.peekDescription(), parser.mPosition);
+        }
+        return rule;
+    }
+
+    private Rule parseOr() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(parseAnd());
+        while (acceptKeyword("or")) {
+            rules.add(parseAnd());
+        }
+        return rules.size() == 1 ? rules.get(0) : new Rule.Or(rules);
+    }
+
+    private Rule parseAnd() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(parseUnary());
+        while (acceptKeyword("and")) {
+            rules.add(parseUnary());
+        }
+        return rules.size() == 1 ? rules.get(0) : new Rule.And(rules);
+    }
+
+    private Rule parseUnary() {
+        if (acceptKeyword("not")) {
+            return new Rule.Not(parseUnary());
+        }
+        if (accept('(')) {
+            Rule rule = parseOr();
+            if (!accept(')')) {
+                throw new QuerySyntaxException("Expected ) instead of " + peekDescription(), mPosition);
+            }
+            return rule;
+        }
+        return parseCondition();
+    }
+
+    private Rule parseCondition() {
+        String word = readWord("a field");
+        int fieldStart = mTokenStart;
+        switch (word) {
+            case "name":
+                return parseText(Rule.Field.NAME);
+            case "album":
+                return parseText(Rule.Field.ALBUM);
+            case "folder":
+                return parseText(Rule.Field.FOLDER);
+            case "path":
+                if (acceptKeyword("under")) {
+                    return new Rule.Under(readValue());
+                }
+                expectKeyword("contains");
+                return new Rule.Text(Rule.Field.PATH, Rule.Operator.CONTAINS, readValue());
+            case "played":
+                return new Rule.Played(acceptKeyword("in") ? readDuration() : Rule.Played.EVER);
+            case "modified":
+                expectKeyword("in");
+                return new Rule.Modified(readDuration());
+            default:
+                throw new QuerySyntaxException("Unknown field " + word, fieldStart);
+        }
+    }
+
+    private Rule parseText(Rule.Field field) {
+        Rule.Operator operator;
+        if (acceptKeyword("contains")) {
+            operator = Rule.Operator.CONTAINS;
+        } else if (acceptKeyword("is")) {
+            operator = Rule.Operator.IS;
+        } else if (acceptKeyword("starts")) {
+            expectKeyword("with");
+            operator = Rule.Operator.STARTS_WITH;
+        } else {
+            throw new QuerySyntaxException("Expected contains, is or starts with instead of " + peekDescription(),
+                    skipSpaces());
+        }
+        return new Rule.Text(field, operator, readValue());
+    }
+
+    private long readDuration() {
+        String number = readWord("a number");
+        long count;
+        try {
+            count = Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw new QuerySyntaxException("Expected a number instead of " + number, mTokenStart);
+        }
+        if (count < 0 || count > 100_000) {
+            throw new QuerySyntaxException("Out of range " + number, mTokenStart);
+        }
+        String unit = readWord("a unit");
+        switch (unit) {
+            case "hour":
+            case "hours":
+                return count * HOUR_IN_MS;
+            case "day":
+            case "days":
+                return count * 24 * HOUR_IN_MS;
+            case "week":
+            case "weeks":
+                return count * 7 * 24 * HOUR_IN_MS;
+            default:
+                throw new QuerySyntaxException("Unknown unit " + unit, mTokenStart);
+        }
+    }
+
+    // A quoted string as it is, or a bare word
+    private String readValue() {
+        int start = skipSpaces();
+        if (start < mText.length() && mText.charAt(start) == '"') {
+            StringBuilder value = new StringBuilder();
+            int i = start + 1;
+            while (i < mText.length() && mText.charAt(i) != '"') {
+                char c = mText.charAt(i);
+                if (c == '\\' && i + 1 < mText.length()) {
+                    c = mText.charAt(++i);
+                }
+                value.append(c);
+                i++;
+            }
+            if (i == mText.length()) {
+                throw new QuerySyntaxException("Unterminated string", start);
+            }
+            mTokenStart = start;
+            mPosition = i + 1;
+            return value.toString();
+        }
+        return readRawWord("a value");
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw new QuerySyntaxException("Expected " + keyword + " instead of " + peekDescription(), skipSpaces());
+        }
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        int start = skipSpaces();
+        int end = wordEnd(start);
+        if (end > start && mText.substring(start, end).toLowerCase(Locale.ROOT).equals(keyword)) {
+            mTokenStart = start;
+            mPosition = end;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean accept(char c) {
+        int start = skipSpaces();
+        if (start < mText.length() && mText.charAt(start) == c) {
+            mTokenStart = start;
+            mPosition = start + 1;
+            return true;
+        }
+        return false;
+    }
+
+    private String readWord(String expected) {
+        return readRawWord(expected).toLowerCase(Locale.ROOT);
+    }
+
+    private String readRawWord(String expected) {
+        int start = skipSpaces();
+        int end = wordEnd(start);
+        if (end == start) {
+            throw new QuerySyntaxException("Expected " + expected + " instead of " + peekDescription(), start);
+        }
+        mTokenStart = start;
+        mPosition = end;
+        return mText.substring(start, end);
+    }
+
+    private int wordEnd(int start) {
+        int end = start;
+        while (end < mText.length() && isWordChar(mText.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && c != '(' && c != ')' && c != '"';
+    }
+
+    private int skipSpaces() {
+        while (mPosition < mText.length() && Character.isWhitespace(mText.charAt(mPosition))) {
+            mPosition++;
+        }
+        return mPosition;
+    }
+
+    private String peekDescription() {
+        int start = skipSpaces();
+        if (start == mText.length()) {
+            return "the end";
+        }
+        int end = wordEnd(start);
+        return "\"" + mText.substring(start, end == start ? start + 1 : end) + "\"";
+    }
+}
@@ -0,0 +1,233 @@
+package com.antont.player.playlist;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Smart playlists over the library, each one a Rule and the BitSet of the documents it matches. A new
+// playlist is evaluated over the whole library once. After that a library delta, a played track or the
+// clock only re-evaluate what they can change: the tracks of the delta, the played track, or the playlists
+// whose rules depend on time.
+// Not thread safe, update and query it on one thread.
+public class SmartPlaylistIndex {
+
+    // Time rules are counted in hours at the finest, the clock is not looked at more often than this
+    public static final long TIME_RESOLUTION_IN_MS = 60 * 1000;
+    // Removed documents are dropped from the columns by a compaction
+    private static final int MIN_DELETED_FOR_COMPACTION = 1024;
+
+    private final PlayHistory mHistory;
+    private TrackColumns mTracks = new TrackColumns();
+    private final Map<Long, Integer> mDocsById = new HashMap<>();
+    private final Map<AudioItem, Integer> mDocsByItem = new IdentityHashMap<>();
+    private final Map<String, Integer> mDocsByPath = new HashMap<>();
+    private final Map<String, Playlist> mPlaylists = new LinkedHashMap<>();
+    private long mNowInMs;
+    private int mDeletedCount;
+
+    public SmartPlaylistIndex(PlayHistory history, long nowInMs) {
+        mHistory = history;
+        mNowInMs = nowInMs;
+    }
+
+    public void addAll(List<AudioItem> items) {
+        for (int i = 0; i < items.size(); i++) {
+            add(items.get(i));
+        }
+    }
+
+    // Replaces the track with the same MediaStore id
+    public void add(AudioItem item) {
+        if (mDocsByItem.containsKey(item)) {
+            return;
+        }
+        if (item.getId() != AudioItem.NO_ID) {
+            removeById(item.getId());
+        }
+        int doc = mTracks.add(item, mHistory.getLastPlayed(item.getPath()));
+        mDocsByItem.put(item, doc);
+        if (item.getId() != AudioItem.NO_ID) {
+            mDocsById.put(item.getId(), doc);
+        }
+        if (item.getPath() != null) {
+            mDocsByPath.put(item.getPath(), doc);
+        }
+        for (Playlist playlist : mPlaylists.values()) {
+            if (playlist.mRule.matches(mTracks, doc, mNowInMs)) {
+                playlist.mMatches.set(doc);
+            }
+        }
+    }
+
+    public boolean remove(AudioItem item) {
+        Integer doc = mDocsByItem.get(item);
+        if (doc == null) {
+            return false;
+        }
+        removeDoc(doc);
+        return true;
+    }
+
+    public boolean removeById(long id) {
+        Integer doc = mDocsById.get(id);
+        if (doc == null) {
+            return false;
+        }
+        removeDoc(doc);
+        return true;
+    }
+
+    // The same delta that PlayQueue.applyDelta() applies to the library
+    public void applyDelta(LibraryDelta delta) {
+        for (Long id : delta.getRemovedIds()) {
+            removeById(id);
+        }
+        // add() replaces the track with the same id
+        addAll(delta.getUpdatedItems());
+        addAll(delta.getAddedItems());
+        if (mDeletedCount >= Math.max(MIN_DELETED_FOR_COMPACTION, mTracks.liveCount())) {
+            compact();
+        }
+    }
+
+    public void clear() {
+        mTracks.clear();
+        mDocsById.clear();
+        mDocsByItem.clear();
+        mDocsByPath.clear();
+        for (Playlist playlist : mPlaylists.values()) {
+            playlist.mMatches.clear();
+        }
+        mDeletedCount = 0;
+    }
+
+    // Records the play in the history and moves the track in or out of the playlists that look at it
+    public void onPlayed(String path, long timeInMs) {
+        mHistory.setLastPlayed(path, timeInMs);
+        Integer doc = path == null ? null : mDocsByPath.get(path);
+        if (doc == null) {
+            return;
+        }
+        mTracks.mLastPlayedInMs[doc] = timeInMs;
+        for (Playlist playlist : mPlaylists.values()) {
+            if (playlist.mRule.dependsOnHistory()) {
+                playlist.mMatches.set(doc, playlist.mRule.matches(mTracks, doc, mNowInMs));
+            }
+        }
+    }
+
+    // Moves the clock on, the playlists whose rules depend on time are evaluated again when it has moved
+    // by the resolution or more. Returns whether any was
+    public boolean setNow(long nowInMs) {
+        if (Math.abs(nowInMs - mNowInMs) < TIME_RESOLUTION_IN_MS) {
+            return false;
+        }
+        mNowInMs = nowInMs;
+        boolean evaluated = false;
+        for (Playlist playlist : mPlaylists.values()) {
+            if (playlist.mRule.dependsOnTime()) {
+                evaluate(playlist);
+                evaluated = true;
+            }
+        }
+        return evaluated;
+    }
+
+    public long getNow() {
+        return mNowInMs;
+    }
+
+    // Replaces the playlist with the same name
+    public void putPlaylist(String name, Rule rule) {
+        Playlist playlist = new Playlist(rule);
+        evaluate(playlist);
+        mPlaylists.put(name, playlist);
+    }
+
+    public boolean removePlaylist(String name) {
+        return mPlaylists.remove(name) != null;
+    }
+
+    public List<String> getPlaylistNames() {
+        return new ArrayList<>(mPlaylists.keySet());
+    }
+
+    // The tracks in the order they were added to the index, empty for an unknown playlist
+    public List<AudioItem> getItems(String name) {
+        Playlist playlist = mPlaylists.get(name);
+        if (playlist == null) {
+            return new ArrayList<>();
+        }
+        List<AudioItem> items = new ArrayList<>(playlist.mMatches.cardinality());
+        BitSet matches = playlist.mMatches;
+        for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+            items.add(mTracks.mItems[doc]);
+        }
+        return items;
+    }
+
+    public int getSize(String name) {
+        Playlist playlist = mPlaylists.get(name);
+        return playlist == null ? 0 : playlist.mMatches.cardinality();
+    }
+
+    private void removeDoc(int doc) {
+        AudioItem item = mTracks.mItems[doc];
+        mDocsByItem.remove(item);
+        if (item.getId() != AudioItem.NO_ID) {
+            mDocsById.remove(item.getId());
+        }
+        // Another copy of the file may have taken the path over
+        Integer pathDoc = item.getPath() == null ? null : mDocsByPath.get(item.getPath());
+        if (pathDoc != null && pathDoc == doc) {
+            mDocsByPath.remove(item.getPath());
+        }
+        mTracks.remove(doc);
+        for (Playlist playlist : mPlaylists.values()) {
+            playlist.mMatches.clear(doc);
+        }
+        mDeletedCount++;
+    }
+
+    private void evaluate(Playlist playlist) {
+        playlist.mMatches.clear();
+        playlist.mRule.evaluate(mTracks, mNowInMs, mTracks.mLive, playlist.mMatches);
+    }
+
+    // Numbers the live tracks again from 0 in the same order and evaluates every playlist over them
+    private void compact() {
+        List<AudioItem> items = new ArrayList<>(mTracks.liveCount());
+        for (int doc = mTracks.mLive.nextSetBit(0); doc >= 0; doc = mTracks.mLive.nextSetBit(doc + 1)) {
+            items.add(mTracks.mItems[doc]);
+        }
+        mTracks = new TrackColumns();
+        mDocsById.clear();
+        mDocsByItem.clear();
+        mDocsByPath.clear();
+        mDeletedCount = 0;
+        Map<String, Playlist> playlists = new LinkedHashMap<>(mPlaylists);
+        mPlaylists.clear();
+        addAll(items);
+        mPlaylists.putAll(playlists);
+        for (Playlist playlist : mPlaylists.values()) {
+            evaluate(playlist);
+        }
+    }
+
+    private static final class Playlist {
+
+        final Rule mRule;
+        final BitSet mMatches = new BitSet();
+
+        Playlist(Rule rule) {
+            mRule = rule;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.antont.player.playlist;
+
+import com.antont.player.models.AudioItem;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// The fields the rules look at, a column per field indexed by document number. Text is folded once when a
+// track is added, so a rule compares plain strings. Documents are never reused, a removed one only loses its
+// bit in the live set until the index is compacted.
+final class TrackColumns {
+
+    AudioItem[] mItems = new AudioItem[256];
+    String[] mNames = new String[256];
+    String[] mAlbums = new String[256];
+    String[] mFolders = new String[256];
+    // With a slash at both ends, so a folder matches whole names only
+    String[] mPaths = new String[256];
+    long[] mDatesModifiedInMs = new long[256];
+    // 0 for tracks that have never been played
+    long[] mLastPlayedInMs = new long[256];
+    final BitSet mLive = new BitSet();
+    int mCount;
+
+    int add(AudioItem item, long lastPlayedInMs) {
+        int doc = mCount++;
+        if (doc == mItems.length) {
+            int capacity = doc * 2;
+            mItems = Arrays.copyOf(mItems, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mAlbums = Arrays.copyOf(mAlbums, capacity);
+            mFolders = Arrays.copyOf(mFolders, capacity);
+            mPaths = Arrays.copyOf(mPaths, capacity);
+            mDatesModifiedInMs = Arrays.copyOf(mDatesModifiedInMs, capacity);
+            mLastPlayedInMs = Arrays.copyOf(mLastPlayedInMs, capacity);
+        }
+        String path = item.getPath();
+        mItems[doc] = item;
+        mNames[doc] = fold(item.getName());
+        mAlbums[doc] = fold(item.getAlbumName());
+        mFolders[doc] = fold(folderOf(path));
+        mPaths[doc] = path == null ? "" : "/" + trimSlashes(fold(path)) + "/";
+        mDatesModifiedInMs[doc] = item.getDateModified() * 1000;
+        mLastPlayedInMs[doc] = lastPlayedInMs;
+        mLive.set(doc);
+        return doc;
+    }
+
+    void remove(int doc) {
+        mLive.clear(doc);
+        mItems[doc] = null;
+    }
+
+    void clear() {
+        Arrays.fill(mItems, 0, mCount, null);
+        mLive.clear();
+        mCount = 0;
+    }
+
+    int liveCount() {
+        return mLive.cardinality();
+    }
+
+    // Lower case without accents, the way rule values are folded too
+    static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    private static String folderOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        int end = path.lastIndexOf('/');
+        if (end <= 0) {
+            return null;
+        }
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+}
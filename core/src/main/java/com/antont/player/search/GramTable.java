@@ -0,0 +1,85 @@
+package com.antont.player.search;
+
+import java.util.Arrays;
+
+// Open addressing map from a gram packed into a long to its posting list, without boxing the keys
+final class GramTable {
+
+    private static final long EMPTY = 0;
+
+    private long[] mKeys = new long[1024];
+    private PostingList[] mValues = new PostingList[1024];
+    private int mSize;
+
+    // Three chars in one key. A zero char pads grams of one character, keys are never 0 because the
+    // first char of a gram is never 0.
+    static long pack(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+
+    PostingList get(long key) {
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = mKeys[slot];
+            if (current == key) {
+                return mValues[slot];
+            }
+            if (current == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    PostingList getOrCreate(long key) {
+        if ((mSize + 1) * 2 > mKeys.length) {
+            grow();
+        }
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = mKeys[slot];
+            if (current == key) {
+                return mValues[slot];
+            }
+            if (current == EMPTY) {
+                mKeys[slot] = key;
+                mValues[slot] = new PostingList();
+                mSize++;
+                return mValues[slot];
+            }
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    private void grow() {
+        long[] keys = mKeys;
+        PostingList[] values = mValues;
+        mKeys = new long[keys.length * 2];
+        mValues = new PostingList[keys.length * 2];
+        int mask = mKeys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) {
+                continue;
+            }
+            int slot = hash(keys[i]) & mask;
+            while (mKeys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            mKeys[slot] = keys[i];
+            mValues[slot] = values[i];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
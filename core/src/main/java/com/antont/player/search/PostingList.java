@@ -0,0 +1,49 @@
+package com.antont.player.search;
+
+import java.util.Arrays;
+
+// Ascending document ids of one gram
+final class PostingList {
+
+    private int[] mDocs = new int[4];
+    private int mSize;
+
+    // Documents are added in id order, a document adds each of its grams once
+    void add(int doc) {
+        if (mSize > 0 && mDocs[mSize - 1] == doc) {
+            return;
+        }
+        if (mSize == mDocs.length) {
+            mDocs = Arrays.copyOf(mDocs, mSize * 2);
+        }
+        mDocs[mSize++] = doc;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int get(int index) {
+        return mDocs[index];
+    }
+
+    // Index of the first document >= doc at or after from, galloping since candidate lists are short
+    int advance(int from, int doc) {
+        int bound = 1;
+        int low = from;
+        while (low + bound < mSize && mDocs[low + bound] < doc) {
+            low += bound;
+            bound <<= 1;
+        }
+        int high = Math.min(low + bound, mSize);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mDocs[mid] < doc) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
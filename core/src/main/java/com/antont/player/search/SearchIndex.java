@@ -0,0 +1,459 @@
+package com.antont.player.search;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory search over the name, album and folder of library items. Every token is indexed by its
+// trigrams plus its first one and two characters, each gram maps to an ascending list of int document ids.
+// A query intersects the posting lists of its grams and verifies the few remaining documents, matches at
+// the start of a token rank before matches inside one, and typo tolerant matches are added when there are
+// not enough exact ones.
+// Not thread safe, build, update and query it on one thread.
+public class SearchIndex {
+
+    // Removed documents are only dropped from the posting lists by a rebuild
+    private static final int MIN_DELETED_FOR_REBUILD = 1024;
+    private static final int MIN_FUZZY_TERM_LENGTH = 4;
+    // Typo tolerance is best effort, a query verifies at most this many candidates
+    private static final int MAX_FUZZY_VERIFICATIONS = 512;
+
+    private static final int MATCH_NONE = 0;
+    private static final int MATCH_PREFIX = 1;
+    private static final int MATCH_INNER = 2;
+
+    private final GramTable mGrams = new GramTable();
+    private final Map<Long, Integer> mDocsById = new HashMap<>();
+    private final Map<AudioItem, Integer> mDocsByItem = new IdentityHashMap<>();
+
+    private AudioItem[] mItems = new AudioItem[256];
+    // Normalized text of each document, null once it has been removed
+    private String[] mTexts = new String[256];
+    private int mDocCount;
+    private int mDeletedCount;
+
+    // Query scratch, reused between queries
+    private long[] mKeys = new long[16];
+    private PostingList[] mPostings = new PostingList[16];
+    private int[] mCandidates = new int[256];
+    private int[] mSortedCandidates = new int[256];
+    private int[] mCounts = new int[256];
+    private int[] mMatchStamps = new int[256];
+    private int mStamp;
+    private int[] mPreviousRow = new int[16];
+    private int[] mCurrentRow = new int[16];
+
+    public SearchIndex() {
+    }
+
+    public SearchIndex(List<AudioItem> items) {
+        addAll(items);
+    }
+
+    public int size() {
+        return mDocsByItem.size();
+    }
+
+    public void addAll(List<AudioItem> items) {
+        for (int i = 0; i < items.size(); i++) {
+            add(items.get(i));
+        }
+    }
+
+    public void add(AudioItem item) {
+        if (mDocsByItem.containsKey(item)) {
+            return;
+        }
+        if (item.getId() != AudioItem.NO_ID) {
+            removeById(item.getId());
+        }
+        int doc = mDocCount++;
+        if (doc == mItems.length) {
+            mItems = Arrays.copyOf(mItems, doc * 2);
+            mTexts = Arrays.copyOf(mTexts, doc * 2);
+        }
+        String text = SearchText.normalize(textOf(item));
+        mItems[doc] = item;
+        mTexts[doc] = text;
+        mDocsByItem.put(item, doc);
+        if (item.getId() != AudioItem.NO_ID) {
+            mDocsById.put(item.getId(), doc);
+        }
+        indexGrams(doc, text);
+    }
+
+    public boolean remove(AudioItem item) {
+        Integer doc = mDocsByItem.get(item);
+        if (doc == null) {
+            return false;
+        }
+        removeDoc(doc);
+        return true;
+    }
+
+    public boolean removeById(long id) {
+        Integer doc = mDocsById.get(id);
+        if (doc == null) {
+            return false;
+        }
+        removeDoc(doc);
+        return true;
+    }
+
+    // The same delta that PlayQueue.applyDelta() applies to the library
+    public void applyDelta(LibraryDelta delta) {
+        for (Long id : delta.getRemovedIds()) {
+            removeById(id);
+        }
+        // add() replaces the document with the same id
+        addAll(delta.getUpdatedItems());
+        addAll(delta.getAddedItems());
+    }
+
+    public void clear() {
+        mGrams.clear();
+        mDocsById.clear();
+        mDocsByItem.clear();
+        Arrays.fill(mItems, 0, mDocCount, null);
+        Arrays.fill(mTexts, 0, mDocCount, null);
+        mDocCount = 0;
+        mDeletedCount = 0;
+    }
+
+    // Items matching every term of the query, best matches first and in the order they were added
+    public List<AudioItem> search(String query, int limit) {
+        List<AudioItem> results = new ArrayList<>(Math.min(limit, 64));
+        String[] terms = SearchText.tokens(SearchText.normalize(query));
+        if (terms.length == 0 || limit <= 0) {
+            return results;
+        }
+        mStamp++;
+        if (mMatchStamps.length < mDocCount) {
+            mMatchStamps = new int[mItems.length];
+        }
+
+        int candidateCount = findCandidates(terms);
+        // Token prefix matches go straight to the results, inner matches are collected behind them
+        List<AudioItem> innerMatches = new ArrayList<>();
+        for (int i = 0; i < candidateCount && results.size() < limit; i++) {
+            int doc = mCandidates[i];
+            int match = matchExact(mTexts[doc], terms);
+            if (match == MATCH_PREFIX) {
+                results.add(mItems[doc]);
+                mMatchStamps[doc] = mStamp;
+            } else if (match == MATCH_INNER && innerMatches.size() < limit) {
+                innerMatches.add(mItems[doc]);
+                mMatchStamps[doc] = mStamp;
+            }
+        }
+        for (int i = 0; i < innerMatches.size() && results.size() < limit; i++) {
+            results.add(innerMatches.get(i));
+        }
+        if (results.size() < limit) {
+            addFuzzyMatches(terms, limit, results);
+        }
+        return results;
+    }
+
+    private static String textOf(AudioItem item) {
+        StringBuilder builder = new StringBuilder();
+        appendField(builder, item.getName());
+        appendField(builder, item.getAlbumName());
+        appendField(builder, SearchText.parentFolderOf(item.getPath()));
+        return builder.toString();
+    }
+
+    private static void appendField(StringBuilder builder, String field) {
+        if (field != null) {
+            builder.append(field).append(' ');
+        }
+    }
+
+    private void indexGrams(int doc, String text) {
+        int tokenStart = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                tokenStart = i + 1;
+                continue;
+            }
+            if (i == tokenStart) {
+                mGrams.getOrCreate(GramTable.pack(' ', c, '\0')).add(doc);
+                char next = text.charAt(i + 1);
+                if (next != ' ') {
+                    mGrams.getOrCreate(GramTable.pack(' ', c, next)).add(doc);
+                }
+            }
+            if (i + 2 < text.length() && text.charAt(i + 1) != ' ' && text.charAt(i + 2) != ' ') {
+                mGrams.getOrCreate(GramTable.pack(c, text.charAt(i + 1), text.charAt(i + 2))).add(doc);
+            }
+        }
+    }
+
+    private void removeDoc(int doc) {
+        AudioItem item = mItems[doc];
+        mDocsByItem.remove(item);
+        if (item.getId() != AudioItem.NO_ID) {
+            mDocsById.remove(item.getId());
+        }
+        mItems[doc] = null;
+        mTexts[doc] = null;
+        mDeletedCount++;
+        if (mDeletedCount >= MIN_DELETED_FOR_REBUILD && mDeletedCount > size()) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        List<AudioItem> items = new ArrayList<>(size());
+        for (int doc = 0; doc < mDocCount; doc++) {
+            if (mItems[doc] != null) {
+                items.add(mItems[doc]);
+            }
+        }
+        clear();
+        addAll(items);
+    }
+
+    // Fills mCandidates with the live documents that contain every gram of every term
+    private int findCandidates(String[] terms) {
+        int keyCount = 0;
+        for (String term : terms) {
+            keyCount = collectKeys(term, keyCount);
+        }
+        for (int i = 0; i < keyCount; i++) {
+            PostingList postings = mGrams.get(mKeys[i]);
+            if (postings == null) {
+                return 0;
+            }
+            mPostings[i] = postings;
+        }
+        // Shortest list first, every other list is only probed for its documents
+        sortBySize(mPostings, keyCount);
+
+        PostingList shortest = mPostings[0];
+        if (mCandidates.length < shortest.size()) {
+            mCandidates = new int[shortest.size()];
+        }
+        int count = 0;
+        for (int i = 0; i < shortest.size(); i++) {
+            int doc = shortest.get(i);
+            if (mTexts[doc] != null) {
+                mCandidates[count++] = doc;
+            }
+        }
+        for (int list = 1; list < keyCount && count > 0; list++) {
+            PostingList postings = mPostings[list];
+            int kept = 0;
+            int position = 0;
+            for (int i = 0; i < count && position < postings.size(); i++) {
+                int doc = mCandidates[i];
+                position = postings.advance(position, doc);
+                if (position < postings.size() && postings.get(position) == doc) {
+                    mCandidates[kept++] = doc;
+                }
+            }
+            count = kept;
+        }
+        Arrays.fill(mPostings, 0, keyCount, null);
+        return count;
+    }
+
+    // Short terms are looked up by token start, longer ones by all of their trigrams
+    private int collectKeys(String term, int keyCount) {
+        if (term.length() == 1) {
+            return appendKey(GramTable.pack(' ', term.charAt(0), '\0'), keyCount);
+        }
+        if (term.length() == 2) {
+            return appendKey(GramTable.pack(' ', term.charAt(0), term.charAt(1)), keyCount);
+        }
+        for (int i = 0; i + 2 < term.length(); i++) {
+            keyCount = appendKey(GramTable.pack(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2)), keyCount);
+        }
+        return keyCount;
+    }
+
+    private int appendKey(long key, int keyCount) {
+        for (int i = 0; i < keyCount; i++) {
+            if (mKeys[i] == key) {
+                return keyCount;
+            }
+        }
+        if (keyCount == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, keyCount * 2);
+            mPostings = Arrays.copyOf(mPostings, keyCount * 2);
+        }
+        mKeys[keyCount] = key;
+        return keyCount + 1;
+    }
+
+    private static void sortBySize(PostingList[] postings, int count) {
+        for (int i = 1; i < count; i++) {
+            PostingList current = postings[i];
+            int j = i - 1;
+            while (j >= 0 && postings[j].size() > current.size()) {
+                postings[j + 1] = postings[j];
+                j--;
+            }
+            postings[j + 1] = current;
+        }
+    }
+
+    private static int matchExact(String text, String[] terms) {
+        int match = MATCH_PREFIX;
+        for (String term : terms) {
+            if (startsToken(text, term)) {
+                continue;
+            }
+            // Grams only prove the term's trigrams are present, not that they are adjacent
+            if (term.length() < 3 || text.indexOf(term) < 0) {
+                return MATCH_NONE;
+            }
+            match = MATCH_INNER;
+        }
+        return match;
+    }
+
+    private static boolean startsToken(String text, String term) {
+        for (int i = text.indexOf(' '); i >= 0 && i + 1 < text.length(); i = text.indexOf(' ', i + 1)) {
+            if (text.startsWith(term, i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Documents sharing enough trigrams with the longest term and matching every term within a few edits
+    private void addFuzzyMatches(String[] terms, int limit, List<AudioItem> results) {
+        String longest = terms[0];
+        for (String term : terms) {
+            if (term.length() > longest.length()) {
+                longest = term;
+            }
+        }
+        if (longest.length() < MIN_FUZZY_TERM_LENGTH) {
+            return;
+        }
+        if (mCounts.length < mDocCount) {
+            mCounts = new int[mItems.length];
+        }
+
+        int keyCount = collectKeys(longest, 0);
+        // One edit changes at most three trigrams
+        int minShared = Math.max(1, keyCount - 3 * maxEditsFor(longest));
+        int touched = 0;
+        for (int k = 0; k < keyCount; k++) {
+            PostingList postings = mGrams.get(mKeys[k]);
+            if (postings == null) {
+                continue;
+            }
+            for (int i = 0; i < postings.size(); i++) {
+                int doc = postings.get(i);
+                // Removed and already matched documents are skipped when verifying
+                if (mCounts[doc]++ == 0) {
+                    if (touched == mCandidates.length) {
+                        mCandidates = Arrays.copyOf(mCandidates, touched * 2);
+                    }
+                    mCandidates[touched++] = doc;
+                }
+            }
+        }
+        // Most shared trigrams first, the closest matches are verified before the limit is reached
+        if (mSortedCandidates.length < touched) {
+            mSortedCandidates = new int[mCandidates.length];
+        }
+        int[] bucketStarts = new int[keyCount + 2];
+        for (int i = 0; i < touched; i++) {
+            bucketStarts[keyCount - mCounts[mCandidates[i]] + 1]++;
+        }
+        for (int i = 1; i < bucketStarts.length; i++) {
+            bucketStarts[i] += bucketStarts[i - 1];
+        }
+        for (int i = 0; i < touched; i++) {
+            int doc = mCandidates[i];
+            mSortedCandidates[bucketStarts[keyCount - mCounts[doc]]++] = doc;
+        }
+
+        int verified = 0;
+        for (int i = 0; i < touched; i++) {
+            int doc = mSortedCandidates[i];
+            int shared = mCounts[doc];
+            mCounts[doc] = 0;
+            if (shared < minShared || results.size() >= limit || verified >= MAX_FUZZY_VERIFICATIONS
+                    || mTexts[doc] == null || mMatchStamps[doc] == mStamp) {
+                continue;
+            }
+            verified++;
+            if (matchFuzzy(mTexts[doc], terms)) {
+                results.add(mItems[doc]);
+            }
+        }
+    }
+
+    private boolean matchFuzzy(String text, String[] terms) {
+        for (String term : terms) {
+            if (startsToken(text, term) || (term.length() >= 3 && text.indexOf(term) >= 0)) {
+                continue;
+            }
+            if (term.length() < MIN_FUZZY_TERM_LENGTH || !startsTokenApproximately(text, term, maxEditsFor(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int maxEditsFor(String term) {
+        return term.length() < 8 ? 1 : 2;
+    }
+
+    private boolean startsTokenApproximately(String text, String term, int maxEdits) {
+        int tokenStart = 1;
+        while (tokenStart < text.length()) {
+            int tokenEnd = text.indexOf(' ', tokenStart);
+            if (prefixDistance(text, tokenStart, tokenEnd, term, maxEdits) <= maxEdits) {
+                return true;
+            }
+            tokenStart = tokenEnd + 1;
+        }
+        return false;
+    }
+
+    // Smallest edit distance between the term and any prefix of the token, stops early above maxEdits
+    int prefixDistance(String text, int tokenStart, int tokenEnd, String term, int maxEdits) {
+        int length = term.length();
+        if (mPreviousRow.length <= length) {
+            mPreviousRow = new int[length + 1];
+            mCurrentRow = new int[length + 1];
+        }
+        int[] previous = mPreviousRow;
+        int[] current = mCurrentRow;
+        for (int i = 0; i <= length; i++) {
+            previous[i] = i;
+        }
+        int best = length;
+        for (int j = tokenStart; j < tokenEnd; j++) {
+            char c = text.charAt(j);
+            current[0] = j - tokenStart + 1;
+            int rowMin = current[0];
+            for (int i = 1; i <= length; i++) {
+                int cost = term.charAt(i - 1) == c ? 0 : 1;
+                current[i] = Math.min(Math.min(previous[i] + 1, current[i - 1] + 1), previous[i - 1] + cost);
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            best = Math.min(best, current[length]);
+            if (rowMin > maxEdits) {
+                break;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,57 @@
+package com.antont.player.search;
+
+import java.text.Normalizer;
+
+// Normal form of indexed text and queries: lower case, accents removed, every run of characters that are
+// not letters or digits replaced by one space
+final class SearchText {
+
+    private SearchText() {
+    }
+
+    // The result starts and ends with a space when it is not empty, so " " + term marks a token start
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length() + 2).append(' ');
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(Character.toLowerCase(c));
+            } else if (builder.charAt(builder.length() - 1) != ' ') {
+                builder.append(' ');
+            }
+        }
+        if (builder.length() == 1) {
+            return "";
+        }
+        if (builder.charAt(builder.length() - 1) != ' ') {
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+
+    // The name of the folder that contains the file, often the artist or album
+    static String parentFolderOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        int end = path.lastIndexOf('/');
+        if (end <= 0) {
+            return null;
+        }
+        int start = path.lastIndexOf('/', end - 1);
+        return path.substring(start + 1, end);
+    }
+
+    // Splits normalized text into its tokens
+    static String[] tokens(String normalized) {
+        String trimmed = normalized.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" ");
+    }
+}
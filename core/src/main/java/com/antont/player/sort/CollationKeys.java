@@ -0,0 +1,81 @@
+package com.antont.player.sort;
+
+import com.antont.player.models.AudioItem;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Sort keys of the library items. The keys of an item are computed the first time it is sorted and kept
+// for as long as it is in the sorted lists, so a re-sort only computes the keys of new items.
+final class CollationKeys {
+
+    // Sorts below every other char of a key, a folder comes before its subfolders and they come in order
+    static final char PATH_SEPARATOR = 1;
+
+    private Map<AudioItem, ItemKeys> mItemKeys = new IdentityHashMap<>();
+    // Albums and folders repeat, their keys are shared while new items are keyed
+    private final Map<String, SortText> mAlbums = new HashMap<>();
+    private final Map<String, SortText> mFolders = new HashMap<>();
+
+    // The keys of the given items in their order. Keys of items that are not in the list anymore are dropped
+    ItemKeys[] keysOf(List<AudioItem> items) {
+        ItemKeys[] keys = new ItemKeys[items.size()];
+        boolean allKnown = true;
+        for (int i = 0; i < keys.length; i++) {
+            AudioItem item = items.get(i);
+            keys[i] = mItemKeys.get(item);
+            if (keys[i] == null) {
+                keys[i] = new ItemKeys(item);
+                allKnown = false;
+            }
+        }
+        // The same items in another order, the common case of a re-sort, leave the map as it is
+        if (!allKnown || mItemKeys.size() != keys.length) {
+            Map<AudioItem, ItemKeys> itemKeys = new IdentityHashMap<>(keys.length);
+            for (ItemKeys key : keys) {
+                itemKeys.put(key.mItem, key);
+            }
+            mItemKeys = itemKeys;
+        }
+        mAlbums.clear();
+        mFolders.clear();
+        return keys;
+    }
+
+    private SortText albumKeyOf(String album) {
+        SortText key = mAlbums.get(album);
+        if (key == null) {
+            key = SortText.of(album, '/');
+            mAlbums.put(album, key);
+        }
+        return key;
+    }
+
+    private SortText folderKeyOf(String folder) {
+        SortText key = mFolders.get(folder);
+        if (key == null) {
+            key = SortText.of(folder, PATH_SEPARATOR);
+            mFolders.put(folder, key);
+        }
+        return key;
+    }
+
+    final class ItemKeys {
+        final AudioItem mItem;
+        final long mId;
+        final SortText mName;
+        final SortText mAlbum;
+        final SortText mFolder;
+
+        ItemKeys(AudioItem item) {
+            mItem = item;
+            mId = item.getId();
+            mName = SortText.of(item.getName(), '/');
+            mAlbum = albumKeyOf(item.getAlbumName());
+            String folder = item.getFolder();
+            mFolder = folderKeyOf(folder == null ? "" : folder);
+        }
+    }
+}
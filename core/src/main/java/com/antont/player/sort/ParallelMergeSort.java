@@ -0,0 +1,106 @@
+package com.antont.player.sort;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Stable merge sort of an int array under a comparator of its values, the values being indices into
+// arrays of keys. Halves above a threshold are sorted in parallel on a fork-join pool.
+// Arrays.parallelSort() does the same for objects, but only from API level 24.
+final class ParallelMergeSort {
+
+    // Below this many values a half is not worth a task of its own
+    private static final int PARALLEL_THRESHOLD = 8192;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private ParallelMergeSort() {
+    }
+
+    static void sort(int[] values, IndexComparator comparator, ForkJoinPool pool) {
+        if (values.length < 2) {
+            return;
+        }
+        int[] buffer = new int[values.length];
+        if (values.length <= PARALLEL_THRESHOLD) {
+            sortRange(values, buffer, 0, values.length, comparator);
+        } else {
+            pool.invoke(new SortTask(values, buffer, 0, values.length, comparator));
+        }
+    }
+
+    private static void sortRange(int[] values, int[] buffer, int from, int to, IndexComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(values, from, to, comparator);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sortRange(values, buffer, from, middle, comparator);
+        sortRange(values, buffer, middle, to, comparator);
+        merge(values, buffer, from, middle, to, comparator);
+    }
+
+    private static void insertionSort(int[] values, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int value = values[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(values[j], value) > 0) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    // Equal values are taken from the left run first, which keeps the sort stable
+    private static void merge(int[] values, int[] buffer, int from, int middle, int to, IndexComparator comparator) {
+        // Re-sorting a sorted list only compares once per run
+        if (comparator.compare(values[middle - 1], values[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, from, buffer, from, middle - from);
+        int left = from;
+        int right = middle;
+        int out = from;
+        while (left < middle && right < to) {
+            if (comparator.compare(buffer[left], values[right]) <= 0) {
+                values[out++] = buffer[left++];
+            } else {
+                values[out++] = values[right++];
+            }
+        }
+        System.arraycopy(buffer, left, values, out, middle - left);
+    }
+
+    interface IndexComparator {
+        int compare(int first, int second);
+    }
+
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] mValues;
+        private final int[] mBuffer;
+        private final int mFrom;
+        private final int mTo;
+        private final IndexComparator mComparator;
+
+        SortTask(int[] values, int[] buffer, int from, int to, IndexComparator comparator) {
+            mValues = values;
+            mBuffer = buffer;
+            mFrom = from;
+            mTo = to;
+            mComparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= PARALLEL_THRESHOLD) {
+                sortRange(mValues, mBuffer, mFrom, mTo, mComparator);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new SortTask(mValues, mBuffer, mFrom, middle, mComparator),
+                    new SortTask(mValues, mBuffer, middle, mTo, mComparator));
+            merge(mValues, mBuffer, mFrom, middle, mTo, mComparator);
+        }
+    }
+}
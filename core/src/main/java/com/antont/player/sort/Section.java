@@ -0,0 +1,31 @@
+package com.antont.player.sort;
+
+// A header in a sorted list. It stands before the item at the start position, several headers can
+// stand before the same item when a folder holds subfolders only.
+public class Section {
+
+    private final String mTitle;
+    private final int mStart;
+    private final int mDepth;
+
+    public Section(String title, int start, int depth) {
+        mTitle = title;
+        mStart = start;
+        mDepth = depth;
+    }
+
+    // Null for tracks without an album
+    public String getTitle() {
+        return mTitle;
+    }
+
+    // Position of the first item below the header
+    public int getStart() {
+        return mStart;
+    }
+
+    // Level in the folder tree, 0 for albums and the top folder
+    public int getDepth() {
+        return mDepth;
+    }
+}
@@ -0,0 +1,87 @@
+package com.antont.player.sort;
+
+import java.util.Collections;
+import java.util.List;
+
+// Maps between the rows of a list with section headers and the positions of its items. Only the header
+// rows are stored, the header of section k is at row start + k, so both directions are a binary search.
+public class SectionIndex {
+
+    public static final SectionIndex NONE = new SectionIndex(Collections.emptyList(), 0);
+
+    private final List<Section> mSections;
+    private final int[] mHeaderRows;
+    private final int mRowCount;
+
+    // The sections must be in the order of their start positions
+    public SectionIndex(List<Section> sections, int itemCount) {
+        mSections = sections;
+        mHeaderRows = new int[sections.size()];
+        for (int k = 0; k < mHeaderRows.length; k++) {
+            mHeaderRows[k] = sections.get(k).getStart() + k;
+        }
+        mRowCount = itemCount + mHeaderRows.length;
+    }
+
+    public boolean isEmpty() {
+        return mHeaderRows.length == 0;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public boolean isHeader(int row) {
+        int k = sectionIndexAt(row);
+        return k >= 0 && mHeaderRows[k] == row;
+    }
+
+    // The header at the row, null if the row shows an item
+    public Section getSection(int row) {
+        int k = sectionIndexAt(row);
+        return k >= 0 && mHeaderRows[k] == row ? mSections.get(k) : null;
+    }
+
+    // The item position of an item row, -1 for a header row
+    public int getItemPosition(int row) {
+        int k = sectionIndexAt(row);
+        if (k >= 0 && mHeaderRows[k] == row) {
+            return -1;
+        }
+        return row - (k + 1);
+    }
+
+    // The row of the item at the position, -1 stays -1
+    public int getRow(int itemPosition) {
+        if (itemPosition < 0) {
+            return itemPosition;
+        }
+        // Headers at the item's position stand above it
+        int low = 0;
+        int high = mHeaderRows.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mSections.get(middle).getStart() <= itemPosition) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return itemPosition + low;
+    }
+
+    // Index of the last header at or above the row, -1 if there is none
+    private int sectionIndexAt(int row) {
+        int low = 0;
+        int high = mHeaderRows.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mHeaderRows[middle] <= row) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+}
@@ -0,0 +1,184 @@
+package com.antont.player.sort;
+
+import com.antont.player.enums.SortOrder;
+import com.antont.player.models.AudioItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Sorts the library by one of the sort orders and splits the result into sections. Each order is a
+// chain of keys, the later keys order the items the earlier ones consider equal and items equal in
+// every key keep their relative order. The collation keys are computed once per item and reused by
+// every later sort, a sort itself only permutes an int array.
+//
+// Not thread safe, one thread at a time.
+public class SortEngine {
+
+    private final ForkJoinPool mPool;
+    private final CollationKeys mKeys = new CollationKeys();
+
+    public SortEngine(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    public SortResult sort(List<AudioItem> items, SortOrder order) {
+        CollationKeys.ItemKeys[] keys = mKeys.keysOf(items);
+        int[] positions = new int[keys.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        ParallelMergeSort.sort(positions, comparatorOf(order, keys), mPool);
+
+        CollationKeys.ItemKeys[] sortedKeys = new CollationKeys.ItemKeys[keys.length];
+        List<AudioItem> sortedItems = new ArrayList<>(keys.length);
+        for (int i = 0; i < positions.length; i++) {
+            sortedKeys[i] = keys[positions[i]];
+            sortedItems.add(sortedKeys[i].mItem);
+        }
+        return new SortResult(order, sortedItems, sectionsOf(order, sortedKeys));
+    }
+
+    private static ParallelMergeSort.IndexComparator comparatorOf(SortOrder order, CollationKeys.ItemKeys[] keys) {
+        switch (order) {
+            case NAME:
+                return (first, second) -> {
+                    CollationKeys.ItemKeys a = keys[first];
+                    CollationKeys.ItemKeys b = keys[second];
+                    int result = a.mName.compareTo(b.mName);
+                    if (result == 0) {
+                        result = a.mAlbum.compareTo(b.mAlbum);
+                    }
+                    return result != 0 ? result : a.mFolder.compareTo(b.mFolder);
+                };
+            case ALBUM:
+                return (first, second) -> {
+                    CollationKeys.ItemKeys a = keys[first];
+                    CollationKeys.ItemKeys b = keys[second];
+                    int result = a.mAlbum.compareTo(b.mAlbum);
+                    if (result == 0) {
+                        result = a.mFolder.compareTo(b.mFolder);
+                    }
+                    // File names usually start with the track number
+                    return result != 0 ? result : a.mName.compareTo(b.mName);
+                };
+            case FOLDER:
+                return (first, second) -> {
+                    CollationKeys.ItemKeys a = keys[first];
+                    CollationKeys.ItemKeys b = keys[second];
+                    int result = a.mFolder.compareTo(b.mFolder);
+                    return result != 0 ? result : a.mName.compareTo(b.mName);
+                };
+            case ADDED:
+            default:
+                return (first, second) -> Long.compare(keys[first].mId, keys[second].mId);
+        }
+    }
+
+    private static List<Section> sectionsOf(SortOrder order, CollationKeys.ItemKeys[] sortedKeys) {
+        switch (order) {
+            case ALBUM:
+                return albumSectionsOf(sortedKeys);
+            case FOLDER:
+                return folderSectionsOf(sortedKeys);
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    // One section per album and folder, like the artwork. Albums of the same name in two folders,
+    // "Unknown" above all, are rarely the same album
+    private static List<Section> albumSectionsOf(CollationKeys.ItemKeys[] sortedKeys) {
+        List<Section> sections = new ArrayList<>();
+        CollationKeys.ItemKeys previous = null;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            CollationKeys.ItemKeys keys = sortedKeys[i];
+            if (previous == null || keys.mAlbum.compareTo(previous.mAlbum) != 0
+                    || keys.mFolder.compareTo(previous.mFolder) != 0) {
+                String title = keys.mAlbum == SortText.MISSING ? null : keys.mAlbum.getRaw();
+                sections.add(new Section(title, i, 0));
+            }
+            previous = keys;
+        }
+        return sections;
+    }
+
+    // The folder all tracks have in common is the top section, every folder below it that holds tracks
+    // or folders with tracks gets a section one level deeper than its parent
+    private static List<Section> folderSectionsOf(CollationKeys.ItemKeys[] sortedKeys) {
+        List<Section> sections = new ArrayList<>();
+        if (sortedKeys.length == 0) {
+            return sections;
+        }
+        String root = commonFolderOf(sortedKeys);
+        sections.add(new Section(root.isEmpty() ? "/" : root, 0, 0));
+
+        String previousFolder = root;
+        String[] previousParts = new String[0];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            String folder = sortedKeys[i].mFolder.getRaw();
+            if (folder.equals(previousFolder)) {
+                continue;
+            }
+            String[] parts = partsOf(folder.substring(root.length()));
+            int common = 0;
+            while (common < parts.length && common < previousParts.length && parts[common].equals(previousParts[common])) {
+                common++;
+            }
+            for (int depth = common; depth < parts.length; depth++) {
+                sections.add(new Section(parts[depth], i, depth + 1));
+            }
+            previousFolder = folder;
+            previousParts = parts;
+        }
+        return sections;
+    }
+
+    private static String commonFolderOf(CollationKeys.ItemKeys[] keys) {
+        String root = keys[0].mFolder.getRaw();
+        for (CollationKeys.ItemKeys itemKeys : keys) {
+            String folder = itemKeys.mFolder.getRaw();
+            if (!isInFolder(folder, root)) {
+                root = commonFolderOf(root, folder);
+            }
+        }
+        return root;
+    }
+
+    static String commonFolderOf(String first, String second) {
+        if (isInFolder(second, first)) {
+            return first;
+        }
+        if (isInFolder(first, second)) {
+            return second;
+        }
+        int length = Math.min(first.length(), second.length());
+        int mismatch = 0;
+        while (mismatch < length && first.charAt(mismatch) == second.charAt(mismatch)) {
+            mismatch++;
+        }
+        int separator = first.lastIndexOf('/', mismatch - 1);
+        return separator <= 0 ? "" : first.substring(0, separator);
+    }
+
+    private static boolean isInFolder(String folder, String parent) {
+        return folder.startsWith(parent) && (folder.length() == parent.length() || folder.charAt(parent.length()) == '/');
+    }
+
+    private static String[] partsOf(String relativeFolder) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (start < relativeFolder.length()) {
+            int end = relativeFolder.indexOf('/', start);
+            if (end < 0) {
+                end = relativeFolder.length();
+            }
+            if (end > start) {
+                parts.add(relativeFolder.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return parts.toArray(new String[parts.size()]);
+    }
+}
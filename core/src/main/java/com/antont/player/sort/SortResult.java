@@ -0,0 +1,32 @@
+package com.antont.player.sort;
+
+import com.antont.player.enums.SortOrder;
+import com.antont.player.models.AudioItem;
+
+import java.util.List;
+
+public class SortResult {
+
+    private final SortOrder mOrder;
+    private final List<AudioItem> mItems;
+    private final List<Section> mSections;
+
+    SortResult(SortOrder order, List<AudioItem> items, List<Section> sections) {
+        mOrder = order;
+        mItems = items;
+        mSections = sections;
+    }
+
+    public SortOrder getOrder() {
+        return mOrder;
+    }
+
+    public List<AudioItem> getItems() {
+        return mItems;
+    }
+
+    // Empty for the orders that are not grouped
+    public List<Section> getSections() {
+        return mSections;
+    }
+}
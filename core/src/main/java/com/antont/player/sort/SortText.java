@@ -0,0 +1,74 @@
+package com.antont.player.sort;
+
+import java.text.Normalizer;
+
+// Collation key of one tag value: lower case with accents removed, so accented letters sort among the plain ones.
+// The first four chars of the key are packed into a long, which decides most comparisons without
+// touching the strings. Empty and missing values sort last.
+final class SortText implements Comparable<SortText> {
+
+    static final SortText MISSING = new SortText("", "\uffff");
+
+    private final String mRaw;
+    private final String mKey;
+    private final long mPrefix;
+
+    private SortText(String raw, String key) {
+        mRaw = raw;
+        mKey = key;
+        long prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            prefix = prefix << 16 | (i < key.length() ? key.charAt(i) : 0);
+        }
+        // Flipping the sign bit makes the signed comparison of the prefixes an unsigned one
+        mPrefix = prefix ^ Long.MIN_VALUE;
+    }
+
+    // separator replaces '/' in the key. One below every other char sorts a path part by part
+    static SortText of(String raw, char separator) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return MISSING;
+        }
+        return new SortText(raw, collationKey(raw.trim(), separator));
+    }
+
+    private static String collationKey(String text, char separator) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        String decomposed = ascii ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (c == '/') {
+                builder.append(separator);
+            } else if (ascii || Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    // The first four chars of the key, ordered like the keys as signed longs
+    long getPrefix() {
+        return mPrefix;
+    }
+
+    String getRaw() {
+        return mRaw;
+    }
+
+    // Values that differ only in case or accents are ordered by their raw text, so the order is total
+    @Override
+    public int compareTo(SortText other) {
+        if (this == other) {
+            return 0;
+        }
+        if (mPrefix != other.mPrefix) {
+            return mPrefix < other.mPrefix ? -1 : 1;
+        }
+        int result = mKey.compareTo(other.mKey);
+        return result != 0 ? result : mRaw.compareTo(other.mRaw);
+    }
+}
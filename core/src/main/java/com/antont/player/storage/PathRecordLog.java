@@ -0,0 +1,227 @@
+package com.antont.player.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Values per file path, kept in memory and in an append-only log, so every value is saved the moment it
+ * is put and work cut short goes on where it stopped. A later record for a path replaces the earlier
+ * ones. Subclasses encode the values, each record, all numbers big endian:
+ *
+ *   int    payload length
+ *   bytes  payload: short path length, UTF-8 path, the value as written by writeValue()
+ *   int    CRC32 of the payload
+ *
+ * A torn record at the end of the log, left by a crash in the middle of an append, is cut off when the
+ * log is loaded. The log is rewritten without replaced and removed records once it holds more than
+ * twice as many records as there are paths.
+ *
+ * Thread safe. Appends are buffered, sync() writes them through to the disk.
+ */
+public abstract class PathRecordLog<V> {
+
+    private static final int MAX_PATH_LENGTH = 4096;
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    private final File mFile;
+    private final Map<String, V> mEntries = new HashMap<>();
+    private DataOutputStream mOut;
+    private FileOutputStream mFileOut;
+    private int mRecordCount;
+
+    protected PathRecordLog(File file) {
+        mFile = file;
+    }
+
+    protected abstract void writeValue(DataOutputStream out, V value) throws IOException;
+
+    // The buffer holds the bytes of one value. Returns null if they are not a value, a value that leaves
+    // bytes over is not one either
+    protected abstract V readValue(ByteBuffer buffer);
+
+    // Reads the log, blocks on the disk. Must be called before the other methods
+    public synchronized void load() throws IOException {
+        mEntries.clear();
+        mRecordCount = 0;
+        long validLength = 0;
+        if (mFile.exists()) {
+            byte[] data = readFully(mFile);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (readRecord(buffer)) {
+                validLength = buffer.position();
+                mRecordCount++;
+            }
+            if (validLength < data.length) {
+                try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                    file.setLength(validLength);
+                }
+            }
+        }
+        if (needsCompaction()) {
+            compact();
+        } else {
+            openForAppend();
+        }
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized List<String> paths() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    // Forgets the paths, the log drops them the next time it is rewritten
+    public synchronized void removeAll(Collection<String> paths) throws IOException {
+        mEntries.keySet().removeAll(paths);
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    // Blocks until the records put so far are on the disk
+    public void sync() throws IOException {
+        FileOutputStream fileOut;
+        synchronized (this) {
+            mOut.flush();
+            fileOut = mFileOut;
+        }
+        fileOut.getFD().sync();
+    }
+
+    public synchronized void close() throws IOException {
+        if (mOut != null) {
+            mOut.close();
+            mOut = null;
+            mFileOut = null;
+        }
+    }
+
+    // Null if there is no value for the path
+    protected synchronized V get(String path) {
+        return mEntries.get(path);
+    }
+
+    protected synchronized void put(String path, V value) throws IOException {
+        byte[] payload = encode(path, value);
+        mEntries.put(path, value);
+        writeRecord(mOut, payload);
+        mRecordCount++;
+    }
+
+    private boolean needsCompaction() {
+        return mRecordCount > MIN_COMPACTION_RECORDS && mRecordCount > 2 * mEntries.size();
+    }
+
+    // Writes the live records to a new log that replaces the old one
+    private void compact() throws IOException {
+        close();
+        File temporary = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            for (Map.Entry<String, V> entry : mEntries.entrySet()) {
+                writeRecord(out, encode(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (!temporary.renameTo(mFile)) {
+            temporary.delete();
+            throw new IOException("Cannot replace " + mFile);
+        }
+        mRecordCount = mEntries.size();
+        openForAppend();
+    }
+
+    private void openForAppend() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        mFileOut = new FileOutputStream(mFile, true);
+        mOut = new DataOutputStream(new BufferedOutputStream(mFileOut));
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // Returns false at the end of the log or at a torn record
+    private boolean readRecord(ByteBuffer buffer) {
+        try {
+            int length = buffer.getInt();
+            if (length < 2 || length > buffer.remaining() - 4) {
+                return false;
+            }
+            int payloadOffset = buffer.position();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), payloadOffset, length);
+            buffer.position(payloadOffset + length);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                return false;
+            }
+
+            ByteBuffer payload = ByteBuffer.wrap(buffer.array(), payloadOffset, length).slice();
+            int pathLength = payload.getShort() & 0xffff;
+            if (pathLength > payload.remaining()) {
+                return false;
+            }
+            String path = new String(payload.array(), payload.arrayOffset() + payload.position(), pathLength,
+                    StandardCharsets.UTF_8);
+            payload.position(payload.position() + pathLength);
+            ByteBuffer valueBytes = payload.slice();
+            V value = readValue(valueBytes);
+            if (value == null || valueBytes.hasRemaining()) {
+                return false;
+            }
+            mEntries.put(path, value);
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private byte[] encode(String path, V value) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        if (pathBytes.length > MAX_PATH_LENGTH) {
+            throw new IOException("Path too long: " + path);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(pathBytes.length);
+        out.write(pathBytes);
+        writeValue(out, value);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            return offset == data.length ? data : Arrays.copyOf(data, offset);
+        }
+    }
+}
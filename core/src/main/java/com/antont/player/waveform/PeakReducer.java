@@ -0,0 +1,102 @@
+package com.antont.player.waveform;
+
+import java.util.Arrays;
+
+// Reduces decoded audio to at most BUCKET_COUNT min/max buckets as it streams by, in memory that does not
+// grow with the length of the track. The frames per bucket come from the expected length; when the track
+// turns out longer, neighbouring buckets are merged in pairs and every bucket takes twice as many frames
+// from then on. A track shorter than expected leaves buckets unused.
+public class PeakReducer {
+
+    public static final int BUCKET_COUNT = 1024;
+
+    private final int mChannelCount;
+    private final long mExpectedFrameCount;
+    private final byte[] mMin = new byte[BUCKET_COUNT];
+    private final byte[] mMax = new byte[BUCKET_COUNT];
+    private int mSize;
+    private long mFramesPerBucket;
+
+    // The bucket being filled
+    private long mFramesInBucket;
+    private int mBucketMin = Integer.MAX_VALUE;
+    private int mBucketMax = Integer.MIN_VALUE;
+
+    private long mFrameCount;
+    private boolean mComplete;
+
+    // expectedFrameCount is the length of the track in frames, 0 if it is not known
+    public PeakReducer(int channelCount, long expectedFrameCount) {
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("Channel count " + channelCount);
+        }
+        mChannelCount = channelCount;
+        mExpectedFrameCount = Math.max(0, expectedFrameCount);
+        mFramesPerBucket = Math.max(1, (mExpectedFrameCount + BUCKET_COUNT - 1) / BUCKET_COUNT);
+    }
+
+    // Interleaved 16 bit samples
+    public void process(short[] samples, int offset, int frameCount) {
+        int end = offset + frameCount * mChannelCount;
+        for (int i = offset; i < end; i += mChannelCount) {
+            if (mFramesInBucket == 0 && mSize == BUCKET_COUNT) {
+                // A frame beyond the last bucket, the track is longer than expected
+                mergePairs();
+            }
+            for (int channel = 0; channel < mChannelCount; channel++) {
+                int sample = samples[i + channel];
+                if (sample < mBucketMin) {
+                    mBucketMin = sample;
+                }
+                if (sample > mBucketMax) {
+                    mBucketMax = sample;
+                }
+            }
+            mFrameCount++;
+            if (++mFramesInBucket == mFramesPerBucket) {
+                closeBucket();
+            }
+        }
+    }
+
+    // The end of the track, the last bucket may hold fewer frames than the others
+    public void finish() {
+        if (mFramesInBucket > 0) {
+            closeBucket();
+        }
+        mComplete = true;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    // A copy of the buckets so far
+    public Waveform getWaveform() {
+        float span;
+        if (mComplete || mExpectedFrameCount == 0) {
+            span = 1f;
+        } else {
+            span = Math.min(1f, (float) (mSize * mFramesPerBucket) / mExpectedFrameCount);
+        }
+        return new Waveform(Arrays.copyOf(mMin, mSize), Arrays.copyOf(mMax, mSize), span, mComplete);
+    }
+
+    private void closeBucket() {
+        mMin[mSize] = (byte) (mBucketMin >> 8);
+        mMax[mSize] = (byte) (mBucketMax >> 8);
+        mSize++;
+        mFramesInBucket = 0;
+        mBucketMin = Integer.MAX_VALUE;
+        mBucketMax = Integer.MIN_VALUE;
+    }
+
+    private void mergePairs() {
+        for (int i = 0; i < BUCKET_COUNT / 2; i++) {
+            mMin[i] = (byte) Math.min(mMin[2 * i], mMin[2 * i + 1]);
+            mMax[i] = (byte) Math.max(mMax[2 * i], mMax[2 * i + 1]);
+        }
+        mSize = BUCKET_COUNT / 2;
+        mFramesPerBucket *= 2;
+    }
+}
@@ -0,0 +1,51 @@
+package com.antont.player.waveform;
+
+// Peak overview of a track: the lowest and highest sample of every bucket, as the high byte of the
+// 16 bit sample. The buckets span a part of the track while it is still being decoded and all of it
+// once the waveform is complete.
+public class Waveform {
+
+    private final byte[] mMin;
+    private final byte[] mMax;
+    private final float mSpan;
+    private final boolean mComplete;
+
+    public Waveform(byte[] min, byte[] max, float span, boolean complete) {
+        if (min.length != max.length) {
+            throw new IllegalArgumentException("Bucket counts differ: " + min.length + ", " + max.length);
+        }
+        mMin = min;
+        mMax = max;
+        mSpan = span;
+        mComplete = complete;
+    }
+
+    public int size() {
+        return mMin.length;
+    }
+
+    public byte getMin(int bucket) {
+        return mMin[bucket];
+    }
+
+    public byte getMax(int bucket) {
+        return mMax[bucket];
+    }
+
+    // Share of the track the buckets stand for, from 0 to 1
+    public float getSpan() {
+        return mSpan;
+    }
+
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    byte[] getMins() {
+        return mMin;
+    }
+
+    byte[] getMaxs() {
+        return mMax;
+    }
+}
@@ -0,0 +1,70 @@
+package com.antont.player.waveform;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/*
+ * Binary form of a complete waveform in the cache, tied to the file size and modification time of the
+ * track it was made from. All numbers big endian:
+ *
+ *   byte   format version
+ *   long   file size
+ *   long   last modified
+ *   short  bucket count n
+ *   n      bytes of bucket minimums
+ *   n      bytes of bucket maximums
+ *   int    CRC32 of everything before
+ *
+ * A waveform of 1024 buckets takes 2 KB.
+ */
+class WaveformCodec {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 2;
+
+    private WaveformCodec() {
+    }
+
+    static byte[] encode(Waveform waveform, long fileSize, long lastModified) {
+        int size = waveform.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * size + 4);
+        buffer.put(FORMAT_VERSION);
+        buffer.putLong(fileSize);
+        buffer.putLong(lastModified);
+        buffer.putShort((short) size);
+        buffer.put(waveform.getMins(), 0, size);
+        buffer.put(waveform.getMaxs(), 0, size);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    // Null if the data is damaged, of another version or of another state of the file
+    static Waveform decode(byte[] data, long fileSize, long lastModified) {
+        if (data.length < HEADER_SIZE + 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt(data.length - 4) != (int) crc.getValue() || buffer.get() != FORMAT_VERSION
+                    || buffer.getLong() != fileSize || buffer.getLong() != lastModified) {
+                return null;
+            }
+            int size = buffer.getShort() & 0xffff;
+            if (data.length != HEADER_SIZE + 2 * size + 4) {
+                return null;
+            }
+            byte[] min = new byte[size];
+            byte[] max = new byte[size];
+            buffer.get(min);
+            buffer.get(max);
+            return new Waveform(min, max, 1f, true);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.antont.player;
+
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PlayQueueTest {
+
+    private static final int LARGE_LIBRARY_SIZE = 100_000;
+
+    private PlayQueue mQueue;
+    private List<AudioItem> mItems;
+
+    @Before
+    public void setUp() {
+        mItems = createItems(5);
+        mQueue = new PlayQueue(mItems);
+    }
+
+    @Test
+    public void skipToNext_startsFromFirstItemAndWrapsAround() {
+        assertSame(mItems.get(0), mQueue.skipToNext());
+        mQueue.moveTo(4);
+        assertSame(mItems.get(0), mQueue.skipToNext());
+        assertEquals(0, mQueue.getCurrentPosition());
+    }
+
+    @Test
+    public void skipToPrevious_wrapsAroundToLastItem() {
+        mQueue.moveTo(0);
+        assertSame(mItems.get(4), mQueue.skipToPrevious());
+        assertSame(mItems.get(3), mQueue.skipToPrevious());
+        assertEquals(3, mQueue.getCurrentPosition());
+    }
+
+    @Test
+    public void moveTo_itemUpdatesCursor() {
+        assertEquals(2, mQueue.moveTo(mItems.get(2)));
+        assertSame(mItems.get(2), mQueue.getCurrent());
+        assertEquals(PlayQueue.NO_POSITION, mQueue.moveTo(new AudioItem("/x", "x", "x")));
+        assertNull(mQueue.getCurrent());
+    }
+
+    @Test
+    public void indexOf_usesIdentityNotEquality() {
+        AudioItem twin = new AudioItem(mItems.get(1).getPath(), mItems.get(1).getName(), mItems.get(1).getAlbumName());
+        assertEquals(1, mQueue.indexOf(mItems.get(1)));
+        assertEquals(PlayQueue.NO_POSITION, mQueue.indexOf(twin));
+        assertEquals(PlayQueue.NO_POSITION, mQueue.indexOf(null));
+    }
+
+    @Test
+    public void setItems_keepsCurrentItemWhenStillPresent() {
+        mQueue.moveTo(3);
+        AudioItem current = mQueue.getCurrent();
+        mQueue.setItems(Arrays.asList(mItems.get(4), current, mItems.get(0)));
+        assertEquals(1, mQueue.getCurrentPosition());
+        assertSame(current, mQueue.getCurrent());
+
+        mQueue.setItems(createItems(2));
+        assertEquals(PlayQueue.NO_POSITION, mQueue.getCurrentPosition());
+    }
+
+    @Test
+    public void setItems_acceptsOwnView() {
+        mQueue.setItems(mQueue.getItems());
+        assertEquals(5, mQueue.size());
+        assertEquals(4, mQueue.indexOf(mItems.get(4)));
+    }
+
+    @Test
+    public void emptyQueue_hasNoCurrentItem() {
+        PlayQueue queue = new PlayQueue();
+        assertNull(queue.skipToNext());
+        assertNull(queue.skipToPrevious());
+        assertEquals(PlayQueue.NO_POSITION, queue.getCurrentPosition());
+    }
+
+    // Walks every position of a 100k queue several times. With a linear indexOf() per step this is
+    // ~10^10 comparisons, with the cursor it is a few hundred thousand constant time steps.
+    @Test(timeout = 2000)
+    public void navigation_isConstantTimeOnLargeQueue() {
+        List<AudioItem> items = createItems(LARGE_LIBRARY_SIZE);
+        PlayQueue queue = new PlayQueue(items);
+
+        for (int i = 0; i < LARGE_LIBRARY_SIZE * 3; i++) {
+            queue.skipToNext();
+            assertEquals(i % LARGE_LIBRARY_SIZE, queue.getCurrentPosition());
+        }
+        for (int i = 0; i < LARGE_LIBRARY_SIZE; i++) {
+            queue.skipToPrevious();
+        }
+        assertEquals(LARGE_LIBRARY_SIZE - 1, queue.getCurrentPosition());
+        for (int i = LARGE_LIBRARY_SIZE - 1; i >= 0; i--) {
+            assertEquals(i, queue.moveTo(items.get(i)));
+            assertEquals(i, queue.indexOf(items.get(i)));
+        }
+    }
+
+    @Test
+    public void applyDelta_reportsCoalescedRangesAndKeepsIndexConsistent() {
+        mQueue.moveTo(3);
+        AudioItem current = mQueue.getCurrent();
+        AudioItem updated = new AudioItem(2, 1, "/music/renamed.mp3", "renamed.mp3", "album");
+        AudioItem added = new AudioItem(10, 1, "/music/new.mp3", "new.mp3", "album");
+
+        LibraryDelta delta = new LibraryDelta();
+        delta.removeItem(0);
+        delta.removeItem(1);
+        delta.updateItem(updated);
+        delta.addItem(added);
+        RecordingListener listener = new RecordingListener();
+        mQueue.applyDelta(delta, listener);
+
+        assertEquals(Arrays.asList("removed 0 2", "changed 0 1", "inserted 3 1"), listener.mEvents);
+        assertEquals(4, mQueue.size());
+        assertSame(updated, mQueue.get(0));
+        assertSame(added, mQueue.get(3));
+        assertSame(current, mQueue.getCurrent());
+        assertEquals(1, mQueue.getCurrentPosition());
+        for (int i = 0; i < mQueue.size(); i++) {
+            assertEquals(i, mQueue.indexOf(mQueue.get(i)));
+        }
+        assertEquals(PlayQueue.NO_POSITION, mQueue.indexOf(mItems.get(2)));
+    }
+
+    @Test
+    public void indexOfId_followsReordersAndDeltas() {
+        mQueue.setItems(Arrays.asList(mItems.get(3), mItems.get(1), mItems.get(4), mItems.get(0), mItems.get(2)));
+        assertEquals(0, mQueue.indexOfId(mItems.get(3).getId()));
+        assertEquals(3, mQueue.indexOfId(mItems.get(0).getId()));
+
+        AudioItem updated = new AudioItem(mItems.get(1).getId(), 1, "/music/renamed.mp3", "renamed.mp3", "album");
+        LibraryDelta delta = new LibraryDelta();
+        delta.removeItem(mItems.get(3).getId());
+        delta.updateItem(updated);
+        mQueue.applyDelta(delta, new RecordingListener());
+
+        assertEquals(PlayQueue.NO_POSITION, mQueue.indexOfId(mItems.get(3).getId()));
+        assertEquals(0, mQueue.indexOfId(updated.getId()));
+        assertSame(updated, mQueue.get(mQueue.indexOfId(updated.getId())));
+        assertEquals(PlayQueue.NO_POSITION, mQueue.indexOfId(AudioItem.NO_ID));
+    }
+
+    @Test
+    public void applyDelta_removingCurrentItemClearsCursor() {
+        mQueue.moveTo(4);
+        LibraryDelta delta = new LibraryDelta();
+        delta.removeItem(4);
+        RecordingListener listener = new RecordingListener();
+        mQueue.applyDelta(delta, listener);
+
+        assertEquals(Arrays.asList("removed 4 1"), listener.mEvents);
+        assertNull(mQueue.getCurrent());
+        assertEquals(4, mQueue.size());
+    }
+
+    @Test
+    public void peekNext_followsTheRepeatMode() {
+        mQueue.moveTo(4);
+        assertSame(mItems.get(0), mQueue.peekNext());
+
+        mQueue.setRepeatMode(RepeatMode.OFF);
+        assertNull(mQueue.peekNext());
+        assertNull(mQueue.advance());
+        assertEquals(4, mQueue.getCurrentPosition());
+        assertSame("The next button still wraps around", mItems.get(0), mQueue.skipToNext());
+
+        mQueue.setRepeatMode(RepeatMode.ONE);
+        assertSame(mItems.get(0), mQueue.peekNext());
+        assertSame(mItems.get(0), mQueue.advance());
+        assertSame(mItems.get(1), mQueue.skipToNext());
+    }
+
+    @Test
+    public void shuffle_playsEveryItemOnceBeforeRepeating() {
+        List<AudioItem> items = createItems(200);
+        PlayQueue queue = new PlayQueue(items);
+        queue.setShuffleEnabled(true);
+        queue.moveTo(17);
+
+        Set<AudioItem> played = new HashSet<>();
+        played.add(queue.getCurrent());
+        for (int i = 1; i < items.size(); i++) {
+            AudioItem next = queue.peekNext();
+            assertSame(next, queue.advance());
+            assertTrue(played.add(next));
+        }
+        assertEquals(items.size(), played.size());
+        assertEquals(items, queue.getItems());
+
+        // Repeat all starts a new cycle, repeat off stops
+        queue.setRepeatMode(RepeatMode.OFF);
+        assertNull(queue.advance());
+        queue.setRepeatMode(RepeatMode.ALL);
+        AudioItem last = queue.getCurrent();
+        assertNotSame(last, queue.advance());
+    }
+
+    @Test
+    public void shuffle_previousWalksBackThroughWhatWasPlayed() {
+        mQueue.setShuffleEnabled(true);
+        mQueue.moveTo(2);
+        AudioItem second = mQueue.skipToNext();
+        mQueue.moveTo(mItems.indexOf(pickOther(second, mItems.get(2))));
+        AudioItem third = mQueue.getCurrent();
+
+        assertSame(second, mQueue.skipToPrevious());
+        assertSame(mItems.get(2), mQueue.skipToPrevious());
+        assertSame("Stays at the start of the history", mItems.get(2), mQueue.skipToPrevious());
+        assertSame(second, mQueue.skipToNext());
+        assertSame(third, mQueue.skipToNext());
+    }
+
+    @Test
+    public void shuffle_survivesRemovals() {
+        mQueue.setShuffleEnabled(true);
+        mQueue.moveTo(1);
+        AudioItem second = mQueue.skipToNext();
+
+        LibraryDelta delta = new LibraryDelta();
+        delta.removeItem(mItems.get(1).getId());
+        mQueue.applyDelta(delta, new RecordingListener());
+
+        assertSame(second, mQueue.getCurrent());
+        Set<AudioItem> rest = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            rest.add(mQueue.advance());
+        }
+        rest.add(second);
+        assertEquals(3, rest.size());
+        assertFalse(rest.contains(mItems.get(1)));
+    }
+
+    @Test
+    public void reorder_keepsTheCurrentItemAndTheShuffledHistory() {
+        mQueue.setShuffleEnabled(true);
+        mQueue.moveTo(3);
+        AudioItem second = mQueue.skipToNext();
+        List<AudioItem> reversed = new ArrayList<>(mItems);
+        Collections.reverse(reversed);
+
+        assertTrue(mQueue.reorder(reversed));
+
+        assertSame(second, mQueue.getCurrent());
+        assertEquals(reversed.indexOf(second), mQueue.getCurrentPosition());
+        assertSame(reversed.get(0), mQueue.getItems().get(0));
+        assertSame(mItems.get(3), mQueue.skipToPrevious());
+        assertSame(second, mQueue.skipToNext());
+        Set<AudioItem> rest = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            rest.add(mQueue.advance());
+        }
+        assertEquals(3, rest.size());
+        assertFalse(rest.contains(second));
+        assertFalse(rest.contains(mItems.get(3)));
+    }
+
+    @Test
+    public void reorder_rejectsOtherItems() {
+        mQueue.moveTo(1);
+        List<AudioItem> items = new ArrayList<>(mItems);
+        items.set(4, items.get(0));
+
+        assertFalse(mQueue.reorder(items));
+        assertFalse(mQueue.reorder(mItems.subList(0, 4)));
+        assertSame(mItems.get(1), mQueue.getCurrent());
+        assertEquals(mItems, mQueue.getItems());
+    }
+
+    @Test(timeout = 2000)
+    public void shuffle_isInstantOnLargeQueue() {
+        List<AudioItem> items = createItems(LARGE_LIBRARY_SIZE);
+        PlayQueue queue = new PlayQueue(items);
+        for (int i = 0; i < 100; i++) {
+            queue.setShuffleEnabled(true);
+            queue.skipToNext();
+            queue.setShuffleEnabled(false);
+        }
+        queue.setShuffleEnabled(true);
+        Set<AudioItem> played = new HashSet<>();
+        played.add(queue.getCurrent());
+        for (int i = 1; i < LARGE_LIBRARY_SIZE; i++) {
+            played.add(queue.skipToNext());
+        }
+        assertEquals(LARGE_LIBRARY_SIZE, played.size());
+    }
+
+    private AudioItem pickOther(AudioItem... excluded) {
+        List<AudioItem> excludedList = Arrays.asList(excluded);
+        for (AudioItem item : mItems) {
+            if (!excludedList.contains(item)) {
+                return item;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private static List<AudioItem> createItems(int count) {
+        List<AudioItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new AudioItem(i, 0, "/music/track" + i + ".mp3", "track" + i + ".mp3", "album" + i % 50));
+        }
+        return items;
+    }
+
+    private static class RecordingListener implements PlayQueue.OnQueueChangedListener {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents.add("removed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mEvents.add("changed " + positionStart + " " + itemCount);
+        }
+    }
+}
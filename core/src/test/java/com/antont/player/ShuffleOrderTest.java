@@ -0,0 +1,168 @@
+package com.antont.player;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ShuffleOrderTest {
+
+    private ShuffleOrder mOrder;
+
+    @Before
+    public void setUp() {
+        mOrder = new ShuffleOrder(new Random(42));
+    }
+
+    @Test
+    public void next_drawsEveryPositionOnceThenStops() {
+        mOrder.reset(50, ShuffleOrder.NONE);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(seen.add(mOrder.next()));
+        }
+        assertEquals(ShuffleOrder.NONE, mOrder.next());
+        assertEquals(ShuffleOrder.NONE, mOrder.peekNext());
+    }
+
+    @Test
+    public void reset_startsTheCycleAtTheGivenPosition() {
+        mOrder.reset(10, 7);
+        assertEquals(7, mOrder.current());
+        for (int i = 0; i < 9; i++) {
+            assertNotEquals(7, mOrder.next());
+        }
+        assertEquals(ShuffleOrder.NONE, mOrder.next());
+    }
+
+    @Test
+    public void peekNext_isWhatNextReturns() {
+        mOrder.reset(100, 0);
+        for (int i = 0; i < 99; i++) {
+            int peeked = mOrder.peekNext();
+            assertEquals(peeked, mOrder.peekNext());
+            assertEquals(peeked, mOrder.next());
+        }
+    }
+
+    @Test
+    public void previous_walksBackThroughHistoryAndForwardAgain() {
+        mOrder.reset(20, 3);
+        List<Integer> played = new ArrayList<>(Arrays.asList(3));
+        for (int i = 0; i < 5; i++) {
+            played.add(mOrder.next());
+        }
+        for (int i = 4; i >= 0; i--) {
+            assertEquals((int) played.get(i), mOrder.previous());
+        }
+        assertEquals(ShuffleOrder.NONE, mOrder.previous());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals((int) played.get(i), mOrder.next());
+        }
+    }
+
+    @Test
+    public void jumpTo_unplayedPositionJoinsHistoryAfterCurrent() {
+        mOrder.reset(20, 3);
+        int second = mOrder.next();
+        int pick = pickUnplayed(20, 3, second);
+
+        mOrder.jumpTo(pick);
+        assertEquals(pick, mOrder.current());
+        assertEquals(second, mOrder.previous());
+        assertEquals(3, mOrder.previous());
+        assertEquals(3, mOrder.drawnCount());
+    }
+
+    @Test
+    public void jumpTo_playedPositionMovesToTheEndOfHistory() {
+        mOrder.reset(20, 3);
+        int second = mOrder.next();
+        int third = mOrder.next();
+
+        mOrder.jumpTo(3);
+        assertEquals(3, mOrder.current());
+        assertEquals(third, mOrder.previous());
+        assertEquals(second, mOrder.previous());
+        assertEquals(ShuffleOrder.NONE, mOrder.previous());
+        // Still one full cycle without repeats
+        mOrder.next();
+        mOrder.next();
+        Set<Integer> rest = new HashSet<>();
+        int position;
+        while ((position = mOrder.next()) != ShuffleOrder.NONE) {
+            assertTrue(rest.add(position));
+        }
+        assertEquals(17, rest.size());
+        assertFalse(rest.contains(3));
+    }
+
+    @Test
+    public void grow_appendedPositionsAreStillToCome() {
+        mOrder.reset(3, 0);
+        mOrder.next();
+        mOrder.next();
+        mOrder.grow(6);
+        Set<Integer> rest = new HashSet<>();
+        int position;
+        while ((position = mOrder.next()) != ShuffleOrder.NONE) {
+            rest.add(position);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(3, 4, 5)), rest);
+    }
+
+    @Test
+    public void remap_keepsHistoryOrderWithoutRemovedPositions() {
+        mOrder.reset(6, 5);
+        int second = mOrder.next();
+        int third = mOrder.next();
+        // Old position 2 is removed, later ones move down by one
+        int[] newPositionOf = {0, 1, ShuffleOrder.NONE, 2, 3, 4};
+
+        mOrder.remap(newPositionOf, 5);
+        List<Integer> expected = new ArrayList<>();
+        for (int old : new int[]{5, second, third}) {
+            if (newPositionOf[old] != ShuffleOrder.NONE) {
+                expected.add(newPositionOf[old]);
+            }
+        }
+        assertEquals(expected.size(), mOrder.drawnCount());
+        assertEquals((int) expected.get(expected.size() - 1), mOrder.current());
+        for (int i = expected.size() - 2; i >= 0; i--) {
+            assertEquals((int) expected.get(i), mOrder.previous());
+        }
+        assertEquals(ShuffleOrder.NONE, mOrder.previous());
+    }
+
+    // A million track order is two zeroed arrays, drawing a few tracks does not touch the rest
+    @Test(timeout = 1000)
+    public void reset_largeOrderIsCheap() {
+        for (int i = 0; i < 20; i++) {
+            mOrder.reset(1_000_000 + i, i);
+            for (int j = 0; j < 100; j++) {
+                mOrder.next();
+            }
+        }
+        assertEquals(101, mOrder.drawnCount());
+    }
+
+    private static int pickUnplayed(int size, int... played) {
+        Set<Integer> playedSet = new HashSet<>();
+        for (int position : played) {
+            playedSet.add(position);
+        }
+        for (int position = 0; position < size; position++) {
+            if (!playedSet.contains(position)) {
+                return position;
+            }
+        }
+        throw new AssertionError();
+    }
+}
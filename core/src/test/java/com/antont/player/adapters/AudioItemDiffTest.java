@@ -0,0 +1,84 @@
+package com.antont.player.adapters;
+
+import com.antont.player.models.AudioItem;
+import com.antont.player.sort.Section;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AudioItemDiffTest {
+
+    @Test
+    public void sameItem_isMatchedByIdOrByPathWithoutId() {
+        AudioItem item = new AudioItem(7, 1, "/music/a.mp3", "a.mp3", "album");
+        AudioItem edited = new AudioItem(7, 2, "/music/a.mp3", "a (edit).mp3", "album");
+        AudioItem other = new AudioItem(8, 1, "/music/a.mp3", "a.mp3", "album");
+
+        assertTrue(AudioItemDiff.isSameItem(item, edited));
+        assertFalse(AudioItemDiff.isSameContent(item, edited));
+        assertFalse(AudioItemDiff.isSameItem(item, other));
+        assertTrue(AudioItemDiff.isSameItem(new AudioItem("/music/b.mp3", "b", "x"), new AudioItem("/music/b.mp3", "b", "x")));
+        assertEquals(7L, AudioItemDiff.keyOf(item));
+        assertTrue(AudioItemDiff.keyOf(new AudioItem("/music/b.mp3", "b", "x")) < 0);
+    }
+
+    @Test
+    public void prefixAndSuffix_leaveOnlyTheChangedWindow() {
+        List<AudioItem> oldItems = createItems(10);
+        List<AudioItem> newItems = new ArrayList<>(oldItems);
+        newItems.remove(4);
+        newItems.add(6, new AudioItem(100, 1, "/music/new.mp3", "new.mp3", "album"));
+
+        int prefix = AudioItemDiff.commonPrefix(oldItems, newItems);
+        int suffix = AudioItemDiff.commonSuffix(oldItems, newItems, prefix);
+        assertEquals(4, prefix);
+        assertEquals(3, suffix);
+    }
+
+    @Test
+    public void appendedPage_isAWindowAtTheEnd() {
+        List<AudioItem> oldItems = createItems(5);
+        List<AudioItem> newItems = createItems(8);
+
+        int prefix = AudioItemDiff.commonPrefix(oldItems, newItems);
+        assertEquals(5, prefix);
+        assertEquals(0, AudioItemDiff.commonSuffix(oldItems, newItems, prefix));
+    }
+
+    @Test
+    public void identicalLists_haveNoWindow() {
+        List<AudioItem> items = createItems(6);
+        int prefix = AudioItemDiff.commonPrefix(items, createItems(6));
+        assertEquals(6, prefix);
+        assertEquals(0, AudioItemDiff.commonSuffix(items, createItems(6), prefix));
+    }
+
+    @Test
+    public void headers_matchByTitleAndDepth() {
+        List<Object> oldRows = new ArrayList<Object>(createItems(4));
+        oldRows.add(0, new Section("Album", 0, 0));
+        oldRows.add(3, new Section("Other", 2, 0));
+        List<Object> newRows = new ArrayList<>(oldRows);
+        newRows.set(0, new Section("Album", 0, 0));
+        newRows.set(3, new Section("Other", 2, 1));
+
+        assertTrue(AudioItemDiff.isSameRow(oldRows.get(0), newRows.get(0)));
+        assertFalse(AudioItemDiff.isSameRow(oldRows.get(3), newRows.get(3)));
+        assertFalse(AudioItemDiff.isSameRow(oldRows.get(0), oldRows.get(1)));
+        assertTrue(AudioItemDiff.isSameRow(new Section(null, 0, 0), new Section(null, 5, 0)));
+        assertEquals(3, AudioItemDiff.commonPrefix(oldRows, newRows));
+        assertEquals(2, AudioItemDiff.commonSuffix(oldRows, newRows, 3));
+    }
+
+    private static List<AudioItem> createItems(int count) {
+        List<AudioItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new AudioItem(i, 1, "/music/" + i + ".mp3", i + ".mp3", "album"));
+        }
+        return items;
+    }
+}
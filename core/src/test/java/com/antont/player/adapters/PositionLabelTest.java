@@ -0,0 +1,23 @@
+package com.antont.player.adapters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PositionLabelTest {
+
+    @Test
+    public void write_matchesStringValueOf() {
+        char[] buffer = new char[PositionLabel.BUFFER_SIZE];
+        int[] values = {0, 1, 9, 10, 99, 100, 40000, 123456789, Integer.MAX_VALUE};
+        for (int value : values) {
+            int start = PositionLabel.write(value, buffer);
+            assertEquals(String.valueOf(value), new String(buffer, start, buffer.length - start));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void write_rejectsNegativeValues() {
+        PositionLabel.write(-1, new char[PositionLabel.BUFFER_SIZE]);
+    }
+}
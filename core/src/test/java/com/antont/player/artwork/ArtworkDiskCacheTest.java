@@ -0,0 +1,74 @@
+package com.antont.player.artwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ArtworkDiskCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("artwork").toFile();
+        mDirectory.deleteOnExit();
+    }
+
+    @Test
+    public void put_andGet_roundTripThumbnailsAndMissingMarkers() throws IOException {
+        ArtworkDiskCache cache = new ArtworkDiskCache(mDirectory, 1024 * 1024);
+        cache.put("album\u0000/music\u000096", new byte[]{1, 2, 3});
+        cache.put("no artwork", new byte[0]);
+
+        ArtworkDiskCache reopened = new ArtworkDiskCache(mDirectory, 1024 * 1024);
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.get("album\u0000/music\u000096"));
+        assertArrayEquals(new byte[0], reopened.get("no artwork"));
+        assertNull(reopened.get("unknown"));
+    }
+
+    @Test
+    public void put_overBudget_deletesLeastRecentlyUsedFiles() throws IOException {
+        ArtworkDiskCache cache = new ArtworkDiskCache(mDirectory, 4000);
+        cache.put("a", new byte[1000]);
+        cache.put("b", new byte[1000]);
+        cache.put("c", new byte[1000]);
+        // File times have a coarse resolution, make the order explicit
+        long now = System.currentTimeMillis();
+        setModified("a", now - 30_000);
+        setModified("b", now - 20_000);
+        setModified("c", now - 10_000);
+        assertNotNull(cache.get("a"));
+
+        cache.put("d", new byte[1000]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("d"));
+        assertTrue(cache.getSize() <= 4000);
+    }
+
+    @Test
+    public void size_countsExistingFilesAndDropsUnfinishedWrites() throws IOException {
+        new ArtworkDiskCache(mDirectory, 1024 * 1024).put("a", new byte[100]);
+        Files.write(new File(mDirectory, "leftover.tmp").toPath(), new byte[500]);
+
+        ArtworkDiskCache reopened = new ArtworkDiskCache(mDirectory, 1024 * 1024);
+        long size = reopened.getSize();
+        assertTrue(size >= 100 && size < 600);
+        assertFalse(new File(mDirectory, "leftover.tmp").exists());
+    }
+
+    @Test
+    public void hash_differsForKeysOfDifferentSizes() {
+        assertNotEquals(ArtworkDiskCache.hash("album\u0000/music\u000096"), ArtworkDiskCache.hash("album\u0000/music\u0000144"));
+    }
+
+    private void setModified(String key, long time) {
+        File file = new File(mDirectory, Long.toHexString(ArtworkDiskCache.hash(key)));
+        assertTrue(file.setLastModified(time));
+    }
+}
@@ -0,0 +1,51 @@
+package com.antont.player.artwork;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoundedLruCacheTest {
+
+    private final BoundedLruCache<String, byte[]> mCache = new BoundedLruCache<>(100, value -> value.length);
+
+    @Test
+    public void put_evictsLeastRecentlyUsedByWeight() {
+        mCache.put("a", new byte[40]);
+        mCache.put("b", new byte[40]);
+        mCache.get("a");
+        mCache.put("c", new byte[40]);
+
+        assertNotNull(mCache.get("a"));
+        assertNull(mCache.get("b"));
+        assertNotNull(mCache.get("c"));
+        assertEquals(80, mCache.getWeight());
+    }
+
+    @Test
+    public void put_replacingAKeyReplacesItsWeight() {
+        mCache.put("a", new byte[40]);
+        mCache.put("a", new byte[10]);
+        assertEquals(10, mCache.getWeight());
+        assertEquals(1, mCache.size());
+    }
+
+    @Test
+    public void put_valueHeavierThanTheBudgetIsNotCached() {
+        mCache.put("a", new byte[40]);
+        mCache.put("huge", new byte[101]);
+        assertNull(mCache.get("huge"));
+        assertNotNull("Nothing is evicted for it", mCache.get("a"));
+    }
+
+    @Test
+    public void trimTo_andRemove_keepTheWeightInSync() {
+        mCache.put("a", new byte[30]);
+        mCache.put("b", new byte[30]);
+        mCache.put("c", new byte[30]);
+        mCache.trimTo(50);
+        assertEquals(30, mCache.getWeight());
+        assertNotNull(mCache.remove("c"));
+        assertEquals(0, mCache.getWeight());
+        assertEquals(0, mCache.size());
+    }
+}
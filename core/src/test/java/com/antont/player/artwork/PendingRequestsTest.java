@@ -0,0 +1,68 @@
+package com.antont.player.artwork;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingRequestsTest {
+
+    private final PendingRequests<String, String> mRequests = new PendingRequests<>();
+    private final List<String> mResults = new ArrayList<>();
+
+    @Test
+    public void add_sameKeyJoinsTheRunningLoad() {
+        PendingRequests<String, String>.Request first = mRequests.add("album", value -> mResults.add("1 " + value));
+        PendingRequests<String, String>.Request second = mRequests.add("album", value -> mResults.add("2 " + value));
+
+        assertTrue(first.isLoadStarter());
+        assertFalse(second.isLoadStarter());
+        assertSame(first.getLoad(), second.getLoad());
+
+        mRequests.complete(first.getLoad(), "art");
+        assertEquals(Arrays.asList("1 art", "2 art"), mResults);
+        assertFalse(mRequests.isLoading("album"));
+    }
+
+    @Test
+    public void cancel_skipsTheCallbackButKeepsTheLoadForOthers() {
+        PendingRequests<String, String>.Request first = mRequests.add("album", value -> mResults.add("1 " + value));
+        mRequests.add("album", value -> mResults.add("2 " + value));
+
+        first.cancel();
+        assertFalse(first.getLoad().isCancelled());
+        mRequests.complete(first.getLoad(), "art");
+        assertEquals(Arrays.asList("2 art"), mResults);
+    }
+
+    @Test
+    public void cancel_ofTheLastRequestCancelsTheLoad() {
+        PendingRequests<String, String>.Request request = mRequests.add("album", mResults::add);
+        request.cancel();
+        request.cancel();
+
+        assertTrue(request.getLoad().isCancelled());
+        assertFalse(mRequests.isLoading("album"));
+        // A late result of the cancelled load is dropped
+        mRequests.complete(request.getLoad(), "art");
+        assertTrue(mResults.isEmpty());
+
+        // The key loads again for a new request
+        assertTrue(mRequests.add("album", mResults::add).isLoadStarter());
+    }
+
+    @Test
+    public void cancel_afterCompletionDoesNothing() {
+        PendingRequests<String, String>.Request request = mRequests.add("album", mResults::add);
+        mRequests.complete(request.getLoad(), "art");
+        request.cancel();
+        mRequests.completed().cancel();
+
+        assertFalse(request.getLoad().isCancelled());
+        assertEquals(Arrays.asList("art"), mResults);
+        assertEquals(0, mRequests.size());
+    }
+}
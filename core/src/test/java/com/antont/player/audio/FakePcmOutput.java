@@ -0,0 +1,96 @@
+package com.antont.player.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Plays what is written the moment it is written and keeps the samples since the last flush
+class FakePcmOutput implements PcmOutput {
+
+    private short[] mSamples = new short[1024];
+    private int mSampleCount;
+    private final int mChannelCount;
+    volatile int mFlushCount;
+    volatile boolean mPlaying;
+    volatile boolean mReleased;
+
+    FakePcmOutput(int channelCount) {
+        mChannelCount = channelCount;
+    }
+
+    synchronized short[] getSamples() {
+        return Arrays.copyOf(mSamples, mSampleCount);
+    }
+
+    @Override
+    public void play() {
+        mPlaying = true;
+    }
+
+    @Override
+    public void pause() {
+        mPlaying = false;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (mPlaying) {
+            throw new IllegalStateException("Flushed while playing");
+        }
+        mSampleCount = 0;
+        mFlushCount++;
+    }
+
+    @Override
+    public void drain() {
+        mPlaying = false;
+    }
+
+    @Override
+    public synchronized int write(short[] samples, int offset, int count) {
+        if (mReleased) {
+            throw new IllegalStateException("Written after release");
+        }
+        if (mSampleCount + count > mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, Math.max(mSamples.length * 2, mSampleCount + count));
+        }
+        System.arraycopy(samples, offset, mSamples, mSampleCount, count);
+        mSampleCount += count;
+        return count;
+    }
+
+    @Override
+    public synchronized long getPlayedFrames() {
+        return mSampleCount / mChannelCount;
+    }
+
+    @Override
+    public void release() {
+        mReleased = true;
+    }
+
+    static class Factory implements PcmOutput.Factory {
+
+        final List<FakePcmOutput> mOutputs = new ArrayList<>();
+
+        @Override
+        public synchronized PcmOutput create(int sampleRate, int channelCount) {
+            FakePcmOutput output = new FakePcmOutput(channelCount);
+            mOutputs.add(output);
+            return output;
+        }
+
+        synchronized FakePcmOutput last() {
+            return mOutputs.isEmpty() ? null : mOutputs.get(mOutputs.size() - 1);
+        }
+
+        synchronized boolean allReleased() {
+            for (FakePcmOutput output : mOutputs) {
+                if (!output.mReleased) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
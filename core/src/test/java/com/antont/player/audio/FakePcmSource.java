@@ -0,0 +1,66 @@
+package com.antont.player.audio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A track of numbered frames, the sample of a channel is the frame number times the channel count plus
+// the channel, wrapped to 16 bits, so the order of what reaches the output can be checked
+class FakePcmSource implements PcmSource {
+
+    static final int SAMPLE_RATE = 8000;
+    static final int CHANNEL_COUNT = 2;
+    private static final int CHUNK_FRAMES = 256;
+
+    final int mFrameCount;
+    // Slows the decoding down, per chunk
+    volatile long mChunkDelayInMs;
+    volatile boolean mFailing;
+    final AtomicInteger mActiveDecodes = new AtomicInteger();
+
+    FakePcmSource(int frameCount) {
+        mFrameCount = frameCount;
+    }
+
+    static short sampleOf(long frame, int channel) {
+        return (short) (frame * CHANNEL_COUNT + channel);
+    }
+
+    long durationInUs() {
+        return mFrameCount * 1_000_000L / SAMPLE_RATE;
+    }
+
+    @Override
+    public boolean decode(String path, long startInUs, PcmSink sink) throws IOException {
+        mActiveDecodes.incrementAndGet();
+        try {
+            if (mFailing) {
+                throw new IOException("Cannot decode " + path);
+            }
+            if (!sink.onFormat(SAMPLE_RATE, CHANNEL_COUNT, durationInUs())) {
+                return false;
+            }
+            short[] samples = new short[CHUNK_FRAMES * CHANNEL_COUNT];
+            for (long frame = startInUs * SAMPLE_RATE / 1_000_000; frame < mFrameCount; frame += CHUNK_FRAMES) {
+                int frames = (int) Math.min(CHUNK_FRAMES, mFrameCount - frame);
+                for (int i = 0; i < frames; i++) {
+                    for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                        samples[i * CHANNEL_COUNT + channel] = sampleOf(frame + i, channel);
+                    }
+                }
+                if (mChunkDelayInMs > 0) {
+                    try {
+                        Thread.sleep(mChunkDelayInMs);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                if (!sink.onSamples(samples, frames)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            mActiveDecodes.decrementAndGet();
+        }
+    }
+}
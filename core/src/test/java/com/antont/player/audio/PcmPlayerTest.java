@@ -0,0 +1,295 @@
+package com.antont.player.audio;
+
+import com.antont.player.dsp.AudioProcessor;
+import com.antont.player.playback.Player;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+// The test thread plays the main thread: it calls the player and runs the callbacks it posts
+public class PcmPlayerTest implements Player.Listener {
+
+    private static final int RING_BUFFER_IN_MS = 100;
+
+    private final LinkedBlockingQueue<Runnable> mCallbacks = new LinkedBlockingQueue<>();
+    private FakePcmSource mSource;
+    private FakePcmOutput.Factory mOutputs;
+    private PcmPlayer mPlayer;
+    private int mPreparedCount;
+    private int mCompletionCount;
+    private int mErrorExtra;
+    private int mLastUnderrunCount;
+
+    @Before
+    public void setUp() {
+        mSource = new FakePcmSource(20_000);
+        mOutputs = new FakePcmOutput.Factory();
+        mPlayer = createPlayer();
+    }
+
+    private PcmPlayer createPlayer() {
+        PcmPlayer player = new PcmPlayer(mSource, mOutputs, RING_BUFFER_IN_MS, mCallbacks::add);
+        player.setListener(this);
+        player.setOnUnderrunListener((underrunPlayer, underrunCount) -> mLastUnderrunCount = underrunCount);
+        return player;
+    }
+
+    @Test(timeout = 10000)
+    public void start_playsEveryFrameInOrderAndCompletes() throws Exception {
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        assertFrames(mOutputs.last().getSamples(), 0, mSource.mFrameCount);
+        assertEquals(PcmPlayer.State.COMPLETED, mPlayer.getState());
+        assertFalse(mPlayer.isPlaying());
+        assertEquals(mSource.durationInUs() / 1000, mPlayer.getCurrentPosition());
+        assertEquals(mSource.durationInUs() / 1000, mPlayer.getDuration());
+    }
+
+    @Test(timeout = 10000)
+    public void seekTo_whilePlaying_dropsTheBufferAndContinuesFromThePosition() throws Exception {
+        mSource.mChunkDelayInMs = 2;
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mOutputs.last() != null && mOutputs.last().getSamples().length > 0);
+
+        mPlayer.seekTo(1000);
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        int seekFrame = FakePcmSource.SAMPLE_RATE;
+        assertTrue(mOutputs.last().mFlushCount > 0);
+        assertFrames(mOutputs.last().getSamples(), seekFrame, mSource.mFrameCount - seekFrame);
+    }
+
+    @Test(timeout = 10000)
+    public void seekTo_beforeStart_startsThereAndReportsThePosition() throws Exception {
+        prepare(mPlayer);
+        mPlayer.seekTo(2000);
+
+        assertEquals(2000, mPlayer.getCurrentPosition());
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+        int seekFrame = 2 * FakePcmSource.SAMPLE_RATE;
+        assertFrames(mOutputs.last().getSamples(), seekFrame, mSource.mFrameCount - seekFrame);
+    }
+
+    @Test(timeout = 10000)
+    public void setVolume_scalesEachChannel() throws Exception {
+        prepare(mPlayer);
+        mPlayer.setVolume(0.5f, 0f);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        short[] samples = mOutputs.last().getSamples();
+        for (int frame = 0; frame < mSource.mFrameCount; frame++) {
+            assertEquals((short) (FakePcmSource.sampleOf(frame, 0) * 0.5f), samples[frame * 2]);
+            assertEquals(0, samples[frame * 2 + 1]);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void audioProcessor_isConfiguredWithTheFormatAndRunsOnEverySample() throws Exception {
+        int[] format = new int[2];
+        mPlayer.setAudioProcessor(new AudioProcessor() {
+            @Override
+            public void configure(int sampleRate, int channelCount) {
+                format[0] = sampleRate;
+                format[1] = channelCount;
+            }
+
+            @Override
+            public void process(float[] samples, int frameCount) {
+                for (int i = 0; i < frameCount * FakePcmSource.CHANNEL_COUNT; i++) {
+                    samples[i] = -samples[i];
+                }
+            }
+
+            @Override
+            public void reset() {
+            }
+        });
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        assertArrayEquals(new int[]{FakePcmSource.SAMPLE_RATE, FakePcmSource.CHANNEL_COUNT}, format);
+        short[] samples = mOutputs.last().getSamples();
+        for (int frame = 0; frame < mSource.mFrameCount; frame++) {
+            for (int channel = 0; channel < FakePcmSource.CHANNEL_COUNT; channel++) {
+                // Full scale negative has no positive counterpart, it clips
+                int expected = Math.min(Short.MAX_VALUE, -FakePcmSource.sampleOf(frame, channel));
+                assertEquals(expected, samples[frame * 2 + channel]);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void slowDecoding_isReportedAsUnderruns() throws Exception {
+        mSource.mChunkDelayInMs = 5;
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        assertTrue(mPlayer.getUnderrunCount() > 0);
+        assertEquals(mPlayer.getUnderrunCount(), mLastUnderrunCount);
+        assertFrames(mOutputs.last().getSamples(), 0, mSource.mFrameCount);
+    }
+
+    @Test(timeout = 10000)
+    public void reset_whilePlaying_stopsTheThreadsAndDropsTheirCallbacks() throws Exception {
+        mSource.mChunkDelayInMs = 2;
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mOutputs.last() != null && mOutputs.last().getSamples().length > 0);
+
+        mPlayer.reset();
+        runCallbacksUntil(() -> mOutputs.allReleased() && mSource.mActiveDecodes.get() == 0);
+        runCallbacks(100);
+        assertEquals(0, mCompletionCount);
+        assertEquals(PcmPlayer.State.IDLE, mPlayer.getState());
+    }
+
+    @Test(timeout = 10000)
+    public void decodingError_isReportedAsAnIoError() throws Exception {
+        mSource.mFailing = true;
+        mPlayer.setDataSource("/music/broken.mp3");
+        mPlayer.prepareAsync();
+        runCallbacksUntil(() -> mErrorExtra != 0);
+
+        assertEquals(PcmPlayer.ERROR_IO, mErrorExtra);
+        assertEquals(PcmPlayer.State.ERROR, mPlayer.getState());
+        assertEquals(0, mPreparedCount);
+    }
+
+    @Test(timeout = 10000)
+    public void completion_startsTheNextPlayer() throws Exception {
+        PcmPlayer next = createPlayer();
+        prepare(mPlayer);
+        prepare(next);
+        mPlayer.setNextPlayer(next);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        assertTrue(next.isPlaying());
+        next.release();
+    }
+
+    @Test(timeout = 10000)
+    public void start_afterCompletion_playsFromTheStart() throws Exception {
+        prepare(mPlayer);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 1);
+
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount == 2);
+        assertFrames(mOutputs.last().getSamples(), 0, mSource.mFrameCount);
+    }
+
+    // Random seeks, pauses, restarts and resets while the threads run. Whatever happened before, the last
+    // seek must play out every frame from its position in order, without samples of an earlier position
+    @Test(timeout = 60000)
+    public void randomControl_neverMixesPositionsOrLeaksThreads() throws Exception {
+        Random random = new Random(3);
+        mSource = new FakePcmSource(40_000);
+        mPlayer = createPlayer();
+        prepare(mPlayer);
+        for (int round = 0; round < 300; round++) {
+            mSource.mChunkDelayInMs = random.nextInt(3);
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    mPlayer.seekTo(random.nextInt((int) (mSource.durationInUs() / 1000)));
+                    break;
+                case 2:
+                    mPlayer.pause();
+                    break;
+                case 3:
+                    mPlayer.start();
+                    break;
+                case 4:
+                    mPlayer.reset();
+                    prepare(mPlayer);
+                    break;
+                default:
+                    runCallbacks(random.nextInt(5));
+                    break;
+            }
+        }
+
+        mSource.mChunkDelayInMs = 0;
+        int completions = mCompletionCount;
+        int seekInMs = 1234;
+        mPlayer.seekTo(seekInMs);
+        mPlayer.start();
+        runCallbacksUntil(() -> mCompletionCount > completions);
+        int seekFrame = seekInMs * FakePcmSource.SAMPLE_RATE / 1000;
+        assertFrames(mOutputs.last().getSamples(), seekFrame, mSource.mFrameCount - seekFrame);
+
+        mPlayer.release();
+        runCallbacksUntil(() -> mOutputs.allReleased() && mSource.mActiveDecodes.get() == 0);
+    }
+
+    private void prepare(PcmPlayer player) throws IOException, InterruptedException {
+        int preparedCount = mPreparedCount;
+        player.setDataSource("/music/track.mp3");
+        player.prepareAsync();
+        runCallbacksUntil(() -> mPreparedCount > preparedCount);
+    }
+
+    private void runCallbacksUntil(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Runnable callback = mCallbacks.poll(5, TimeUnit.MILLISECONDS);
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    private void runCallbacks(long durationInMs) throws InterruptedException {
+        long end = System.nanoTime() + durationInMs * 1_000_000;
+        while (System.nanoTime() < end) {
+            Runnable callback = mCallbacks.poll(1, TimeUnit.MILLISECONDS);
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+    private static void assertFrames(short[] samples, int firstFrame, int frameCount) {
+        assertEquals(frameCount * FakePcmSource.CHANNEL_COUNT, samples.length);
+        for (int frame = 0; frame < frameCount; frame++) {
+            for (int channel = 0; channel < FakePcmSource.CHANNEL_COUNT; channel++) {
+                short expected = FakePcmSource.sampleOf(firstFrame + frame, channel);
+                short actual = samples[frame * FakePcmSource.CHANNEL_COUNT + channel];
+                if (expected != actual) {
+                    fail("Frame " + frame + " channel " + channel + " is " + actual + " instead of " + expected);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPrepared(Player player) {
+        mPreparedCount++;
+    }
+
+    @Override
+    public void onCompletion(Player player) {
+        mCompletionCount++;
+    }
+
+    @Override
+    public boolean onError(Player player, int what, int extra) {
+        mErrorExtra = extra;
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package com.antont.player.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new PcmRingBuffer(5).getCapacity());
+        assertEquals(4096, new PcmRingBuffer(4096).getCapacity());
+    }
+
+    @Test
+    public void write_whenFull_takesWhatFits() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] samples = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        assertEquals(8, ring.write(samples, 0, 10));
+        assertEquals(0, ring.write(samples, 8, 2));
+        assertEquals(0, ring.free());
+        assertEquals(8, ring.available());
+    }
+
+    @Test
+    public void readAndWrite_wrapAroundTheEnd() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] out = new short[8];
+        ring.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(5, ring.read(out, 0, 5));
+
+        assertEquals(6, ring.write(new short[]{7, 8, 9, 10, 11, 12}, 0, 6));
+        assertEquals(7, ring.read(out, 0, 8));
+        assertArrayEquals(new short[]{6, 7, 8, 9, 10, 11, 12, 0}, out);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void discard_dropsEverythingWritten() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        ring.write(new short[]{1, 2, 3}, 0, 3);
+
+        assertEquals(3, ring.discard());
+        assertEquals(0, ring.available());
+        assertEquals(8, ring.free());
+        ring.write(new short[]{4}, 0, 1);
+        short[] out = new short[1];
+        assertEquals(1, ring.read(out, 0, 1));
+        assertEquals(4, out[0]);
+    }
+
+    // A producer and a consumer with random chunk sizes, every sample must arrive once and in order
+    @Test(timeout = 30000)
+    public void producerAndConsumerThreads_passEverySampleInOrder() throws InterruptedException {
+        PcmRingBuffer ring = new PcmRingBuffer(1024);
+        int total = 2_000_000;
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            Random random = new Random(1);
+            short[] chunk = new short[700];
+            int next = 0;
+            while (next < total) {
+                int count = Math.min(total - next, 1 + random.nextInt(chunk.length));
+                for (int i = 0; i < count; i++) {
+                    chunk[i] = (short) (next + i);
+                }
+                int offset = 0;
+                while (offset < count) {
+                    int written = ring.write(chunk, offset, count - offset);
+                    if (written == 0) {
+                        Thread.yield();
+                    }
+                    offset += written;
+                }
+                next += count;
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            Random random = new Random(2);
+            short[] chunk = new short[900];
+            int expected = 0;
+            while (expected < total) {
+                int read = ring.read(chunk, 0, 1 + random.nextInt(chunk.length));
+                if (read == 0) {
+                    Thread.yield();
+                }
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] != (short) (expected + i)) {
+                        failure.compareAndSet(null, "Sample " + (expected + i) + " was " + chunk[i]);
+                        return;
+                    }
+                }
+                expected += read;
+            }
+        });
+        producer.start();
+        consumer.start();
+        consumer.join();
+        if (failure.get() != null) {
+            producer.interrupt();
+            fail(failure.get());
+        }
+        producer.join();
+        assertEquals(0, ring.available());
+    }
+}
@@ -0,0 +1,85 @@
+package com.antont.player.dsp;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class AudioEffectsTest implements AudioEffects.SettingsSource {
+
+    private volatile DspSettings mSettings = DspSettings.DEFAULT;
+
+    @Override
+    public DspSettings getDspSettings() {
+        return mSettings;
+    }
+
+    @Test
+    public void disabled_leavesTheSamplesAlone() {
+        mSettings = DspSettings.DEFAULT.withPreampInDb(-20).withBalance(1);
+        AudioEffects effects = new AudioEffects(this);
+        effects.configure(44100, 2);
+        float[] samples = {0.5f, 0.5f};
+
+        effects.process(samples, 1);
+
+        assertArrayEquals(new float[]{0.5f, 0.5f}, samples, 0f);
+    }
+
+    @Test
+    public void settingsChange_isPickedUpByTheNextBlock() {
+        AudioEffects effects = new AudioEffects(this);
+        effects.configure(44100, 2);
+        mSettings = DspSettings.DEFAULT.withEnabled(true);
+        float[] samples = {0.5f, 0.5f};
+        effects.process(samples, 1);
+        assertArrayEquals(new float[]{0.5f, 0.5f}, samples, 0f);
+
+        mSettings = mSettings.withBalance(-1f).withPreampInDb(-6.0206f);
+        effects.process(samples, 1);
+
+        assertArrayEquals(new float[]{0.25f, 0f}, samples, 1e-5f);
+    }
+
+    @Test
+    public void balance_turnsTheOtherSideDown() {
+        mSettings = DspSettings.DEFAULT.withEnabled(true).withBalance(0.25f);
+        AudioEffects effects = new AudioEffects(this);
+        effects.configure(44100, 2);
+        float[] samples = {0.5f, 0.5f, -0.5f, -0.5f};
+
+        effects.process(samples, 2);
+
+        assertArrayEquals(new float[]{0.375f, 0.5f, -0.375f, -0.5f}, samples, 1e-6f);
+    }
+
+    // HotSpot counts the bytes every thread allocates, the audio thread must not make garbage
+    @Test
+    public void process_allocatesNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        DspPreset preset = DspPreset.BUILT_IN.get(1);
+        mSettings = DspSettings.DEFAULT.withEnabled(true).withPreset(preset).withBalance(0.1f);
+        AudioEffects effects = new AudioEffects(this);
+        effects.configure(48000, 2);
+        float[] samples = new float[480 * 2];
+        for (int i = 0; i < 20_000; i++) {
+            effects.process(samples, 480);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            samples[i % samples.length] = 0.5f;
+            effects.process(samples, 480);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // A few bytes of slack for the bean itself
+        assertTrue(allocated + " bytes allocated", allocated < 256);
+    }
+}
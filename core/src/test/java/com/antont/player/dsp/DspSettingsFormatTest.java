@@ -0,0 +1,64 @@
+package com.antont.player.dsp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DspSettingsFormatTest {
+
+    private final DspSettingsFormat mFormat = new DspSettingsFormat();
+
+    @Test
+    public void settings_roundTrip() {
+        DspSettings settings = new DspSettings(true, Arrays.asList(
+                new EqualizerBand(EqualizerBand.Type.LOW_SHELF, 80, -3.5f, 0.707f),
+                new EqualizerBand(EqualizerBand.Type.PEAKING, 2500, 1.25f, 2f),
+                new EqualizerBand(EqualizerBand.Type.HIGH_SHELF, 9000, 6f, 0.5f)), -2.5f, -0.3f, false);
+
+        assertEquals(settings, mFormat.parseSettings(mFormat.formatSettings(settings)));
+        assertEquals(DspSettings.DEFAULT, mFormat.parseSettings(mFormat.formatSettings(DspSettings.DEFAULT)));
+    }
+
+    @Test
+    public void presets_roundTripWithoutTabsOrLineBreaksInNames() {
+        List<DspPreset> presets = Arrays.asList(
+                DspPreset.of("Car\tstereo\n", DspSettings.DEFAULT.withBandGainInDb(2, 4f).withPreampInDb(-2f)),
+                DspPreset.of("Headphones", DspSettings.DEFAULT));
+
+        List<DspPreset> restored = mFormat.parsePresets(mFormat.formatPresets(presets));
+
+        assertEquals(2, restored.size());
+        assertEquals("Car stereo ", restored.get(0).getName());
+        assertTrue(restored.get(0).matches(DspSettings.DEFAULT.withBandGainInDb(2, 4f).withPreampInDb(-2f)));
+        assertTrue(restored.get(1).matches(DspSettings.DEFAULT));
+        assertTrue(mFormat.parsePresets("").isEmpty());
+    }
+
+    @Test
+    public void presetMatch_ignoresBalanceAndLimiter() {
+        DspPreset preset = DspPreset.BUILT_IN.get(1);
+        DspSettings settings = DspSettings.DEFAULT.withBalance(0.5f).withLimiterEnabled(false).withPreset(preset);
+
+        assertTrue(preset.matches(settings));
+        assertFalse(preset.matches(settings.withBandGainInDb(0, 1f)));
+        assertEquals(0.5f, settings.getBalance(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersion_isRejected() {
+        mFormat.parseSettings("2;true;0.0;0.0;true;");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badNumber_isRejected() {
+        mFormat.parseSettings("1;true;loud;0.0;true;");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badBand_isRejected() {
+        mFormat.parsePresets("Mine\t0.0\tPEAKING:1000.0:3.0");
+    }
+}
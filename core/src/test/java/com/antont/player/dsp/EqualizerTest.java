@@ -0,0 +1,86 @@
+package com.antont.player.dsp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EqualizerTest {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    @Test
+    public void peakingBand_boostsItsCenterFrequencyByItsGain() {
+        Equalizer equalizer = equalizerOf(new EqualizerBand(EqualizerBand.Type.PEAKING, 1000, 6, 1.41f));
+
+        assertEquals(6, gainInDbAt(equalizer, 1000), 0.05);
+        assertEquals(0, gainInDbAt(equalizer, 50), 0.1);
+        assertEquals(0, gainInDbAt(equalizer, 15000), 0.1);
+    }
+
+    @Test
+    public void shelves_changeEverythingPastTheirFrequency() {
+        Equalizer lowShelf = equalizerOf(new EqualizerBand(EqualizerBand.Type.LOW_SHELF, 200, -9, 0.707f));
+        Equalizer highShelf = equalizerOf(new EqualizerBand(EqualizerBand.Type.HIGH_SHELF, 4000, 4, 0.707f));
+
+        assertEquals(-9, gainInDbAt(lowShelf, 30), 0.2);
+        assertEquals(0, gainInDbAt(lowShelf, 5000), 0.1);
+        assertEquals(4, gainInDbAt(highShelf, 18000), 0.2);
+        assertEquals(0, gainInDbAt(highShelf, 100), 0.1);
+    }
+
+    @Test
+    public void bandsAddUpInDb() {
+        Equalizer equalizer = equalizerOf(
+                new EqualizerBand(EqualizerBand.Type.PEAKING, 1000, 3, 1.41f),
+                new EqualizerBand(EqualizerBand.Type.PEAKING, 1000, -8, 1.41f));
+
+        assertEquals(-5, gainInDbAt(equalizer, 1000), 0.05);
+    }
+
+    @Test
+    public void flatBands_passTheSamplesUnchanged() {
+        Equalizer equalizer = new Equalizer();
+        equalizer.setBands(DspSettings.DEFAULT.getBands());
+        equalizer.configure(SAMPLE_RATE, 2);
+        float[] samples = {0.5f, -0.25f, 0.125f, 1f};
+
+        equalizer.process(samples, 2);
+
+        assertArrayEquals(new float[]{0.5f, -0.25f, 0.125f, 1f}, samples, 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyBands_areRejected() {
+        new Equalizer().setBands(Collections.nCopies(Equalizer.MAX_BANDS + 1,
+                new EqualizerBand(EqualizerBand.Type.PEAKING, 1000, 1, 1)));
+    }
+
+    private static Equalizer equalizerOf(EqualizerBand... bands) {
+        Equalizer equalizer = new Equalizer();
+        equalizer.configure(SAMPLE_RATE, 2);
+        equalizer.setBands(Arrays.asList(bands));
+        return equalizer;
+    }
+
+    // Plays a second of a sine into both channels and compares the peaks of the last half, after the
+    // filters have settled
+    private static double gainInDbAt(Equalizer equalizer, double frequency) {
+        equalizer.reset();
+        int frameCount = SAMPLE_RATE;
+        float[] samples = new float[frameCount * 2];
+        for (int frame = 0; frame < frameCount; frame++) {
+            float sample = (float) (0.25 * Math.sin(2 * Math.PI * frequency * frame / SAMPLE_RATE));
+            samples[frame * 2] = sample;
+            samples[frame * 2 + 1] = sample;
+        }
+        equalizer.process(samples, frameCount);
+        double peak = 0;
+        for (int i = frameCount; i < samples.length; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return 20 * Math.log10(peak / 0.25);
+    }
+}
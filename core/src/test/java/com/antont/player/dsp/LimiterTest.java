@@ -0,0 +1,69 @@
+package com.antont.player.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LimiterTest {
+
+    @Test
+    public void boostedNoise_neverGoesAboveTheThreshold() {
+        Limiter limiter = new Limiter();
+        limiter.configure(48000, 2);
+        limiter.setPreampInDb(12);
+        Random random = new Random(1);
+        float[] samples = new float[4800 * 2];
+
+        for (int block = 0; block < 20; block++) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (float) random.nextGaussian() * 0.3f;
+            }
+            limiter.process(samples, samples.length / 2);
+            for (float sample : samples) {
+                assertTrue(sample + " is above the threshold", Math.abs(sample) <= Limiter.THRESHOLD + 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void quietSignal_onlyGetsThePreamp() {
+        Limiter limiter = new Limiter();
+        limiter.configure(48000, 1);
+        limiter.setPreampInDb(-6.0206f);
+        float[] samples = {0.5f, -0.4f, 0.2f};
+
+        limiter.process(samples, 3);
+
+        assertArrayEquals(new float[]{0.25f, -0.2f, 0.1f}, samples, 1e-5f);
+    }
+
+    @Test
+    public void peakOnOneChannel_turnsBothDownAndReleasesSlowly() {
+        Limiter limiter = new Limiter();
+        limiter.configure(48000, 2);
+        float[] samples = {2f, 0.5f, 0.5f, 0.5f};
+
+        limiter.process(samples, 2);
+
+        assertEquals(Limiter.THRESHOLD, samples[0], 1e-6f);
+        assertEquals(0.5f * Limiter.THRESHOLD / 2f, samples[1], 1e-6f);
+        // The envelope has hardly moved a frame later
+        assertTrue(samples[2] < 0.26f);
+        assertEquals(samples[2], samples[3], 0f);
+    }
+
+    @Test
+    public void disabled_letsThePreampClip() {
+        Limiter limiter = new Limiter();
+        limiter.configure(48000, 1);
+        limiter.setEnabled(false);
+        limiter.setPreampInDb(6.0206f);
+        float[] samples = {0.75f};
+
+        limiter.process(samples, 1);
+
+        assertEquals(1.5f, samples[0], 1e-4f);
+    }
+}
@@ -0,0 +1,68 @@
+package com.antont.player.duplicates;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AudioFingerprinterTest {
+
+    @Test
+    public void copies_matchThroughResamplingGainNoiseAndPadding() {
+        Fingerprint original = SyntheticSongs.fingerprint(SyntheticSongs.render(1, 44100, 34, 1, 0.001, 0), 44100, 0);
+        Fingerprint copy = SyntheticSongs.fingerprint(SyntheticSongs.render(1, 48000, 34, 0.6, 0.005, 0.7), 48000, 0);
+
+        assertEquals(AudioFingerprinter.MAX_FRAMES, original.getFrameCount());
+        assertEquals(AudioFingerprinter.MAX_FRAMES, copy.getFrameCount());
+        assertTrue(original.bitErrorRate(copy) < 0.25f);
+        assertTrue(hammingDistance(original.getSignature(), copy.getSignature()) < 20);
+    }
+
+    @Test
+    public void differentSongs_differInHalfOfTheBits() {
+        Fingerprint a = SyntheticSongs.fingerprint(SyntheticSongs.render(1, 44100, 34, 1, 0.001, 0), 44100, 0);
+        Fingerprint b = SyntheticSongs.fingerprint(SyntheticSongs.render(2, 44100, 34, 1, 0.001, 0), 44100, 0);
+
+        assertTrue(a.bitErrorRate(b) > 0.4f);
+        assertTrue(hammingDistance(a.getSignature(), b.getSignature()) > 30);
+    }
+
+    @Test
+    public void process_stopsWantingSamplesOnceComplete() {
+        short[] pcm = SyntheticSongs.render(3, 22050, 40, 1, 0.001, 0);
+        AudioFingerprinter fingerprinter = new AudioFingerprinter(22050, 2);
+        assertFalse(fingerprinter.process(pcm, 0, pcm.length / 2));
+        assertTrue(fingerprinter.isComplete());
+        assertEquals(AudioFingerprinter.MAX_FRAMES, fingerprinter.getFingerprint(40_000).getFrameCount());
+    }
+
+    @Test
+    public void bufferSizes_doNotChangeTheFingerprint() {
+        short[] pcm = SyntheticSongs.render(4, 44100, 12, 1, 0.001, 0.2);
+        AudioFingerprinter whole = new AudioFingerprinter(44100, 2);
+        whole.process(pcm, 0, pcm.length / 2);
+        AudioFingerprinter pieces = new AudioFingerprinter(44100, 2);
+        for (int offset = 0; offset < pcm.length; offset += 2 * 333) {
+            pieces.process(pcm, offset, Math.min(333, (pcm.length - offset) / 2));
+        }
+        assertArrayEquals(whole.getFingerprint(0).getFrames(), pieces.getFingerprint(0).getFrames());
+        assertTrue(Arrays.equals(whole.getFingerprint(0).getSignature(), pieces.getFingerprint(0).getSignature()));
+    }
+
+    @Test
+    public void silence_givesAnEmptyFingerprint() {
+        AudioFingerprinter fingerprinter = new AudioFingerprinter(44100, 1);
+        short[] silence = new short[44100 * 5];
+        assertTrue(fingerprinter.process(silence, 0, silence.length));
+        assertEquals(0, fingerprinter.getFingerprint(5000).getFrameCount());
+    }
+
+    private static int hammingDistance(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+}
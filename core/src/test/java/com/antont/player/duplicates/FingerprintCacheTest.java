@@ -0,0 +1,74 @@
+package com.antont.player.duplicates;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FingerprintCacheTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("fingerprints").toFile();
+        directory.deleteOnExit();
+        mFile = new File(directory, "cache");
+        mFile.deleteOnExit();
+    }
+
+    @Test
+    public void put_andLoad_roundTripsFingerprints() throws IOException {
+        FingerprintCache cache = new FingerprintCache(mFile);
+        cache.load();
+        cache.put("/music/a.mp3", 1000, 42, new Fingerprint(new int[]{1, -2, 0x7fffffff}, new long[]{5, -6}, 180_000));
+        cache.put("/music/broken.mp3", 10, 43, new Fingerprint(new int[0], new long[2], 0));
+        cache.sync();
+        cache.close();
+
+        FingerprintCache reopened = new FingerprintCache(mFile);
+        reopened.load();
+        assertEquals(2, reopened.size());
+        Fingerprint a = reopened.get("/music/a.mp3", 1000, 42);
+        assertArrayEquals(new int[]{1, -2, 0x7fffffff}, a.getFrames());
+        assertArrayEquals(new long[]{5, -6}, a.getSignature());
+        assertEquals(180_000, a.getDurationInMs());
+        assertEquals(0, reopened.get("/music/broken.mp3", 10, 43).getFrameCount());
+    }
+
+    @Test
+    public void get_missesChangedFiles() throws IOException {
+        FingerprintCache cache = new FingerprintCache(mFile);
+        cache.load();
+        cache.put("/music/a.mp3", 1000, 42, new Fingerprint(new int[]{1}, new long[2], 0));
+
+        assertNull(cache.get("/music/a.mp3", 1000, 43));
+        assertNull(cache.get("/music/a.mp3", 1001, 42));
+        assertNull(cache.get("/music/b.mp3", 1000, 42));
+    }
+
+    @Test
+    public void load_cutsOffTornRecord() throws IOException {
+        FingerprintCache cache = new FingerprintCache(mFile);
+        cache.load();
+        cache.put("/music/a.mp3", 1000, 42, new Fingerprint(new int[]{1, 2}, new long[2], 0));
+        cache.put("/music/b.mp3", 1000, 42, new Fingerprint(new int[]{3, 4}, new long[2], 0));
+        cache.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        FingerprintCache reopened = new FingerprintCache(mFile);
+        reopened.load();
+        assertNotNull(reopened.get("/music/a.mp3", 1000, 42));
+        assertNull(reopened.get("/music/b.mp3", 1000, 42));
+        reopened.removeAll(Collections.singleton("/music/a.mp3"));
+        assertEquals(0, reopened.size());
+    }
+}
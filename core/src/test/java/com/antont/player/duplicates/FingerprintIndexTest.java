@@ -0,0 +1,133 @@
+package com.antont.player.duplicates;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FingerprintIndexTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    // Bits that differ between real copies of a song, the copies in the large library are made with them
+    private static final double FRAME_BIT_ERROR_RATE = 0.15;
+    private static final double SIGNATURE_BIT_ERROR_RATE = 0.05;
+
+    @Test
+    public void findDuplicates_clustersCopiesOfTheSameSong() {
+        FingerprintIndex<String> index = new FingerprintIndex<>();
+        index.add("a.mp3", song(1, 1, 0.001, 0, 200_000));
+        index.add("b.mp3", song(2, 1, 0.001, 0, 200_000));
+        index.add("a copy.mp3", song(1, 0.5, 0.003, 0.4, 200_500));
+        index.add("c.mp3", song(3, 1, 0.001, 0, 200_000));
+        index.add("a (1).mp3", song(1, 0.8, 0.002, 0.1, 199_800));
+        index.add("c copy.mp3", song(3, 0.7, 0.002, 0.3, 200_000));
+
+        List<List<String>> duplicates = index.findDuplicates();
+        assertEquals(2, duplicates.size());
+        assertEquals(Arrays.asList("a.mp3", "a copy.mp3", "a (1).mp3"), duplicates.get(0));
+        assertEquals(Arrays.asList("c.mp3", "c copy.mp3"), duplicates.get(1));
+    }
+
+    @Test
+    public void findDuplicates_keepsEditsOfDifferentLengthApart() {
+        FingerprintIndex<String> index = new FingerprintIndex<>();
+        index.add("album version.mp3", song(1, 1, 0.001, 0, 320_000));
+        index.add("radio edit.mp3", song(1, 1, 0.002, 0, 210_000));
+
+        assertTrue(index.findDuplicates().isEmpty());
+    }
+
+    @Test
+    public void findDuplicates_comparesTracksOfUnknownLength() {
+        FingerprintIndex<String> index = new FingerprintIndex<>();
+        index.add("album version.mp3", song(1, 1, 0.001, 0, 320_000));
+        index.add("unknown length.mp3", song(1, 1, 0.002, 0, 0));
+
+        assertEquals(Arrays.asList(Arrays.asList("album version.mp3", "unknown length.mp3")), index.findDuplicates());
+    }
+
+    @Test
+    public void add_leavesOutFingerprintsTooShortToCompare() {
+        FingerprintIndex<String> index = new FingerprintIndex<>();
+        index.add("silence.mp3", new Fingerprint(new int[0], new long[2], 1000));
+        index.add("other silence.mp3", new Fingerprint(new int[0], new long[2], 1000));
+
+        assertEquals(0, index.size());
+        assertTrue(index.findDuplicates().isEmpty());
+    }
+
+    // Rendering a song per track takes too long, so the copies are fingerprints of a few rendered songs with
+    // bits flipped at the rate measured between real copies, and the unrelated tracks are random
+    @Test
+    public void findDuplicates_findsTheCopiesInALargeLibrary() {
+        int renderedSongs = 8;
+        int librarySize = 4000;
+        int copyCount = 400;
+        Fingerprint[] songs = new Fingerprint[renderedSongs];
+        for (int i = 0; i < renderedSongs; i++) {
+            songs[i] = song(100 + i, 1, 0.002, 0, 200_000);
+        }
+
+        Random random = new Random(11);
+        FingerprintIndex<Integer> index = new FingerprintIndex<>();
+        for (int i = 0; i < librarySize - copyCount; i++) {
+            index.add(i, randomFingerprint(random));
+        }
+        // Copies are numbered from librarySize - copyCount up
+        for (int i = 0; i < copyCount; i++) {
+            index.add(librarySize - copyCount + i, flipBits(random, songs[i % renderedSongs]));
+        }
+
+        int clustered = 0;
+        int wronglyClustered = 0;
+        for (List<Integer> cluster : index.findDuplicates()) {
+            for (int item : cluster) {
+                if (item >= librarySize - copyCount) {
+                    clustered++;
+                } else {
+                    wronglyClustered++;
+                }
+            }
+        }
+        double recall = (double) clustered / copyCount;
+        assertTrue("Recall " + recall, recall > 0.95);
+        assertEquals("Unrelated tracks clustered", 0, wronglyClustered);
+        // Candidates come from the signature buckets, not from comparing every pair
+        assertTrue("Comparisons " + index.getComparisonCount(), index.getComparisonCount() < 10 * librarySize);
+    }
+
+    private static Fingerprint randomFingerprint(Random random) {
+        int[] frames = new int[AudioFingerprinter.MAX_FRAMES];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = random.nextInt();
+        }
+        long[] signature = {random.nextLong(), random.nextLong()};
+        return new Fingerprint(frames, signature, 200_000);
+    }
+
+    private static Fingerprint flipBits(Random random, Fingerprint fingerprint) {
+        int[] frames = fingerprint.getFrames().clone();
+        for (int i = 0; i < frames.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < FRAME_BIT_ERROR_RATE) {
+                    frames[i] ^= 1 << bit;
+                }
+            }
+        }
+        long[] signature = fingerprint.getSignature().clone();
+        for (int bit = 0; bit < Fingerprint.SIGNATURE_BITS; bit++) {
+            if (random.nextDouble() < SIGNATURE_BIT_ERROR_RATE) {
+                signature[bit / 64] ^= 1L << (bit % 64);
+            }
+        }
+        return new Fingerprint(frames, signature, fingerprint.getDurationInMs());
+    }
+
+    private static Fingerprint song(long seed, double gain, double noise, double leadingSilence, int durationInMs) {
+        short[] pcm = SyntheticSongs.render(seed, SAMPLE_RATE, 32, gain, noise, leadingSilence);
+        return SyntheticSongs.fingerprint(pcm, SAMPLE_RATE, durationInMs);
+    }
+}
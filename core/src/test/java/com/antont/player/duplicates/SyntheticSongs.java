@@ -0,0 +1,56 @@
+package com.antont.player.duplicates;
+
+import java.util.Random;
+
+// Renders reproducible stand-ins for music: notes of random pitch and length with a few harmonics and a
+// decaying envelope. The same seed renders the same song at any sample rate, gain and noise level.
+class SyntheticSongs {
+
+    private SyntheticSongs() {
+    }
+
+    // Interleaved stereo, both channels the same
+    static short[] render(long seed, int sampleRate, double seconds, double gain, double noise, double leadingSilence) {
+        Random random = new Random(seed);
+        int length = (int) (seconds * sampleRate);
+        double[] mix = new double[length];
+        double time = leadingSilence;
+        while (time < seconds) {
+            double noteLength = 0.15 + random.nextDouble() * 0.45;
+            double frequency = 100 * Math.pow(8, random.nextDouble());
+            double amplitude = 0.1 + 0.2 * random.nextDouble();
+            int start = (int) (time * sampleRate);
+            int end = Math.min(length, (int) ((time + noteLength) * sampleRate));
+            for (int i = start; i < end; i++) {
+                double t = (double) i / sampleRate - time;
+                double envelope = Math.min(1, t / 0.01) * Math.exp(-t * 4);
+                double value = 0;
+                for (int harmonic = 1; harmonic <= 4; harmonic++) {
+                    value += Math.sin(2 * Math.PI * frequency * harmonic * t) / harmonic;
+                }
+                mix[i] += amplitude * envelope * value;
+            }
+            time += noteLength * (0.5 + random.nextDouble() * 0.5);
+        }
+
+        Random noiseRandom = new Random(seed ^ sampleRate);
+        int silentSamples = (int) (leadingSilence * sampleRate);
+        short[] pcm = new short[length * 2];
+        for (int i = 0; i < length; i++) {
+            double value = mix[i] * gain + (i >= silentSamples ? noise * noiseRandom.nextGaussian() : 0);
+            short sample = (short) (Math.max(-1, Math.min(1, value)) * 32767);
+            pcm[2 * i] = sample;
+            pcm[2 * i + 1] = sample;
+        }
+        return pcm;
+    }
+
+    // Fed in decoder sized buffers
+    static Fingerprint fingerprint(short[] pcm, int sampleRate, int durationInMs) {
+        AudioFingerprinter fingerprinter = new AudioFingerprinter(sampleRate, 2);
+        for (int offset = 0; offset < pcm.length && fingerprinter.process(pcm, offset, Math.min(4096, pcm.length - offset) / 2); ) {
+            offset += 4096;
+        }
+        return fingerprinter.getFingerprint(durationInMs);
+    }
+}
@@ -0,0 +1,78 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibrarySnapshotSerializerTest {
+
+    private final LibrarySnapshotSerializer mSerializer = new LibrarySnapshotSerializer();
+
+    @Test
+    public void roundTrip_keepsItemsOrderAndGeneration() throws IOException {
+        List<AudioItem> items = Arrays.asList(
+                new AudioItem("/storage/Music/a.mp3", "a.mp3", "First album"),
+                new AudioItem("/storage/Music/\u041a\u0438\u043d\u043e/\u00e9t\u00e9.mp3", "\u00e9t\u00e9.mp3", "\u041a\u0438\u043d\u043e"),
+                new AudioItem("/storage/Music/no_album.ogg", "no_album.ogg", null));
+
+        LibrarySnapshot restored = mSerializer.read(mSerializer.toByteArray(new LibrarySnapshot(42L, items)));
+
+        assertEquals(42L, restored.getGeneration());
+        assertEquals(items.size(), restored.getItems().size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getPath(), restored.getItems().get(i).getPath());
+            assertEquals(items.get(i).getName(), restored.getItems().get(i).getName());
+            assertEquals(items.get(i).getAlbumName(), restored.getItems().get(i).getAlbumName());
+        }
+    }
+
+    @Test
+    public void roundTrip_emptyLibrary() throws IOException {
+        byte[] data = mSerializer.toByteArray(new LibrarySnapshot(7L, Collections.emptyList()));
+        LibrarySnapshot restored = mSerializer.read(new ByteArrayInputStream(data));
+
+        assertEquals(7L, restored.getGeneration());
+        assertTrue(restored.getItems().isEmpty());
+    }
+
+    @Test
+    public void roundTrip_largeLibrary() throws IOException {
+        List<AudioItem> items = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            items.add(new AudioItem("/storage/Music/album" + i % 300 + "/track" + i + ".mp3", "track" + i + ".mp3", "album" + i % 300));
+        }
+
+        LibrarySnapshot restored = mSerializer.read(mSerializer.toByteArray(new LibrarySnapshot(1L, items)));
+
+        assertEquals(items.size(), restored.getItems().size());
+        assertEquals(items.get(99_999).getPath(), restored.getItems().get(99_999).getPath());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsTruncatedData() throws IOException {
+        byte[] data = mSerializer.toByteArray(new LibrarySnapshot(1L,
+                Collections.singletonList(new AudioItem("/a.mp3", "a.mp3", "album"))));
+        mSerializer.read(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFormatVersion() throws IOException {
+        byte[] data = mSerializer.toByteArray(new LibrarySnapshot(1L, Collections.emptyList()));
+        data[7]++;
+        mSerializer.read(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsForeignFile() throws IOException {
+        mSerializer.read("not a snapshot at all".getBytes("UTF-8"));
+    }
+}
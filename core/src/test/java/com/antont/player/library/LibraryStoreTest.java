@@ -0,0 +1,205 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibraryStoreTest {
+
+    @Test
+    public void views_returnTheStoredValues() {
+        LibraryStore store = new LibraryStore();
+        AudioItem item = store.add(7, 1234, "/music/Album/01 Song.mp3", "01 Song.mp3", "Album");
+
+        assertEquals(7, item.getId());
+        assertEquals(1234, item.getDateModified());
+        assertEquals("/music/Album/01 Song.mp3", item.getPath());
+        assertEquals("01 Song.mp3", item.getName());
+        assertEquals("Album", item.getAlbumName());
+        assertSame(item, store.get(0));
+        assertSame(item, store.asList().get(0));
+    }
+
+    @Test
+    public void paths_keepFileNamesThatDifferFromTheName() {
+        LibraryStore store = new LibraryStore();
+        AudioItem renamed = store.add(1, 0, "/music/a/track.flac", "Track title", "a");
+        AudioItem noFolder = store.add(2, 0, "track.ogg", "track.ogg", null);
+        AudioItem noPath = store.add(3, 0, null, "name", "a");
+        AudioItem noName = store.add(4, 0, "/music/x.mp3", null, null);
+
+        assertEquals("/music/a/track.flac", renamed.getPath());
+        assertEquals("Track title", renamed.getName());
+        assertEquals("track.ogg", noFolder.getPath());
+        assertNull(noFolder.getAlbumName());
+        assertNull(noPath.getPath());
+        assertNull(noName.getName());
+        assertEquals(0, noName.getNameLength());
+        assertEquals("/music/x.mp3", noName.getPath());
+    }
+
+    @Test
+    public void albumsAndFolders_areInterned() {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < 1000; i++) {
+            store.add(i, 0, "/music/Artist " + (i % 10) + "/" + i + ".mp3", i + ".mp3", "Album " + (i % 20));
+        }
+
+        assertEquals(20, store.getAlbumCount());
+        assertEquals(10, store.getFolderCount());
+        assertEquals(store.getAlbumId(3), store.getAlbumId(23));
+        assertNotEquals(store.getAlbumId(3), store.getAlbumId(4));
+        assertSame(store.get(3).getAlbumName(), store.get(23).getAlbumName());
+        assertEquals("/music/Artist 3/993.mp3", store.get(993).getPath());
+    }
+
+    @Test
+    public void nameChars_areCopiedWithoutAString() {
+        LibraryStore store = new LibraryStore();
+        store.add(1, 0, "/a/first.mp3", "first.mp3", "x");
+        AudioItem second = store.add(2, 0, "/a/second.mp3", "second.mp3", "x");
+
+        char[] buffer = new char[second.getNameLength()];
+        int length = second.getNameChars(buffer);
+        assertEquals("second.mp3", new String(buffer, 0, length));
+
+        AudioItem plain = new AudioItem("/a/plain.mp3", "plain.mp3", "x");
+        buffer = new char[plain.getNameLength()];
+        assertEquals("plain.mp3", new String(buffer, 0, plain.getNameChars(buffer)));
+    }
+
+    @Test
+    public void addAll_returnsViewsInOrderAndGrowsColumns() {
+        LibraryStore store = new LibraryStore();
+        List<AudioItem> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add(new AudioItem(i, i, "/music/" + i + ".mp3", "Track " + i, "Album"));
+        }
+
+        List<AudioItem> views = store.addAll(items);
+
+        assertEquals(5000, store.size());
+        assertEquals(5000, views.size());
+        for (int i = 0; i < items.size(); i += 499) {
+            assertEquals(items.get(i).getPath(), views.get(i).getPath());
+            assertEquals(items.get(i).getName(), views.get(i).getName());
+            assertEquals(i, store.getDateModified(i));
+        }
+    }
+
+    @Test
+    public void nonLatinText_isStoredWide() {
+        LibraryStore store = new LibraryStore();
+        String name = "\u041f\u0435\u0441\u043d\u044f.mp3";
+        AudioItem wide = store.add(1, 0, "/music/\u0410\u043b\u044c\u0431\u043e\u043c/" + name, name, "\u0410\u043b\u044c\u0431\u043e\u043c");
+        AudioItem latin = store.add(2, 0, "/music/caf\u00e9/track.mp3", "Caf\u00e9 track.mp3", "caf\u00e9");
+
+        assertEquals(name, wide.getName());
+        assertEquals("/music/\u0410\u043b\u044c\u0431\u043e\u043c/" + name, wide.getPath());
+        char[] buffer = new char[wide.getNameLength()];
+        assertEquals(name, new String(buffer, 0, wide.getNameChars(buffer)));
+        assertEquals("Caf\u00e9 track.mp3", latin.getName());
+        assertEquals("/music/caf\u00e9/track.mp3", latin.getPath());
+    }
+
+    @Test
+    public void trimToSize_keepsRowsAndAllowsAppending() {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < 300; i++) {
+            store.append(i, 0, "/music/" + i + ".mp3", i + ".mp3", "Album");
+        }
+        store.trimToSize();
+        store.append(300, 0, "/music/300.mp3", "300.mp3", "Album");
+
+        assertEquals(301, store.size());
+        assertEquals("/music/150.mp3", store.get(150).getPath());
+        assertEquals("300.mp3", store.get(300).getName());
+    }
+
+    @Test
+    public void folders_comeFromTheDictionary() {
+        LibraryStore store = new LibraryStore();
+        AudioItem first = store.add(1, 0, "/music/Album/01.mp3", "01.mp3", "Album");
+        AudioItem second = store.add(2, 0, "/music/Album/02.mp3", "02.mp3", "Album");
+        AudioItem noFolder = store.add(3, 0, "track.ogg", "track.ogg", null);
+
+        assertEquals("/music/Album", first.getFolder());
+        assertSame(first.getFolder(), second.getFolder());
+        assertNull(noFolder.getFolder());
+        assertEquals(new AudioItem("/music/Album/01.mp3", "01.mp3", "Album").getFolder(), first.getFolder());
+        assertNull(new AudioItem(null, "name", null).getFolder());
+    }
+
+    @Test
+    public void decodedStrings_areReusedUntilTheirSlotIsTaken() {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < 2000; i++) {
+            store.append(i, 0, "/music/" + i + ".mp3", "Track " + i, "Album");
+        }
+
+        AudioItem item = store.get(5);
+        assertSame(item.getName(), item.getName());
+        assertSame(item.getPath(), item.getPath());
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals("Track " + row, store.getName(row));
+            assertEquals("/music/" + row + ".mp3", store.getPath(row));
+        }
+        assertEquals("Track 5", item.getName());
+    }
+
+    @Test
+    public void compact_keepsTheLiveRowsInOrder() {
+        LibraryStore store = new LibraryStore();
+        List<AudioItem> live = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            AudioItem item = store.add(i, i, "/music/Artist " + (i % 3) + "/" + i + ".mp3", "Track " + i, "Album " + (i % 4));
+            if (i % 10 == 0) {
+                live.add(0, item);
+            }
+        }
+        String name = "\u041f\u0435\u0441\u043d\u044f.mp3";
+        live.add(store.add(100, 7, "/music/\u0410\u043b\u044c\u0431\u043e\u043c/" + name, name, null));
+        live.add(store.add(101, 8, "/music/renamed.flac", "Renamed", "Album 1"));
+
+        LibraryStore compacted = store.compact(live);
+
+        assertEquals(12, compacted.size());
+        for (int row = 0; row < live.size(); row++) {
+            AudioItem before = live.get(row);
+            AudioItem after = compacted.get(row);
+            assertEquals(before.getId(), after.getId());
+            assertEquals(before.getDateModified(), after.getDateModified());
+            assertEquals(before.getName(), after.getName());
+            assertEquals(before.getPath(), after.getPath());
+            assertEquals(before.getAlbumName(), after.getAlbumName());
+            assertEquals(row, compacted.rowOf(after));
+            assertEquals(-1, compacted.rowOf(before));
+        }
+        // Only the albums of live rows are kept, in the order they appear there
+        assertEquals(3, compacted.getAlbumCount());
+        assertEquals(5, compacted.getFolderCount());
+        assertEquals("Track 99", store.get(99).getName());
+
+        compacted.append(102, 0, "/music/new.mp3", "new.mp3", "Album 1");
+        assertEquals("/music/new.mp3", compacted.get(12).getPath());
+        assertEquals(compacted.getAlbumId(11), compacted.getAlbumId(12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compact_rejectsItemsOfOtherStores() {
+        LibraryStore store = new LibraryStore();
+        store.add(1, 0, "/a.mp3", "a.mp3", null);
+        store.compact(Collections.singletonList(new AudioItem(1, 0, "/a.mp3", "a.mp3", null)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_rejectsRowsThatDoNotExist() {
+        new LibraryStore().get(0);
+    }
+}
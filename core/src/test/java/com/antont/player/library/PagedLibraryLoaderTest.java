@@ -0,0 +1,145 @@
+package com.antont.player.library;
+
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PagedLibraryLoaderTest {
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Test
+    public void load_publishesFixedSizePagesAndFinishes() {
+        FakeSource source = new FakeSource(25);
+        RecordingListener listener = new RecordingListener();
+
+        new PagedLibraryLoader(DIRECT_EXECUTOR, DIRECT_EXECUTOR, 10).load(() -> source, listener);
+
+        assertEquals(3, listener.mPages.size());
+        assertEquals(10, listener.mPages.get(0).size());
+        assertEquals(10, listener.mPages.get(1).size());
+        assertEquals(5, listener.mPages.get(2).size());
+        assertEquals("/track24.mp3", listener.mPages.get(2).get(4).getPath());
+        assertEquals(25, listener.mFinishedCount);
+        assertTrue(source.mClosed);
+    }
+
+    // The first page is published after exactly one page of rows has been read, whatever the library size
+    @Test
+    public void load_firstPageDoesNotWaitForTheWholeSource() {
+        FakeSource source = new FakeSource(1_000_000);
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onPageLoaded(List<AudioItem> page) {
+                super.onPageLoaded(page);
+                if (mPages.size() == 1) {
+                    assertEquals(50, source.mReadCount);
+                }
+            }
+        };
+
+        new PagedLibraryLoader(DIRECT_EXECUTOR, DIRECT_EXECUTOR, 50).load(() -> source, listener);
+
+        assertEquals(1_000_000, listener.mFinishedCount);
+    }
+
+    @Test
+    public void cancel_stopsReadingAndDeliversNothingMore() {
+        List<Runnable> callbacks = new ArrayList<>();
+        FakeSource source = new FakeSource(100);
+        RecordingListener listener = new RecordingListener();
+        List<Runnable> background = new ArrayList<>();
+
+        PagedLibraryLoader.LoadTask task = new PagedLibraryLoader(background::add, callbacks::add, 10).load(() -> source, listener);
+        background.get(0).run();
+        callbacks.get(0).run();
+        task.cancel();
+        for (int i = 1; i < callbacks.size(); i++) {
+            callbacks.get(i).run();
+        }
+
+        assertEquals(1, listener.mPages.size());
+        assertEquals(-1, listener.mFinishedCount);
+        assertTrue(source.mClosed);
+    }
+
+    @Test
+    public void cancel_beforeStartNeverOpensSource() {
+        List<Runnable> background = new ArrayList<>();
+        RecordingListener listener = new RecordingListener();
+
+        PagedLibraryLoader.LoadTask task = new PagedLibraryLoader(background::add, DIRECT_EXECUTOR, 10).load(() -> {
+            throw new AssertionError("Source must not be opened");
+        }, listener);
+        task.cancel();
+        background.get(0).run();
+
+        assertTrue(listener.mPages.isEmpty());
+    }
+
+    @Test
+    public void load_reportsSourceFailure() {
+        RecordingListener listener = new RecordingListener();
+
+        new PagedLibraryLoader(DIRECT_EXECUTOR, DIRECT_EXECUTOR, 10).load(() -> {
+            throw new IllegalStateException("Query failed");
+        }, listener);
+
+        assertTrue(listener.mError instanceof IllegalStateException);
+        assertEquals(-1, listener.mFinishedCount);
+    }
+
+    private static class FakeSource implements AudioItemSource {
+        private final int mCount;
+        private int mPosition = -1;
+        int mReadCount;
+        boolean mClosed;
+
+        FakeSource(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return ++mPosition < mCount;
+        }
+
+        @Override
+        public AudioItem read() {
+            mReadCount++;
+            return new AudioItem(mPosition, 0, "/track" + mPosition + ".mp3", "track" + mPosition + ".mp3", "album");
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+
+    private static class RecordingListener implements PagedLibraryLoader.OnPageLoadedListener {
+        final List<List<AudioItem>> mPages = new ArrayList<>();
+        int mFinishedCount = -1;
+        Exception mError;
+
+        @Override
+        public void onPageLoaded(List<AudioItem> page) {
+            mPages.add(page);
+        }
+
+        @Override
+        public void onLoadFinished(int totalCount) {
+            mFinishedCount = totalCount;
+        }
+
+        @Override
+        public void onLoadFailed(Exception e) {
+            mError = e;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.antont.player.loudness;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoudnessMeterTest {
+
+    private static final double TOLERANCE = 0.1;
+
+    @Test
+    public void stereoSineAtMinus23Dbfs_measuresMinus23Lufs() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 2);
+        process(meter, sine(48000, 2, 1000, -23, 10));
+
+        assertEquals(-23, meter.getIntegratedLoudness(), TOLERANCE);
+        assertEquals(Math.pow(10, -23 / 20.0), meter.getSamplePeak(), 1e-3);
+    }
+
+    @Test
+    public void otherSampleRates_measureTheSame() {
+        for (int sampleRate : new int[]{22050, 44100, 96000}) {
+            LoudnessMeter meter = new LoudnessMeter(sampleRate, 2);
+            process(meter, sine(sampleRate, 2, 1000, -23, 5));
+            assertEquals("At " + sampleRate + " Hz", -23, meter.getIntegratedLoudness(), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void monoSine_isOneChannelOfTheStereoOne() {
+        LoudnessMeter meter = new LoudnessMeter(44100, 1);
+        process(meter, sine(44100, 1, 1000, -20, 5));
+        assertEquals(-20 - 3.01, meter.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void kWeighting_cutsLowAndLiftsHighFrequencies() {
+        LoudnessMeter low = new LoudnessMeter(48000, 2);
+        process(low, sine(48000, 2, 25, -23, 5));
+        LoudnessMeter high = new LoudnessMeter(48000, 2);
+        process(high, sine(48000, 2, 8000, -23, 5));
+
+        assertTrue(low.getIntegratedLoudness() < -24);
+        assertTrue(high.getIntegratedLoudness() > -20);
+    }
+
+    @Test
+    public void silence_isGatedOut() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 2);
+        process(meter, sine(48000, 2, 1000, -23, 10));
+        process(meter, new short[48000 * 2 * 10]);
+        assertEquals(-23, meter.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void quietPassages_fallBelowTheRelativeGate() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 2);
+        process(meter, sine(48000, 2, 1000, -20, 10));
+        process(meter, sine(48000, 2, 1000, -40, 10));
+        // Without the relative gate the mean of both halves would be close to -23
+        assertEquals(-20, meter.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void nothingToMeasure_isNaN() {
+        LoudnessMeter silent = new LoudnessMeter(48000, 2);
+        process(silent, new short[48000 * 2 * 3]);
+        assertTrue(Double.isNaN(silent.getIntegratedLoudness()));
+
+        LoudnessMeter tooShort = new LoudnessMeter(48000, 2);
+        process(tooShort, sine(48000, 2, 1000, -23, 0.3));
+        assertTrue(Double.isNaN(tooShort.getIntegratedLoudness()));
+    }
+
+    @Test
+    public void fiveOneSurround_weightsTheBackChannelsAndSkipsTheLfe() {
+        short[] front = sine(48000, 1, 1000, -23, 5);
+        short[] frames = new short[front.length * 6];
+        for (int i = 0; i < front.length; i++) {
+            // Back left only, weighted by 1.41 or +1.5 dB
+            frames[i * 6 + 4] = front[i];
+            // A loud LFE that must not count
+            frames[i * 6 + 3] = (short) (front[i] * 4);
+        }
+        LoudnessMeter meter = new LoudnessMeter(48000, 6);
+        process(meter, frames);
+        assertEquals(-23 - 3.01 + 10 * Math.log10(1.41), meter.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    // Fed in uneven chunks, like buffers from a decoder
+    private static void process(LoudnessMeter meter, short[] samples) {
+        int channels = meter.getChannelCount();
+        int frames = samples.length / channels;
+        int frame = 0;
+        int chunk = 1000;
+        while (frame < frames) {
+            int count = Math.min(chunk, frames - frame);
+            meter.process(samples, frame * channels, count);
+            frame += count;
+            chunk = chunk == 1000 ? 4097 : 1000;
+        }
+    }
+
+    private static short[] sine(int sampleRate, int channels, double frequency, double peakDbfs, double seconds) {
+        int frames = (int) (sampleRate * seconds);
+        double amplitude = Math.pow(10, peakDbfs / 20) * 32767;
+        short[] samples = new short[frames * channels];
+        for (int frame = 0; frame < frames; frame++) {
+            short sample = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * frame / sampleRate));
+            for (int channel = 0; channel < channels; channel++) {
+                samples[frame * channels + channel] = sample;
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,139 @@
+package com.antont.player.loudness;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoudnessTableTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("loudness").toFile();
+        directory.deleteOnExit();
+        mFile = new File(directory, "table");
+        mFile.deleteOnExit();
+    }
+
+    @Test
+    public void put_andLoad_roundTripsMeasurements() throws IOException {
+        LoudnessTable table = new LoudnessTable(mFile);
+        table.load();
+        table.put("/music/a.mp3", new TrackLoudness(1000, 42, -12.5f, 0.9f));
+        table.put("/music/\u00e9t\u00e9.flac", new TrackLoudness(2000, 43, Float.NaN, 0f));
+        table.sync();
+        table.close();
+
+        LoudnessTable reopened = new LoudnessTable(mFile);
+        reopened.load();
+        assertEquals(2, reopened.size());
+        TrackLoudness a = reopened.get("/music/a.mp3");
+        assertTrue(a.matches(1000, 42));
+        assertFalse(a.matches(1000, 44));
+        assertEquals(-12.5f, a.getLoudness(), 0f);
+        assertEquals(0.9f, a.getPeak(), 0f);
+        assertTrue(Float.isNaN(reopened.get("/music/\u00e9t\u00e9.flac").getLoudness()));
+        assertNull(reopened.get("/music/unknown.mp3"));
+    }
+
+    @Test
+    public void load_laterRecordReplacesEarlierOne() throws IOException {
+        LoudnessTable table = new LoudnessTable(mFile);
+        table.load();
+        table.put("/music/a.mp3", new TrackLoudness(1000, 42, -12f, 0.5f));
+        table.put("/music/a.mp3", new TrackLoudness(1100, 50, -20f, 0.25f));
+        table.close();
+
+        LoudnessTable reopened = new LoudnessTable(mFile);
+        reopened.load();
+        assertEquals(1, reopened.size());
+        assertTrue(reopened.get("/music/a.mp3").matches(1100, 50));
+    }
+
+    @Test
+    public void load_cutsOffTornRecordAndKeepsAppending() throws IOException {
+        LoudnessTable table = new LoudnessTable(mFile);
+        table.load();
+        table.put("/music/a.mp3", new TrackLoudness(1000, 42, -12f, 0.5f));
+        table.put("/music/b.mp3", new TrackLoudness(1000, 42, -14f, 0.5f));
+        table.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        LoudnessTable reopened = new LoudnessTable(mFile);
+        reopened.load();
+        assertNotNull(reopened.get("/music/a.mp3"));
+        assertNull(reopened.get("/music/b.mp3"));
+        reopened.put("/music/c.mp3", new TrackLoudness(1000, 42, -16f, 0.5f));
+        reopened.close();
+
+        LoudnessTable again = new LoudnessTable(mFile);
+        again.load();
+        assertEquals(2, again.size());
+        assertNotNull(again.get("/music/c.mp3"));
+    }
+
+    @Test
+    public void load_ignoresCorruptedRecordAtTheEnd() throws IOException {
+        LoudnessTable table = new LoudnessTable(mFile);
+        table.load();
+        table.put("/music/a.mp3", new TrackLoudness(1000, 42, -12f, 0.5f));
+        table.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(10);
+            file.write('x');
+        }
+
+        LoudnessTable reopened = new LoudnessTable(mFile);
+        reopened.load();
+        assertEquals(0, reopened.size());
+        assertEquals(0, mFile.length());
+    }
+
+    @Test
+    public void removeAll_compactsLogOnceMostRecordsAreDead() throws IOException {
+        LoudnessTable table = new LoudnessTable(mFile);
+        table.load();
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            table.put("/music/" + i + ".mp3", new TrackLoudness(1000, i, -15f, 0.5f));
+            if (i >= 10) {
+                removed.add("/music/" + i + ".mp3");
+            }
+        }
+        table.sync();
+        long fullLength = mFile.length();
+
+        table.removeAll(removed);
+        assertEquals(10, table.size());
+        assertTrue(mFile.length() < fullLength / 5);
+        table.put("/music/new.mp3", new TrackLoudness(1000, 1, -15f, 0.5f));
+        table.close();
+
+        LoudnessTable reopened = new LoudnessTable(mFile);
+        reopened.load();
+        assertEquals(11, reopened.size());
+        assertNull(reopened.get("/music/50.mp3"));
+        assertNotNull(reopened.get("/music/5.mp3"));
+        assertNotNull(reopened.get("/music/new.mp3"));
+    }
+
+    @Test
+    public void getGain_bringsTrackToTargetWithoutClipping() {
+        // 6 dB too loud
+        assertEquals(0.501f, new TrackLoudness(1, 1, -12f, 0.5f).getGain(), 0.001f);
+        // 6 dB too quiet, but the peak allows 3 dB only
+        assertEquals(1.413f, new TrackLoudness(1, 1, -24f, 0.708f).getGain(), 0.001f);
+        assertEquals(1f, new TrackLoudness(1, 1, Float.NaN, 0f).getGain(), 0f);
+    }
+}
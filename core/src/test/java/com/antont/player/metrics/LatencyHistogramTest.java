@@ -0,0 +1,71 @@
+package com.antont.player.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueOnceAndInOrder() {
+        long previousBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(upperBound > previousBound);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousBound + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upperBound));
+            previousBound = upperBound;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(previousBound + 1));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentile_isWithinAnEighthOfTheValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.percentile(0.5), 500_000 / 8.0);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 / 8.0);
+        assertTrue(histogram.percentile(0.5) >= 500_000);
+        assertEquals(1_000_000, histogram.percentile(1));
+    }
+
+    @Test
+    public void percentile_isNeverAboveTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1025);
+
+        assertEquals(1025, histogram.percentile(0.5));
+        assertEquals(0, new LatencyHistogram().percentile(0.99));
+    }
+
+    @Test
+    public void record_fromManyThreads_losesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            long offset = i;
+            threads[i] = new Thread(() -> {
+                for (int value = 0; value < 100_000; value++) {
+                    histogram.record(value % 5000 + offset);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(5002, histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+}
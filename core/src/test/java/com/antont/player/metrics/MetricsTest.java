@@ -0,0 +1,38 @@
+package com.antont.player.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void spans_whileDisabled_areNotRecorded() {
+        Metrics.setEnabled(false);
+        long span = Metrics.start();
+        Metrics.setEnabled(true);
+        Metrics.record(Operation.TRACK_START, span);
+
+        assertEquals(Metrics.NO_SPAN, span);
+        assertEquals(0, Metrics.histogramOf(Operation.TRACK_START).getCount());
+    }
+
+    @Test
+    public void report_listsEveryOperation() {
+        Metrics.setEnabled(true);
+        Metrics.record(Operation.COMMAND_DISPATCH, Metrics.start());
+
+        String report = Metrics.report();
+        assertEquals(1, Metrics.histogramOf(Operation.COMMAND_DISPATCH).getCount());
+        for (Operation operation : Operation.values()) {
+            assertTrue(report.contains(operation.name().toLowerCase()));
+        }
+    }
+}
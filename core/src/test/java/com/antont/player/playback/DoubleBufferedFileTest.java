@@ -0,0 +1,101 @@
+package com.antont.player.playback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class DoubleBufferedFileTest {
+
+    private File mDirectory;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("double-buffered").toFile();
+        mDirectory.deleteOnExit();
+        mFile = new File(mDirectory, "record");
+    }
+
+    @Test
+    public void read_withoutWrites_returnsNull() {
+        assertNull(new DoubleBufferedFile(mFile).read());
+    }
+
+    @Test
+    public void write_alternatesSlotsAndNewestWins() throws IOException {
+        DoubleBufferedFile file = new DoubleBufferedFile(mFile);
+        file.write(new byte[]{1});
+        file.write(new byte[]{2});
+        file.write(new byte[]{3});
+
+        assertTrue(new File(mFile.getPath() + ".a").exists());
+        assertTrue(new File(mFile.getPath() + ".b").exists());
+        assertArrayEquals(new byte[]{3}, new DoubleBufferedFile(mFile).read());
+    }
+
+    @Test
+    public void write_createsTheMissingDirectory() throws IOException {
+        File file = new File(new File(mDirectory, "missing"), "record");
+        new DoubleBufferedFile(file).write(new byte[]{1});
+
+        assertArrayEquals(new byte[]{1}, new DoubleBufferedFile(file).read());
+    }
+
+    @Test
+    public void write_continuesTheSequenceOfAnotherInstance() throws IOException {
+        new DoubleBufferedFile(mFile).write(new byte[]{1});
+        new DoubleBufferedFile(mFile).write(new byte[]{2});
+
+        assertArrayEquals(new byte[]{2}, new DoubleBufferedFile(mFile).read());
+    }
+
+    @Test
+    public void read_tornNewestSlot_fallsBackToTheOtherOne() throws IOException {
+        DoubleBufferedFile file = new DoubleBufferedFile(mFile);
+        file.write(new byte[]{1, 1, 1});
+        file.write(new byte[]{2, 2, 2});
+
+        // The second write went to slot a, cut it short like a crash in the middle of the write would
+        File newest = new File(mFile.getPath() + ".a");
+        try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        assertArrayEquals(new byte[]{1, 1, 1}, new DoubleBufferedFile(mFile).read());
+    }
+
+    @Test
+    public void read_corruptedPayload_isSkipped() throws IOException {
+        DoubleBufferedFile file = new DoubleBufferedFile(mFile);
+        file.write(new byte[]{1, 1, 1});
+        file.write(new byte[]{2, 2, 2});
+
+        File newest = new File(mFile.getPath() + ".a");
+        try (RandomAccessFile raf = new RandomAccessFile(newest, "rw")) {
+            raf.seek(16);
+            raf.write(9);
+        }
+        assertArrayEquals(new byte[]{1, 1, 1}, new DoubleBufferedFile(mFile).read());
+    }
+
+    @Test
+    public void write_afterTornSlot_overwritesIt() throws IOException {
+        DoubleBufferedFile file = new DoubleBufferedFile(mFile);
+        file.write(new byte[]{1});
+        file.write(new byte[]{2});
+        new File(mFile.getPath() + ".a").delete();
+
+        DoubleBufferedFile reopened = new DoubleBufferedFile(mFile);
+        reopened.write(new byte[]{3});
+        assertArrayEquals(new byte[]{3}, new DoubleBufferedFile(mFile).read());
+
+        // The good slot is still there for the next torn write
+        new File(mFile.getPath() + ".a").delete();
+        assertArrayEquals(new byte[]{1}, new DoubleBufferedFile(mFile).read());
+    }
+}
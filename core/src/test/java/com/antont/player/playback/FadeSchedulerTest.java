@@ -0,0 +1,69 @@
+package com.antont.player.playback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FadeSchedulerTest {
+
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void equalPowerCurve_keepsSummedPowerConstant() {
+        for (int i = 0; i <= 100; i++) {
+            float progress = i / 100f;
+            float in = FadeCurve.EQUAL_POWER.volumeAt(0f, 1f, progress);
+            float out = FadeCurve.EQUAL_POWER.volumeAt(1f, 0f, progress);
+            assertEquals(1f, in * in + out * out, DELTA);
+        }
+    }
+
+    @Test
+    public void curves_areClampedToTheirEndpoints() {
+        for (FadeCurve curve : FadeCurve.values()) {
+            assertEquals(0.2f, curve.volumeAt(0.2f, 0.8f, -1f), DELTA);
+            assertEquals(0.8f, curve.volumeAt(0.2f, 0.8f, 0f + 2f), DELTA);
+            assertEquals(1f, curve.volumeAt(1f, 0f, 0f), DELTA);
+            assertEquals(0f, curve.volumeAt(1f, 0f, 1f), DELTA);
+        }
+        assertEquals(0.5f, FadeCurve.LINEAR.volumeAt(0f, 1f, 0.5f), DELTA);
+    }
+
+    @Test
+    public void tick_rampsVolumesAndReportsEnd() {
+        FadeScheduler scheduler = new FadeScheduler();
+        FakePlayer incoming = new FakePlayer();
+        FakePlayer outgoing = new FakePlayer();
+        FakePlayer[] finished = new FakePlayer[1];
+
+        scheduler.start(incoming, 0f, 1f, 1000, FadeCurve.LINEAR, 5000, null);
+        scheduler.start(outgoing, 1f, 0f, 1000, FadeCurve.LINEAR, 5000, player -> finished[0] = (FakePlayer) player);
+        assertEquals(0f, incoming.mLeftVolume, DELTA);
+
+        scheduler.tick(5250);
+        assertEquals(0.25f, incoming.mLeftVolume, DELTA);
+        assertEquals(0.75f, outgoing.mRightVolume, DELTA);
+        assertNull(finished[0]);
+        assertTrue(scheduler.isActive());
+
+        scheduler.tick(6000);
+        assertEquals(1f, incoming.mLeftVolume, DELTA);
+        assertEquals(0f, outgoing.mLeftVolume, DELTA);
+        assertSame(outgoing, finished[0]);
+        assertFalse(scheduler.isActive());
+    }
+
+    @Test
+    public void start_replacesRampOfSamePlayer() {
+        FadeScheduler scheduler = new FadeScheduler();
+        FakePlayer player = new FakePlayer();
+
+        scheduler.start(player, 0f, 1f, 1000, FadeCurve.LINEAR, 0, null);
+        scheduler.start(player, 1f, 0f, 100, FadeCurve.LINEAR, 0, null);
+        scheduler.tick(50);
+
+        assertEquals(0.5f, player.mLeftVolume, DELTA);
+        scheduler.cancel(player);
+        assertFalse(scheduler.isActive());
+    }
+}
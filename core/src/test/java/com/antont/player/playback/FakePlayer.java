@@ -0,0 +1,124 @@
+package com.antont.player.playback;
+
+import java.io.IOException;
+
+// Records the calls of a playback engine and lets the test drive the asynchronous callbacks
+class FakePlayer implements Player {
+
+    String mDataSource;
+    boolean mPreparing;
+    boolean mPrepared;
+    boolean mPlaying;
+    boolean mReleased;
+    int mPosition;
+    int mDuration = 180_000;
+    float mLeftVolume = 1f;
+    float mRightVolume = 1f;
+    Player mNextPlayer;
+    private Listener mListener;
+
+    void finishPreparing() {
+        mPreparing = false;
+        mPrepared = true;
+        mListener.onPrepared(this);
+    }
+
+    // Simulates the end of the track, a chained next player takes over like MediaPlayer does
+    void complete() {
+        mPlaying = false;
+        if (mNextPlayer != null) {
+            ((FakePlayer) mNextPlayer).mPlaying = true;
+        }
+        mListener.onCompletion(this);
+    }
+
+    void fail() {
+        mListener.onError(this, 1, 0);
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        if (path.endsWith(".broken")) {
+            throw new IOException("Cannot open " + path);
+        }
+        mDataSource = path;
+    }
+
+    @Override
+    public void prepareAsync() {
+        if (mDataSource == null) {
+            throw new IllegalStateException("No data source");
+        }
+        mPreparing = true;
+    }
+
+    @Override
+    public void start() {
+        if (!mPrepared) {
+            throw new IllegalStateException("Not prepared");
+        }
+        mPlaying = true;
+    }
+
+    @Override
+    public void pause() {
+        mPlaying = false;
+    }
+
+    @Override
+    public void stop() {
+        mPlaying = false;
+        mPrepared = false;
+    }
+
+    @Override
+    public void reset() {
+        mDataSource = null;
+        mPreparing = false;
+        mPrepared = false;
+        mPlaying = false;
+        mPosition = 0;
+        mNextPlayer = null;
+    }
+
+    @Override
+    public void release() {
+        mReleased = true;
+    }
+
+    @Override
+    public void seekTo(int positionInMs) {
+        mPosition = positionInMs;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    @Override
+    public int getDuration() {
+        return mDuration;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mLeftVolume = leftVolume;
+        mRightVolume = rightVolume;
+    }
+
+    @Override
+    public void setNextPlayer(Player nextPlayer) {
+        mNextPlayer = nextPlayer;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+}
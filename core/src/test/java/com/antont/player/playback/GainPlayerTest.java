@@ -0,0 +1,72 @@
+package com.antont.player.playback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GainPlayerTest {
+
+    private FakePlayer mPlayer;
+    private GainPlayer mGainPlayer;
+
+    @Before
+    public void setUp() {
+        mPlayer = new FakePlayer();
+        mGainPlayer = new GainPlayer(mPlayer, path -> path.startsWith("/loud") ? 0.5f : 2f);
+    }
+
+    @Test
+    public void setVolume_isScaledByGainOfTrack() throws IOException {
+        mGainPlayer.setDataSource("/loud.mp3");
+        assertEquals(0.5f, mPlayer.mLeftVolume, 0f);
+
+        mGainPlayer.setVolume(0.5f, 1f);
+        assertEquals(0.25f, mPlayer.mLeftVolume, 0f);
+        assertEquals(0.5f, mPlayer.mRightVolume, 0f);
+    }
+
+    @Test
+    public void setDataSource_neverAmplifies() throws IOException {
+        mGainPlayer.setVolume(0.8f, 0.8f);
+        mGainPlayer.setDataSource("/quiet.mp3");
+        assertEquals(1f, mGainPlayer.getGain(), 0f);
+        assertEquals(0.8f, mPlayer.mLeftVolume, 0f);
+    }
+
+    @Test
+    public void setNextPlayer_chainsWrappedPlayers() {
+        FakePlayer next = new FakePlayer();
+        mGainPlayer.setNextPlayer(new GainPlayer(next, path -> 1f));
+        assertSame(next, mPlayer.mNextPlayer);
+    }
+
+    @Test
+    public void callbacks_arePassedOnAsWrapper() throws IOException {
+        List<Player> prepared = new ArrayList<>();
+        mGainPlayer.setListener(new Player.Listener() {
+            @Override
+            public void onPrepared(Player player) {
+                prepared.add(player);
+            }
+
+            @Override
+            public void onCompletion(Player player) {
+            }
+
+            @Override
+            public boolean onError(Player player, int what, int extra) {
+                return false;
+            }
+        });
+        mGainPlayer.setDataSource("/loud.mp3");
+        mGainPlayer.prepareAsync();
+        mPlayer.finishPreparing();
+        assertEquals(1, prepared.size());
+        assertSame(mGainPlayer, prepared.get(0));
+    }
+}
@@ -0,0 +1,314 @@
+package com.antont.player.playback;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.enums.RepeatMode;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GaplessPlaybackEngineTest {
+
+    private final List<FakePlayer> mPlayers = new ArrayList<>();
+    private final List<String> mEvents = new ArrayList<>();
+    private PlayQueue mQueue;
+    private GaplessPlaybackEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mQueue = new PlayQueue(Arrays.asList(
+                new AudioItem("/a.mp3", "a.mp3", "album"),
+                new AudioItem("/b.mp3", "b.mp3", "album"),
+                new AudioItem("/c.mp3", "c.mp3", "album")));
+        mEngine = new GaplessPlaybackEngine(mQueue, () -> {
+            FakePlayer player = new FakePlayer();
+            mPlayers.add(player);
+            return player;
+        });
+        mEngine.setListener(new GaplessPlaybackEngine.OnPlaybackEventListener() {
+            @Override
+            public void onTrackStarted(int position, int duration) {
+                mEvents.add("started " + position);
+            }
+
+            @Override
+            public void onTrackChanged(AudioItem item) {
+                mEvents.add("changed " + item.getPath());
+            }
+
+            @Override
+            public void onPlaybackError(AudioItem item, Exception e) {
+                mEvents.add("error " + item.getPath());
+            }
+
+            @Override
+            public void onQueueFinished() {
+                mEvents.add("finished");
+            }
+        });
+    }
+
+    @Test
+    public void prepared_currentStartsAndNextIsChained() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer current = mPlayers.get(0);
+        FakePlayer next = mPlayers.get(1);
+
+        current.finishPreparing();
+        assertTrue(current.mPlaying);
+        assertEquals("/b.mp3", next.mDataSource);
+        assertTrue(next.mPreparing);
+        assertNull(current.mNextPlayer);
+
+        next.finishPreparing();
+        assertSame(next, current.mNextPlayer);
+        assertFalse(next.mPlaying);
+    }
+
+    @Test
+    public void completion_handsOverToPreparedPlayerWithoutPreparingAgain() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        second.finishPreparing();
+
+        first.complete();
+
+        assertEquals(1, mQueue.getCurrentPosition());
+        assertTrue(second.mPlaying);
+        assertTrue(mEngine.isPlaying());
+        assertEquals(Arrays.asList("started 0", "changed /b.mp3", "started 1"), mEvents);
+        // The finished player is recycled to prepare the track after the next one
+        assertEquals("/c.mp3", first.mDataSource);
+        assertTrue(first.mPreparing);
+        assertEquals(2, mPlayers.size());
+    }
+
+    @Test
+    public void completion_withoutPreparedNextFallsBackToColdStart() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        first.finishPreparing();
+
+        first.complete();
+
+        assertEquals(1, mQueue.getCurrentPosition());
+        assertEquals("/b.mp3", first.mDataSource);
+        assertTrue(first.mPreparing);
+    }
+
+    @Test
+    public void skip_invalidatesPreparedNextPlayer() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        second.finishPreparing();
+
+        mQueue.moveTo(2);
+        mEngine.playCurrent();
+
+        assertNull(first.mNextPlayer);
+        assertNull(second.mDataSource);
+        assertEquals("/c.mp3", first.mDataSource);
+        first.finishPreparing();
+        assertEquals("/a.mp3", second.mDataSource);
+    }
+
+    @Test
+    public void queueChange_preparesNextAgainWhenItChanged() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        second.finishPreparing();
+
+        mQueue.setItems(Arrays.asList(mQueue.get(0), mQueue.get(2), mQueue.get(1)));
+        mEngine.onQueueChanged();
+
+        assertNull(first.mNextPlayer);
+        assertEquals("/c.mp3", second.mDataSource);
+    }
+
+    @Test
+    public void pauseBeforePrepared_doesNotStartPlayback() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        mEngine.pause();
+        mPlayers.get(0).finishPreparing();
+
+        assertFalse(mPlayers.get(0).mPlaying);
+        mEngine.start();
+        assertTrue(mPlayers.get(0).mPlaying);
+    }
+
+    @Test
+    public void brokenTrack_isSkipped() {
+        mQueue.setItems(Arrays.asList(
+                new AudioItem("/a.broken", "a.broken", "album"),
+                new AudioItem("/b.mp3", "b.mp3", "album")));
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+
+        assertEquals(1, mQueue.getCurrentPosition());
+        assertEquals("/b.mp3", mPlayers.get(0).mDataSource);
+        assertEquals(Arrays.asList("error /a.broken", "changed /b.mp3"), mEvents);
+    }
+
+    @Test
+    public void allTracksBroken_givesUpAfterOneRound() {
+        mQueue.setItems(Arrays.asList(
+                new AudioItem("/a.broken", "a.broken", "album"),
+                new AudioItem("/b.broken", "b.broken", "album")));
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+
+        assertFalse(mEngine.isPrepared());
+        assertEquals(2, mEvents.stream().filter(event -> event.startsWith("error")).count());
+    }
+
+    @Test
+    public void crossfade_startsNextTrackBeforeTheEndAndRampsBothPlayers() {
+        mEngine.setCrossfade(4000, FadeCurve.LINEAR);
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        second.finishPreparing();
+        assertNull("Players must not be chained in crossfade mode", first.mNextPlayer);
+
+        first.mPosition = 100_000;
+        assertEquals(GaplessPlaybackEngine.MAX_POLL_INTERVAL_IN_MS, mEngine.onTick(0));
+        assertFalse(second.mPlaying);
+
+        first.mPosition = first.mDuration - 4000;
+        assertEquals(GaplessPlaybackEngine.FADE_TICK_INTERVAL_IN_MS, mEngine.onTick(10_000));
+        assertTrue(second.mPlaying);
+        assertEquals(1, mQueue.getCurrentPosition());
+
+        mEngine.onTick(12_000);
+        assertEquals(0.5f, first.mLeftVolume, 1e-4f);
+        assertEquals(0.5f, second.mLeftVolume, 1e-4f);
+
+        mEngine.onTick(14_000);
+        assertEquals(1f, second.mLeftVolume, 1e-4f);
+        assertEquals("The faded out player prepares the track after next", "/c.mp3", first.mDataSource);
+        assertEquals(Arrays.asList("started 0", "changed /b.mp3", "started 1"), mEvents);
+    }
+
+    @Test
+    public void crossfade_skipStopsTheFadingTrack() {
+        mEngine.setCrossfade(4000, FadeCurve.EQUAL_POWER);
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        second.finishPreparing();
+        first.mPosition = first.mDuration - 1000;
+        mEngine.onTick(0);
+
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+
+        assertFalse(first.mPlaying);
+        assertEquals(1f, first.mLeftVolume, 1e-4f);
+        assertEquals(1f, second.mLeftVolume, 1e-4f);
+        assertEquals("/a.mp3", second.mDataSource);
+        assertEquals(GaplessPlaybackEngine.NO_TICK, mEngine.onTick(100));
+    }
+
+    @Test
+    public void playCurrentAtPosition_seeksBeforeStarting() {
+        mQueue.moveTo(1);
+        mEngine.playCurrent(61_000);
+        FakePlayer current = mPlayers.get(0);
+
+        assertTrue(mEngine.hasCurrentTrack());
+        assertEquals("Reports the resume position while preparing", 61_000, mEngine.getCurrentPosition());
+        current.finishPreparing();
+        assertEquals(61_000, current.mPosition);
+        assertTrue(current.mPlaying);
+    }
+
+    @Test
+    public void seekWhilePreparing_isAppliedOncePrepared() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer current = mPlayers.get(0);
+
+        mEngine.seekTo(5000);
+        current.finishPreparing();
+        assertEquals(5000, current.mPosition);
+    }
+
+    @Test
+    public void stop_dropsTheCurrentTrack() {
+        assertFalse(mEngine.hasCurrentTrack());
+        mQueue.moveTo(0);
+        mEngine.playCurrent(1000);
+        mPlayers.get(0).finishPreparing();
+
+        mEngine.stop();
+        assertFalse(mEngine.hasCurrentTrack());
+        assertEquals(0, mEngine.getCurrentPosition());
+    }
+
+    @Test
+    public void repeatOff_lastTrackEndsPlayback() {
+        mQueue.setRepeatMode(RepeatMode.OFF);
+        mQueue.moveTo(2);
+        mEngine.playCurrent();
+        FakePlayer current = mPlayers.get(0);
+        current.finishPreparing();
+        assertNull("Nothing to prepare after the last track", mPlayers.get(1).mDataSource);
+
+        current.complete();
+        assertEquals(2, mQueue.getCurrentPosition());
+        assertEquals(Arrays.asList("started 2", "finished"), mEvents);
+    }
+
+    @Test
+    public void repeatOne_chainsTheSameTrack() {
+        mQueue.setRepeatMode(RepeatMode.ONE);
+        mQueue.moveTo(1);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        assertEquals("/b.mp3", second.mDataSource);
+        second.finishPreparing();
+
+        first.complete();
+        assertEquals(1, mQueue.getCurrentPosition());
+        assertTrue(second.mPlaying);
+        assertEquals("/b.mp3", first.mDataSource);
+    }
+
+    @Test
+    public void modeChange_preparesTheNewNextTrack() {
+        mQueue.moveTo(0);
+        mEngine.playCurrent();
+        FakePlayer first = mPlayers.get(0);
+        FakePlayer second = mPlayers.get(1);
+        first.finishPreparing();
+        assertEquals("/b.mp3", second.mDataSource);
+
+        mQueue.setRepeatMode(RepeatMode.ONE);
+        mEngine.onQueueChanged();
+        assertEquals("/a.mp3", second.mDataSource);
+    }
+}
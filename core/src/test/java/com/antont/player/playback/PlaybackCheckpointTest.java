@@ -0,0 +1,142 @@
+package com.antont.player.playback;
+
+import com.antont.player.PlayQueue;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaybackCheckpointTest {
+
+    private File mDirectory;
+    private List<AudioItem> mLibrary;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("checkpoint").toFile();
+        mDirectory.deleteOnExit();
+        mLibrary = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            mLibrary.add(new AudioItem(i * 10, 0, "/" + i + ".mp3", i + ".mp3", "album"));
+        }
+    }
+
+    @Test
+    public void encodeQueue_roundTripsUnorderedAndLargeIds() {
+        long[] ids = {5, 3, 1_000_000_007L, 0, 42, Long.MAX_VALUE, 7};
+        assertArrayEquals(ids, PlaybackCheckpointStore.decodeQueue(PlaybackCheckpointStore.encodeQueue(ids)));
+    }
+
+    @Test
+    public void encodeQueue_ascendingIdsTakeAboutOneByteEach() {
+        long[] ids = new long[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1000 + i * 3;
+        }
+        assertTrue(PlaybackCheckpointStore.encodeQueue(ids).length < ids.length + 16);
+    }
+
+    @Test
+    public void store_roundTripsQueueAndPosition() throws IOException {
+        PlaybackCheckpointStore store = new PlaybackCheckpointStore(mDirectory);
+        store.write(new PlaybackCheckpoint(new long[]{30, 10, 20}, 10, 61_000, 180_000));
+
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpointStore(mDirectory).read();
+        assertArrayEquals(new long[]{30, 10, 20}, checkpoint.getQueueIds());
+        assertEquals(10, checkpoint.getCurrentId());
+        assertEquals(61_000, checkpoint.getPositionInMs());
+        assertEquals(180_000, checkpoint.getDurationInMs());
+    }
+
+    @Test
+    public void store_inADirectoryThatDoesNotExistYet_createsIt() throws IOException {
+        File directory = new File(new File(mDirectory, "files"), PlaybackCheckpointStore.DIRECTORY_NAME);
+        new PlaybackCheckpointStore(directory).write(new PlaybackCheckpoint(new long[]{30, 10}, 30, 5000, 180_000));
+
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpointStore(directory).read();
+        assertArrayEquals(new long[]{30, 10}, checkpoint.getQueueIds());
+        assertEquals(5000, checkpoint.getPositionInMs());
+    }
+
+    @Test
+    public void store_positionOnlyWriteKeepsTheQueue() throws IOException {
+        PlaybackCheckpointStore store = new PlaybackCheckpointStore(mDirectory);
+        store.write(new PlaybackCheckpoint(new long[]{30, 10, 20}, 10, 1000, 180_000));
+        store.write(new PlaybackCheckpoint(null, 20, 2000, 180_000));
+        // A new instance, like a restarted service, does not know the queue checksum yet
+        new PlaybackCheckpointStore(mDirectory).write(new PlaybackCheckpoint(null, 20, 3000, 180_000));
+
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpointStore(mDirectory).read();
+        assertArrayEquals(new long[]{30, 10, 20}, checkpoint.getQueueIds());
+        assertEquals(20, checkpoint.getCurrentId());
+        assertEquals(3000, checkpoint.getPositionInMs());
+    }
+
+    @Test
+    public void store_positionOfAnotherQueue_dropsTheQueue() throws IOException {
+        PlaybackCheckpointStore store = new PlaybackCheckpointStore(mDirectory);
+        store.write(new PlaybackCheckpoint(new long[]{30, 10, 20}, 10, 1000, 180_000));
+        // The queue file gets ahead of the position, like after a crash between the two writes
+        new DoubleBufferedFile(new File(mDirectory, "queue")).write(PlaybackCheckpointStore.encodeQueue(new long[]{20, 10}));
+
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpointStore(mDirectory).read();
+        assertNull(checkpoint.getQueueIds());
+        assertEquals(10, checkpoint.getCurrentId());
+        assertEquals(1000, checkpoint.getPositionInMs());
+    }
+
+    @Test
+    public void store_withoutCheckpoint_returnsNull() {
+        assertNull(new PlaybackCheckpointStore(mDirectory).read());
+    }
+
+    @Test
+    public void capture_copiesTheQueueOnlyWhenAsked() {
+        PlayQueue queue = new PlayQueue(mLibrary);
+        queue.moveTo(2);
+
+        PlaybackCheckpoint withQueue = PlaybackCheckpoint.capture(queue, true, 500, 1000);
+        assertArrayEquals(new long[]{10, 20, 30, 40, 50}, withQueue.getQueueIds());
+        assertEquals(30, withQueue.getCurrentId());
+        assertFalse(PlaybackCheckpoint.capture(queue, false, 500, 1000).hasQueue());
+    }
+
+    @Test
+    public void restoreInto_keepsSavedOrderAndAppendsNewItems() {
+        PlayQueue queue = new PlayQueue(mLibrary);
+        // 60 is not in the library anymore, 20 and 50 are new
+        PlaybackCheckpoint checkpoint = new PlaybackCheckpoint(new long[]{40, 60, 10, 30}, 10, 1000, 2000);
+
+        assertTrue(checkpoint.restoreInto(queue, queue.getItems()));
+        assertEquals(Arrays.asList(mLibrary.get(3), mLibrary.get(0), mLibrary.get(2), mLibrary.get(1), mLibrary.get(4)),
+                queue.getItems());
+        assertSame(mLibrary.get(0), queue.getCurrent());
+        assertEquals(1, queue.getCurrentPosition());
+    }
+
+    @Test
+    public void restoreInto_withoutQueue_usesLibraryOrder() {
+        PlayQueue queue = new PlayQueue(mLibrary);
+        assertTrue(new PlaybackCheckpoint(null, 40, 0, 0).restoreInto(queue, mLibrary));
+        assertEquals(mLibrary, queue.getItems());
+        assertEquals(3, queue.getCurrentPosition());
+    }
+
+    @Test
+    public void restoreInto_currentItemGone_leavesQueueUntouched() {
+        PlayQueue queue = new PlayQueue(mLibrary);
+        int version = queue.getVersion();
+        assertFalse(new PlaybackCheckpoint(new long[]{50, 40}, 99, 0, 0).restoreInto(queue, mLibrary));
+        assertEquals(version, queue.getVersion());
+        assertEquals(PlayQueue.NO_POSITION, queue.getCurrentPosition());
+    }
+}
@@ -0,0 +1,119 @@
+package com.antont.player.playback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlayerCommandQueueTest {
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() {
+        assertEquals(8, new PlayerCommandQueue(5).capacity());
+        assertEquals(8, new PlayerCommandQueue(8).capacity());
+        assertEquals(2, new PlayerCommandQueue(0).capacity());
+    }
+
+    @Test
+    public void drain_deliversCommandsInOrder() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(8);
+        queue.offer(PlayerCommandQueue.COMMAND_ACTION, 3);
+        queue.offer(PlayerCommandQueue.COMMAND_SELECT, 42);
+        queue.offer(PlayerCommandQueue.COMMAND_SEEK, 1000);
+
+        List<long[]> received = new ArrayList<>();
+        assertEquals(3, queue.drain((command, argument) -> received.add(new long[]{command, argument})));
+
+        assertTrue(queue.isEmpty());
+        assertArrayEquals(new long[]{PlayerCommandQueue.COMMAND_ACTION, 3}, received.get(0));
+        assertArrayEquals(new long[]{PlayerCommandQueue.COMMAND_SELECT, 42}, received.get(1));
+        assertArrayEquals(new long[]{PlayerCommandQueue.COMMAND_SEEK, 1000}, received.get(2));
+    }
+
+    @Test
+    public void consecutiveSeeks_areCoalescedIntoTheLastOne() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(8);
+        queue.offer(PlayerCommandQueue.COMMAND_SEEK, 100);
+        queue.offer(PlayerCommandQueue.COMMAND_SEEK, 200);
+        queue.offer(PlayerCommandQueue.COMMAND_SEEK, 300);
+        queue.offer(PlayerCommandQueue.COMMAND_ACTION, 1);
+        queue.offer(PlayerCommandQueue.COMMAND_SEEK, 400);
+
+        assertEquals(3, queue.size());
+        List<Long> arguments = new ArrayList<>();
+        queue.drain((command, argument) -> arguments.add(argument));
+        assertEquals(300L, (long) arguments.get(0));
+        assertEquals(1L, (long) arguments.get(1));
+        assertEquals(400L, (long) arguments.get(2));
+    }
+
+    @Test
+    public void offer_failsWhenFullAndRecoversAfterDrain() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(PlayerCommandQueue.COMMAND_SELECT, i));
+        }
+        assertFalse(queue.offer(PlayerCommandQueue.COMMAND_SELECT, 4));
+
+        int[] count = new int[1];
+        queue.drain((command, argument) -> count[0]++);
+        assertEquals(4, count[0]);
+
+        // Wraps around the end of the arrays
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(PlayerCommandQueue.COMMAND_SELECT, i));
+        }
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void drain_deliversCommandsOfferedByTheHandler() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(4);
+        queue.offer(PlayerCommandQueue.COMMAND_ACTION, 0);
+
+        int[] count = new int[1];
+        queue.drain((command, argument) -> {
+            if (count[0]++ == 0) {
+                queue.offer(PlayerCommandQueue.COMMAND_ACTION, 1);
+            }
+        });
+        assertEquals(2, count[0]);
+    }
+
+    @Test
+    public void queueChanges_takeNoSlotAndAreDeliveredFirstOnce() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(2);
+        assertTrue(queue.offer(PlayerCommandQueue.COMMAND_SELECT, 42));
+        assertTrue(queue.offer(PlayerCommandQueue.COMMAND_QUEUE_CHANGED, 0));
+        assertTrue(queue.offer(PlayerCommandQueue.COMMAND_ACTION, 1));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(PlayerCommandQueue.COMMAND_QUEUE_CHANGED, 0));
+        }
+        assertEquals(3, queue.size());
+
+        List<Integer> commands = new ArrayList<>();
+        assertEquals(3, queue.drain((command, argument) -> commands.add(command)));
+        assertEquals((Integer) PlayerCommandQueue.COMMAND_QUEUE_CHANGED, commands.get(0));
+        assertEquals((Integer) PlayerCommandQueue.COMMAND_SELECT, commands.get(1));
+        assertEquals((Integer) PlayerCommandQueue.COMMAND_ACTION, commands.get(2));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void removeOldest_makesRoomForTheNewestCommand() {
+        PlayerCommandQueue queue = new PlayerCommandQueue(2);
+        queue.offer(PlayerCommandQueue.COMMAND_SELECT, 1);
+        queue.offer(PlayerCommandQueue.COMMAND_SELECT, 2);
+        assertFalse(queue.offer(PlayerCommandQueue.COMMAND_SELECT, 3));
+
+        assertTrue(queue.removeOldest());
+        assertTrue(queue.offer(PlayerCommandQueue.COMMAND_SELECT, 3));
+        List<Long> arguments = new ArrayList<>();
+        queue.drain((command, argument) -> arguments.add(argument));
+        assertEquals(2L, (long) arguments.get(0));
+        assertEquals(3L, (long) arguments.get(1));
+        assertFalse(queue.removeOldest());
+    }
+}
@@ -0,0 +1,45 @@
+package com.antont.player.playback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProgressClockTest {
+
+    @Test
+    public void positionAt_extrapolatesFromLastReportedPosition() {
+        ProgressClock clock = new ProgressClock();
+        clock.setDuration(60_000);
+        clock.update(10_000, true, 1_000);
+
+        assertEquals(10_000, clock.positionAt(1_000));
+        assertEquals(12_500, clock.positionAt(3_500));
+
+        // A new report replaces the estimate instead of adding to it, so drift never accumulates
+        clock.update(12_400, true, 3_500);
+        assertEquals(13_400, clock.positionAt(4_500));
+    }
+
+    @Test
+    public void positionAt_standsStillWhilePausedAndIsClampedToDuration() {
+        ProgressClock clock = new ProgressClock();
+        clock.setDuration(5_000);
+        clock.update(4_000, false, 0);
+        assertEquals(4_000, clock.positionAt(10_000));
+
+        clock.update(4_000, true, 0);
+        assertEquals(5_000, clock.positionAt(10_000));
+    }
+
+    @Test
+    public void millisUntilNextPixel_followsBarResolution() {
+        ProgressClock clock = new ProgressClock();
+        clock.setDuration(300_000);
+        clock.update(0, true, 0);
+
+        assertEquals(1_000, clock.millisPerPixel(300));
+        assertEquals(1_000, clock.millisUntilNextPixel(0, 300));
+        assertEquals(250, clock.millisUntilNextPixel(750, 300));
+        assertEquals(0, clock.millisUntilNextPixel(750, 0));
+    }
+}
@@ -0,0 +1,111 @@
+package com.antont.player.playlist;
+
+import com.antont.player.models.AudioItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RuleParserTest {
+
+    private static final long NOW = 1_000L * 24 * 60 * 60 * 1000;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private SmartPlaylistIndex mIndex;
+
+    @Before
+    public void setUp() {
+        PlayHistory history = new PlayHistory();
+        history.setLastPlayed("/storage/emulated/0/Music/Live/Kino - Gruppa krovi.mp3", NOW - 2 * DAY);
+        history.setLastPlayed("/storage/emulated/0/Music/Studio/Kino - Zvezda.mp3", NOW - 40 * DAY);
+        mIndex = new SmartPlaylistIndex(history, NOW);
+        mIndex.addAll(Arrays.asList(
+                item(1, "/storage/emulated/0/Music/Live/Kino - Gruppa krovi.mp3", "Live in Moscow", 0),
+                item(2, "/storage/emulated/0/Music/Studio/Kino - Zvezda.mp3", "Zvezda po imeni Solntse", 0),
+                item(3, "/storage/sdcard1/Music/Live/Caf\u00e9 Tacvba - Eres.mp3", "Live \"Unplugged\"", NOW - DAY),
+                item(4, "/storage/emulated/0/Music/Liveliness/Other.mp3", null, NOW - 10 * DAY)));
+    }
+
+    @Test
+    public void textConditions_ignoreCaseAndAccents() {
+        assertEquals(Arrays.asList(1L, 3L), idsOf("album contains LIVE"));
+        assertEquals(Arrays.asList(3L), idsOf("name contains \"cafe tacvba\""));
+        assertEquals(Arrays.asList(2L), idsOf("album is \"zvezda po imeni solntse\""));
+        assertEquals(Arrays.asList(1L, 2L), idsOf("name starts with kino"));
+        assertEquals(Arrays.asList(1L, 3L), idsOf("folder is live"));
+    }
+
+    @Test
+    public void pathUnder_matchesWholeFolderNamesOnAnyVolume() {
+        assertEquals(Arrays.asList(1L, 3L), idsOf("path under /Music/Live"));
+        assertEquals(Arrays.asList(1L, 3L), idsOf("path under \"Music/Live/\""));
+        assertEquals(Arrays.asList(3L), idsOf("path under /storage/sdcard1"));
+        assertEquals(Arrays.asList(4L), idsOf("path contains liveliness"));
+    }
+
+    @Test
+    public void timeConditions_countBackFromNow() {
+        assertEquals(Arrays.asList(1L, 2L), idsOf("played"));
+        assertEquals(Arrays.asList(1L), idsOf("played in 30 days"));
+        assertEquals(Arrays.asList(2L, 3L, 4L), idsOf("not played in 30 days"));
+        assertEquals(Arrays.asList(2L), idsOf("played in 6 weeks and not played in 48 hours"));
+        assertEquals(Arrays.asList(3L), idsOf("modified in 1 day"));
+        assertEquals(Arrays.asList(3L, 4L), idsOf("modified in 10 days"));
+    }
+
+    @Test
+    public void notBindsTighterThanAndTighterThanOr() {
+        assertEquals(Arrays.asList(2L, 3L), idsOf("name contains zvezda or album contains live and not played"));
+        assertEquals(Arrays.asList(3L), idsOf("(name contains zvezda or album contains live) and not played"));
+        assertEquals(Arrays.asList(4L), idsOf("NOT (album contains live OR played)"));
+        assertEquals(Arrays.asList(1L, 3L, 4L), idsOf("not not not album contains zvezda"));
+    }
+
+    @Test
+    public void quotedValues_keepSpacesAndEscapes() {
+        assertEquals(Arrays.asList(3L), idsOf("album is \"live \\\"unplugged\\\"\""));
+        assertEquals(Arrays.asList(1L), idsOf("album contains \"in moscow\""));
+    }
+
+    @Test
+    public void errors_pointAtTheOffendingToken() {
+        assertSyntaxError("artist contains x", 0);
+        assertSyntaxError("album has x", 6);
+        assertSyntaxError("album contains", 14);
+        assertSyntaxError("(album contains x", 17);
+        assertSyntaxError("album contains x y", 17);
+        assertSyntaxError("played in 30 years", 13);
+        assertSyntaxError("played in many days", 10);
+        assertSyntaxError("modified 3 days", 9);
+        assertSyntaxError("path is /Music", 5);
+        assertSyntaxError("name is \"open", 8);
+        assertSyntaxError("", 0);
+    }
+
+    private List<Long> idsOf(String query) {
+        mIndex.putPlaylist("test", RuleParser.parse(query));
+        List<Long> ids = new ArrayList<>();
+        for (AudioItem item : mIndex.getItems("test")) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static void assertSyntaxError(String query, int position) {
+        try {
+            RuleParser.parse(query);
+            fail("Parsed " + query);
+        } catch (QuerySyntaxException e) {
+            assertEquals(query + ": " + e.getMessage(), position, e.getPosition());
+        }
+    }
+
+    private static AudioItem item(long id, String path, String album, long modifiedInMs) {
+        return new AudioItem(id, modifiedInMs / 1000, path, path.substring(path.lastIndexOf('/') + 1), album);
+    }
+}
@@ -0,0 +1,177 @@
+package com.antont.player.playlist;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SmartPlaylistIndexTest {
+
+    private static final long NOW = 1_000L * 24 * 60 * 60 * 1000;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void delta_movesChangedTracksInAndOutWithoutTouchingTheRest() {
+        SmartPlaylistIndex index = new SmartPlaylistIndex(new PlayHistory(), NOW);
+        index.addAll(Arrays.asList(item(1, "/Music/Live/a.mp3", "Live"), item(2, "/Music/b.mp3", "Studio")));
+        index.putPlaylist("live", RuleParser.parse("album contains live or path under Music/Live"));
+        assertEquals(1, index.getSize("live"));
+
+        LibraryDelta delta = new LibraryDelta();
+        delta.addItem(item(3, "/Music/Live/c.mp3", null));
+        delta.updateItem(item(2, "/Music/b.mp3", "Live at home"));
+        delta.removeItem(1);
+        index.applyDelta(delta);
+
+        assertEquals(Arrays.asList(2L, 3L), idsOf(index.getItems("live")));
+    }
+
+    @Test
+    public void playedTracks_leaveTheNotPlayedPlaylistAndComeBackWithTime() {
+        PlayHistory history = new PlayHistory();
+        SmartPlaylistIndex index = new SmartPlaylistIndex(history, NOW);
+        index.addAll(Arrays.asList(item(1, "/Music/a.mp3", null), item(2, "/Music/b.mp3", null)));
+        index.putPlaylist("forgotten", RuleParser.parse("not played in 30 days"));
+        index.putPlaylist("recent", RuleParser.parse("played in 1 day"));
+        assertEquals(2, index.getSize("forgotten"));
+
+        index.onPlayed("/Music/a.mp3", NOW);
+
+        assertEquals(Arrays.asList(2L), idsOf(index.getItems("forgotten")));
+        assertEquals(Arrays.asList(1L), idsOf(index.getItems("recent")));
+        assertEquals(NOW, history.getLastPlayed("/Music/a.mp3"));
+
+        assertFalse(index.setNow(NOW + SmartPlaylistIndex.TIME_RESOLUTION_IN_MS / 2));
+        assertTrue(index.setNow(NOW + 2 * DAY));
+        assertEquals(0, index.getSize("recent"));
+        assertEquals(1, index.getSize("forgotten"));
+        assertTrue(index.setNow(NOW + 31 * DAY));
+        assertEquals(2, index.getSize("forgotten"));
+    }
+
+    @Test
+    public void history_isReadForTracksAddedLater() {
+        PlayHistory history = new PlayHistory();
+        SmartPlaylistIndex index = new SmartPlaylistIndex(history, NOW);
+        index.putPlaylist("played", RuleParser.parse("played"));
+        index.onPlayed("/Music/a.mp3", NOW - DAY);
+
+        index.add(item(1, "/Music/a.mp3", null));
+        index.add(item(2, "/Music/b.mp3", null));
+
+        assertEquals(Arrays.asList(1L), idsOf(index.getItems("played")));
+    }
+
+    // Whatever the deltas and plays, the sets kept up to date one track at a time are the ones a fresh
+    // evaluation of the whole library gives. Enough removals to compact the index a few times
+    @Test
+    public void incrementalUpdates_matchAFullEvaluation() {
+        Random random = new Random(5);
+        PlayHistory history = new PlayHistory();
+        SmartPlaylistIndex index = new SmartPlaylistIndex(history, NOW);
+        String[] queries = {
+                "album contains live and not played in 30 days",
+                "path under Music/Live or name starts with a",
+                "played in 3 days or (modified in 10 days and not folder is rock)",
+                "not played"};
+        for (int i = 0; i < queries.length; i++) {
+            index.putPlaylist("playlist" + i, RuleParser.parse(queries[i]));
+        }
+        List<AudioItem> library = new ArrayList<>();
+        long nextId = 1;
+        long now = NOW;
+
+        for (int round = 0; round < 300; round++) {
+            // Only tracks from before the delta are removed or updated, like in a sync
+            LibraryDelta delta = new LibraryDelta();
+            for (int i = random.nextInt(30); i > 0 && !library.isEmpty(); i--) {
+                AudioItem removed = library.remove(random.nextInt(library.size()));
+                delta.removeItem(removed.getId());
+            }
+            for (int i = random.nextInt(10); i > 0 && !library.isEmpty(); i--) {
+                int position = random.nextInt(library.size());
+                if (delta.getRemovedIds().contains(library.get(position).getId())) {
+                    continue;
+                }
+                AudioItem updated = randomItem(random, library.get(position).getId(), now);
+                library.set(position, updated);
+                delta.updateItem(updated);
+            }
+            for (int i = random.nextInt(40); i > 0; i--) {
+                AudioItem item = randomItem(random, nextId++, now);
+                delta.addItem(item);
+                library.add(item);
+            }
+            index.applyDelta(delta);
+            for (int i = random.nextInt(5); i > 0 && !library.isEmpty(); i--) {
+                index.onPlayed(library.get(random.nextInt(library.size())).getPath(), now - random.nextInt(5) * DAY);
+            }
+            now += random.nextInt(12) * 60 * 60 * 1000L;
+            index.setNow(now);
+
+            SmartPlaylistIndex fresh = new SmartPlaylistIndex(history, index.getNow());
+            fresh.addAll(library);
+            for (int i = 0; i < queries.length; i++) {
+                fresh.putPlaylist("playlist" + i, RuleParser.parse(queries[i]));
+                assertEquals("Round " + round + ": " + queries[i],
+                        sorted(idsOf(fresh.getItems("playlist" + i))), sorted(idsOf(index.getItems("playlist" + i))));
+            }
+        }
+    }
+
+    @Test
+    public void playHistory_roundTrips() throws IOException {
+        PlayHistory history = new PlayHistory();
+        history.setLastPlayed("/Music/\u041a\u0438\u043d\u043e/a.mp3", 42L);
+        history.setLastPlayed("/Music/b.mp3", NOW);
+
+        PlayHistory restored = new PlayHistory();
+        restored.read(history.toByteArray());
+
+        assertEquals(2, restored.size());
+        assertEquals(42L, restored.getLastPlayed("/Music/\u041a\u0438\u043d\u043e/a.mp3"));
+        assertEquals(NOW, restored.getLastPlayed("/Music/b.mp3"));
+        assertEquals(0L, restored.getLastPlayed("/Music/c.mp3"));
+    }
+
+    @Test(expected = IOException.class)
+    public void playHistory_rejectsOtherData() throws IOException {
+        new PlayHistory().read(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    private static AudioItem randomItem(Random random, long id, long now) {
+        String[] folders = {"Music/Live", "Music/Rock", "Music/Live/2019", "Podcasts"};
+        String path = "/storage/" + folders[random.nextInt(folders.length)] + "/" + (char) ('a' + random.nextInt(4))
+                + id + ".mp3";
+        String album = random.nextBoolean() ? "Live " + random.nextInt(3) : null;
+        long modifiedInS = (now - random.nextInt(20) * DAY) / 1000;
+        return new AudioItem(id, modifiedInS, path, path.substring(path.lastIndexOf('/') + 1), album);
+    }
+
+    private static AudioItem item(long id, String path, String album) {
+        return new AudioItem(id, 0, path, path.substring(path.lastIndexOf('/') + 1), album);
+    }
+
+    private static List<Long> idsOf(List<AudioItem> items) {
+        List<Long> ids = new ArrayList<>();
+        for (AudioItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,132 @@
+package com.antont.player.search;
+
+import com.antont.player.library.LibraryDelta;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private AudioItem mYesterday;
+    private AudioItem mLetItBe;
+    private AudioItem mBohemian;
+    private AudioItem mCafe;
+    private SearchIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mYesterday = new AudioItem(1, 1, "/music/Beatles/yesterday.mp3", "Yesterday.mp3", "Help!");
+        mLetItBe = new AudioItem(2, 1, "/music/Beatles/let_it_be.mp3", "Let It Be.mp3", "Let It Be");
+        mBohemian = new AudioItem(3, 1, "/music/Queen/bohemian.mp3", "Bohemian Rhapsody.mp3", "A Night at the Opera");
+        mCafe = new AudioItem(4, 1, "/music/Misc/cafe.mp3", "Café del Mar.mp3", "Chill");
+        mIndex = new SearchIndex(list(mYesterday, mLetItBe, mBohemian, mCafe));
+    }
+
+    @Test
+    public void prefixQueries_matchTokenStartsAsYouType() {
+        assertEquals(list(mYesterday, mLetItBe, mBohemian), mIndex.search("b", 10));
+        assertEquals(list(mBohemian), mIndex.search("bo", 10));
+        assertEquals(list(mBohemian), mIndex.search("boh", 10));
+        assertEquals(list(mBohemian), mIndex.search("bohemian", 10));
+    }
+
+    @Test
+    public void foldersAndAlbums_areSearchable() {
+        assertEquals(list(mYesterday, mLetItBe), mIndex.search("beatles", 10));
+        assertEquals(list(mBohemian), mIndex.search("queen opera", 10));
+        assertEquals(list(mYesterday), mIndex.search("HELP", 10));
+    }
+
+    @Test
+    public void tokenStartMatches_rankBeforeInnerMatches() {
+        AudioItem inner = new AudioItem(5, 1, "/music/x/a.mp3", "Fairytale.mp3", "x");
+        AudioItem start = new AudioItem(6, 1, "/music/x/b.mp3", "Tale of Us.mp3", "x");
+        mIndex.add(inner);
+        mIndex.add(start);
+
+        assertEquals(list(start, inner), mIndex.search("tale", 10));
+    }
+
+    @Test
+    public void gramsOutOfOrder_doNotMatch() {
+        // "hem" and "emi" are both in "bohemian" but "hemia" is, "hemix" is not
+        assertTrue(mIndex.search("hemia", 10).contains(mBohemian));
+        assertTrue(mIndex.search("anbo", 10).isEmpty());
+    }
+
+    @Test
+    public void accentsAndCase_areFolded() {
+        assertEquals(list(mCafe), mIndex.search("cafe", 10));
+        assertEquals(list(mCafe), mIndex.search("CAFÉ", 10));
+    }
+
+    @Test
+    public void typos_matchAfterExactResults() {
+        assertEquals(list(mBohemian), mIndex.search("bohemain", 10));
+        assertEquals(list(mYesterday), mIndex.search("yestrday", 10));
+        assertTrue(mIndex.search("xyzzy", 10).isEmpty());
+    }
+
+    @Test
+    public void limit_isRespected() {
+        assertEquals(1, mIndex.search("b", 1).size());
+        assertTrue(mIndex.search("b", 0).isEmpty());
+        assertTrue(mIndex.search("  !! ", 10).isEmpty());
+    }
+
+    @Test
+    public void applyDelta_updatesIndexIncrementally() {
+        AudioItem renamed = new AudioItem(1, 2, "/music/Beatles/yesterday.mp3", "Michelle.mp3", "Rubber Soul");
+        AudioItem added = new AudioItem(7, 1, "/music/Queen/champions.mp3", "We Are the Champions.mp3", "News");
+        LibraryDelta delta = new LibraryDelta();
+        delta.updateItem(renamed);
+        delta.addItem(added);
+        delta.removeItem(3);
+
+        mIndex.applyDelta(delta);
+
+        assertEquals(4, mIndex.size());
+        assertTrue(mIndex.search("yesterday", 10).isEmpty());
+        assertEquals(list(renamed), mIndex.search("michelle", 10));
+        assertTrue(mIndex.search("bohemian", 10).isEmpty());
+        assertEquals(list(added), mIndex.search("queen", 10));
+    }
+
+    @Test
+    public void manyRemovals_rebuildTheIndex() {
+        List<AudioItem> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            items.add(new AudioItem(100 + i, 1, "/music/x/" + i + ".mp3", "Track " + i, "Album"));
+        }
+        mIndex.addAll(items);
+        for (int i = 0; i < 2900; i++) {
+            assertTrue(mIndex.remove(items.get(i)));
+        }
+
+        assertEquals(104, mIndex.size());
+        assertEquals(items.get(2950), mIndex.search("track 2950", 10).get(0));
+        assertEquals(list(mYesterday), mIndex.search("yesterday", 10));
+    }
+
+    @Test
+    public void prefixDistance_allowsTheTermToEndInsideTheToken() {
+        String text = " rhapsody ";
+        assertEquals(0, mIndex.prefixDistance(text, 1, 9, "rhap", 2));
+        assertEquals(1, mIndex.prefixDistance(text, 1, 9, "rhep", 2));
+        assertEquals(1, mIndex.prefixDistance(text, 1, 9, "rapsody", 2));
+    }
+
+    private static List<AudioItem> list(AudioItem... items) {
+        List<AudioItem> list = new ArrayList<>();
+        for (AudioItem item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+}
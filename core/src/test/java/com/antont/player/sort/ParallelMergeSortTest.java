@@ -0,0 +1,30 @@
+package com.antont.player.sort;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelMergeSortTest {
+
+    @Test
+    public void sort_isStableAcrossParallelHalves() {
+        Random random = new Random(3);
+        int[] keys = new int[100_000];
+        int[] values = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(100);
+            values[i] = i;
+        }
+
+        ParallelMergeSort.sort(values, (first, second) -> Integer.compare(keys[first], keys[second]), new ForkJoinPool(4));
+
+        for (int i = 1; i < values.length; i++) {
+            int previous = values[i - 1];
+            int current = values[i];
+            assertTrue(keys[previous] < keys[current] || keys[previous] == keys[current] && previous < current);
+        }
+    }
+}
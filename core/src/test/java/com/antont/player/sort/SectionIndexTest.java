@@ -0,0 +1,45 @@
+package com.antont.player.sort;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SectionIndexTest {
+
+    // Rows: [H0] 0 1 [H1] [H2] 2 [H3] 3 4
+    private final SectionIndex mIndex = new SectionIndex(Arrays.asList(
+            new Section("a", 0, 0), new Section("b", 2, 1), new Section("c", 2, 2), new Section("d", 3, 1)), 5);
+
+    @Test
+    public void rows_mapToHeadersAndItems() {
+        assertEquals(9, mIndex.getRowCount());
+        int[] expected = {-1, 0, 1, -1, -1, 2, -1, 3, 4};
+        for (int row = 0; row < expected.length; row++) {
+            assertEquals("Row " + row, expected[row], mIndex.getItemPosition(row));
+            assertEquals("Row " + row, expected[row] < 0, mIndex.isHeader(row));
+        }
+        assertEquals("b", mIndex.getSection(3).getTitle());
+        assertEquals("c", mIndex.getSection(4).getTitle());
+        assertNull(mIndex.getSection(5));
+    }
+
+    @Test
+    public void getRow_isTheInverseOfGetItemPosition() {
+        for (int position = 0; position < 5; position++) {
+            assertEquals(position, mIndex.getItemPosition(mIndex.getRow(position)));
+        }
+        assertEquals(-1, mIndex.getRow(-1));
+    }
+
+    @Test
+    public void none_mapsRowsToThemselves() {
+        SectionIndex index = new SectionIndex(java.util.Collections.emptyList(), 3);
+        assertTrue(index.isEmpty());
+        assertEquals(3, index.getRowCount());
+        assertEquals(2, index.getItemPosition(2));
+        assertEquals(2, index.getRow(2));
+        assertFalse(index.isHeader(0));
+    }
+}
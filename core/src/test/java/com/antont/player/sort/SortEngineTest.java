@@ -0,0 +1,133 @@
+package com.antont.player.sort;
+
+import com.antont.player.enums.SortOrder;
+import com.antont.player.models.AudioItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SortEngineTest {
+
+    private final SortEngine mEngine = new SortEngine(new ForkJoinPool(2));
+
+    @Test
+    public void sortByName_ignoresCaseAndAccents() {
+        List<AudioItem> items = Arrays.asList(
+                item(1, "/m/x/zebra.mp3", "A"),
+                item(2, "/m/x/\u00c9clair.mp3", "A"),
+                item(3, "/m/x/apple.mp3", "A"),
+                item(4, "/m/x/Echo.mp3", "A"));
+
+        assertEquals(Arrays.asList("apple.mp3", "Echo.mp3", "\u00c9clair.mp3", "zebra.mp3"),
+                names(mEngine.sort(items, SortOrder.NAME).getItems()));
+        assertTrue(mEngine.sort(items, SortOrder.NAME).getSections().isEmpty());
+    }
+
+    @Test
+    public void sortByAlbum_groupsByAlbumAndFolder() {
+        List<AudioItem> items = Arrays.asList(
+                item(1, "/m/b/02.mp3", "Beta"),
+                item(2, "/m/u1/01.mp3", "Unknown"),
+                item(3, "/m/a/02.mp3", "alpha"),
+                item(4, "/m/n/01.mp3", null),
+                item(5, "/m/b/01.mp3", "Beta"),
+                item(6, "/m/u2/01.mp3", "Unknown"),
+                item(7, "/m/a/01.mp3", "alpha"));
+
+        SortResult result = mEngine.sort(items, SortOrder.ALBUM);
+        assertEquals(Arrays.asList(7L, 3L, 5L, 1L, 2L, 6L, 4L), ids(result.getItems()));
+
+        List<Section> sections = result.getSections();
+        assertEquals(5, sections.size());
+        assertSection(sections.get(0), "alpha", 0, 0);
+        assertSection(sections.get(1), "Beta", 2, 0);
+        assertSection(sections.get(2), "Unknown", 4, 0);
+        assertSection(sections.get(3), "Unknown", 5, 0);
+        assertSection(sections.get(4), null, 6, 0);
+    }
+
+    @Test
+    public void sortByFolder_buildsTheFolderTree() {
+        List<AudioItem> items = Arrays.asList(
+                item(1, "/music/rock/queen/b.mp3", "A"),
+                item(2, "/music/a.mp3", "A"),
+                item(3, "/music/jazz/c.mp3", "A"),
+                item(4, "/music/rock/queen/a.mp3", "A"),
+                item(5, "/music/rock beat/d.mp3", "A"),
+                item(6, "/music/rock/abba/e.mp3", "A"));
+
+        SortResult result = mEngine.sort(items, SortOrder.FOLDER);
+        assertEquals(Arrays.asList(2L, 3L, 6L, 4L, 1L, 5L), ids(result.getItems()));
+
+        List<Section> sections = result.getSections();
+        assertEquals(6, sections.size());
+        assertSection(sections.get(0), "/music", 0, 0);
+        assertSection(sections.get(1), "jazz", 1, 1);
+        // rock holds folders only, its header and the first subfolder's stand above the same track
+        assertSection(sections.get(2), "rock", 2, 1);
+        assertSection(sections.get(3), "abba", 2, 2);
+        assertSection(sections.get(4), "queen", 3, 2);
+        assertSection(sections.get(5), "rock beat", 5, 1);
+    }
+
+    @Test
+    public void sortByAdded_ordersByIdAndIsStable() {
+        List<AudioItem> items = Arrays.asList(
+                item(3, "/m/c.mp3", "A"),
+                new AudioItem("/m/x.mp3", "x.mp3", "A"),
+                item(1, "/m/a.mp3", "A"),
+                new AudioItem("/m/y.mp3", "y.mp3", "A"));
+
+        assertEquals(Arrays.asList("x.mp3", "y.mp3", "a.mp3", "c.mp3"),
+                names(mEngine.sort(items, SortOrder.ADDED).getItems()));
+    }
+
+    @Test
+    public void sort_keepsKeysOfCurrentItemsOnly() {
+        AudioItem first = item(1, "/m/a.mp3", "A");
+        AudioItem second = item(2, "/m/b.mp3", "A");
+        mEngine.sort(Arrays.asList(first, second), SortOrder.NAME);
+        SortResult result = mEngine.sort(Arrays.asList(second), SortOrder.NAME);
+        assertEquals(Arrays.asList(second), result.getItems());
+    }
+
+    @Test
+    public void commonFolderOf_stopsAtWholeFolderNames() {
+        assertEquals("/music", SortEngine.commonFolderOf("/music/rock", "/music/rap"));
+        assertEquals("/music", SortEngine.commonFolderOf("/music", "/music/rap"));
+        assertEquals("", SortEngine.commonFolderOf("/music", "/musical"));
+        assertEquals("", SortEngine.commonFolderOf("/a", ""));
+    }
+
+    private static void assertSection(Section section, String title, int start, int depth) {
+        assertEquals(title, section.getTitle());
+        assertEquals(start, section.getStart());
+        assertEquals(depth, section.getDepth());
+    }
+
+    private static AudioItem item(long id, String path, String album) {
+        return new AudioItem(id, 1, path, path.substring(path.lastIndexOf('/') + 1), album);
+    }
+
+    private static List<String> names(List<AudioItem> items) {
+        List<String> names = new ArrayList<>();
+        for (AudioItem item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+
+    private static List<Long> ids(List<AudioItem> items) {
+        List<Long> ids = new ArrayList<>();
+        for (AudioItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,94 @@
+package com.antont.player.storage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PathRecordLogTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("record-log").toFile();
+        directory.deleteOnExit();
+        mFile = new File(directory, "log");
+        mFile.deleteOnExit();
+    }
+
+    @Test
+    public void load_stopsAtARecordWhoseValueIsTooLong() throws IOException {
+        IntLog log = new IntLog(mFile, 4);
+        log.load();
+        log.put("/music/a.mp3", 1);
+        log.close();
+        long validLength = mFile.length();
+        // Checksummed like any other record, but with 4 bytes after the value
+        IntLog longer = new IntLog(mFile, 8);
+        longer.load();
+        longer.put("/music/b.mp3", 2);
+        longer.close();
+
+        IntLog reopened = new IntLog(mFile, 4);
+        reopened.load();
+        assertEquals(Integer.valueOf(1), reopened.get("/music/a.mp3"));
+        assertNull(reopened.get("/music/b.mp3"));
+        assertEquals(validLength, mFile.length());
+    }
+
+    @Test
+    public void load_stopsAtARecordWhoseValueIsTooShort() throws IOException {
+        IntLog shorter = new IntLog(mFile, 2);
+        shorter.load();
+        shorter.put("/music/a.mp3", 1);
+        shorter.close();
+
+        IntLog reopened = new IntLog(mFile, 4);
+        reopened.load();
+        assertEquals(0, reopened.size());
+        assertEquals(0, mFile.length());
+    }
+
+    @Test
+    public void load_createsTheMissingDirectory() throws IOException {
+        File file = new File(new File(mFile.getParentFile(), "missing"), "log");
+        IntLog log = new IntLog(file, 4);
+        log.load();
+        log.put("/music/a.mp3", 7);
+        log.close();
+
+        IntLog reopened = new IntLog(file, 4);
+        reopened.load();
+        assertEquals(Integer.valueOf(7), reopened.get("/music/a.mp3"));
+    }
+
+    // Reads an int, writes it padded with zeros to the given size
+    private static class IntLog extends PathRecordLog<Integer> {
+
+        private final int mWrittenSize;
+
+        IntLog(File file, int writtenSize) {
+            super(file);
+            mWrittenSize = writtenSize;
+        }
+
+        @Override
+        protected void writeValue(DataOutputStream out, Integer value) throws IOException {
+            byte[] bytes = new byte[mWrittenSize];
+            ByteBuffer.wrap(bytes).put(ByteBuffer.allocate(4).putInt(value).array(), 0, Math.min(4, mWrittenSize));
+            out.write(bytes);
+        }
+
+        @Override
+        protected Integer readValue(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    }
+}
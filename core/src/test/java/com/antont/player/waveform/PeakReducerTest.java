@@ -0,0 +1,72 @@
+package com.antont.player.waveform;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PeakReducerTest {
+
+    @Test
+    public void process_keepsLowestAndHighestSampleOfEveryBucket() {
+        PeakReducer reducer = new PeakReducer(2, 4 * PeakReducer.BUCKET_COUNT);
+        short[] samples = new short[8 * PeakReducer.BUCKET_COUNT];
+        // The second bucket holds one loud frame, left channel down and right channel up
+        samples[2 * 5] = -32768;
+        samples[2 * 5 + 1] = 32767;
+        reducer.process(samples, 0, samples.length / 2);
+        reducer.finish();
+
+        Waveform waveform = reducer.getWaveform();
+        assertEquals(PeakReducer.BUCKET_COUNT, waveform.size());
+        assertTrue(waveform.isComplete());
+        assertEquals(1f, waveform.getSpan(), 0f);
+        assertEquals(0, waveform.getMin(0));
+        assertEquals(-128, waveform.getMin(1));
+        assertEquals(127, waveform.getMax(1));
+        assertEquals(0, waveform.getMax(2));
+    }
+
+    @Test
+    public void partialWaveform_spansTheDecodedShareOfTheTrack() {
+        PeakReducer reducer = new PeakReducer(1, 100 * PeakReducer.BUCKET_COUNT);
+        short[] samples = new short[25 * PeakReducer.BUCKET_COUNT];
+        reducer.process(samples, 0, samples.length);
+
+        Waveform waveform = reducer.getWaveform();
+        assertFalse(waveform.isComplete());
+        assertEquals(PeakReducer.BUCKET_COUNT / 4, waveform.size());
+        assertEquals(0.25f, waveform.getSpan(), 0.001f);
+    }
+
+    @Test
+    public void longerTrackThanExpected_mergesBucketsInPairs() {
+        PeakReducer reducer = new PeakReducer(1, PeakReducer.BUCKET_COUNT);
+        short[] samples = new short[PeakReducer.BUCKET_COUNT * 3];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 8);
+        }
+        reducer.process(samples, 0, samples.length);
+        reducer.finish();
+
+        Waveform waveform = reducer.getWaveform();
+        // Two merges, four frames per bucket in the end
+        assertEquals(3 * PeakReducer.BUCKET_COUNT / 4, waveform.size());
+        assertEquals(0, waveform.getMin(0));
+        assertEquals((3 * 8) >> 8, waveform.getMax(0));
+        assertEquals((short) (samples.length * 8 - 8) >> 8, waveform.getMax(waveform.size() - 1));
+    }
+
+    @Test
+    public void unknownLength_startsAtOneFramePerBucket() {
+        PeakReducer reducer = new PeakReducer(1, 0);
+        reducer.process(new short[10], 0, 10);
+        assertEquals(10, reducer.getWaveform().size());
+        assertEquals(1f, reducer.getWaveform().getSpan(), 0f);
+
+        reducer.process(new short[100_000], 0, 100_000);
+        reducer.finish();
+        assertTrue(reducer.getWaveform().size() <= PeakReducer.BUCKET_COUNT);
+        assertTrue(reducer.getWaveform().size() > PeakReducer.BUCKET_COUNT / 2);
+        assertEquals(100_010, reducer.getFrameCount());
+    }
+}
@@ -0,0 +1,32 @@
+package com.antont.player.waveform;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WaveformCodecTest {
+
+    @Test
+    public void encode_andDecode_roundTrip() {
+        Waveform waveform = new Waveform(new byte[]{-128, -3, 0}, new byte[]{127, 4, 0}, 1f, true);
+        byte[] data = WaveformCodec.encode(waveform, 5_000_000, 1234);
+
+        Waveform decoded = WaveformCodec.decode(data, 5_000_000, 1234);
+        assertEquals(3, decoded.size());
+        assertEquals(-128, decoded.getMin(0));
+        assertEquals(4, decoded.getMax(1));
+        assertTrue(decoded.isComplete());
+    }
+
+    @Test
+    public void decode_rejectsChangedFilesAndDamagedData() {
+        Waveform waveform = new Waveform(new byte[]{1, 2}, new byte[]{3, 4}, 1f, true);
+        byte[] data = WaveformCodec.encode(waveform, 100, 200);
+
+        assertNull(WaveformCodec.decode(data, 100, 201));
+        assertNull(WaveformCodec.decode(data, 101, 200));
+        data[20] ^= 1;
+        assertNull(WaveformCodec.decode(data, 100, 200));
+        assertNull(WaveformCodec.decode(new byte[3], 100, 200));
+    }
+}